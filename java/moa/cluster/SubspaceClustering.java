@@ -103,6 +103,33 @@ public class SubspaceClustering extends AbstractMOAObject {
     }
     
     
+    /**
+     * Copy to be read by another thread while the clusterer goes on. Sphere
+     * clusters are copied field by field; other clusters (which may consist of
+     * live microclusters) are deep-copied one by one.
+     */
+    public SubspaceClustering snapshot() {
+    	SubspaceClustering snapshot = new SubspaceClustering();
+    	for (Cluster c : clusters) {
+    		if (c.getClass() == SubspaceSphereCluster.class) {
+    			snapshot.add(new SubspaceSphereCluster((SubspaceSphereCluster) c));
+    		} else if (c.getClass() == SphereCluster.class) {
+    			SphereCluster sc = new SphereCluster(c.getCenter().clone(), ((SphereCluster) c).getRadius(), c.getWeight());
+    			sc.setId(c.getId());
+    			sc.setGroundTruth(c.getGroundTruth());
+    			snapshot.add(sc);
+    		} else {
+    			snapshot.add((Cluster) c.copy());
+    		}
+    	}
+    	snapshot.debug = debug;
+    	snapshot.hasNoise = hasNoise;
+    	snapshot.labelMap = new HashMap<Double, Integer>(labelMap);
+    	snapshot.classSubspaces = new HashMap<Integer, boolean[]>(classSubspaces);
+    	snapshot.classLabelList = new ArrayList<Double>(classLabelList);
+    	return snapshot;
+    }
+    
     /** Roll-back to [Clustering] object. **/
     public Clustering toClustering() {
     	ArrayList<Cluster> convertedClusters = new ArrayList<Cluster>();
@@ -72,6 +72,23 @@ public class SubspaceSphereCluster extends Cluster {
 		setAdjustedSubspace(subspace);
 	}
 
+	/**
+	 * Copy of the given cluster with its own arrays (no serialization).
+	 */
+	public SubspaceSphereCluster(SubspaceSphereCluster cluster) {
+		this();
+		this.center = (cluster.center != null) ? cluster.center.clone() : null;
+		this.subspace = (cluster.subspace != null) ? cluster.subspace.clone() : null;
+		this.subspaceSize = cluster.subspaceSize;
+		this.radius = cluster.radius;
+		this.weight = cluster.weight;
+		if (cluster.adjustedSubspace != null) {
+			setAdjustedSubspace(cluster.adjustedSubspace.clone());
+		}
+		setId(cluster.getId());
+		setGroundTruth(cluster.getGroundTruth());
+	}
+
 	public SubspaceSphereCluster(List<?extends Instance> instances, boolean[] subspace) {
 		this();
 		if (instances == null || instances.size() <= 0)
@@ -327,48 +344,56 @@ public class SubspaceSphereCluster extends Cluster {
 	 * @return a point that lies inside this cluster
 	 */
 	public Instance sample(Random random) {
-		// Create sample in hypersphere coordinates
-		double[] center = getCenter();
-
-		final double sin[] = new double[this.subspaceSize - 1];
-		final double cos[] = new double[this.subspaceSize - 1];
-		final double length = random.nextDouble() * getRadius();
-
-		double lastValue = 1.0;
-		for (int i = 0; i < this.subspaceSize - 1; i++) {
-			double angle = random.nextDouble() * 2 * Math.PI;
-			sin[i] = lastValue * Math.sin( angle ); 	// Store cumulative values
-			cos[i] = Math.cos( angle );
-			lastValue = sin[i];
-		}
-
-		// Calculate cartesian coordinates
 		final int fullspaceSize = this.center.length;
 		double res[] = new double[fullspaceSize + 1];	// +1 for generator label
+		sample(random, res);
+		
+		// Generator label (representing class label)
+		res[fullspaceSize] = getId();
+		
+		return new DenseInstance(1.0, res);
+	}
+	
+	/**
+	 * Same as sample(Random), but writes the point into the given array without
+	 * allocating anything. Random numbers are drawn in the same order.
+	 * 
+	 * @param random - a random number source
+	 * @param dest - destination of the full-space point (length >= full-space size)
+	 */
+	public void sample(Random random, double[] dest) {
+		sample(random, dest, 0);
+	}
 
+	/**
+	 * Same as sample(Random, double[]), writing the point from dest[offset] on.
+	 */
+	public void sample(Random random, double[] dest, int offset) {
+		final double length = random.nextDouble() * getRadius();
+
+		// Relevant dimensions in hypersphere coordinates: the first value uses only a
+		// cosine, the middle ones the cumulative sines and a cosine, the last one only sines
+		double lastSin = 1.0;
 		int j = 0;
 		for (int i = 0; i < this.center.length; i++) {
-			if (subspace[i]) {	// Relevant dimensions
-				
-				if (j == 0) {
-					res[i] = center[i] + length * cos[0];				// First value uses only cosines
-				} else if (j >= 1 && j < this.subspaceSize - 1) {
-					res[i] = center[i] + length * sin[j - 1] * cos[j];	// Loop through 'middle' coordinates which use cosines and sines
-				} else if (j == this.subspaceSize - 1) {
-					res[i] = center[i] + length * sin[j - 1];			// Last value uses only sines
+			if (subspace[i]) {
+				if (j < this.subspaceSize - 1) {
+					double angle = random.nextDouble() * 2 * Math.PI;
+					dest[offset + i] = center[i] + length * lastSin * Math.cos(angle);
+					lastSin *= Math.sin(angle);
+				} else {
+					dest[offset + i] = center[i] + length * lastSin;
 				}
-				
 				j++;
-				
-			} else {			// Irrelevant dimensions: just random number
-				res[i] = random.nextDouble();
 			}
 		}
-		
-		// Generator label (representing class label)
-		res[fullspaceSize] = getId();
-		
-		return new DenseInstance(1.0, res);
+
+		// Irrelevant dimensions: just random number
+		for (int i = 0; i < this.center.length; i++) {
+			if (!subspace[i]) {
+				dest[offset + i] = random.nextDouble();
+			}
+		}
 	}
 	
 	
@@ -9,6 +9,8 @@
 
 package moa.clusterers;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
@@ -283,6 +285,82 @@ public abstract class AbstractSubspaceClusterer extends AbstractOptionHandler
 		return insts.classIndex() > index ? index : index + 1;
 	}
 
+	
+	/**
+	 * Metrics of the online part, or null if the clusterer doesn't record any
+	 */
+	public ClustererMetrics getMetrics() {
+		return null;
+	}
+	
+	
+	/** Checkpoints **/
+	
+	/**
+	 * Whether createCheckpoint() and restoreCheckpoint() are implemented
+	 */
+	public boolean supportsCheckpoints() {
+		return false;
+	}
+	
+	/**
+	 * Snapshot of the model state as flat primitive arrays. The snapshot is a copy,
+	 * so it can be written (e.g. by a CheckpointWriter thread) while training goes on.
+	 */
+	public ClustererCheckpoint createCheckpoint() {
+		if (!supportsCheckpoints()) {
+			throw new UnsupportedOperationException(getClass().getName() + " does not support checkpoints");
+		}
+		ClustererCheckpoint checkpoint = new ClustererCheckpoint(getClass().getName(),
+				getOptions().getAsCLIString());
+		checkpoint.putDouble("trainingWeightSeenByModel", trainingWeightSeenByModel);
+		createCheckpointImpl(checkpoint);
+		return checkpoint;
+	}
+	
+	/**
+	 * Replaces the model by the one of the checkpoint. The clusterer has to be of the
+	 * same class and prepared with the same options as the one checkpointed.
+	 */
+	public void restoreCheckpoint(ClustererCheckpoint checkpoint) {
+		if (!supportsCheckpoints()) {
+			throw new UnsupportedOperationException(getClass().getName() + " does not support checkpoints");
+		}
+		if (!checkpoint.getClustererClass().equals(getClass().getName())) {
+			throw new IllegalArgumentException("Checkpoint of " + checkpoint.getClustererClass()
+					+ " can't be restored into " + getClass().getName());
+		}
+		if (!checkpoint.getClustererOptions().equals(getOptions().getAsCLIString())) {
+			throw new IllegalArgumentException("Checkpoint was taken with other options: "
+					+ checkpoint.getClustererOptions());
+		}
+		resetLearning();
+		trainingWeightSeenByModel = checkpoint.getDouble("trainingWeightSeenByModel");
+		restoreCheckpointImpl(checkpoint);
+	}
+	
+	public void writeCheckpoint(File file) throws IOException {
+		createCheckpoint().write(file);
+	}
+	
+	public void readCheckpoint(File file) throws IOException {
+		restoreCheckpoint(ClustererCheckpoint.read(file));
+	}
+	
+	/**
+	 * Puts the model state into the checkpoint. Only called if supportsCheckpoints();
+	 * clusterers supporting checkpoints override both Impl methods.
+	 */
+	protected void createCheckpointImpl(ClustererCheckpoint checkpoint) {
+	}
+	
+	/**
+	 * Takes the model state from the checkpoint (after resetLearning()).
+	 */
+	protected void restoreCheckpointImpl(ClustererCheckpoint checkpoint) {
+	}
+	
+
     public boolean implementsMicroClusterer(){
         return false;
     }
@@ -0,0 +1,144 @@
+/**
+ * [CheckpointWriter.java] for Subspace MOA
+ *
+ * Periodic checkpoints of a subspace clusterer. The snapshot is taken on the
+ * training thread (copying the flat state arrays), and written to file by a
+ * background thread while training goes on. If the previous checkpoint is still
+ * being written when the next one is due, the new one is skipped instead of
+ * holding up training.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.clusterers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+public class CheckpointWriter {
+
+	/** Instances trained on when the checkpoint was taken (to resume the stream from) */
+	public static final String STREAM_POSITION = "streamPosition";
+
+	private final AbstractSubspaceClusterer clusterer;
+	private final File file;
+	private final long intervalNanos;
+
+	private final ExecutorService writer;
+	private Future<?> pending;
+	private long lastCheckpoint;
+	private int numWritten = 0;
+	private int numSkipped = 0;
+
+
+	/**
+	 * @param interval	Milliseconds between checkpoints (0 = only on checkpoint())
+	 */
+	public CheckpointWriter(AbstractSubspaceClusterer clusterer, File file, long interval) {
+		if (!clusterer.supportsCheckpoints()) {
+			throw new IllegalArgumentException(clusterer.getClass().getName() + " does not support checkpoints");
+		}
+		this.clusterer = clusterer;
+		this.file = file;
+		this.intervalNanos = interval * 1000000L;
+		this.lastCheckpoint = System.nanoTime();
+		this.writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "CheckpointWriter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Takes a checkpoint if the interval has passed. To be called by the training
+	 * thread between two instances.
+	 *
+	 * @param streamPosition	Instances trained on so far
+	 * @return whether a checkpoint was taken
+	 */
+	public boolean checkpointIfDue(long streamPosition) {
+		if (intervalNanos <= 0 || System.nanoTime() - lastCheckpoint < intervalNanos) {
+			return false;
+		}
+		if (pending != null && !pending.isDone()) {
+			numSkipped++;
+			return false;
+		}
+		checkpoint(streamPosition);
+		return true;
+	}
+
+	/**
+	 * Takes a checkpoint now (after the previous one has been written).
+	 *
+	 * @param streamPosition	Instances trained on so far
+	 */
+	public void checkpoint(long streamPosition) {
+		waitForPending();
+		final ClustererCheckpoint snapshot = clusterer.createCheckpoint();
+		snapshot.putLong(STREAM_POSITION, streamPosition);
+		lastCheckpoint = System.nanoTime();
+		pending = writer.submit(new Runnable() {
+			public void run() {
+				try {
+					snapshot.write(file);
+				} catch (IOException ioe) {
+					throw new RuntimeException("CheckpointWriter: couldn't write " + file, ioe);
+				}
+			}
+		});
+		numWritten++;
+	}
+
+	/**
+	 * Waits for the last checkpoint to be written and stops the writer thread.
+	 */
+	public void close() {
+		try {
+			waitForPending();
+		} finally {
+			writer.shutdown();
+		}
+	}
+
+	private void waitForPending() {
+		if (pending == null) return;
+		try {
+			pending.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException("CheckpointWriter: writing " + file + " failed", e.getCause());
+		} finally {
+			pending = null;
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Checkpoints taken so far
+	 */
+	public int getNumWritten() {
+		return numWritten;
+	}
+
+	/**
+	 * Due checkpoints skipped because the previous one was still being written
+	 */
+	public int getNumSkipped() {
+		return numSkipped;
+	}
+}
@@ -0,0 +1,371 @@
+/**
+ * [ClustererCheckpoint.java] for Subspace MOA
+ *
+ * Snapshot of the state of a subspace clusterer (see
+ * AbstractSubspaceClusterer.createCheckpoint()), and its binary file format.
+ * The state is a set of named entries: scalars and flat primitive arrays, e.g.
+ * the LS/SS vectors of all microclusters in one array. Entries are copied when
+ * they are put, so a snapshot can be written while the clusterer goes on.
+ *
+ * File layout (big-endian):
+ *   int magic "SMCK", int format version
+ *   UTF clusterer class, UTF clusterer options (CLI string)
+ *   int #entries, then per entry: UTF name, byte type, value
+ *   (arrays: int length, then the elements)
+ *
+ * Entries a clusterer doesn't ask for are ignored, so newer versions of a
+ * clusterer can add entries and still read older checkpoints.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.clusterers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import moa.cluster.CFCluster;
+
+public class ClustererCheckpoint {
+
+	public static final int MAGIC = 0x534d434b;		// "SMCK"
+	public static final int VERSION = 1;
+
+	private static final byte TYPE_DOUBLE = 1;
+	private static final byte TYPE_LONG = 2;
+	private static final byte TYPE_INT = 3;
+	private static final byte TYPE_BOOLEAN = 4;
+	private static final byte TYPE_DOUBLES = 5;
+	private static final byte TYPE_LONGS = 6;
+	private static final byte TYPE_INTS = 7;
+
+	private static final int ARRAY_CHUNK = 8192;		// Elements converted at once
+
+	private final String clustererClass;
+	private final String clustererOptions;
+	private final LinkedHashMap<String, Object> entries = new LinkedHashMap<String, Object>();
+
+
+	public ClustererCheckpoint(String clustererClass, String clustererOptions) {
+		this.clustererClass = clustererClass;
+		this.clustererOptions = clustererOptions;
+	}
+
+	public String getClustererClass() {
+		return clustererClass;
+	}
+
+	public String getClustererOptions() {
+		return clustererOptions;
+	}
+
+	public boolean contains(String name) {
+		return entries.containsKey(name);
+	}
+
+
+	/* Putting entries (arrays are copied) */
+
+	public void putDouble(String name, double value) {
+		entries.put(name, Double.valueOf(value));
+	}
+
+	public void putLong(String name, long value) {
+		entries.put(name, Long.valueOf(value));
+	}
+
+	public void putInt(String name, int value) {
+		entries.put(name, Integer.valueOf(value));
+	}
+
+	public void putBoolean(String name, boolean value) {
+		entries.put(name, Boolean.valueOf(value));
+	}
+
+	public void putDoubles(String name, double[] values) {
+		entries.put(name, values.clone());
+	}
+
+	public void putLongs(String name, long[] values) {
+		entries.put(name, values.clone());
+	}
+
+	public void putInts(String name, int[] values) {
+		entries.put(name, values.clone());
+	}
+
+	/**
+	 * Puts an array which was filled for this checkpoint only (not copied).
+	 */
+	public void putOwnedDoubles(String name, double[] values) {
+		entries.put(name, values);
+	}
+
+	public void putOwnedLongs(String name, long[] values) {
+		entries.put(name, values);
+	}
+
+	public void putOwnedInts(String name, int[] values) {
+		entries.put(name, values);
+	}
+
+
+	/**
+	 * Puts the CF vectors of the clusters as flat arrays: [prefix].LS and [prefix].SS
+	 * (#clusters x dim, cluster by cluster), [prefix].N, [prefix].size and [prefix].dim.
+	 */
+	public void putCFVectors(String prefix, List<? extends CFCluster> clusters, int dim) {
+		int size = clusters.size();
+		double[] ls = new double[size * dim];
+		double[] ss = new double[size * dim];
+		double[] n = new double[size];
+		for (int i = 0; i < size; i++) {
+			CFCluster cf = clusters.get(i);
+			System.arraycopy(cf.LS, 0, ls, i * dim, dim);
+			System.arraycopy(cf.SS, 0, ss, i * dim, dim);
+			n[i] = cf.getN();
+		}
+		putInt(prefix + ".size", size);
+		putInt(prefix + ".dim", dim);
+		putOwnedDoubles(prefix + ".LS", ls);
+		putOwnedDoubles(prefix + ".SS", ss);
+		putOwnedDoubles(prefix + ".N", n);
+	}
+
+	/**
+	 * Copies LS and SS of the i-th cluster put with putCFVectors() into the given
+	 * cluster of the same dimensionality (N is left to the caller).
+	 */
+	public void getCFVectors(String prefix, int i, CFCluster target) {
+		int dim = getInt(prefix + ".dim");
+		System.arraycopy(getDoubles(prefix + ".LS"), i * dim, target.LS, 0, dim);
+		System.arraycopy(getDoubles(prefix + ".SS"), i * dim, target.SS, 0, dim);
+	}
+
+	/**
+	 * Center (LS / weight) of the i-th cluster put with putCFVectors()
+	 */
+	public double[] getCenter(String prefix, int i, double weight) {
+		int dim = getInt(prefix + ".dim");
+		double[] ls = getDoubles(prefix + ".LS");
+		double[] center = new double[dim];
+		for (int j = 0; j < dim; j++) {
+			center[j] = ls[i * dim + j] / weight;
+		}
+		return center;
+	}
+
+
+	/* Getting entries (IllegalStateException if missing) */
+
+	public double getDouble(String name) {
+		return ((Double) get(name, Double.class)).doubleValue();
+	}
+
+	public long getLong(String name) {
+		return ((Long) get(name, Long.class)).longValue();
+	}
+
+	public int getInt(String name) {
+		return ((Integer) get(name, Integer.class)).intValue();
+	}
+
+	public boolean getBoolean(String name) {
+		return ((Boolean) get(name, Boolean.class)).booleanValue();
+	}
+
+	public double[] getDoubles(String name) {
+		return (double[]) get(name, double[].class);
+	}
+
+	public long[] getLongs(String name) {
+		return (long[]) get(name, long[].class);
+	}
+
+	public int[] getInts(String name) {
+		return (int[]) get(name, int[].class);
+	}
+
+	private Object get(String name, Class<?> type) {
+		Object value = entries.get(name);
+		if (value == null) {
+			throw new IllegalStateException("Checkpoint of " + clustererClass + " has no entry " + name);
+		}
+		if (!type.isInstance(value)) {
+			throw new IllegalStateException("Checkpoint entry " + name + " is no " + type.getSimpleName());
+		}
+		return value;
+	}
+
+
+	/* File format */
+
+	/**
+	 * Writes the checkpoint to a temporary file and then replaces the given one, so
+	 * the file always holds a complete checkpoint.
+	 */
+	public void write(File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+		try {
+			write(out);
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(file)) {
+			// Some platforms don't replace existing files
+			if (!file.delete() || !temp.renameTo(file)) {
+				throw new IOException("Couldn't replace " + file + " with " + temp);
+			}
+		}
+	}
+
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(clustererClass);
+		out.writeUTF(clustererOptions);
+		out.writeInt(entries.size());
+
+		ByteBuffer chunk = ByteBuffer.allocate(ARRAY_CHUNK * 8);
+		for (Map.Entry<String, Object> entry : entries.entrySet()) {
+			out.writeUTF(entry.getKey());
+			Object value = entry.getValue();
+			if (value instanceof Double) {
+				out.writeByte(TYPE_DOUBLE);
+				out.writeDouble((Double) value);
+			} else if (value instanceof Long) {
+				out.writeByte(TYPE_LONG);
+				out.writeLong((Long) value);
+			} else if (value instanceof Integer) {
+				out.writeByte(TYPE_INT);
+				out.writeInt((Integer) value);
+			} else if (value instanceof Boolean) {
+				out.writeByte(TYPE_BOOLEAN);
+				out.writeBoolean((Boolean) value);
+			} else if (value instanceof double[]) {
+				double[] array = (double[]) value;
+				out.writeByte(TYPE_DOUBLES);
+				out.writeInt(array.length);
+				for (int i = 0; i < array.length; i += ARRAY_CHUNK) {
+					int n = Math.min(ARRAY_CHUNK, array.length - i);
+					chunk.clear();
+					chunk.asDoubleBuffer().put(array, i, n);
+					out.write(chunk.array(), 0, n * 8);
+				}
+			} else if (value instanceof long[]) {
+				long[] array = (long[]) value;
+				out.writeByte(TYPE_LONGS);
+				out.writeInt(array.length);
+				for (int i = 0; i < array.length; i += ARRAY_CHUNK) {
+					int n = Math.min(ARRAY_CHUNK, array.length - i);
+					chunk.clear();
+					chunk.asLongBuffer().put(array, i, n);
+					out.write(chunk.array(), 0, n * 8);
+				}
+			} else {
+				int[] array = (int[]) value;
+				out.writeByte(TYPE_INTS);
+				out.writeInt(array.length);
+				for (int i = 0; i < array.length; i += ARRAY_CHUNK) {
+					int n = Math.min(ARRAY_CHUNK, array.length - i);
+					chunk.clear();
+					chunk.asIntBuffer().put(array, i, n);
+					out.write(chunk.array(), 0, n * 4);
+				}
+			}
+		}
+	}
+
+	public static ClustererCheckpoint read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			return read(in);
+		} catch (IOException ioe) {
+			throw new IOException(file + ": " + ioe.getMessage(), ioe);
+		} finally {
+			in.close();
+		}
+	}
+
+	public static ClustererCheckpoint read(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("not a clusterer checkpoint");
+		}
+		int version = in.readInt();
+		if (version > VERSION) {
+			throw new IOException("checkpoint format version " + version + " is not supported");
+		}
+		ClustererCheckpoint checkpoint = new ClustererCheckpoint(in.readUTF(), in.readUTF());
+
+		int numEntries = in.readInt();
+		byte[] bytes = new byte[ARRAY_CHUNK * 8];
+		ByteBuffer chunk = ByteBuffer.wrap(bytes);
+		for (int e = 0; e < numEntries; e++) {
+			String name = in.readUTF();
+			byte type = in.readByte();
+			Object value;
+			switch (type) {
+			case TYPE_DOUBLE:
+				value = Double.valueOf(in.readDouble());
+				break;
+			case TYPE_LONG:
+				value = Long.valueOf(in.readLong());
+				break;
+			case TYPE_INT:
+				value = Integer.valueOf(in.readInt());
+				break;
+			case TYPE_BOOLEAN:
+				value = Boolean.valueOf(in.readBoolean());
+				break;
+			case TYPE_DOUBLES: {
+				double[] array = new double[in.readInt()];
+				for (int i = 0; i < array.length; i += ARRAY_CHUNK) {
+					int n = Math.min(ARRAY_CHUNK, array.length - i);
+					in.readFully(bytes, 0, n * 8);
+					chunk.clear();
+					chunk.asDoubleBuffer().get(array, i, n);
+				}
+				value = array;
+				break;
+			}
+			case TYPE_LONGS: {
+				long[] array = new long[in.readInt()];
+				for (int i = 0; i < array.length; i += ARRAY_CHUNK) {
+					int n = Math.min(ARRAY_CHUNK, array.length - i);
+					in.readFully(bytes, 0, n * 8);
+					chunk.clear();
+					chunk.asLongBuffer().get(array, i, n);
+				}
+				value = array;
+				break;
+			}
+			case TYPE_INTS: {
+				int[] array = new int[in.readInt()];
+				for (int i = 0; i < array.length; i += ARRAY_CHUNK) {
+					int n = Math.min(ARRAY_CHUNK, array.length - i);
+					in.readFully(bytes, 0, n * 4);
+					chunk.clear();
+					chunk.asIntBuffer().get(array, i, n);
+				}
+				value = array;
+				break;
+			}
+			default:
+				throw new IOException("unknown type " + type + " of entry " + name);
+			}
+			checkpoint.entries.put(name, value);
+		}
+		return checkpoint;
+	}
+}
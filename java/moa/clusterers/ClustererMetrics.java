@@ -0,0 +1,298 @@
+/**
+ * [ClustererMetrics.java] for Subspace MOA
+ *
+ * Metrics of an online (microcluster based) subspace clusterer: the per-time-unit
+ * counters of the online part and their totals, latency histograms of the
+ * nearest microcluster search and of the offline clustering, and the
+ * microcluster population with an estimate of its memory footprint.
+ *
+ * A clusterer is trained by one thread, so the values are plain fields written by
+ * that thread only; no locks or atomics on the per-point path. Only every
+ * SEARCH_SAMPLE-th search is timed. Readers on other threads (JMX) get the
+ * snapshot published at the end of each time unit.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.clusterers;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import moa.core.Measurement;
+
+public class ClustererMetrics implements ClustererMetricsMXBean, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int INCLUDED_IN_PMC = 0;
+	public static final int INCLUDED_IN_OMC = 1;
+	public static final int NEW_MCS = 2;
+	public static final int DELETED_MCS = 3;
+	public static final int PROMOTED_TO_PMC = 4;
+	public static final int DEGRADED_PMCS = 5;
+	private static final String[] COUNTER_NAMES = {"points included in PMC", "points included in OMC",
+		"created MCs", "deleted MCs", "MCs promoted to PMC", "PMCs degraded to OMC"};
+
+	public static final int SEARCH_SAMPLE = 16;		// Power of 2
+	private static final int OBJECT_BYTES = 96;		// Header and scalar fields of a microcluster
+	private static final int ARRAY_HEADER_BYTES = 16;
+
+	/* Online part */
+	private final long[] totalCounts = new long[COUNTER_NAMES.length];
+	private final int[] lastUnitCounts = new int[COUNTER_NAMES.length];
+	private long timeUnits;
+	private long numSearches;
+	private final Histogram searchLatency = new Histogram();
+
+	/* Offline part */
+	private final Histogram offlineTime = new Histogram();
+
+	/* Population */
+	private int numPotential, numOutlier;
+	private long estimatedBytes;
+
+	/* JMX */
+	private volatile Map<String, Double> published = Collections.emptyMap();
+	private transient ObjectName mbeanName;
+
+
+	public void reset() {
+		for (int i = 0; i < totalCounts.length; i++) {
+			totalCounts[i] = 0;
+			lastUnitCounts[i] = 0;
+		}
+		timeUnits = 0;
+		numSearches = 0;
+		searchLatency.reset();
+		offlineTime.reset();
+		numPotential = 0;
+		numOutlier = 0;
+		estimatedBytes = 0;
+		published = Collections.emptyMap();
+	}
+
+
+	/* Recording (training thread only) */
+
+	/**
+	 * Start of a nearest microcluster search
+	 *
+	 * @return the start time if this search is timed, else 0
+	 */
+	public long startSearch() {
+		return ((++numSearches & (SEARCH_SAMPLE - 1)) == 0) ? System.nanoTime() : 0L;
+	}
+
+	public void endSearch(long start) {
+		if (start != 0L) {
+			searchLatency.add(System.nanoTime() - start);
+		}
+	}
+
+	public long startOffline() {
+		return System.nanoTime();
+	}
+
+	public void endOffline(long start) {
+		offlineTime.add(System.nanoTime() - start);
+	}
+
+	/**
+	 * Adds the counters of a completed time unit (indexed by INCLUDED_IN_PMC etc.)
+	 * and the population at its end.
+	 */
+	public void endTimeUnit(int includedInPMC, int includedInOMC, int newMCs, int deletedMCs,
+			int promotedToPMC, int degradedPMCs, int numPotential, int numOutlier, long estimatedBytes) {
+		lastUnitCounts[INCLUDED_IN_PMC] = includedInPMC;
+		lastUnitCounts[INCLUDED_IN_OMC] = includedInOMC;
+		lastUnitCounts[NEW_MCS] = newMCs;
+		lastUnitCounts[DELETED_MCS] = deletedMCs;
+		lastUnitCounts[PROMOTED_TO_PMC] = promotedToPMC;
+		lastUnitCounts[DEGRADED_PMCS] = degradedPMCs;
+		for (int i = 0; i < totalCounts.length; i++) {
+			totalCounts[i] += lastUnitCounts[i];
+		}
+		timeUnits++;
+		setPopulation(numPotential, numOutlier, estimatedBytes);
+
+		if (mbeanName != null) {
+			published = Collections.unmodifiableMap(snapshot());
+		}
+	}
+
+	public void setPopulation(int numPotential, int numOutlier, long estimatedBytes) {
+		this.numPotential = numPotential;
+		this.numOutlier = numOutlier;
+		this.estimatedBytes = estimatedBytes;
+	}
+
+	/**
+	 * Rough heap size of microclusters holding the given number of double[dim] arrays
+	 */
+	public static long estimateBytes(int numMicroClusters, int arraysPerMicroCluster, int dim) {
+		return (long) numMicroClusters * (OBJECT_BYTES + arraysPerMicroCluster * (ARRAY_HEADER_BYTES + 8L * dim));
+	}
+
+
+	/* Reading */
+
+	public long getTotalCount(int counter) {
+		return totalCounts[counter];
+	}
+
+	public int getLastUnitCount(int counter) {
+		return lastUnitCounts[counter];
+	}
+
+	public long getTimeUnits() {
+		return timeUnits;
+	}
+
+	public Histogram getSearchLatency() {
+		return searchLatency;
+	}
+
+	public Histogram getOfflineTime() {
+		return offlineTime;
+	}
+
+	/**
+	 * Current values by name, in the order of toMeasurements()
+	 */
+	public LinkedHashMap<String, Double> snapshot() {
+		LinkedHashMap<String, Double> values = new LinkedHashMap<String, Double>();
+		values.put("time units", (double) timeUnits);
+		for (int i = 0; i < COUNTER_NAMES.length; i++) {
+			values.put(COUNTER_NAMES[i] + " (last unit)", (double) lastUnitCounts[i]);
+			values.put(COUNTER_NAMES[i] + " (total)", (double) totalCounts[i]);
+		}
+		values.put("potential microclusters", (double) numPotential);
+		values.put("outlier microclusters", (double) numOutlier);
+		values.put("estimated microcluster size (bytes)", (double) estimatedBytes);
+
+		values.put("nearest MC searches", (double) numSearches);
+		values.put("nearest MC search mean (us)", searchLatency.getMean() / 1e3);
+		values.put("nearest MC search p50 (us)", searchLatency.getPercentile(0.5) / 1e3);
+		values.put("nearest MC search p99 (us)", searchLatency.getPercentile(0.99) / 1e3);
+		values.put("nearest MC search max (us)", searchLatency.getMax() / 1e3);
+
+		values.put("offline clusterings", (double) offlineTime.getCount());
+		values.put("offline clustering mean (ms)", offlineTime.getMean() / 1e6);
+		values.put("offline clustering p99 (ms)", offlineTime.getPercentile(0.99) / 1e6);
+		values.put("offline clustering max (ms)", offlineTime.getMax() / 1e6);
+		return values;
+	}
+
+	public Measurement[] toMeasurements() {
+		List<Measurement> measurements = new ArrayList<Measurement>();
+		for (Map.Entry<String, Double> value : snapshot().entrySet()) {
+			measurements.add(new Measurement(value.getKey(), value.getValue()));
+		}
+		return measurements.toArray(new Measurement[measurements.size()]);
+	}
+
+	public Map<String, Double> getSnapshot() {
+		return published;
+	}
+
+
+	/* JMX */
+
+	/**
+	 * Registers the metrics with the platform MBean server as
+	 * moa.clusterers:type=[clusterer class],name=[name].
+	 */
+	public void registerMBean(Class<?> clusterer, String name) {
+		try {
+			ObjectName objectName = new ObjectName("moa.clusterers:type=" + clusterer.getSimpleName()
+					+ ",name=" + ObjectName.quote(name));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(this, objectName);
+			published = Collections.unmodifiableMap(snapshot());
+			mbeanName = objectName;
+		} catch (Exception e) {
+			throw new RuntimeException("ClustererMetrics: couldn't register " + name, e);
+		}
+	}
+
+	public void unregisterMBean() {
+		if (mbeanName == null) return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+		} catch (Exception e) {
+			// Already gone
+		}
+		mbeanName = null;
+	}
+
+
+	/**
+	 * Histogram of durations (ns) with power-of-2 buckets
+	 */
+	public static class Histogram implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long[] buckets = new long[64];		// Bucket b: [2^b, 2^(b+1))
+		private long count;
+		private long sum;
+		private long max;
+
+		public void add(long nanos) {
+			if (nanos < 0) nanos = 0;
+			buckets[63 - Long.numberOfLeadingZeros(nanos | 1)]++;
+			count++;
+			sum += nanos;
+			if (nanos > max) max = nanos;
+		}
+
+		public void reset() {
+			for (int b = 0; b < buckets.length; b++) {
+				buckets[b] = 0;
+			}
+			count = 0;
+			sum = 0;
+			max = 0;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getMean() {
+			return (count == 0) ? 0.0 : (double) sum / count;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * Upper bound of the bucket holding the q-quantile (at most the maximum)
+		 */
+		public double getPercentile(double q) {
+			if (count == 0) return 0.0;
+			long rank = (long) Math.ceil(q * count);
+			long seen = 0;
+			for (int b = 0; b < buckets.length; b++) {
+				seen += buckets[b];
+				if (seen >= rank) {
+					return (b >= 62) ? max : Math.min((1L << (b + 1)) - 1, max);
+				}
+			}
+			return max;
+		}
+	}
+}
@@ -0,0 +1,21 @@
+/**
+ * [ClustererMetricsMXBean.java] for Subspace MOA
+ *
+ * JMX view of the metrics of an online subspace clusterer (see ClustererMetrics).
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.clusterers;
+
+import java.util.Map;
+
+public interface ClustererMetricsMXBean {
+
+	/**
+	 * Metric values as of the end of the last completed time unit
+	 */
+	public Map<String, Double> getSnapshot();
+
+	public long getTimeUnits();
+}
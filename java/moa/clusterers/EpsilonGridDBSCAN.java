@@ -0,0 +1,342 @@
+/**
+ * [EpsilonGridDBSCAN.java] for Subspace MOA
+ *
+ * DBSCAN scan of an initialization buffer, shared by the initial clusterings of
+ * DenStream and PreDeConStream. The points are copied once into one primitive
+ * array and hashed into a grid of epsilon-sized cells over the (at most three)
+ * dimensions with the largest extent, so a range query only looks at the
+ * neighboring cells instead of the whole buffer. Covered points are taken out of
+ * their cells, so later queries don't see them anymore.
+ *
+ * The clusters are expanded depth-first with an explicit stack instead of
+ * recursion, visiting the points in the same order as the recursive versions did
+ * (neighborhoods in buffer order), so the found clusters stay the same.
+ *
+ * Subclasses decide which point starts a cluster and which neighborhoods are
+ * expanded further.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.clusterers;
+
+import java.util.Arrays;
+import java.util.List;
+
+import weka.core.Instance;
+
+public abstract class EpsilonGridDBSCAN {
+
+	private static final int MAX_GRID_DIMENSIONS = 3;
+	private static final double CELL_MARGIN = 1e-6;		// Rounding in the cell coordinates
+	private static final int[] NO_POINTS = new int[0];
+
+	protected final int numPoints;
+	private final int dim;
+	private final double[] points;			// numPoints x dim
+	private final double epsilon;
+	private final double abandonDistance;	// Squared epsilon, with a margin for rounding
+	private final boolean[] covered;
+
+	/* Grid */
+	private int[] gridDimensions;
+	private double[] gridMin;
+	private double cellSize;
+	private long[] cellKeys;				// Sorted
+	private int[] cellStart;				// Into cellPoints
+	private int[] cellLive;					// Uncovered points at the front of the cell
+	private int[] cellPoints;				// Point indices, grouped by cell
+	private double[] cellData;				// Points in the order of cellPoints, scanned contiguously
+	private int[] cellOf;					// By point
+	private int[] slotOf;					// Position in cellPoints by point
+
+	/* Buffers */
+	private final long[] coordinates;
+	private final int[] visitedCells;
+	private int[] found;
+	private final double[] row;
+
+
+	public EpsilonGridDBSCAN(List<? extends Instance> buffer, double epsilon) {
+		this.numPoints = buffer.size();
+		this.dim = (numPoints > 0) ? buffer.get(0).toDoubleArray().length : 0;
+		this.points = new double[numPoints * dim];
+		for (int i = 0; i < numPoints; i++) {
+			System.arraycopy(buffer.get(i).toDoubleArray(), 0, points, i * dim, dim);
+		}
+		this.epsilon = epsilon;
+		this.abandonDistance = epsilon * epsilon * (1 + CELL_MARGIN);
+		this.covered = new boolean[numPoints];
+
+		buildGrid();
+		this.coordinates = new long[gridDimensions.length];
+		int numNeighborCells = 1;
+		for (int k = 0; k < gridDimensions.length; k++) {
+			numNeighborCells *= 3;
+		}
+		this.visitedCells = new int[numNeighborCells];
+		this.found = new int[16];
+		this.row = new double[dim];
+	}
+
+	/**
+	 * Decides whether the given (uncovered) point starts a cluster.
+	 *
+	 * @return the neighborhood to expand the new cluster with, null if the point is no seed
+	 */
+	protected abstract int[] startCluster(int point);
+
+	/**
+	 * Adds the given point, just covered, to the current cluster.
+	 *
+	 * @param neighbourhood	Neighborhood the point was found in
+	 * @return the neighborhood to expand further, null to stop at this point
+	 */
+	protected abstract int[] expand(int point, int[] neighbourhood);
+
+	/**
+	 * Called after the current cluster is fully expanded.
+	 */
+	protected abstract void finishCluster();
+
+	/**
+	 * Scans the buffer in order and expands every cluster started on the way.
+	 */
+	public void run() {
+		int[][] stack = new int[16][];
+		int[] positions = new int[16];
+		for (int p = 0; p < numPoints; p++) {
+			if (covered[p]) continue;
+			int[] neighbourhood = startCluster(p);
+			if (neighbourhood == null) continue;
+
+			cover(p);
+			stack[0] = neighbourhood;
+			positions[0] = 0;
+			int depth = 1;
+			while (depth > 0) {
+				int top = depth - 1;
+				int[] current = stack[top];
+				if (positions[top] == current.length) {
+					stack[top] = null;
+					depth--;
+					continue;
+				}
+				int i = current[positions[top]++];
+				if (covered[i]) continue;
+
+				cover(i);
+				int[] next = expand(i, current);
+				if (next != null) {
+					if (depth == stack.length) {
+						stack = Arrays.copyOf(stack, 2 * depth);
+						positions = Arrays.copyOf(positions, 2 * depth);
+					}
+					stack[depth] = next;
+					positions[depth] = 0;
+					depth++;
+				}
+			}
+			finishCluster();
+		}
+	}
+
+	/**
+	 * Uncovered points closer than epsilon to the given point, in buffer order.
+	 *
+	 * @param includeSelf	Whether the point itself belongs to its neighborhood (if uncovered)
+	 */
+	protected int[] getNeighbourhood(int point, boolean includeSelf) {
+		if (!(epsilon > 0) || numPoints == 0) return NO_POINTS;
+
+		int g = gridDimensions.length;
+		int offset = point * dim;
+		for (int k = 0; k < g; k++) {
+			coordinates[k] = cellCoordinate(points[offset + gridDimensions[k]], k);
+		}
+
+		int numFound = 0;
+		int numVisited = 0;
+		for (int o = 0; o < visitedCells.length; o++) {
+			long key = 0;
+			int digits = o;
+			for (int k = 0; k < g; k++) {
+				key = mix(key, coordinates[k] + (digits % 3) - 1);
+				digits /= 3;
+			}
+			int cell = Arrays.binarySearch(cellKeys, key);
+			if (cell < 0 || contains(visitedCells, numVisited, cell)) continue;
+			visitedCells[numVisited++] = cell;
+
+			int end = cellStart[cell] + cellLive[cell];
+			for (int s = cellStart[cell]; s < end; s++) {
+				int j = cellPoints[s];
+				if (j == point && !includeSelf) continue;
+				if (isNeighbour(offset, s * dim)) {
+					if (numFound == found.length) {
+						found = Arrays.copyOf(found, 2 * numFound);
+					}
+					found[numFound++] = j;
+				}
+			}
+		}
+		Arrays.sort(found, 0, numFound);
+		return Arrays.copyOf(found, numFound);
+	}
+
+	public boolean isCovered(int point) {
+		return covered[point];
+	}
+
+	/**
+	 * Leaves the point out of the scan (covered before it started).
+	 */
+	public void setCovered(int point) {
+		if (!covered[point]) {
+			cover(point);
+		}
+	}
+
+
+	/*
+	 * Marks the point as covered and moves it out of the uncovered part of its cell
+	 */
+	private void cover(int point) {
+		covered[point] = true;
+		int cell = cellOf[point];
+		int last = cellStart[cell] + cellLive[cell] - 1;
+		int slot = slotOf[point];
+		int other = cellPoints[last];
+		cellPoints[slot] = other;
+		slotOf[other] = slot;
+		cellPoints[last] = point;
+		slotOf[point] = last;
+		System.arraycopy(cellData, slot * dim, row, 0, dim);
+		System.arraycopy(cellData, last * dim, cellData, slot * dim, dim);
+		System.arraycopy(row, 0, cellData, last * dim, dim);
+		cellLive[cell]--;
+	}
+
+	/*
+	 * Grid dimensions are the ones with the largest extent, as long as they are
+	 * wider than the three cells of a query (narrower ones don't prune anything).
+	 * Without any, all points share one cell.
+	 */
+	private void buildGrid() {
+		cellSize = epsilon * (1 + CELL_MARGIN);
+
+		double[] min = new double[dim];
+		double[] extent = new double[dim];
+		Arrays.fill(min, Double.POSITIVE_INFINITY);
+		Arrays.fill(extent, Double.NEGATIVE_INFINITY);		// Max first
+		for (int i = 0; i < numPoints; i++) {
+			for (int j = 0; j < dim; j++) {
+				double x = points[i * dim + j];
+				if (Double.isInfinite(x) || Double.isNaN(x)) continue;
+				if (x < min[j]) min[j] = x;
+				if (x > extent[j]) extent[j] = x;
+			}
+		}
+		for (int j = 0; j < dim; j++) {
+			extent[j] -= min[j];
+		}
+
+		int[] chosen = new int[Math.min(MAX_GRID_DIMENSIONS, dim)];
+		int numChosen = 0;
+		boolean[] taken = new boolean[dim];
+		while (numChosen < chosen.length && epsilon > 0) {
+			int widest = -1;
+			for (int j = 0; j < dim; j++) {
+				if (!taken[j] && extent[j] > 3 * cellSize && (widest < 0 || extent[j] > extent[widest])) {
+					widest = j;
+				}
+			}
+			if (widest < 0) break;
+			taken[widest] = true;
+			chosen[numChosen++] = widest;
+		}
+		gridDimensions = Arrays.copyOf(chosen, numChosen);
+		gridMin = new double[numChosen];
+		for (int k = 0; k < numChosen; k++) {
+			gridMin[k] = min[gridDimensions[k]];
+		}
+
+		long[] pointKeys = new long[numPoints];
+		for (int i = 0; i < numPoints; i++) {
+			long key = 0;
+			for (int k = 0; k < numChosen; k++) {
+				key = mix(key, cellCoordinate(points[i * dim + gridDimensions[k]], k));
+			}
+			pointKeys[i] = key;
+		}
+		long[] sorted = pointKeys.clone();
+		Arrays.sort(sorted);
+		int numCells = 0;
+		for (int i = 0; i < numPoints; i++) {
+			if (i == 0 || sorted[i] != sorted[i - 1]) {
+				sorted[numCells++] = sorted[i];
+			}
+		}
+		cellKeys = Arrays.copyOf(sorted, numCells);
+
+		cellStart = new int[numCells + 1];
+		cellLive = new int[numCells];
+		cellOf = new int[numPoints];
+		for (int i = 0; i < numPoints; i++) {
+			cellOf[i] = Arrays.binarySearch(cellKeys, pointKeys[i]);
+			cellStart[cellOf[i] + 1]++;
+		}
+		for (int c = 0; c < numCells; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		cellPoints = new int[numPoints];
+		slotOf = new int[numPoints];
+		for (int i = 0; i < numPoints; i++) {
+			int c = cellOf[i];
+			int slot = cellStart[c] + cellLive[c]++;
+			cellPoints[slot] = i;
+			slotOf[i] = slot;
+		}
+		cellData = new double[numPoints * dim];
+		for (int slot = 0; slot < numPoints; slot++) {
+			System.arraycopy(points, cellPoints[slot] * dim, cellData, slot * dim, dim);
+		}
+	}
+
+	/*
+	 * Non-finite values end up in some cell; they are never within epsilon of
+	 * anything anyway.
+	 */
+	private long cellCoordinate(double x, int k) {
+		return (long) Math.floor((x - gridMin[k]) / cellSize);
+	}
+
+	/*
+	 * Cell key of the coordinates. Two cells may share a key; that only adds
+	 * candidates, which the distance check drops.
+	 */
+	private static long mix(long key, long coordinate) {
+		return (key ^ coordinate) * 0x9E3779B97F4A7C15L + 0x632BE59BD9B4E019L;
+	}
+
+	private static boolean contains(int[] values, int length, int value) {
+		for (int i = 0; i < length; i++) {
+			if (values[i] == value) return true;
+		}
+		return false;
+	}
+
+	/*
+	 * Euclidean distance below epsilon, summed in the same order as the distance()
+	 * of the clusterers. Stops early once the partial sum is clearly too large.
+	 */
+	private boolean isNeighbour(int offset, int cellOffset) {
+		double distance = 0.0;
+		for (int j = 0; j < dim; j++) {
+			double d = points[offset + j] - cellData[cellOffset + j];
+			distance += d * d;
+			if (distance > abandonDistance) return false;
+		}
+		return Math.sqrt(distance) < epsilon;
+	}
+}
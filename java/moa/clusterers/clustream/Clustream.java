@@ -12,7 +12,6 @@
 
 package moa.clusterers.clustream;
 
-import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
@@ -47,6 +46,9 @@ public class Clustream extends AbstractClusterer {
 	private int timeWindow;
 	private long timestamp = -1;
 	private ClustreamKernel[] kernels;
+	private KernelCenters kernelCenters;		// Center matrix and closest pair cache of the kernels
+	private RelevanceHeap relevanceHeap;		// Cached relevance stamps of the kernels
+	private double[] point;
 	private boolean initialized;
 	private List<ClustreamKernel> buffer; // Buffer for initialization with kNN
 	private int bufferSize;
@@ -65,6 +67,8 @@ public class Clustream extends AbstractClusterer {
 		this.kernels = new ClustreamKernel[maxNumKernelsOption.getValue()];
 		this.timeWindow = timeWindowOption.getValue();
 		this.initialized = false;
+		this.kernelCenters = null;
+		this.relevanceHeap = null;
 		this.buffer = new LinkedList<ClustreamKernel>();
 		this.bufferSize = maxNumKernelsOption.getValue();
 		t = kernelRadiFactorOption.getValue();
@@ -103,6 +107,9 @@ public class Clustream extends AbstractClusterer {
 			for ( int i = 0; i < kmeans_clustering.size(); i++ ) {
 				kernels[i] = new ClustreamKernel( new DenseInstance(1.0,centers[i].getCenter()), dim, timestamp, t, m );
 			}
+			this.kernelCenters = new KernelCenters( kernels, dim );
+			this.relevanceHeap = new RelevanceHeap( kernels );
+			this.point = new double[dim];
 
 			buffer.clear();
 			initialized = true;
@@ -111,32 +118,19 @@ public class Clustream extends AbstractClusterer {
 
 
 		// 1. Determine closest kernel
-		ClustreamKernel closestKernel = null;
-		double minDistance = Double.MAX_VALUE;
-		for ( int i = 0; i < kernels.length; i++ ) {
-			//System.out.println(i+" "+kernels[i].getWeight()+" "+kernels[i].getDeviation());
-			double distance = distance(instance.toDoubleArray(), kernels[i].getCenter() );
-			if ( distance < minDistance ) {
-				closestKernel = kernels[i];
-				minDistance = distance;
-			}
+		for ( int j = 0; j < dim; j++ ) {
+			point[j] = instance.value(j);
 		}
+		int closest = kernelCenters.nearest(point);
+		ClustreamKernel closestKernel = kernels[closest];
+		double minDistance = kernelCenters.getLastDistance();
 
 		// 2. Check whether instance fits into closestKernel
 		double radius = 0.0;
 		if ( closestKernel.getWeight() == 1 ) {
 			// Special case: estimate radius by determining the distance to the
 			// next closest cluster
-			radius = Double.MAX_VALUE;
-			double[] center = closestKernel.getCenter();
-			for ( int i = 0; i < kernels.length; i++ ) {
-				if ( kernels[i] == closestKernel ) {
-					continue;
-				}
-
-				double distance = distance(kernels[i].getCenter(), center );
-				radius = Math.min( distance, radius );
-			}
+			radius = kernelCenters.distanceToNearestOther(closest);
 		} else {
 			radius = closestKernel.getRadius();
 		}
@@ -144,6 +138,7 @@ public class Clustream extends AbstractClusterer {
 		if ( minDistance < radius ) {
 			// Date fits, put into kernel and be happy
 			closestKernel.insert( instance, timestamp );
+			kernelChanged( closest );
 			return;
 		}
 
@@ -151,33 +146,29 @@ public class Clustream extends AbstractClusterer {
 		// some space to insert a new kernel
 		long threshold = timestamp - timeWindow; // Kernels before this can be forgotten
 
-		// 3.1 Try to forget old kernels
-		for ( int i = 0; i < kernels.length; i++ ) {
-			if ( kernels[i].getRelevanceStamp() < threshold ) {
-				kernels[i] = new ClustreamKernel( instance, dim, timestamp, t, m );
-				return;
-			}
+		// 3.1 Try to forget the least relevant kernel
+		int oldest = relevanceHeap.leastRelevant();
+		if ( relevanceHeap.getStamp( oldest ) < threshold ) {
+			kernels[oldest] = new ClustreamKernel( instance, dim, timestamp, t, m );
+			kernelChanged( oldest );
+			return;
 		}
 
 		// 3.2 Merge closest two kernels
-		int closestA = 0;
-		int closestB = 0;
-		minDistance = Double.MAX_VALUE;
-		for ( int i = 0; i < kernels.length; i++ ) {
-			double[] centerA = kernels[i].getCenter();
-			for ( int j = i + 1; j < kernels.length; j++ ) {
-				double dist = distance( centerA, kernels[j].getCenter() );
-				if ( dist < minDistance ) {
-					minDistance = dist;
-					closestA = i;
-					closestB = j;
-				}
-			}
-		}
-		assert (closestA != closestB);
+		int pairA = kernelCenters.closestPair();
+		int pairB = kernelCenters.getNearest( pairA );
+		int closestA = Math.min( pairA, pairB );
+		int closestB = Math.max( pairA, pairB );
 
 		kernels[closestA].add( kernels[closestB] );
 		kernels[closestB] = new ClustreamKernel( instance, dim, timestamp, t,  m );
+		kernelChanged( closestA );
+		kernelChanged( closestB );
+	}
+
+	private void kernelChanged( int i ) {
+		kernelCenters.update( i, kernels[i] );
+		relevanceHeap.update( i );
 	}
 
 	@Override
@@ -212,15 +203,6 @@ public class Clustream extends AbstractClusterer {
 		return "Clustream " + timeWindow;
 	}
 
-	private static double distance(double[] pointA, double [] pointB){
-		double distance = 0.0;
-		for (int i = 0; i < pointA.length; i++) {
-			double d = pointA[i] - pointB[i];
-			distance += d * d;
-		}
-		return Math.sqrt(distance);
-	}
-
 	//wrapper... we need to rewrite kmeans to points, not clusters, doesnt make sense anymore
 	//    public static Clustering kMeans( int k, ArrayList<Instance> points, int dim ) {
 	//        ArrayList<ClustreamKernel> cl = new ArrayList<ClustreamKernel>();
@@ -251,74 +233,16 @@ public class Clustream extends AbstractClusterer {
 		assert (k > 0);
 
 		int dimensions = centers[0].getCenter().length;
-
-		ArrayList<ArrayList<Cluster>> clustering = new ArrayList<ArrayList<Cluster>>();
+		WeightedKMeans kMeans = new WeightedKMeans( k, dimensions );
 		for ( int i = 0; i < k; i++ ) {
-			clustering.add( new ArrayList<Cluster>() );
-		}
-
-		int repetitions = 100;
-		while ( repetitions-- >= 0 ) {
-			// Assign points to clusters
-			for ( Cluster point : data ) {
-				double minDistance = distance( point.getCenter(), centers[0].getCenter() );
-				int closestCluster = 0;
-				for ( int i = 1; i < k; i++ ) {
-					double distance = distance( point.getCenter(), centers[i].getCenter() );
-					if ( distance < minDistance ) {
-						closestCluster = i;
-						minDistance = distance;
-					}
-				}
-
-				clustering.get( closestCluster ).add( point );
-			}
-
-			// Calculate new centers and clear clustering lists
-			SphereCluster[] newCenters = new SphereCluster[centers.length];
-			for ( int i = 0; i < k; i++ ) {
-				newCenters[i] = calculateCenter( clustering.get( i ), dimensions );
-				clustering.get( i ).clear();
-			}
-			centers = newCenters;
+			kMeans.setCenter( i, centers[i].getCenter() );
 		}
+		double[] points = WeightedKMeans.toMatrix( data, dimensions );
 
-		return new Clustering( centers );
-	}
+		// At most 101 rounds as before, but done once the centers stay put
+		kMeans.run( points, null, 101 );
 
-	private static SphereCluster calculateCenter( ArrayList<Cluster> cluster, int dimensions ) {
-		double[] res = new double[dimensions];
-		for ( int i = 0; i < res.length; i++ ) {
-			res[i] = 0.0;
-		}
-
-		if ( cluster.size() == 0 ) {
-			return new SphereCluster( res, 0.0 );
-		}
-
-		for ( Cluster point : cluster ) {
-			double [] center = point.getCenter();
-			for (int i = 0; i < res.length; i++) {
-				res[i] += center[i];
-			}
-		}
-
-		// Normalize
-		for ( int i = 0; i < res.length; i++ ) {
-			res[i] /= cluster.size();
-		}
-
-		// Calculate radius
-		double radius = 0.0;
-		for ( Cluster point : cluster ) {
-			double dist = distance( res, point.getCenter() );
-			if ( dist > radius ) {
-				radius = dist;
-			}
-		}
-		SphereCluster sc = new SphereCluster( res, radius );
-		sc.setWeight(cluster.size());
-		return sc;
+		return kMeans.getClustering( points, null );
 	}
 
 	@Override
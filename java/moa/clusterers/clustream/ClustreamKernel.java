@@ -53,6 +53,16 @@ public class ClustreamKernel extends CFCluster {
         this.SST = cluster.SST;
     }
 
+    /**
+     * Sets the weight and the time sums, e.g. when restoring a checkpoint (LS and SS
+     * are public).
+     */
+    void setTimeStatistics( double N, double LST, double SST ) {
+        this.N = N;
+        this.LST = LST;
+        this.SST = SST;
+    }
+
     public void insert( Instance instance, long timestamp ) {
 		N++;
 		LST += timestamp;
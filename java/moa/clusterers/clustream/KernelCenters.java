@@ -0,0 +1,198 @@
+/**
+ * [KernelCenters.java] for Subspace MOA
+ *
+ * Centers of the CluStream kernels in one row-major matrix, updated whenever a
+ * kernel changes (insert, replacement, merge), so the nearest kernel search reads
+ * contiguous memory and allocates nothing.
+ *
+ * For the merge step, every kernel caches its nearest other kernel. A change only
+ * marks the kernel; the cache is brought up to date when the closest pair is
+ * asked for, at O(q) per kernel changed since, instead of the O(q^2) search over
+ * all pairs. Distances are kept squared.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.clusterers.clustream;
+
+import java.io.Serializable;
+
+class KernelCenters implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int q;
+	private final int dim;
+	private final double[] centers;				// q x dim
+
+	/* Nearest neighbor cache */
+	private final int[] nearest;				// Nearest other kernel (itself if there is none)
+	private final double[] nearestDistance;
+	private final boolean[] changed;
+	private final int[] changedList;
+	private int numChanged = 0;
+	private final boolean[] stale;
+
+	private double lastDistance;
+
+
+	KernelCenters(ClustreamKernel[] kernels, int dim) {
+		this.q = kernels.length;
+		this.dim = dim;
+		this.centers = new double[q * dim];
+		this.nearest = new int[q];
+		this.nearestDistance = new double[q];
+		this.changed = new boolean[q];
+		this.changedList = new int[q];
+		this.stale = new boolean[q];
+		for (int i = 0; i < q; i++) {
+			update(i, kernels[i]);
+		}
+	}
+
+	/**
+	 * Takes the center of the (changed or new) i-th kernel.
+	 */
+	void update(int i, ClustreamKernel kernel) {
+		double n = kernel.getWeight();
+		int offset = i * dim;
+		for (int j = 0; j < dim; j++) {
+			centers[offset + j] = kernel.LS[j] / n;
+		}
+		if (!changed[i]) {
+			changed[i] = true;
+			changedList[numChanged++] = i;
+		}
+	}
+
+	/**
+	 * Index of the kernel with the closest center (see getLastDistance())
+	 */
+	int nearest(double[] point) {
+		int closest = -1;
+		double minDistance = Double.MAX_VALUE;
+		for (int i = 0; i < q; i++) {
+			double distance = squaredDistance(point, i);
+			if (distance < minDistance) {
+				closest = i;
+				minDistance = distance;
+			}
+		}
+		lastDistance = Math.sqrt(minDistance);
+		return closest;
+	}
+
+	/**
+	 * Distance of the last nearest() search
+	 */
+	double getLastDistance() {
+		return lastDistance;
+	}
+
+	/**
+	 * Distance from the center of the i-th kernel to the closest other center
+	 * (Double.MAX_VALUE if there is none). Scans the matrix; the cache may be out
+	 * of date for this kernel.
+	 */
+	double distanceToNearestOther(int i) {
+		double minDistance = Double.MAX_VALUE;
+		int offset = i * dim;
+		for (int k = 0; k < q; k++) {
+			if (k != i) {
+				minDistance = Math.min(minDistance, squaredDistance(offset, k));
+			}
+		}
+		return (minDistance == Double.MAX_VALUE) ? minDistance : Math.sqrt(minDistance);
+	}
+
+	/**
+	 * One kernel of the closest pair; the other one is getNearest() of it.
+	 */
+	int closestPair() {
+		refresh();
+		int closest = 0;
+		for (int i = 1; i < q; i++) {
+			if (nearestDistance[i] < nearestDistance[closest]) {
+				closest = i;
+			}
+		}
+		return closest;
+	}
+
+	int getNearest(int i) {
+		return nearest[i];
+	}
+
+
+	/*
+	 * Brings the cache up to date with the kernels changed since the last refresh.
+	 * Unchanged kernels only need a full search if their nearest kernel moved away.
+	 */
+	private void refresh() {
+		for (int c = 0; c < numChanged; c++) {
+			int moved = changedList[c];
+			int offset = moved * dim;
+			for (int i = 0; i < q; i++) {
+				if (changed[i] || stale[i]) continue;
+				double distance = squaredDistance(offset, i);
+				if (nearest[i] == moved) {
+					if (distance <= nearestDistance[i]) {
+						nearestDistance[i] = distance;
+					} else {
+						stale[i] = true;
+					}
+				} else if (distance < nearestDistance[i]) {
+					nearest[i] = moved;
+					nearestDistance[i] = distance;
+				}
+			}
+		}
+		for (int c = 0; c < numChanged; c++) {
+			searchNearest(changedList[c]);
+			changed[changedList[c]] = false;
+		}
+		numChanged = 0;
+		for (int i = 0; i < q; i++) {
+			if (stale[i]) {
+				searchNearest(i);
+				stale[i] = false;
+			}
+		}
+	}
+
+	private void searchNearest(int i) {
+		int offset = i * dim;
+		int closest = i;
+		double minDistance = Double.MAX_VALUE;
+		for (int k = 0; k < q; k++) {
+			if (k == i) continue;
+			double distance = squaredDistance(offset, k);
+			if (distance < minDistance) {
+				closest = k;
+				minDistance = distance;
+			}
+		}
+		nearest[i] = closest;
+		nearestDistance[i] = minDistance;
+	}
+
+	private double squaredDistance(double[] point, int k) {
+		int offset = k * dim;
+		double distance = 0.0;
+		for (int j = 0; j < dim; j++) {
+			double d = point[j] - centers[offset + j];
+			distance += d * d;
+		}
+		return distance;
+	}
+
+	private double squaredDistance(int offset, int k) {
+		int offsetK = k * dim;
+		double distance = 0.0;
+		for (int j = 0; j < dim; j++) {
+			double d = centers[offset + j] - centers[offsetK + j];
+			distance += d * d;
+		}
+		return distance;
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ * [RelevanceHeap.java] for Subspace MOA
+ *
+ * Relevance stamps of the CluStream kernels, cached per kernel and kept in an
+ * indexed min-heap, so the least relevant kernel is found in O(log q) instead of
+ * computing the stamps (with their inverse error function) of all kernels. The
+ * stamp of a kernel only depends on its own statistics; a change only marks the
+ * kernel, and its stamp is computed again when the heap is asked next.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.clusterers.clustream;
+
+import java.io.Serializable;
+
+class RelevanceHeap implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final ClustreamKernel[] kernels;
+	private final double[] stamps;			// By kernel
+	private final int[] heap;				// Kernel indices, least relevant first
+	private final int[] position;			// Heap position by kernel
+
+	private final boolean[] changed;
+	private final int[] changedList;
+	private int numChanged = 0;
+
+
+	/**
+	 * @param kernels	Array of the clusterer (the heap follows replaced elements via update())
+	 */
+	RelevanceHeap(ClustreamKernel[] kernels) {
+		int q = kernels.length;
+		this.kernels = kernels;
+		this.stamps = new double[q];
+		this.heap = new int[q];
+		this.position = new int[q];
+		this.changed = new boolean[q];
+		this.changedList = new int[q];
+		for (int i = 0; i < q; i++) {
+			stamps[i] = stampOf(kernels[i]);
+			heap[i] = i;
+			position[i] = i;
+		}
+		for (int p = q / 2 - 1; p >= 0; p--) {
+			siftDown(p);
+		}
+	}
+
+	/**
+	 * Marks the i-th kernel as changed (inserted into, merged or replaced).
+	 */
+	void update(int i) {
+		if (!changed[i]) {
+			changed[i] = true;
+			changedList[numChanged++] = i;
+		}
+	}
+
+	/**
+	 * Index of the kernel with the smallest relevance stamp
+	 */
+	int leastRelevant() {
+		for (int c = 0; c < numChanged; c++) {
+			int i = changedList[c];
+			changed[i] = false;
+			double stamp = stampOf(kernels[i]);
+			double old = stamps[i];
+			stamps[i] = stamp;
+			if (stamp < old) {
+				siftUp(position[i]);
+			} else if (stamp > old) {
+				siftDown(position[i]);
+			}
+		}
+		numChanged = 0;
+		return heap[0];
+	}
+
+	double getStamp(int i) {
+		return stamps[i];
+	}
+
+
+	/*
+	 * NaN (rounding in the time deviation) is never below a threshold, so such a
+	 * kernel doesn't expire
+	 */
+	private static double stampOf(ClustreamKernel kernel) {
+		double stamp = kernel.getRelevanceStamp();
+		return Double.isNaN(stamp) ? Double.POSITIVE_INFINITY : stamp;
+	}
+
+	private void siftUp(int p) {
+		int i = heap[p];
+		while (p > 0) {
+			int parent = (p - 1) / 2;
+			if (stamps[heap[parent]] <= stamps[i]) break;
+			move(heap[parent], p);
+			p = parent;
+		}
+		move(i, p);
+	}
+
+	private void siftDown(int p) {
+		int i = heap[p];
+		int n = heap.length;
+		while (true) {
+			int child = 2 * p + 1;
+			if (child >= n) break;
+			if (child + 1 < n && stamps[heap[child + 1]] < stamps[heap[child]]) {
+				child++;
+			}
+			if (stamps[heap[child]] >= stamps[i]) break;
+			move(heap[child], p);
+			p = child;
+		}
+		move(i, p);
+	}
+
+	private void move(int i, int p) {
+		heap[p] = i;
+		position[i] = p;
+	}
+}
@@ -0,0 +1,307 @@
+/**
+ * [WeightedKMeans.java] for Subspace MOA
+ *
+ * Weighted k-means over the centers of (micro)clusters, kept in one row-major
+ * matrix. Runs until the centers don't move anymore (or up to a maximum number
+ * of iterations), and skips most distance computations with the bounds of
+ * Hamerly: every point keeps an upper bound of the distance to its own center
+ * and a lower bound of the distance to all the others, both moved by how far the
+ * centers moved. The centers stay after a run, so the next run can start from
+ * them.
+ *
+ * The result is the same as without the bounds: ties go to the first center, and
+ * a center is the weighted mean of its points, summed in data order (with unit
+ * weights, the plain mean the k-means of Clustream and WithKmeans computed).
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.clusterers.clustream;
+
+import java.util.Arrays;
+import java.util.List;
+
+import moa.cluster.Cluster;
+import moa.cluster.Clustering;
+import moa.cluster.SphereCluster;
+
+class WeightedKMeans {
+
+	private static final double BOUND_MARGIN = 1e-12;	// Relative rounding allowance of the bounds
+
+	private final int k;
+	private final int dim;
+	private double[] centers;				// k x dim
+	private double[] means;					// k x dim, next centers
+	private final double[] weightSums;
+	private final double[] drift;
+	private final double[] halfSeparation;	// Half the distance to the closest other center
+
+	/* By point */
+	private int[] assignment = new int[0];
+	private double[] upper = new double[0];
+	private double[] lower = new double[0];
+
+	private int iterations;
+
+
+	WeightedKMeans(int k, int dim) {
+		this.k = k;
+		this.dim = dim;
+		this.centers = new double[k * dim];
+		this.means = new double[k * dim];
+		this.weightSums = new double[k];
+		this.drift = new double[k];
+		this.halfSeparation = new double[k];
+	}
+
+	void setCenter(int i, double[] center) {
+		System.arraycopy(center, 0, centers, i * dim, dim);
+	}
+
+	double[] getCenter(int i) {
+		return Arrays.copyOfRange(centers, i * dim, (i + 1) * dim);
+	}
+
+	int getK() {
+		return k;
+	}
+
+	int getDimensions() {
+		return dim;
+	}
+
+	/**
+	 * Cluster of each point in the last run
+	 */
+	int[] getAssignment() {
+		return assignment;
+	}
+
+	/**
+	 * Assign-and-update rounds of the last run
+	 */
+	int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Runs k-means from the current centers.
+	 *
+	 * @param points	n x dim, row-major
+	 * @param weights	By point, null for unit weights
+	 * @return number of iterations
+	 */
+	int run(double[] points, double[] weights, int maxIterations) {
+		int n = points.length / dim;
+		if (assignment.length != n) {
+			assignment = new int[n];
+			upper = new double[n];
+			lower = new double[n];
+		}
+
+		double scale = 1.0;
+		for (double x : points) scale = Math.max(scale, Math.abs(x));
+		for (double x : centers) scale = Math.max(scale, Math.abs(x));
+		double margin = BOUND_MARGIN * scale * (dim + 2);
+
+		for (int p = 0; p < n; p++) {
+			assign(points, p);
+		}
+		iterations = 0;
+		while (true) {
+			iterations++;
+			computeMeans(points, weights, n);
+			if (Arrays.equals(centers, means)) {
+				break;			// Converged
+			}
+
+			double maxDrift = 0.0, secondDrift = 0.0;
+			int maxDrifted = -1;
+			for (int i = 0; i < k; i++) {
+				drift[i] = distance(centers, i * dim, means, i * dim);
+				if (drift[i] > maxDrift) {
+					secondDrift = maxDrift;
+					maxDrift = drift[i];
+					maxDrifted = i;
+				} else if (drift[i] > secondDrift) {
+					secondDrift = drift[i];
+				}
+			}
+			double[] swap = centers;
+			centers = means;
+			means = swap;
+			if (iterations >= maxIterations) {
+				break;
+			}
+
+			updateSeparation();
+			for (int p = 0; p < n; p++) {
+				int a = assignment[p];
+				upper[p] += drift[a];
+				lower[p] -= (a == maxDrifted) ? secondDrift : maxDrift;
+
+				double bound = Math.max(halfSeparation[a], lower[p]);
+				if (upper[p] + margin < bound) continue;
+				upper[p] = distance(points, p * dim, centers, a * dim);
+				if (upper[p] + margin < bound) continue;
+				assign(points, p);
+			}
+		}
+		return iterations;
+	}
+
+	/**
+	 * Moves every center without any point to the point farthest from its own
+	 * center (a different one for each), so a warm start doesn't keep a center
+	 * which lost all its points. Points are only taken from centers with more than
+	 * one, and never points lying on a center.
+	 *
+	 * @param points	n x dim, row-major
+	 * @return number of centers moved
+	 */
+	int reseedEmpty(double[] points) {
+		int n = points.length / dim;
+		int[] counts = new int[k];
+		int[] closest = new int[n];
+		double[] distances = new double[n];
+		for (int p = 0; p < n; p++) {
+			closest[p] = 0;
+			distances[p] = distance(points, p * dim, centers, 0);
+			for (int i = 1; i < k; i++) {
+				double distance = distance(points, p * dim, centers, i * dim);
+				if (distance < distances[p]) {
+					closest[p] = i;
+					distances[p] = distance;
+				}
+			}
+			counts[closest[p]]++;
+		}
+
+		int moved = 0;
+		for (int i = 0; i < k; i++) {
+			if (counts[i] > 0) continue;
+			int farthest = -1;
+			for (int p = 0; p < n; p++) {
+				if (counts[closest[p]] > 1 && distances[p] > 0.0 && (farthest < 0 || distances[p] > distances[farthest])) {
+					farthest = p;
+				}
+			}
+			if (farthest < 0) break;		// No more points to spare
+			counts[closest[farthest]]--;
+			counts[i] = 1;
+			closest[farthest] = i;
+			distances[farthest] = 0.0;
+			System.arraycopy(points, farthest * dim, centers, i * dim, dim);
+			moved++;
+		}
+		return moved;
+	}
+
+	/**
+	 * The clusters of the last run as SphereClusters: the center, the largest
+	 * distance of an assigned point as radius and the assigned weight.
+	 */
+	Clustering getClustering(double[] points, double[] weights) {
+		double[] radius = new double[k];
+		double[] weight = new double[k];
+		for (int p = 0; p < assignment.length; p++) {
+			int a = assignment[p];
+			radius[a] = Math.max(radius[a], distance(points, p * dim, centers, a * dim));
+			weight[a] += (weights == null) ? 1.0 : weights[p];
+		}
+		SphereCluster[] clusters = new SphereCluster[k];
+		for (int i = 0; i < k; i++) {
+			clusters[i] = new SphereCluster(getCenter(i), radius[i]);
+			if (weight[i] > 0) {
+				clusters[i].setWeight(weight[i]);
+			}
+		}
+		return new Clustering(clusters);
+	}
+
+	/**
+	 * Centers of the given clusters as a row-major matrix
+	 */
+	static double[] toMatrix(List<? extends Cluster> clusters, int dim) {
+		double[] matrix = new double[clusters.size() * dim];
+		for (int p = 0; p < clusters.size(); p++) {
+			System.arraycopy(clusters.get(p).getCenter(), 0, matrix, p * dim, dim);
+		}
+		return matrix;
+	}
+
+
+	/*
+	 * Exact assignment of the point, with the bounds of it
+	 */
+	private void assign(double[] points, int p) {
+		int closest = 0;
+		double minDistance = distance(points, p * dim, centers, 0);
+		double secondDistance = Double.POSITIVE_INFINITY;
+		for (int i = 1; i < k; i++) {
+			double distance = distance(points, p * dim, centers, i * dim);
+			if (distance < minDistance) {
+				secondDistance = minDistance;
+				closest = i;
+				minDistance = distance;
+			} else if (distance < secondDistance) {
+				secondDistance = distance;
+			}
+		}
+		assignment[p] = closest;
+		upper[p] = minDistance;
+		lower[p] = secondDistance;
+	}
+
+	/*
+	 * An empty cluster goes to the origin, as it always did in the k-means here
+	 */
+	private void computeMeans(double[] points, double[] weights, int n) {
+		Arrays.fill(means, 0.0);
+		Arrays.fill(weightSums, 0.0);
+		for (int p = 0; p < n; p++) {
+			int offset = assignment[p] * dim;
+			int pointOffset = p * dim;
+			if (weights == null) {
+				for (int j = 0; j < dim; j++) {
+					means[offset + j] += points[pointOffset + j];
+				}
+				weightSums[assignment[p]] += 1.0;
+			} else {
+				double w = weights[p];
+				for (int j = 0; j < dim; j++) {
+					means[offset + j] += w * points[pointOffset + j];
+				}
+				weightSums[assignment[p]] += w;
+			}
+		}
+		for (int i = 0; i < k; i++) {
+			if (weightSums[i] == 0) continue;
+			int offset = i * dim;
+			for (int j = 0; j < dim; j++) {
+				means[offset + j] /= weightSums[i];
+			}
+		}
+	}
+
+	private void updateSeparation() {
+		Arrays.fill(halfSeparation, Double.POSITIVE_INFINITY);
+		for (int i = 0; i < k; i++) {
+			for (int l = i + 1; l < k; l++) {
+				double half = distance(centers, i * dim, centers, l * dim) / 2;
+				if (half < halfSeparation[i]) halfSeparation[i] = half;
+				if (half < halfSeparation[l]) halfSeparation[l] = half;
+			}
+		}
+	}
+
+	private double distance(double[] a, int offsetA, double[] b, int offsetB) {
+		double distance = 0.0;
+		for (int j = 0; j < dim; j++) {
+			double d = a[offsetA + j] - b[offsetB + j];
+			distance += d * d;
+		}
+		return Math.sqrt(distance);
+	}
+}
@@ -24,6 +24,7 @@ import moa.cluster.Clustering;
 import moa.cluster.SphereCluster;
 import moa.cluster.SubspaceClustering;
 import moa.clusterers.AbstractSubspaceClusterer;
+import moa.clusterers.ClustererCheckpoint;
 import moa.core.Measurement;
 import moa.options.IntOption;
 import weka.core.DenseInstance;
@@ -51,11 +52,15 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 	private int timeWindow;
 	private long timestamp = -1;
 	private ClustreamKernel[] kernels;
+	private KernelCenters kernelCenters;		// Center matrix and closest pair cache of the kernels
+	private RelevanceHeap relevanceHeap;		// Cached relevance stamps of the kernels
+	private double[] point;
 	private boolean initialized;
 	private List<ClustreamKernel> buffer; // Buffer for initialization with kNN
 	private int bufferSize;
 	private double t;
 	private int m;
+	private transient WeightedKMeans macroKMeans;	// Centers of the last macro clustering, to start the next one from
 	
 	public WithKmeans() {
 	
@@ -66,6 +71,9 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 		this.kernels = new ClustreamKernel[maxNumKernelsOption.getValue()];
 		this.timeWindow = timeWindowOption.getValue();
 		this.initialized = false;
+		this.kernelCenters = null;
+		this.relevanceHeap = null;
+		this.macroKMeans = null;
 		this.buffer = new LinkedList<ClustreamKernel>();
 		this.bufferSize = maxNumKernelsOption.getValue();
 		t = kernelRadiFactorOption.getValue();
@@ -85,6 +93,9 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 				for (int i = 0; i < buffer.size(); i++) {
 					kernels[i] = new ClustreamKernel(new DenseInstance(1.0, buffer.get(i).getCenter()), dim, timestamp, t, m);
 				}
+				kernelCenters = new KernelCenters(kernels, dim);
+				relevanceHeap = new RelevanceHeap(kernels);
+				point = new double[dim];
 	
 				buffer.clear();
 				initialized = true;
@@ -94,32 +105,19 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 
 
 		// 1. Determine closest kernel
-		ClustreamKernel closestKernel = null;
-		double minDistance = Double.MAX_VALUE;
-		for ( int i = 0; i < kernels.length; i++ ) {
-			//System.out.println(i+" "+kernels[i].getWeight()+" "+kernels[i].getDeviation());
-			double distance = distance(instance.toDoubleArray(), kernels[i].getCenter());
-			if (distance < minDistance) {
-				closestKernel = kernels[i];
-				minDistance = distance;
-			}
+		for ( int j = 0; j < dim; j++ ) {
+			point[j] = instance.value(j);
 		}
+		int closest = kernelCenters.nearest(point);
+		ClustreamKernel closestKernel = kernels[closest];
+		double minDistance = kernelCenters.getLastDistance();
 
 		// 2. Check whether instance fits into closestKernel
 		double radius = 0.0;
 		if ( closestKernel.getWeight() == 1 ) {
 			// Special case: estimate radius by determining the distance to the
 			// next closest cluster
-			radius = Double.MAX_VALUE;
-			double[] center = closestKernel.getCenter();
-			for ( int i = 0; i < kernels.length; i++ ) {
-				if ( kernels[i] == closestKernel ) {
-					continue;
-				}
-
-				double distance = distance(kernels[i].getCenter(), center );
-				radius = Math.min( distance, radius );
-			}
+			radius = kernelCenters.distanceToNearestOther(closest);
 		} else {
 			radius = closestKernel.getRadius();
 		}
@@ -127,6 +125,7 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 		if ( minDistance < radius ) {
 			// Date fits, put into kernel and be happy
 			closestKernel.insert( instance, timestamp );
+			kernelChanged( closest );
 			return;
 		}
 
@@ -134,33 +133,29 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 		// some space to insert a new kernel
 		long threshold = timestamp - timeWindow; // Kernels before this can be forgotten
 
-		// 3.1 Try to forget old kernels
-		for ( int i = 0; i < kernels.length; i++ ) {
-			if ( kernels[i].getRelevanceStamp() < threshold ) {
-				kernels[i] = new ClustreamKernel( instance, dim, timestamp, t, m );
-				return;
-			}
+		// 3.1 Try to forget the least relevant kernel
+		int oldest = relevanceHeap.leastRelevant();
+		if ( relevanceHeap.getStamp( oldest ) < threshold ) {
+			kernels[oldest] = new ClustreamKernel( instance, dim, timestamp, t, m );
+			kernelChanged( oldest );
+			return;
 		}
 
 		// 3.2 Merge closest two kernels
-		int closestA = 0;
-		int closestB = 0;
-		minDistance = Double.MAX_VALUE;
-		for ( int i = 0; i < kernels.length; i++ ) {
-			double[] centerA = kernels[i].getCenter();
-			for ( int j = i + 1; j < kernels.length; j++ ) {
-				double dist = distance( centerA, kernels[j].getCenter() );
-				if ( dist < minDistance ) {
-					minDistance = dist;
-					closestA = i;
-					closestB = j;
-				}
-			}
-		}
-		assert (closestA != closestB);
+		int pairA = kernelCenters.closestPair();
+		int pairB = kernelCenters.getNearest( pairA );
+		int closestA = Math.min( pairA, pairB );
+		int closestB = Math.max( pairA, pairB );
 
 		kernels[closestA].add( kernels[closestB] );
 		kernels[closestB] = new ClustreamKernel( instance, dim, timestamp, t,  m );
+		kernelChanged( closestA );
+		kernelChanged( closestB );
+	}
+
+	private void kernelChanged( int i ) {
+		kernelCenters.update( i, kernels[i] );
+		relevanceHeap.update( i );
 	}
 	
 	@Override
@@ -177,9 +172,39 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 		return new Clustering(result);
 	}
 	
+	/**
+	 * k-means over the microclusters, started from the centers of the previous
+	 * call (randomized the first time, as kMeans_rand). On a slowly drifting stream
+	 * these are close to the new result already. Centers left without
+	 * microclusters are seeded again first, otherwise they would stay empty for
+	 * good.
+	 */
 	@Override
 	public SubspaceClustering getClusteringResult() {
-		return new SubspaceClustering(kMeans_rand(kOption.getValue(), getMicroClusteringResult()));
+		Clustering clustering = getMicroClusteringResult();
+		ArrayList<CFCluster> microclusters = new ArrayList<CFCluster>();
+		for (int i = 0; i < clustering.size(); i++) {
+			microclusters.add((CFCluster) clustering.get(i));
+		}
+		int n = microclusters.size();
+		if (n == 0) {
+			return new SubspaceClustering(new Clustering(new Cluster[0]));
+		}
+
+		int k = kOption.getValue();
+		int dim = microclusters.get(0).getCenter().length;
+		double[] points = WeightedKMeans.toMatrix(microclusters, dim);
+		if (macroKMeans == null || macroKMeans.getK() != k || macroKMeans.getDimensions() != dim) {
+			macroKMeans = new WeightedKMeans(k, dim);
+			Random random = new Random(0);
+			for (int i = 0; i < k; i++) {
+				macroKMeans.setCenter(i, microclusters.get(random.nextInt(n)).getCenter());
+			}
+		} else {
+			macroKMeans.reseedEmpty(points);
+		}
+		macroKMeans.run(points, null, Integer.MAX_VALUE);
+		return new SubspaceClustering(cleanUpKMeans(macroKMeans.getAssignment(), k, microclusters));
 	}
 	
 	public Clustering getClusteringResult(Clustering gtClustering) {
@@ -291,52 +316,14 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 		assert (k > 0);
 
 		int dimensions = centers[0].getCenter().length;
-
-		ArrayList<ArrayList<Cluster>> clustering = new ArrayList<ArrayList<Cluster>>();
+		WeightedKMeans kMeans = new WeightedKMeans(k, dimensions);
 		for (int i = 0; i < k; i++) {
-			clustering.add(new ArrayList<Cluster>());
-		}
-
-		while (true) {
-			// Assign points to clusters
-			for (Cluster point : data) {
-				double minDistance = distance(point.getCenter(), centers[0].getCenter());
-				int closestCluster = 0;
-				for (int i = 1; i < k; i++) {
-					double distance = distance(point.getCenter(), centers[i].getCenter());
-					if (distance < minDistance) {
-						closestCluster = i;
-						minDistance = distance;
-					}
-				}
-
-				clustering.get(closestCluster).add(point);
-			}
-
-			// Calculate new centers and clear clustering lists
-			SphereCluster[] newCenters = new SphereCluster[centers.length];
-			for (int i = 0; i < k; i++) {
-				newCenters[i] = calculateCenter(clustering.get(i), dimensions);
-				clustering.get(i).clear();
-			}
-			
-			// Convergence check
-			boolean converged = true;
-			for (int i = 0; i < k; i++) {
-				if (!Arrays.equals(centers[i].getCenter(), newCenters[i].getCenter())) {
-					converged = false;
-					break;
-				}
-			}
-			
-			if (converged) {
-				break;
-			} else {
-				centers = newCenters;
-			}
+			kMeans.setCenter(i, centers[i].getCenter());
 		}
+		double[] points = WeightedKMeans.toMatrix(data, dimensions);
+		kMeans.run(points, null, Integer.MAX_VALUE);
 
-		return new Clustering(centers);
+		return kMeans.getClustering(points, null);
 	}
 	
 	/**
@@ -347,21 +334,41 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 	 * @return
 	 */
 	protected static Clustering cleanUpKMeans(Clustering kMeansResult, ArrayList<CFCluster> microclusters) {
-		/* Convert k-means result to CFClusters */
 		int k = kMeansResult.size();
-		CFCluster[] converted = new CFCluster[k];
+		int[] assignment = new int[microclusters.size()];
 
-		for (CFCluster mc : microclusters) {
+		for (int m = 0; m < assignment.length; m++) {
 		    // Find closest kMeans cluster
 		    double minDistance = Double.MAX_VALUE;
 		    int closestCluster = 0;
 		    for (int i = 0; i < k; i++) {
-		    	double distance = distance(kMeansResult.get(i).getCenter(), mc.getCenter());
+		    	double distance = distance(kMeansResult.get(i).getCenter(), microclusters.get(m).getCenter());
 				if (distance < minDistance) {
 				    closestCluster = i;
 				    minDistance = distance;
 				}
 		    }
+		    assignment[m] = closestCluster;
+		}
+
+		return cleanUpKMeans(assignment, k, microclusters);
+	}
+
+	/**
+	 * Rearrange the microclusters into a set of CFClusters by their k-means cluster.
+	 * 
+	 * @param assignment - k-means cluster of each microcluster
+	 * @param k
+	 * @param microclusters
+	 * @return
+	 */
+	protected static Clustering cleanUpKMeans(int[] assignment, int k, ArrayList<CFCluster> microclusters) {
+		/* Convert k-means result to CFClusters */
+		CFCluster[] converted = new CFCluster[k];
+
+		for (int m = 0; m < assignment.length; m++) {
+		    CFCluster mc = microclusters.get(m);
+		    int closestCluster = assignment[m];
 
 		    // Add to cluster
 		    if ( converted[closestCluster] == null ) {
@@ -390,51 +397,69 @@ public class WithKmeans extends AbstractSubspaceClusterer {
 
 	
 
-	/**
-	 * k-means helper: Calculate a wrapping cluster of assigned points[microclusters].
-	 * 
-	 * @param assigned
-	 * @param dimensions
-	 * @return SphereCluster (with center and radius)
-	 */
-	private static SphereCluster calculateCenter(ArrayList<Cluster> assigned, int dimensions) {
-		double[] result = new double[dimensions];
-		for (int i = 0; i < result.length; i++) {
-			result[i] = 0.0;
-		}
-
-		if (assigned.size() == 0) {
-			return new SphereCluster(result, 0.0);
+	/** Miscellaneous **/
+	
+	@Override
+	public boolean supportsCheckpoints() {
+		return true;
+	}
+	
+	@Override
+	protected void createCheckpointImpl(ClustererCheckpoint checkpoint) {
+		checkpoint.putLong("timestamp", timestamp);
+		checkpoint.putBoolean("initialized", initialized);
+		if (initialized) {
+			putKernels(checkpoint, "kernels", Arrays.asList(kernels));
 		}
-
-		for (Cluster point : assigned) {
-			double[] center = point.getCenter();
-			for (int i = 0; i < result.length; i++) {
-				result[i] += center[i];
-			}
+		putKernels(checkpoint, "buffer", buffer);
+	}
+	
+	@Override
+	protected void restoreCheckpointImpl(ClustererCheckpoint checkpoint) {
+		timestamp = checkpoint.getLong("timestamp");
+		initialized = checkpoint.getBoolean("initialized");
+		macroKMeans = null;
+		if (initialized) {
+			kernels = getKernels(checkpoint, "kernels").toArray(new ClustreamKernel[0]);
+			int dim = checkpoint.getInt("kernels.dim");
+			kernelCenters = new KernelCenters(kernels, dim);
+			relevanceHeap = new RelevanceHeap(kernels);
+			point = new double[dim];
 		}
-
-		// Normalize
-		for (int i = 0; i < result.length; i++) {
-			result[i] /= assigned.size();
+		buffer = new LinkedList<ClustreamKernel>(getKernels(checkpoint, "buffer"));
+	}
+	
+	private static void putKernels(ClustererCheckpoint checkpoint, String prefix, List<ClustreamKernel> kernelList) {
+		int size = kernelList.size();
+		double[] lst = new double[size];
+		double[] sst = new double[size];
+		int i = 0;
+		for (ClustreamKernel kernel : kernelList) {
+			lst[i] = kernel.LST;
+			sst[i] = kernel.SST;
+			i++;
 		}
-
-		// Calculate radius: biggest wrapping distance from center
-		double radius = 0.0;
-		for (Cluster point : assigned) {
-			double dist = distance(result, point.getCenter());
-			if (dist > radius) {
-				radius = dist;
-			}
+		checkpoint.putCFVectors(prefix, kernelList, (size > 0) ? kernelList.get(0).LS.length : 0);
+		checkpoint.putOwnedDoubles(prefix + ".LST", lst);
+		checkpoint.putOwnedDoubles(prefix + ".SST", sst);
+	}
+	
+	private List<ClustreamKernel> getKernels(ClustererCheckpoint checkpoint, String prefix) {
+		int size = checkpoint.getInt(prefix + ".size");
+		int dim = checkpoint.getInt(prefix + ".dim");
+		double[] n = checkpoint.getDoubles(prefix + ".N");
+		double[] lst = checkpoint.getDoubles(prefix + ".LST");
+		double[] sst = checkpoint.getDoubles(prefix + ".SST");
+		ArrayList<ClustreamKernel> kernelList = new ArrayList<ClustreamKernel>(size);
+		for (int i = 0; i < size; i++) {
+			ClustreamKernel kernel = new ClustreamKernel(new DenseInstance(1.0, new double[dim]), dim, 0, t, m);
+			checkpoint.getCFVectors(prefix, i, kernel);
+			kernel.setTimeStatistics(n[i], lst[i], sst[i]);
+			kernelList.add(kernel);
 		}
-		SphereCluster sc = new SphereCluster(result, radius);
-		sc.setWeight(assigned.size());
-		return sc;
+		return kernelList;
 	}
 
-	
-	/** Miscellaneous **/
-	
 	@Override
 	public boolean implementsMicroClusterer() {
 		return true;
@@ -17,6 +17,7 @@ import java.util.ArrayList;
 import moa.cluster.Cluster;
 import moa.cluster.Clustering;
 import moa.clusterers.AbstractClusterer;
+import moa.clusterers.EpsilonGridDBSCAN;
 import moa.core.Measurement;
 import moa.options.FloatOption;
 import moa.options.IntOption;
@@ -94,20 +95,41 @@ public class DenStream extends AbstractClusterer {
     }
 
     public void initialDBScan() {
-        for (int p = 0; p < initBuffer.size(); p++) {
-            DenPoint point = initBuffer.get(p);
-            if (!point.covered) {
-                point.covered = true;
-                ArrayList<Integer> neighbourhood = getNeighbourhoodIDs(point, initBuffer, epsilon);
-                if (neighbourhood.size() > minPoints) {
-                    MicroCluster mc = new MicroCluster(point, point.numAttributes(), timestamp, lambda, currentTimestamp);
-                    expandCluster(mc, initBuffer, neighbourhood);
-                    p_micro_cluster.add(mc);
-                } else {
-                    point.covered = false;
+        EpsilonGridDBSCAN dbscan = new EpsilonGridDBSCAN(initBuffer, epsilon) {
+            private MicroCluster mc;
+
+            @Override
+            protected int[] startCluster(int p) {
+                int[] neighbourhood = getNeighbourhood(p, false);
+                if (neighbourhood.length > minPoints) {
+                    DenPoint point = initBuffer.get(p);
+                    mc = new MicroCluster(point, point.numAttributes(), timestamp, lambda, currentTimestamp);
+                    return neighbourhood;
                 }
+                return null;
+            }
+
+            @Override
+            protected int[] expand(int p, int[] neighbourhood) {
+                mc.insert(initBuffer.get(p), timestamp);
+                // Whether to go on is decided by the neighborhood the point was found in
+                return (neighbourhood.length > minPoints) ? getNeighbourhood(p, false) : null;
+            }
+
+            @Override
+            protected void finishCluster() {
+                p_micro_cluster.add(mc);
+            }
+        };
+        for (int p = 0; p < initBuffer.size(); p++) {
+            if (initBuffer.get(p).covered) {
+                dbscan.setCovered(p);
             }
         }
+        dbscan.run();
+        for (int p = 0; p < initBuffer.size(); p++) {
+            initBuffer.get(p).covered = dbscan.isCovered(p);
+        }
     }
 
     @Override
@@ -193,34 +215,6 @@ public class DenStream extends AbstractClusterer {
         }
     }
 
-    private void expandCluster(MicroCluster mc, ArrayList<DenPoint> points, ArrayList<Integer> neighbourhood) {
-        for (int p : neighbourhood) {
-            DenPoint npoint = points.get(p);
-            if (!npoint.covered) {
-                npoint.covered = true;
-                mc.insert(npoint, timestamp);
-                ArrayList<Integer> neighbourhood2 = getNeighbourhoodIDs(npoint, initBuffer, epsilon);
-                if (neighbourhood.size() > minPoints) {
-                    expandCluster(mc, points, neighbourhood2);
-                }
-            }
-        }
-    }
-
-    private ArrayList<Integer> getNeighbourhoodIDs(DenPoint point, ArrayList<DenPoint> points, double eps) {
-        ArrayList<Integer> neighbourIDs = new ArrayList<Integer>();
-        for (int p = 0; p < points.size(); p++) {
-            DenPoint npoint = points.get(p);
-            if (!npoint.covered) {
-                double dist = distance(point.toDoubleArray(), points.get(p).toDoubleArray());
-                if (dist < eps) {
-                    neighbourIDs.add(p);
-                }
-            }
-        }
-        return neighbourIDs;
-    }
-
     private MicroCluster nearestCluster(DenPoint p, Clustering cl) {
         MicroCluster min = null;
         double minDist = 0;
@@ -16,7 +16,8 @@ import moa.cluster.Cluster;
 import moa.cluster.Clustering;
 import moa.cluster.SubspaceClustering;
 import moa.clusterers.AbstractSubspaceClusterer;
-import moa.clusterers.macro.dbscan.DBScan;
+import moa.clusterers.EpsilonGridDBSCAN;
+import moa.clusterers.macro.MicroClusterDBScan;
 import moa.core.Measurement;
 import moa.options.FloatOption;
 import moa.options.IntOption;
@@ -73,6 +74,12 @@ public class WithDBSCAN_Subspace extends AbstractSubspaceClusterer {
 	protected int processingSpeed;
 	// TODO Some variables to prevent duplicated processes
 
+	/* Offline clustering, cached until the potential microclusters change */
+	private long modificationCount = 0;
+	private transient MicroClusterDBScan offlineDBScan;
+	private transient SubspaceClustering cachedClustering;
+	private transient long cachedModificationCount;
+
 	private class DenPoint extends DenseInstance {
 		
 		private static final long serialVersionUID = 1L;
@@ -107,26 +114,48 @@ public class WithDBSCAN_Subspace extends AbstractSubspaceClusterer {
 		
 		numProcessedPerUnit = 0;
 		processingSpeed = speedOption.getValue();
+
+		modificationCount++;
+		offlineDBScan = null;
+		cachedClustering = null;
 	}
 
 	public void initialDBScan() {
-		for (int p = 0; p < initBuffer.size(); p++) {
-			DenPoint point = initBuffer.get(p);
-			if (!point.covered) {
-				point.covered = true;
-				ArrayList<Integer> neighbourhood = getNeighbourhoodIDs(point,
-						initBuffer, epsilon);
-				if (neighbourhood.size() > minPoints) {
-					MicroCluster mc = new MicroCluster(point,
-							point.numAttributes(), timestamp, lambda,
-							currentTimestamp);
-					expandCluster(mc, initBuffer, neighbourhood);
-					p_micro_cluster.add(mc);
-				} else {
-					point.covered = false;
+		EpsilonGridDBSCAN dbscan = new EpsilonGridDBSCAN(initBuffer, epsilon) {
+			private MicroCluster mc;
+
+			@Override
+			protected int[] startCluster(int p) {
+				int[] neighbourhood = getNeighbourhood(p, false);
+				if (neighbourhood.length > minPoints) {
+					DenPoint point = initBuffer.get(p);
+					mc = new MicroCluster(point, point.numAttributes(), timestamp, lambda, currentTimestamp);
+					return neighbourhood;
 				}
+				return null;
+			}
+
+			@Override
+			protected int[] expand(int p, int[] neighbourhood) {
+				mc.insert(initBuffer.get(p), timestamp);
+				// Whether to go on is decided by the neighborhood the point was found in
+				return (neighbourhood.length > minPoints) ? getNeighbourhood(p, false) : null;
+			}
+
+			@Override
+			protected void finishCluster() {
+				p_micro_cluster.add(mc);
+			}
+		};
+		for (int p = 0; p < initBuffer.size(); p++) {
+			if (initBuffer.get(p).covered) {
+				dbscan.setCovered(p);
 			}
 		}
+		dbscan.run();
+		for (int p = 0; p < initBuffer.size(); p++) {
+			initBuffer.get(p).covered = dbscan.isCovered(p);
+		}
 	}
 
 	@Override
@@ -148,6 +177,7 @@ public class WithDBSCAN_Subspace extends AbstractSubspaceClusterer {
 			if (initBuffer.size() >= initPointsOption.getValue()) {
 				initialDBScan();
 				initialized = true;
+				modificationCount++;
 			}
 		} else {
 			// ////////////
@@ -161,6 +191,7 @@ public class WithDBSCAN_Subspace extends AbstractSubspaceClusterer {
 				if (xCopy.getRadius(timestamp) <= epsilon) {
 					x.insert(point, timestamp);
 					merged = true;
+					modificationCount++;
 				}
 			}
 			if (!merged && (o_micro_cluster.getClustering().size() != 0)) {
@@ -174,6 +205,7 @@ public class WithDBSCAN_Subspace extends AbstractSubspaceClusterer {
 					if (x.getWeight() > beta * mu) {
 						o_micro_cluster.getClustering().remove(x);
 						p_micro_cluster.getClustering().add(x);
+						modificationCount++;
 					}
 				}
 			}
@@ -197,6 +229,9 @@ public class WithDBSCAN_Subspace extends AbstractSubspaceClusterer {
 				for (Cluster c : removalList) {
 					p_micro_cluster.getClustering().remove(c);
 				}
+				if (!removalList.isEmpty()) {
+					modificationCount++;
+				}
 
 				for (Cluster c : o_micro_cluster.getClustering()) {
 					long t0 = ((MicroCluster) c).getCreationTime();
@@ -216,38 +251,6 @@ public class WithDBSCAN_Subspace extends AbstractSubspaceClusterer {
 		}
 	}
 
-	private void expandCluster(MicroCluster mc, ArrayList<DenPoint> points,
-			ArrayList<Integer> neighbourhood) {
-		for (int p : neighbourhood) {
-			DenPoint npoint = points.get(p);
-			if (!npoint.covered) {
-				npoint.covered = true;
-				mc.insert(npoint, timestamp);
-				ArrayList<Integer> neighbourhood2 = getNeighbourhoodIDs(npoint,
-						initBuffer, epsilon);
-				if (neighbourhood.size() > minPoints) {
-					expandCluster(mc, points, neighbourhood2);
-				}
-			}
-		}
-	}
-
-	private ArrayList<Integer> getNeighbourhoodIDs(DenPoint point,
-			ArrayList<DenPoint> points, double eps) {
-		ArrayList<Integer> neighbourIDs = new ArrayList<Integer>();
-		for (int p = 0; p < points.size(); p++) {
-			DenPoint npoint = points.get(p);
-			if (!npoint.covered) {
-				double dist = distance(point.toDoubleArray(), points.get(p)
-						.toDoubleArray());
-				if (dist < eps) {
-					neighbourIDs.add(p);
-				}
-			}
-		}
-		return neighbourIDs;
-	}
-
 	private MicroCluster nearestCluster(DenPoint p, Clustering cl) {
 		MicroCluster min = null;
 		double minDist = 0;
@@ -277,8 +280,14 @@ public class WithDBSCAN_Subspace extends AbstractSubspaceClusterer {
 	}
 
 	public SubspaceClustering getClusteringResult() {
-		DBScan dbscan = new DBScan(p_micro_cluster,offlineOption.getValue() * epsilon, minPoints);
-		return new SubspaceClustering(dbscan.getClustering(p_micro_cluster));
+		if (cachedClustering == null || cachedModificationCount != modificationCount) {
+			if (offlineDBScan == null) {
+				offlineDBScan = new MicroClusterDBScan(offlineOption.getValue() * epsilon, minPoints);
+			}
+			cachedClustering = new SubspaceClustering(offlineDBScan.getClustering(p_micro_cluster));
+			cachedModificationCount = modificationCount;
+		}
+		return cachedClustering;
 	}
 
 	@Override
@@ -16,9 +16,12 @@ import moa.cluster.Cluster;
 import moa.cluster.Clustering;
 import moa.cluster.SubspaceClustering;
 import moa.clusterers.AbstractSubspaceClusterer;
+import moa.clusterers.ClustererCheckpoint;
+import moa.clusterers.ClustererMetrics;
 import moa.core.Measurement;
 import moa.options.FloatOption;
 import moa.options.IntOption;
+import weka.core.DenseInstance;
 import weka.core.Instance;
 
 public class HDDStream extends AbstractSubspaceClusterer {
@@ -96,6 +99,7 @@ public class HDDStream extends AbstractSubspaceClusterer {
 	protected int numIncludedInPMC, numIncludedInOMC;
 	protected int numNewMCs, numDeletedMCs;
 	protected int numPromotedToPMC, numDegradedPMCs;
+	protected final ClustererMetrics metrics = new ClustererMetrics();
 	
 	
 	
@@ -132,6 +136,7 @@ public class HDDStream extends AbstractSubspaceClusterer {
 		numDeletedMCs = 0;
 		numPromotedToPMC = 0;
 		numDegradedPMCs = 0;
+		metrics.reset();
 		
 		if (debug) {
 			System.out.println("----------------------------------------\n"
@@ -165,6 +170,11 @@ public class HDDStream extends AbstractSubspaceClusterer {
 				System.out.println("-----------------------------------------\n"
 								 + ">> Time unit: " + currentTimestamp);
 			}
+			if (initialized) {
+				metrics.endTimeUnit(numIncludedInPMC, numIncludedInOMC, numNewMCs, numDeletedMCs,
+									numPromotedToPMC, numDegradedPMCs, potential_microclusters.size(),
+									outlier_microclusters.size(), estimateMicroClusterBytes());
+			}
 			numIncludedInPMC = 0;
 			numIncludedInOMC = 0;
 			numDeletedMCs = 0;
@@ -191,7 +201,9 @@ public class HDDStream extends AbstractSubspaceClusterer {
 			
 			// Merge into the nearest potential microcluster
 			if (potential_microclusters.size() > 0) {
+				long start = metrics.startSearch();
 				ProjectedMicroCluster x = nearestCluster(point, potential_microclusters);
+				metrics.endSearch(start);
 				
 				if (x != null) {
 					x.insert(point, currentTimestamp);
@@ -202,7 +214,9 @@ public class HDDStream extends AbstractSubspaceClusterer {
 			
 			// Merge into the nearest outlier microcluster
 			if (!merged && outlier_microclusters.size() > 0) {
+				long start = metrics.startSearch();
 				ProjectedMicroCluster x = nearestCluster(point, outlier_microclusters);
+				metrics.endSearch(start);
 				
 				if (x != null) {
 					x.insert(point, currentTimestamp);
@@ -283,11 +297,13 @@ public class HDDStream extends AbstractSubspaceClusterer {
 	/** Initialization phase **/
 	
 	protected void initialPreDeCon() {
+		long start = metrics.startOffline();
 		PreDeCon predecon = new PreDeCon(initBuffer,
 										 epsilon, mu, 
 										 pi, delta, kappa,
 										 currentTimestamp, lambda);
 		potential_microclusters = predecon.getClustering(debug);
+		metrics.endOffline(start);
 	}
 
 	/**
@@ -342,10 +358,13 @@ public class HDDStream extends AbstractSubspaceClusterer {
 	/** Offline processing (results) **/
 	
 	public SubspaceClustering getClusteringResult() {
+		long start = metrics.startOffline();
 		PreDeCon predecon = new PreDeCon(potential_microclusters,
 										 offlineOption.getValue() * epsilon, mu, 
 										 pi, delta, kappa);
-		return new SubspaceClustering(predecon.getClustering(debug));
+		SubspaceClustering result = new SubspaceClustering(predecon.getClustering(debug));
+		metrics.endOffline(start);
+		return result;
 	}
 
 	@Override
@@ -370,11 +389,135 @@ public class HDDStream extends AbstractSubspaceClusterer {
 
 	
 	
+	/** Checkpoints **/
+	
+	@Override
+	public boolean supportsCheckpoints() {
+		return true;
+	}
+	
+	@Override
+	protected void createCheckpointImpl(ClustererCheckpoint checkpoint) {
+		checkpoint.putBoolean("initialized", initialized);
+		checkpoint.putLong("currentTimestamp", currentTimestamp);
+		checkpoint.putBoolean("removalProcessed", removalProcessed);
+		checkpoint.putInt("numProcessedPerUnit", numProcessedPerUnit);
+		checkpoint.putOwnedInts("unitCounters", new int[] {numIncludedInPMC, numIncludedInOMC,
+				numNewMCs, numDeletedMCs, numPromotedToPMC, numDegradedPMCs});
+		
+		putMicroClusters(checkpoint, "potential", potential_microclusters);
+		putMicroClusters(checkpoint, "outlier", outlier_microclusters);
+		
+		// Points waiting for the initialization
+		int size = initBuffer.size();
+		int dim = (size > 0) ? initBuffer.get(0).numAttributes() : 0;
+		double[] values = new double[size * dim];
+		double[] weights = new double[size];
+		long[] timestamps = new long[size];
+		for (int i = 0; i < size; i++) {
+			DenPoint p = initBuffer.get(i);
+			for (int j = 0; j < dim; j++) {
+				values[i * dim + j] = p.value(j);
+			}
+			weights[i] = p.weight();
+			timestamps[i] = p.getCreationTimestamp();
+		}
+		checkpoint.putInt("initBuffer.dim", dim);
+		checkpoint.putOwnedDoubles("initBuffer.values", values);
+		checkpoint.putOwnedDoubles("initBuffer.weight", weights);
+		checkpoint.putOwnedLongs("initBuffer.timestamp", timestamps);
+	}
+	
+	@Override
+	protected void restoreCheckpointImpl(ClustererCheckpoint checkpoint) {
+		initialized = checkpoint.getBoolean("initialized");
+		currentTimestamp = checkpoint.getLong("currentTimestamp");
+		removalProcessed = checkpoint.getBoolean("removalProcessed");
+		numProcessedPerUnit = checkpoint.getInt("numProcessedPerUnit");
+		int[] counters = checkpoint.getInts("unitCounters");
+		numIncludedInPMC = counters[0];
+		numIncludedInOMC = counters[1];
+		numNewMCs = counters[2];
+		numDeletedMCs = counters[3];
+		numPromotedToPMC = counters[4];
+		numDegradedPMCs = counters[5];
+		
+		potential_microclusters = getMicroClusters(checkpoint, "potential");
+		outlier_microclusters = getMicroClusters(checkpoint, "outlier");
+		
+		int dim = checkpoint.getInt("initBuffer.dim");
+		double[] values = checkpoint.getDoubles("initBuffer.values");
+		double[] weights = checkpoint.getDoubles("initBuffer.weight");
+		long[] timestamps = checkpoint.getLongs("initBuffer.timestamp");
+		initBuffer = new ArrayList<DenPoint>(weights.length);
+		for (int i = 0; i < weights.length; i++) {
+			double[] pointValues = new double[dim];
+			System.arraycopy(values, i * dim, pointValues, 0, dim);
+			initBuffer.add(new DenPoint(new DenseInstance(weights[i], pointValues), timestamps[i]));
+		}
+	}
+	
+	private void putMicroClusters(ClustererCheckpoint checkpoint, String prefix, Clustering clustering) {
+		int size = clustering.size();
+		ArrayList<ProjectedMicroCluster> mcs = new ArrayList<ProjectedMicroCluster>(size);
+		double[] weights = new double[size];
+		long[] creation = new long[size];
+		long[] lastEdit = new long[size];
+		for (int i = 0; i < size; i++) {
+			ProjectedMicroCluster mc = (ProjectedMicroCluster) clustering.get(i);
+			mcs.add(mc);
+			weights[i] = mc.getWeight();
+			creation[i] = mc.getCreationTime();
+			lastEdit[i] = mc.getLastEditTimestamp();
+		}
+		checkpoint.putCFVectors(prefix, mcs, (size > 0) ? mcs.get(0).LS.length : 0);
+		checkpoint.putOwnedDoubles(prefix + ".weight", weights);
+		checkpoint.putOwnedLongs(prefix + ".creation", creation);
+		checkpoint.putOwnedLongs(prefix + ".lastEdit", lastEdit);
+	}
+	
+	private Clustering getMicroClusters(ClustererCheckpoint checkpoint, String prefix) {
+		int size = checkpoint.getInt(prefix + ".size");
+		int dim = checkpoint.getInt(prefix + ".dim");
+		double[] weights = checkpoint.getDoubles(prefix + ".weight");
+		long[] creation = checkpoint.getLongs(prefix + ".creation");
+		long[] lastEdit = checkpoint.getLongs(prefix + ".lastEdit");
+		Clustering clustering = new Clustering();
+		for (int i = 0; i < size; i++) {
+			ProjectedMicroCluster mc = new ProjectedMicroCluster(new double[dim], dim,
+					creation[i], lambda, lastEdit[i], mu, epsilon, delta, kappa, pi);
+			checkpoint.getCFVectors(prefix, i, mc);
+			mc.setWeight(weights[i]);
+			clustering.add(mc);
+		}
+		return clustering;
+	}
+	
+	
+	
 	/** Auxiliaries **/
 	
+	@Override
+	public ClustererMetrics getMetrics() {
+		return metrics;
+	}
+	
 	@Override
 	protected Measurement[] getModelMeasurementsImpl() {
-		throw new UnsupportedOperationException("Not supported yet.");
+		metrics.setPopulation(potential_microclusters.size(), outlier_microclusters.size(),
+							  estimateMicroClusterBytes());
+		return metrics.toMeasurements();
+	}
+	
+	/*
+	 * LS, SS, variances and preference vector of every microcluster
+	 */
+	private long estimateMicroClusterBytes() {
+		int num = potential_microclusters.size() + outlier_microclusters.size();
+		if (num == 0) return 0;
+		Cluster any = (potential_microclusters.size() > 0) ? potential_microclusters.get(0)
+														   : outlier_microclusters.get(0);
+		return ClustererMetrics.estimateBytes(num, 4, ((ProjectedMicroCluster) any).LS.length);
 	}
 
 	@Override
@@ -0,0 +1,415 @@
+/**
+ * [MicroClusterDBScan.java] for Subspace MOA
+ *
+ * Offline DBSCAN over microclusters, as the DBScan of MOA: two microclusters are
+ * neighbors if the distance of their centers minus both radii is below epsilon,
+ * a microcluster is core if its neighborhood (itself included) has at least
+ * minPts members, and a cluster is made of the density-connected core
+ * microclusters.
+ *
+ * The centers are kept in a hash grid, so the neighbors are searched in the
+ * adjacent cells only. Microclusters with a radius above epsilon ("wide" ones)
+ * don't fit the cell size and are checked against everything. The index and the
+ * neighborhoods are kept between calls: only microclusters added, removed or
+ * changed since the last call (a change is noticed through their N) are queried
+ * again, unless too much has changed, in which case everything is rebuilt.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.clusterers.macro;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Vector;
+
+import moa.cluster.CFCluster;
+import moa.cluster.Cluster;
+import moa.cluster.Clustering;
+
+public class MicroClusterDBScan extends AbstractMacroClusterer {
+
+	private static final int MAX_GRID_DIMENSIONS = 3;
+	private static final double CELL_MARGIN = 1e-6;		// Rounding in the cell coordinates
+	private static final double MAX_CHANGED_FRACTION = 0.5;	// Rebuild above
+
+	private final double eps;
+	private final int minPts;
+	private final double cellSize;
+
+	/* Index, kept between calls */
+	private IdentityHashMap<CFCluster, Entry> entries;
+	private ArrayList<Entry> order;						// Microclusters in the given order
+	private HashMap<Long, ArrayList<Entry>> grid;
+	private ArrayList<Entry> wide;
+	private int[] gridDimensions;
+	private int stamp = 0;
+
+	private static class Entry {
+
+		final CFCluster cluster;
+		double n;
+		double[] center;
+		double radius;
+		boolean isWide;
+		long cellKey;
+		final ArrayList<Entry> neighbours = new ArrayList<Entry>();	// Without itself
+
+		int position;
+		int seen;					// Stamp of the last update it was found in
+		int pending = -1;			// Rank among the entries queried in this update, -1 if none
+		boolean visited;
+
+		Entry(CFCluster cluster) {
+			this.cluster = cluster;
+			read();
+		}
+
+		void read() {
+			n = cluster.getN();
+			center = cluster.getCenter();
+			radius = cluster.getRadius();
+		}
+	}
+
+
+	public MicroClusterDBScan(double eps, int minPts) {
+		this.eps = eps;
+		this.minPts = minPts;
+		this.cellSize = 3 * eps * (1 + CELL_MARGIN);
+	}
+
+	@Override
+	public Clustering getClustering(Clustering microClusters) {
+		if (microClusters == null || microClusters.size() == 0) {
+			entries = null;
+			return new Clustering();
+		}
+		update(microClusters);
+
+		ArrayList<ArrayList<Entry>> clusters = new ArrayList<ArrayList<Entry>>();
+		for (Entry e : order) {
+			e.visited = false;
+		}
+		ArrayList<Entry> queue = new ArrayList<Entry>();
+		for (Entry e : order) {
+			if (e.visited) continue;
+			e.visited = true;
+			if (!isCore(e)) continue;
+
+			ArrayList<Entry> cluster = new ArrayList<Entry>();
+			cluster.add(e);
+			queue.clear();
+			queue.addAll(e.neighbours);
+			for (int q = 0; q < queue.size(); q++) {
+				Entry mc = queue.get(q);
+				if (mc.visited) continue;
+				mc.visited = true;
+				if (isCore(mc)) {
+					for (Entry neighbour : mc.neighbours) {
+						if (!neighbour.visited) {
+							queue.add(neighbour);
+						}
+					}
+					cluster.add(mc);
+				}
+			}
+			clusters.add(cluster);
+		}
+
+		// Members in the given order, whatever order the neighborhoods grew in
+		Comparator<Entry> byPosition = new Comparator<Entry>() {
+			public int compare(Entry a, Entry b) {
+				return (a.position < b.position) ? -1 : ((a.position == b.position) ? 0 : 1);
+			}
+		};
+		Cluster[] res = new Cluster[clusters.size()];
+		for (int c = 0; c < res.length; c++) {
+			ArrayList<Entry> cluster = clusters.get(c);
+			Collections.sort(cluster, byPosition);
+			List<CFCluster> members = new Vector<CFCluster>();
+			for (Entry e : cluster) {
+				members.add(e.cluster);
+			}
+			res[c] = new NonConvexCluster(members.get(0), members);
+		}
+		Clustering result = new Clustering(res);
+		setClusterIDs(result);
+		return result;
+	}
+
+	private boolean isCore(Entry e) {
+		int size = e.neighbours.size() + ((-2 * e.radius < eps) ? 1 : 0);
+		return size >= minPts;
+	}
+
+
+	/*
+	 * Brings the index up to date with the given microclusters
+	 */
+	private void update(Clustering microClusters) {
+		int size = microClusters.size();
+		if (entries == null) {
+			rebuild(microClusters);
+			return;
+		}
+
+		stamp++;
+		ArrayList<Entry> newOrder = new ArrayList<Entry>(size);
+		ArrayList<Entry> queried = new ArrayList<Entry>();
+		ArrayList<Entry> changed = new ArrayList<Entry>();
+		for (int i = 0; i < size; i++) {
+			CFCluster c = (CFCluster) microClusters.get(i);
+			Entry e = entries.get(c);
+			if (e == null) {
+				e = new Entry(c);
+				queried.add(e);
+			} else if (e.seen == stamp) {
+				continue;		// Listed twice
+			} else if (e.n != c.getN()) {
+				changed.add(e);
+				queried.add(e);
+			}
+			e.seen = stamp;
+			e.position = newOrder.size();
+			newOrder.add(e);
+		}
+		int removed = 0;
+		for (Entry e : order) {
+			if (e.seen != stamp) removed++;
+		}
+		if (queried.size() + removed > MAX_CHANGED_FRACTION * size) {
+			rebuild(microClusters);
+			return;
+		}
+
+		for (Entry e : order) {
+			if (e.seen != stamp) {
+				detach(e);
+				entries.remove(e.cluster);
+			}
+		}
+		for (Entry e : changed) {
+			detach(e);
+			e.read();
+		}
+		order = newOrder;
+		for (int r = 0; r < queried.size(); r++) {
+			Entry e = queried.get(r);
+			entries.put(e.cluster, e);
+			insert(e);
+			e.pending = r;
+		}
+		for (Entry e : queried) {
+			findNeighbours(e);
+		}
+		for (Entry e : queried) {
+			e.pending = -1;
+		}
+	}
+
+	private void rebuild(Clustering microClusters) {
+		int size = microClusters.size();
+		stamp++;
+		entries = new IdentityHashMap<CFCluster, Entry>(2 * size);
+		order = new ArrayList<Entry>(size);
+		for (int i = 0; i < size; i++) {
+			CFCluster c = (CFCluster) microClusters.get(i);
+			if (entries.containsKey(c)) continue;
+			Entry e = new Entry(c);
+			e.seen = stamp;
+			e.position = order.size();
+			entries.put(c, e);
+			order.add(e);
+		}
+		chooseGridDimensions();
+
+		grid = new HashMap<Long, ArrayList<Entry>>();
+		wide = new ArrayList<Entry>();
+		for (int r = 0; r < order.size(); r++) {
+			Entry e = order.get(r);
+			insert(e);
+			e.pending = r;
+		}
+		for (Entry e : order) {
+			findNeighbours(e);
+		}
+		for (Entry e : order) {
+			e.pending = -1;
+		}
+	}
+
+	/*
+	 * The (up to three) dimensions with the largest extent of the centers, as long
+	 * as they are wider than the three cells of a query
+	 */
+	private void chooseGridDimensions() {
+		int dim = order.get(0).center.length;
+		double[] min = new double[dim];
+		double[] max = new double[dim];
+		Arrays.fill(min, Double.POSITIVE_INFINITY);
+		Arrays.fill(max, Double.NEGATIVE_INFINITY);
+		for (Entry e : order) {
+			if (e.radius > eps) continue;
+			for (int j = 0; j < dim && j < e.center.length; j++) {
+				double x = e.center[j];
+				if (Double.isInfinite(x) || Double.isNaN(x)) continue;
+				if (x < min[j]) min[j] = x;
+				if (x > max[j]) max[j] = x;
+			}
+		}
+
+		int[] chosen = new int[Math.min(MAX_GRID_DIMENSIONS, dim)];
+		int numChosen = 0;
+		boolean[] taken = new boolean[dim];
+		while (numChosen < chosen.length && eps > 0) {
+			int widest = -1;
+			for (int j = 0; j < dim; j++) {
+				double extent = max[j] - min[j];
+				if (!taken[j] && extent > 3 * cellSize
+						&& (widest < 0 || extent > max[widest] - min[widest])) {
+					widest = j;
+				}
+			}
+			if (widest < 0) break;
+			taken[widest] = true;
+			chosen[numChosen++] = widest;
+		}
+		gridDimensions = Arrays.copyOf(chosen, numChosen);
+	}
+
+	private void insert(Entry e) {
+		// Centers without all grid dimensions can't be placed either
+		e.isWide = !(e.radius <= eps) || e.center.length <= maxGridDimension();
+		if (e.isWide) {
+			wide.add(e);
+			return;
+		}
+		e.cellKey = cellKey(e.center, null);
+		ArrayList<Entry> cell = grid.get(e.cellKey);
+		if (cell == null) {
+			cell = new ArrayList<Entry>();
+			grid.put(e.cellKey, cell);
+		}
+		cell.add(e);
+	}
+
+	/*
+	 * Takes the entry out of the index and out of the neighborhoods of its neighbors
+	 */
+	private void detach(Entry e) {
+		for (Entry neighbour : e.neighbours) {
+			neighbour.neighbours.remove(e);
+		}
+		e.neighbours.clear();
+		if (e.isWide) {
+			wide.remove(e);
+		} else {
+			ArrayList<Entry> cell = grid.get(e.cellKey);
+			cell.remove(e);
+			if (cell.isEmpty()) {
+				grid.remove(e.cellKey);
+			}
+		}
+	}
+
+	/*
+	 * Links the entry with its neighbors. Non-wide entries find the others through
+	 * the wide list and the adjacent cells, wide ones through the whole list, so
+	 * two queried entries always find each other; the edge is made by the one
+	 * queried first.
+	 */
+	private void findNeighbours(Entry e) {
+		if (e.isWide) {
+			for (Entry other : order) {
+				link(e, other);
+			}
+			return;
+		}
+
+		for (Entry other : wide) {
+			link(e, other);
+		}
+		int g = gridDimensions.length;
+		long[] coordinates = new long[g];
+		cellKey(e.center, coordinates);
+		int numCells = 1;
+		for (int k = 0; k < g; k++) {
+			numCells *= 3;
+		}
+		ArrayList<ArrayList<Entry>> visitedCells = new ArrayList<ArrayList<Entry>>(numCells);
+		for (int o = 0; o < numCells; o++) {
+			long key = 0;
+			int digits = o;
+			for (int k = 0; k < g; k++) {
+				key = mix(key, coordinates[k] + (digits % 3) - 1);
+				digits /= 3;
+			}
+			ArrayList<Entry> cell = grid.get(key);
+			if (cell == null || containsCell(visitedCells, cell)) continue;
+			visitedCells.add(cell);
+			for (Entry other : cell) {
+				link(e, other);
+			}
+		}
+	}
+
+	private void link(Entry e, Entry other) {
+		if (other == e || (other.pending >= 0 && other.pending < e.pending)) return;
+		if (isNeighbour(e, other)) {
+			e.neighbours.add(other);
+			other.neighbours.add(e);
+		}
+	}
+
+	private boolean isNeighbour(Entry a, Entry b) {
+		return distance(a.center, b.center) - a.radius - b.radius < eps;
+	}
+
+	private int maxGridDimension() {
+		int max = -1;
+		for (int k = 0; k < gridDimensions.length; k++) {
+			max = Math.max(max, gridDimensions[k]);
+		}
+		return max;
+	}
+
+	private long cellKey(double[] center, long[] coordinates) {
+		long key = 0;
+		for (int k = 0; k < gridDimensions.length; k++) {
+			long coordinate = (long) Math.floor(center[gridDimensions[k]] / cellSize);
+			if (coordinates != null) coordinates[k] = coordinate;
+			key = mix(key, coordinate);
+		}
+		return key;
+	}
+
+	/*
+	 * Cell key of the coordinates. Two cells may share a key; that only adds
+	 * candidates, which the distance check drops.
+	 */
+	private static long mix(long key, long coordinate) {
+		return (key ^ coordinate) * 0x9E3779B97F4A7C15L + 0x632BE59BD9B4E019L;
+	}
+
+	private static boolean containsCell(List<ArrayList<Entry>> cells, ArrayList<Entry> cell) {
+		for (ArrayList<Entry> c : cells) {
+			if (c == cell) return true;
+		}
+		return false;
+	}
+
+	private static double distance(double[] pointA, double[] pointB) {
+		double distance = 0.0;
+		for (int i = 0; i < pointA.length; i++) {
+			double d = pointA[i] - pointB[i];
+			distance += d * d;
+		}
+		return Math.sqrt(distance);
+	}
+}
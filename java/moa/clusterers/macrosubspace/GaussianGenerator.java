@@ -0,0 +1,46 @@
+package moa.clusterers.macrosubspace;
+
+/**
+ * Seedable generator of standard normal values for regenerating points from
+ * microclusters. Uniforms come from xorshift64*, normals from the polar
+ * Box-Muller method, which produces them in pairs; the second value of a pair
+ * is kept for the next call.
+ */
+class GaussianGenerator {
+	private long state;
+	private double spare;
+	private boolean hasSpare = false;
+
+	GaussianGenerator(long seed) {
+		// Scramble the seed (splitmix64), the state must not be zero
+		long z = seed + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		this.state = (z == 0) ? 0x9E3779B97F4A7C15L : z;
+	}
+
+	private double nextUniform() {
+		state ^= state >>> 12;
+		state ^= state << 25;
+		state ^= state >>> 27;
+		return ((state * 0x2545F4914F6CDD1DL) >>> 11) * 0x1.0p-53;
+	}
+
+	double nextGaussian() {
+		if (hasSpare) {
+			hasSpare = false;
+			return spare;
+		}
+		double u, v, s;
+		do {
+			u = 2.0 * nextUniform() - 1.0;
+			v = 2.0 * nextUniform() - 1.0;
+			s = u * u + v * v;
+		} while (s >= 1.0 || s == 0.0);
+		double factor = Math.sqrt(-2.0 * Math.log(s) / s);
+		spare = v * factor;
+		hasSpare = true;
+		return u * factor;
+	}
+}
@@ -21,10 +21,9 @@ import moa.cluster.SubspaceSphereCluster;
 import moa.core.AutoExpandVector;
 import moa.core.ObjectRepository;
 import moa.options.AbstractOptionHandler;
+import moa.options.IntOption;
 import moa.tasks.TaskMonitor;
 
-import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
-
 import weka.core.Attribute;
 import weka.core.DenseInstance;
 import weka.core.Instance;
@@ -34,7 +33,11 @@ public abstract class MacroSubspaceClusterer extends AbstractOptionHandler {
 
 	private static final long serialVersionUID = 1L;
 	
+	public IntOption randomSeedOption = new IntOption("randomSeed", 'r',
+			"Seed for regenerating points from the microclusters.", 1);
+	
 	protected Instances convertedWekaInstances;
+	private transient GaussianGenerator generator;
 	/**
 	 * Convert MOA micro-clusters to WEKA instances.
 	 * These instances can be used as input to OpenSubspace clusterers.
@@ -64,27 +67,35 @@ public abstract class MacroSubspaceClusterer extends AbstractOptionHandler {
 		// Copy info's from "Clustering" to "Instances"
 		AutoExpandVector<Cluster> microClusters = microClustering.getClustering();
 		
+		if (generator == null) {
+			generator = new GaussianGenerator(randomSeedOption.getValue());
+		}
+		
+		// One sample block, reused for all microclusters
+		int D = microClustering.dimension();
+		double[] block = new double[0];
+		
 		for (int i = 0; i < microClusters.size(); i++) {
 			CFCluster microCluster = (CFCluster) microClusters.get(i);
 			double[] stds = standardDeviationsOfMicroCluster(microCluster);
 
 			double[] mean = microCluster.getCenter();
-			MultipleNormalDistributions normDist = new MultipleNormalDistributions(mean, stds);
+			MultipleNormalDistributions normDist = new MultipleNormalDistributions(mean, stds, generator);
 			
 			// Reconstruct samples
-			for (int a = 0; a < microCluster.getWeight(); a++) {
-				double attValues[] = normDist.sample();
+			int n = (int) Math.ceil(microCluster.getWeight());
+			if (block.length < n * D) {
+				block = new double[n * D];
+			}
+			normDist.sample(block, 0, n);
+			for (int a = 0; a < n; a++) {
+				double attValues[] = Arrays.copyOfRange(block, a * D, (a + 1) * D);
 				Instance inst = new DenseInstance(1.0D,attValues);
 				instances.add(inst);
 			}
 			Cluster cluster = microClusters.get(i);
 			instances.add(new DenseInstance(cluster.getWeight(), cluster.getCenter()));
 		}
-		CFCluster justOneCluster = (CFCluster) microClusters.get(0);
-		double sumDistances = 0;
-		for(Instance inst : instances){
-			sumDistances += justOneCluster.getCenterDistance(inst);
-		}
 		convertedWekaInstances = instances;
 		return instances;
 	}
@@ -150,7 +161,8 @@ public abstract class MacroSubspaceClusterer extends AbstractOptionHandler {
 
 	@Override
 	protected void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
-		
+		// A prepared (or re-prepared) clusterer regenerates the same points again
+		generator = new GaussianGenerator(randomSeedOption.getValue());
 	}
 	
 	/**
@@ -1,21 +1,50 @@
 package moa.clusterers.macrosubspace;
 
-import org.apache.commons.math3.distribution.NormalDistribution;
+/**
+ * Independent normal distributions, one per dimension. Dimensions with zero
+ * variance are not sampled at all but filled with their mean.
+ */
 class MultipleNormalDistributions {
-	private NormalDistribution[] distributions;
-	MultipleNormalDistributions(double[] means,double[] stds) {
+	private double[] means;
+	private double[] stds;
+	private int[] randomDims;		// Dimensions with non-zero variance
+	private GaussianGenerator generator;
+
+	MultipleNormalDistributions(double[] means,double[] stds,GaussianGenerator generator) {
 		assert(means.length == stds.length);
-		this.distributions = new NormalDistribution[means.length];
-		for(int i = 0; i < this.distributions.length;i++){
-			if(stds[i] == 0) this.distributions[i] = new ZeroVarianceNormalDistribution(means[i]);
-			else this.distributions[i] = new NormalDistribution(means[i],stds[i]);
+		this.means = means;
+		this.stds = stds;
+		this.generator = generator;
+		int numRandom = 0;
+		for(int i = 0; i < stds.length;i++) {
+			if(stds[i] != 0) numRandom++;
+		}
+		this.randomDims = new int[numRandom];
+		for(int i = 0, k = 0; i < stds.length;i++) {
+			if(stds[i] != 0) this.randomDims[k++] = i;
 		}
 	}
+	int dimension() {
+		return this.means.length;
+	}
 	double[] sample() {
-		double[] res = new double[this.distributions.length];
-		for(int i= 0; i < res.length;i++) {
-			res[i] = this.distributions[i].sample();
-		}
+		double[] res = new double[this.means.length];
+		sample(res, 0, 1);
 		return res;
 	}
+	/**
+	 * Writes n samples one after another (n x dimension(), row-major) into dest,
+	 * starting at offset.
+	 */
+	void sample(double[] dest, int offset, int n) {
+		int D = this.means.length;
+		for(int a = 0; a < n; a++) {
+			int row = offset + a * D;
+			System.arraycopy(this.means, 0, dest, row, D);
+			for(int k = 0; k < this.randomDims.length;k++) {
+				int i = this.randomDims[k];
+				dest[row + i] += this.stds[i] * this.generator.nextGaussian();
+			}
+		}
+	}
 }
@@ -11,6 +11,8 @@ package moa.clusterers.predeconstream;
 
 import java.util.ArrayList;
 
+import moa.clusterers.EpsilonGridDBSCAN;
+
 public class InitialDBSCAN {
 
 	private boolean debug = false;
@@ -18,6 +20,7 @@ public class InitialDBSCAN {
 	private ArrayList<DenPoint> initBuffer;
 	private ArrayList<MicroCluster> foundMCs = new ArrayList<MicroCluster>();
 	private long initTimestamp;
+	private double[] weights;		// Decayed weight by buffer index
 	
 	private double epsilonN, muN, beta, lambda,
 					offlineFactor, muF, delta, kappa;
@@ -51,21 +54,48 @@ public class InitialDBSCAN {
 	}
 	
 	protected void runDBScan() {
-		for (int i = 0; i < initBuffer.size(); i++) {
-			DenPoint p = initBuffer.get(i);
-			if (!p.isCovered()) {
-				ArrayList<Integer> neighbourhoodIDs = getNeighbourhoodIDs(p, initBuffer, epsilonN * EPSILON_FACTOR);
-				
-				if (sumWeights(initBuffer, neighbourhoodIDs) >= beta * muN) { 
-					MicroCluster mc = new MicroCluster(p.toDoubleArray(),
-													   epsilonN, muN, lambda,
-													   offlineFactor, muF, delta, kappa, tau, 
-													   initTimestamp, initTimestamp);
-					p.setCovered();
-					
-					expandCluster(mc, initBuffer, neighbourhoodIDs);
-					foundMCs.add(mc);
+		weights = new double[initBuffer.size()];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = Math.pow(2, -lambda * (initTimestamp - initBuffer.get(i).getCreationTimestamp()));
+		}
+		
+		EpsilonGridDBSCAN dbscan = new EpsilonGridDBSCAN(initBuffer, epsilonN * EPSILON_FACTOR) {
+			private MicroCluster mc;
+			
+			@Override
+			protected int[] startCluster(int i) {
+				int[] neighbourhoodIDs = getNeighbourhood(i, true);
+				if (sumWeights(neighbourhoodIDs) >= beta * muN) {
+					mc = new MicroCluster(initBuffer.get(i).toDoubleArray(),
+										  epsilonN, muN, lambda,
+										  offlineFactor, muF, delta, kappa, tau, 
+										  initTimestamp, initTimestamp);
+					return neighbourhoodIDs;
 				}
+				return null;
+			}
+			
+			@Override
+			protected int[] expand(int i, int[] neighbourhoodIDs) {
+				mc.insert(initBuffer.get(i), initTimestamp);
+				int[] neighbourhoodIDs2 = getNeighbourhood(i, false);
+				return (sumWeights(neighbourhoodIDs2) > beta * muN) ? neighbourhoodIDs2 : null;
+			}
+			
+			@Override
+			protected void finishCluster() {
+				foundMCs.add(mc);
+			}
+		};
+		for (int i = 0; i < initBuffer.size(); i++) {
+			if (initBuffer.get(i).isCovered()) {
+				dbscan.setCovered(i);
+			}
+		}
+		dbscan.run();
+		for (int i = 0; i < initBuffer.size(); i++) {
+			if (dbscan.isCovered(i)) {
+				initBuffer.get(i).setCovered();
 			}
 		}
 		
@@ -92,66 +122,20 @@ public class InitialDBSCAN {
 	}
 	
 	/**
-	 * Return the 'eps'-neighbor indices of given 'point'.
+	 * Sum of weights of the points whose indices are from 'IDs'.
 	 * 
-	 * @param point
-	 * @param points
-	 * @param eps
-	 * @return
-	 */
-	protected ArrayList<Integer> getNeighbourhoodIDs(DenPoint point, ArrayList<DenPoint> points, double eps) {
-		ArrayList<Integer> neighbourIDs = new ArrayList<Integer>();
-		for (int p = 0; p < points.size(); p++) {
-			DenPoint npoint = points.get(p);
-			if (!npoint.covered) {
-				double dist = distance(point.toDoubleArray(), points.get(p).toDoubleArray());
-				if (dist < eps) {
-					neighbourIDs.add(p);
-				}
-			}
-		}
-		return neighbourIDs;
-	}
-	
-	/**
-	 * Sum of weights of the given points whose indices are from 'IDs'.
-	 * 
-	 * @param points
 	 * @param IDs
 	 * @return
 	 */
-	protected double sumWeights(ArrayList<DenPoint> points, ArrayList<Integer> IDs) {
+	protected double sumWeights(int[] IDs) {
 		double sum = 0;
 		
 		for (int i : IDs) {
-			DenPoint p = points.get(i);
-			sum += Math.pow(2, -lambda * (initTimestamp - p.getCreationTimestamp()));
+			sum += weights[i];
 		}
 		
 		return sum;
 	}
-
-	/**
-	 * Expand microcluster 'mc' with the points of 'points' whose indices are from 'neighbourhood'. 
-	 * 
-	 * @param mc
-	 * @param points
-	 * @param neighbourhoodIDs
-	 */
-	protected void expandCluster(MicroCluster mc, ArrayList<DenPoint> points, ArrayList<Integer> neighbourhoodIDs) {
-		for (int i : neighbourhoodIDs) {
-			DenPoint neighbour = points.get(i);
-			if (!neighbour.isCovered()) {
-				mc.insert(neighbour, initTimestamp);
-				neighbour.setCovered();
-				
-				ArrayList<Integer> neighbourhoodIDs2 = getNeighbourhoodIDs(neighbour, initBuffer, epsilonN * EPSILON_FACTOR);
-				if (sumWeights(initBuffer, neighbourhoodIDs2) > beta * muN) {
-					expandCluster(mc, points, neighbourhoodIDs2);
-				}
-			}
-		}
-	}
 	
 	
 	
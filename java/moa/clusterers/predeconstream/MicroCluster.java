@@ -53,14 +53,14 @@ public class MicroCluster extends CFCluster {
 	protected final int DIM_RELEVANT = 1;
 	protected final int DIM_IRRELEVANT = 0;
 	protected int numDim;
-	private int numRelDim;
-	private double[] dimVariance;
+	protected int numRelDim;
+	protected double[] dimVariance;
 	protected double[] subspacePrefVector;
 	
 	/** Neighborhoods **/
 	protected List<MicroCluster> neighborhood;
 	protected List<MicroCluster> weightedNeighborhood;
-	private double weightSumOfWeightedNeighborhood;
+	protected double weightSumOfWeightedNeighborhood;
 	
 		
 	/* Constructor */
@@ -14,6 +14,7 @@ package moa.clusterers.predeconstream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
 
@@ -22,10 +23,13 @@ import moa.cluster.Cluster;
 import moa.cluster.Clustering;
 import moa.cluster.SubspaceClustering;
 import moa.clusterers.AbstractSubspaceClusterer;
+import moa.clusterers.ClustererCheckpoint;
+import moa.clusterers.ClustererMetrics;
 import moa.clusterers.macro.NonConvexCluster;
 import moa.core.Measurement;
 import moa.options.FloatOption;
 import moa.options.IntOption;
+import weka.core.DenseInstance;
 import weka.core.Instance;
 
 public class PreDeConStream extends AbstractSubspaceClusterer {
@@ -108,6 +112,7 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 	protected int numIncludedInPMC, numIncludedInOMC;
 	protected int numNewMCs, numDeletedMCs;
 	protected int numPromotedToPMC, numDegradedPMCs;
+	protected final ClustererMetrics metrics = new ClustererMetrics();
 	
 	/* Weight boundaries */
 	protected double Wmax, Wmin, Wd = 1.0;
@@ -157,6 +162,7 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 		numDeletedMCs = 0;
 		numPromotedToPMC = 0;
 		numDegradedPMCs = 0;
+		metrics.reset();
 		
 		Wmax = 1 / (1 - Math.pow(2, -lambda));
 		Wmin = beta * muN;
@@ -199,6 +205,11 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 				System.out.println("-----------------------------------------\n"
 								 + ">> Time unit: " + currentTimestamp);
 			}
+			if (initialized) {
+				metrics.endTimeUnit(numIncludedInPMC, numIncludedInOMC, numNewMCs, numDeletedMCs,
+									numPromotedToPMC, numDegradedPMCs, potential_microclusters.size(),
+									outlier_microclusters.size(), estimateMicroClusterBytes());
+			}
 			numIncludedInPMC = 0;
 			numIncludedInOMC = 0;
 			numDeletedMCs = 0;
@@ -216,11 +227,13 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 		if (!initialized) {
 			initBuffer.add(point);
 			if (initBuffer.size() >= numInitPoints) {
+				long start = metrics.startOffline();
 				InitialDBSCAN initializer = new InitialDBSCAN(initBuffer, 
 															  epsilonN, muN, beta, lambda,
 															  offlineFactor, muF, delta, kappa,
 															  tau, currentTimestamp);
 				potential_microclusters = initializer.getFoundMicroClusters();
+				metrics.endOffline(start);
 				
 				for (MicroCluster pmc : potential_microclusters) {
 					Inserted_PMC.add(pmc);
@@ -239,7 +252,9 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 			
 			// Merge into the nearest potential microcluster
 			if (potential_microclusters.size() > 0) {
+				long start = metrics.startSearch();
 				MicroCluster x = getNearestMC(point, potential_microclusters);
+				metrics.endSearch(start);
 				MicroCluster xCopy = x.copy();
 				
 				xCopy.insert(point, currentTimestamp);		// Tentatively insert
@@ -253,7 +268,9 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 			
 			// Merge into the nearest potential microcluster
 			if (!merged && outlier_microclusters.size() > 0) {
+				long start = metrics.startSearch();
 				MicroCluster x = getNearestMC(point, outlier_microclusters);
+				metrics.endSearch(start);
 				MicroCluster xCopy = x.copy();
 				
 				xCopy.insert(point, currentTimestamp);		// Tentatively insert
@@ -330,7 +347,9 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 				
 				numDegradedPMCs += potentialRemovalList.size();
 				
+				long start = metrics.startOffline();
 				updateClustering();
+				metrics.endOffline(start);
 				
 				removalProcessed = true;
 			}			
@@ -635,11 +654,295 @@ public class PreDeConStream extends AbstractSubspaceClusterer {
 
 	
 	
+	/** Checkpoints **/
+	
+	@Override
+	public boolean supportsCheckpoints() {
+		return true;
+	}
+	
+	/*
+	 * All microclusters (also the ones only referenced by neighborhoods or offline
+	 * clusters) are written once into one table; lists refer to them by index.
+	 */
+	@Override
+	protected void createCheckpointImpl(ClustererCheckpoint checkpoint) {
+		checkpoint.putBoolean("initialized", initialized);
+		checkpoint.putLong("currentTimestamp", currentTimestamp);
+		checkpoint.putBoolean("removalProcessed", removalProcessed);
+		checkpoint.putInt("numProcessedPerUnit", numProcessedPerUnit);
+		checkpoint.putOwnedInts("unitCounters", new int[] {numIncludedInPMC, numIncludedInOMC,
+				numNewMCs, numDeletedMCs, numPromotedToPMC, numDegradedPMCs});
+		checkpoint.putInt("nextClusterID", nextClusterID);
+		
+		// Microcluster table
+		IdentityHashMap<MicroCluster, Integer> index = new IdentityHashMap<MicroCluster, Integer>();
+		ArrayList<MicroCluster> table = new ArrayList<MicroCluster>();
+		addToTable(potential_microclusters, index, table);
+		addToTable(outlier_microclusters, index, table);
+		addToTable(Inserted_PMC, index, table);
+		addToTable(Deleted_PMC, index, table);
+		if (offlineClustering != null) {
+			for (Cluster c : offlineClustering.getClustering()) {
+				addToTable(((NonConvexCluster) c).getMicroClusters(), index, table);
+			}
+		}
+		for (int i = 0; i < table.size(); i++) {		// Grows while neighborhoods are added
+			addToTable(table.get(i).neighborhood, index, table);
+			addToTable(table.get(i).weightedNeighborhood, index, table);
+		}
+		
+		int size = table.size();
+		int dim = (size > 0) ? table.get(0).numDim : 0;
+		double[] weights = new double[size];
+		long[] creation = new long[size];
+		long[] lastEdit = new long[size];
+		int[] status = new int[size];
+		int[] numRelDims = new int[size];
+		double[] neighborhoodWeights = new double[size];
+		double[] prefVectors = new double[size * dim];
+		double[] dimVariances = new double[size * dim];
+		ArrayList<List<MicroCluster>> neighborhoods = new ArrayList<List<MicroCluster>>(size);
+		ArrayList<List<MicroCluster>> weightedNeighborhoods = new ArrayList<List<MicroCluster>>(size);
+		for (int i = 0; i < size; i++) {
+			MicroCluster mc = table.get(i);
+			weights[i] = mc.getWeight();
+			creation[i] = mc.getCreationTime();
+			lastEdit[i] = mc.getLastEditTimestamp();
+			status[i] = mc.status;
+			numRelDims[i] = mc.numRelDim;
+			neighborhoodWeights[i] = mc.weightSumOfWeightedNeighborhood;
+			System.arraycopy(mc.subspacePrefVector, 0, prefVectors, i * dim, dim);
+			System.arraycopy(mc.dimVariance, 0, dimVariances, i * dim, dim);
+			neighborhoods.add(mc.neighborhood);
+			weightedNeighborhoods.add(mc.weightedNeighborhood);
+		}
+		checkpoint.putCFVectors("mc", table, dim);
+		checkpoint.putOwnedDoubles("mc.weight", weights);
+		checkpoint.putOwnedLongs("mc.creation", creation);
+		checkpoint.putOwnedLongs("mc.lastEdit", lastEdit);
+		checkpoint.putOwnedInts("mc.status", status);
+		checkpoint.putOwnedInts("mc.numRelDim", numRelDims);
+		checkpoint.putOwnedDoubles("mc.neighborhoodWeight", neighborhoodWeights);
+		checkpoint.putOwnedDoubles("mc.prefVector", prefVectors);
+		checkpoint.putOwnedDoubles("mc.dimVariance", dimVariances);
+		putIndexLists(checkpoint, "mc.neighborhood", neighborhoods, index);
+		putIndexLists(checkpoint, "mc.weightedNeighborhood", weightedNeighborhoods, index);
+		
+		ArrayList<List<MicroCluster>> lists = new ArrayList<List<MicroCluster>>();
+		lists.add(potential_microclusters);
+		lists.add(outlier_microclusters);
+		lists.add(Inserted_PMC);
+		lists.add(Deleted_PMC);
+		putIndexLists(checkpoint, "lists", lists, index);
+		
+		// Offline clusters
+		checkpoint.putBoolean("offline", offlineClustering != null);
+		if (offlineClustering != null) {
+			int numClusters = offlineClustering.size();
+			ArrayList<weightedNonConvexCluster> clusters = new ArrayList<weightedNonConvexCluster>(numClusters);
+			ArrayList<List<MicroCluster>> members = new ArrayList<List<MicroCluster>>(numClusters);
+			double[] clusterWeights = new double[numClusters];
+			double[] ids = new double[numClusters];
+			for (int c = 0; c < numClusters; c++) {
+				weightedNonConvexCluster ncc = (weightedNonConvexCluster) offlineClustering.get(c);
+				clusters.add(ncc);
+				members.add(toMicroClusterList(ncc.getMicroClusters()));
+				clusterWeights[c] = ncc.getWeight();
+				ids[c] = ncc.getId();
+			}
+			checkpoint.putCFVectors("offline", clusters, dim);
+			checkpoint.putOwnedDoubles("offline.weight", clusterWeights);
+			checkpoint.putOwnedDoubles("offline.id", ids);
+			putIndexLists(checkpoint, "offline.members", members, index);
+		}
+		
+		// Points waiting for the initialization
+		int numPoints = initBuffer.size();
+		int pointDim = (numPoints > 0) ? initBuffer.get(0).numAttributes() : 0;
+		double[] values = new double[numPoints * pointDim];
+		double[] pointWeights = new double[numPoints];
+		long[] timestamps = new long[numPoints];
+		for (int i = 0; i < numPoints; i++) {
+			DenPoint p = initBuffer.get(i);
+			for (int j = 0; j < pointDim; j++) {
+				values[i * pointDim + j] = p.value(j);
+			}
+			pointWeights[i] = p.weight();
+			timestamps[i] = p.getCreationTimestamp();
+		}
+		checkpoint.putInt("initBuffer.dim", pointDim);
+		checkpoint.putOwnedDoubles("initBuffer.values", values);
+		checkpoint.putOwnedDoubles("initBuffer.weight", pointWeights);
+		checkpoint.putOwnedLongs("initBuffer.timestamp", timestamps);
+	}
+	
+	@Override
+	protected void restoreCheckpointImpl(ClustererCheckpoint checkpoint) {
+		initialized = checkpoint.getBoolean("initialized");
+		currentTimestamp = checkpoint.getLong("currentTimestamp");
+		removalProcessed = checkpoint.getBoolean("removalProcessed");
+		numProcessedPerUnit = checkpoint.getInt("numProcessedPerUnit");
+		int[] counters = checkpoint.getInts("unitCounters");
+		numIncludedInPMC = counters[0];
+		numIncludedInOMC = counters[1];
+		numNewMCs = counters[2];
+		numDeletedMCs = counters[3];
+		numPromotedToPMC = counters[4];
+		numDegradedPMCs = counters[5];
+		nextClusterID = checkpoint.getInt("nextClusterID");
+		
+		// Microcluster table
+		int size = checkpoint.getInt("mc.size");
+		int dim = checkpoint.getInt("mc.dim");
+		double[] weights = checkpoint.getDoubles("mc.weight");
+		long[] creation = checkpoint.getLongs("mc.creation");
+		long[] lastEdit = checkpoint.getLongs("mc.lastEdit");
+		int[] status = checkpoint.getInts("mc.status");
+		int[] numRelDims = checkpoint.getInts("mc.numRelDim");
+		double[] neighborhoodWeights = checkpoint.getDoubles("mc.neighborhoodWeight");
+		double[] prefVectors = checkpoint.getDoubles("mc.prefVector");
+		double[] dimVariances = checkpoint.getDoubles("mc.dimVariance");
+		ArrayList<MicroCluster> table = new ArrayList<MicroCluster>(size);
+		for (int i = 0; i < size; i++) {
+			MicroCluster mc = new MicroCluster(new double[dim],
+											   epsilonN, muN, lambda,
+											   offlineFactor, muF, delta, kappa, tau,
+											   creation[i], lastEdit[i]);
+			checkpoint.getCFVectors("mc", i, mc);
+			mc.setWeight(weights[i]);
+			mc.status = status[i];
+			mc.numRelDim = numRelDims[i];
+			mc.weightSumOfWeightedNeighborhood = neighborhoodWeights[i];
+			System.arraycopy(prefVectors, i * dim, mc.subspacePrefVector, 0, dim);
+			System.arraycopy(dimVariances, i * dim, mc.dimVariance, 0, dim);
+			table.add(mc);
+		}
+		List<ArrayList<MicroCluster>> neighborhoods = getIndexLists(checkpoint, "mc.neighborhood", table);
+		List<ArrayList<MicroCluster>> weightedNeighborhoods = getIndexLists(checkpoint, "mc.weightedNeighborhood", table);
+		for (int i = 0; i < size; i++) {
+			table.get(i).neighborhood = neighborhoods.get(i);
+			table.get(i).weightedNeighborhood = weightedNeighborhoods.get(i);
+		}
+		
+		List<ArrayList<MicroCluster>> lists = getIndexLists(checkpoint, "lists", table);
+		potential_microclusters = lists.get(0);
+		outlier_microclusters = lists.get(1);
+		Inserted_PMC = lists.get(2);
+		Deleted_PMC = lists.get(3);
+		
+		// Offline clusters
+		offlineClustering = null;
+		if (checkpoint.getBoolean("offline")) {
+			offlineClustering = new Clustering();
+			double[] n = checkpoint.getDoubles("offline.N");
+			double[] clusterWeights = checkpoint.getDoubles("offline.weight");
+			double[] ids = checkpoint.getDoubles("offline.id");
+			List<ArrayList<MicroCluster>> members = getIndexLists(checkpoint, "offline.members", table);
+			for (int c = 0; c < ids.length; c++) {
+				weightedNonConvexCluster ncc = new weightedNonConvexCluster(members.get(c).get(0), members.get(c));
+				checkpoint.getCFVectors("offline", c, ncc);
+				ncc.setN(n[c]);
+				ncc.setWeight(clusterWeights[c]);
+				ncc.setId(ids[c]);
+				offlineClustering.add(ncc);
+			}
+		}
+		
+		int pointDim = checkpoint.getInt("initBuffer.dim");
+		double[] values = checkpoint.getDoubles("initBuffer.values");
+		double[] pointWeights = checkpoint.getDoubles("initBuffer.weight");
+		long[] timestamps = checkpoint.getLongs("initBuffer.timestamp");
+		initBuffer = new ArrayList<DenPoint>(pointWeights.length);
+		for (int i = 0; i < pointWeights.length; i++) {
+			double[] pointValues = new double[pointDim];
+			System.arraycopy(values, i * pointDim, pointValues, 0, pointDim);
+			initBuffer.add(new DenPoint(new DenseInstance(pointWeights[i], pointValues), timestamps[i]));
+		}
+	}
+	
+	private static void addToTable(List<? extends CFCluster> mcs, IdentityHashMap<MicroCluster, Integer> index,
+			ArrayList<MicroCluster> table) {
+		if (mcs == null) return;
+		for (CFCluster cf : mcs) {
+			MicroCluster mc = (MicroCluster) cf;
+			if (!index.containsKey(mc)) {
+				index.put(mc, table.size());
+				table.add(mc);
+			}
+		}
+	}
+	
+	private static List<MicroCluster> toMicroClusterList(List<CFCluster> cfs) {
+		ArrayList<MicroCluster> mcs = new ArrayList<MicroCluster>(cfs.size());
+		for (CFCluster cf : cfs) {
+			mcs.add((MicroCluster) cf);
+		}
+		return mcs;
+	}
+	
+	/*
+	 * Lists of microclusters as table indices: [name].offsets (#lists + 1) and [name].indices
+	 */
+	private static void putIndexLists(ClustererCheckpoint checkpoint, String name,
+			List<? extends List<MicroCluster>> lists, IdentityHashMap<MicroCluster, Integer> index) {
+		int[] offsets = new int[lists.size() + 1];
+		for (int l = 0; l < lists.size(); l++) {
+			offsets[l + 1] = offsets[l] + ((lists.get(l) != null) ? lists.get(l).size() : 0);
+		}
+		int[] indices = new int[offsets[lists.size()]];
+		for (int l = 0; l < lists.size(); l++) {
+			if (lists.get(l) == null) continue;
+			int k = offsets[l];
+			for (MicroCluster mc : lists.get(l)) {
+				indices[k++] = index.get(mc);
+			}
+		}
+		checkpoint.putOwnedInts(name + ".offsets", offsets);
+		checkpoint.putOwnedInts(name + ".indices", indices);
+	}
+	
+	private static List<ArrayList<MicroCluster>> getIndexLists(ClustererCheckpoint checkpoint, String name,
+			ArrayList<MicroCluster> table) {
+		int[] offsets = checkpoint.getInts(name + ".offsets");
+		int[] indices = checkpoint.getInts(name + ".indices");
+		ArrayList<ArrayList<MicroCluster>> lists = new ArrayList<ArrayList<MicroCluster>>(offsets.length - 1);
+		for (int l = 0; l < offsets.length - 1; l++) {
+			ArrayList<MicroCluster> list = new ArrayList<MicroCluster>(offsets[l + 1] - offsets[l]);
+			for (int k = offsets[l]; k < offsets[l + 1]; k++) {
+				list.add(table.get(indices[k]));
+			}
+			lists.add(list);
+		}
+		return lists;
+	}
+	
+	
+	
 	/** Auxiliaries **/
 	
+	@Override
+	public ClustererMetrics getMetrics() {
+		return metrics;
+	}
+	
 	@Override
 	protected Measurement[] getModelMeasurementsImpl() {
-		throw new UnsupportedOperationException("Not supported yet.");
+		metrics.setPopulation(potential_microclusters.size(), outlier_microclusters.size(),
+							  estimateMicroClusterBytes());
+		return metrics.toMeasurements();
+	}
+	
+	/*
+	 * LS, SS, variances and preference vector of every microcluster
+	 * (neighborhood lists not included)
+	 */
+	private long estimateMicroClusterBytes() {
+		int num = potential_microclusters.size() + outlier_microclusters.size();
+		if (num == 0) return 0;
+		MicroCluster any = (potential_microclusters.size() > 0) ? potential_microclusters.get(0)
+																: outlier_microclusters.get(0);
+		return ClustererMetrics.estimateBytes(num, 4, any.LS.length);
 	}
 
 	@Override
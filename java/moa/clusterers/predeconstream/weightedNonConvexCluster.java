@@ -40,6 +40,10 @@ public class weightedNonConvexCluster extends NonConvexCluster {
 	public void add(CFCluster cluster) {
 		super.add(cluster);
 		this.setWeight(this.getWeight()+cluster.getWeight());
+	}
+	/* For restoring checkpoints */
+	void setN(double n) {
+		this.N = n;
 	}
 	 public double[] getCenter() {
 		 double res[] = new double[this.LS.length];
@@ -38,26 +38,36 @@ public class CE extends SubspaceMeasureCollection {
         return defaults;
     }
 
+	@Override
+	public boolean supportsPointWeights() {
+		return true;
+	}
+
 	@Override
 	protected void subEvaluateSubspaceClustering(SubspaceClustering foundClustering, SubspaceClustering gtClustering, List<SubspaceDataPoint> points) throws Exception {
+		subEvaluateSubspaceClustering(foundClustering, gtClustering, points, null);
+	}
+
+	@Override
+	protected void subEvaluateSubspaceClustering(SubspaceClustering foundClustering, SubspaceClustering gtClustering, List<SubspaceDataPoint> points, double[] pointWeights) throws Exception {
 		List<Cluster> foundClusters = foundClustering.getClustering();
 		List<Cluster> gtClusters = gtClustering.getClustering();
-		List<List<SubspaceDataPoint>> pointsInFC = new ArrayList<List<SubspaceDataPoint>>();
-		List<List<SubspaceDataPoint>> pointsInGC = new ArrayList<List<SubspaceDataPoint>>();
+		List<List<Integer>> pointsInFC = new ArrayList<List<Integer>>();
+		List<List<Integer>> pointsInGC = new ArrayList<List<Integer>>();
 		
-		// Initialize per-cluster point containers
+		// Initialize per-cluster point (index) containers
 		for (int i = 0; i < foundClusters.size(); i++) {
-    		pointsInFC.add(new ArrayList<SubspaceDataPoint>());
+    		pointsInFC.add(new ArrayList<Integer>());
     	}
 
     	for (int i = 0; i < gtClusters.size(); i++) {
-    		pointsInGC.add(new ArrayList<SubspaceDataPoint>());
+    		pointsInGC.add(new ArrayList<Integer>());
     	}		
 		
 		double inclusionProbabilityThreshold = 0.5;
 		int numDims = points.get(0).getClassLabels().length;
 				
-		int union = 0;
+		double union = 0;
 		
 		// Full-space (just in case)
 		boolean[] fullSpace = new boolean[numDims];
@@ -66,7 +76,8 @@ public class CE extends SubspaceMeasureCollection {
 		}
 		
 		// Calculate union
-    	for (SubspaceDataPoint p : points) {
+    	for (int n = 0; n < points.size(); n++) {
+    		SubspaceDataPoint p = points.get(n);
     		int[] dimCoveredByFCs = new int[numDims],
     			  dimCoveredByGCs = new int[numDims];
     		
@@ -88,7 +99,7 @@ public class CE extends SubspaceMeasureCollection {
     						dimCoveredByFCs[j]++;
     					}
     				}
-    				pointsInFC.get(i).add(p);	// To be used to construct confusion matrix
+    				pointsInFC.get(i).add(n);	// To be used to construct confusion matrix
     			}
     		}
     		
@@ -104,12 +115,12 @@ public class CE extends SubspaceMeasureCollection {
     						dimCoveredByGCs[j]++;
     					}
     				}
-    				pointsInGC.get(i).add(p);	// To be used to construct confusion matrix
+    				pointsInGC.get(i).add(n);	// To be used to construct confusion matrix
     			}
     		}
     		
     		for (int j = 0; j < numDims; j++) {
-    			union += Math.max(dimCoveredByFCs[j], dimCoveredByGCs[j]);
+    			union += weightOf(pointWeights, n) * Math.max(dimCoveredByFCs[j], dimCoveredByGCs[j]);
     		}
     	}
     	
@@ -148,10 +159,10 @@ public class CE extends SubspaceMeasureCollection {
 				}
 				
 				// Common objects
-				int sharedObj = 0;
-				for (SubspaceDataPoint p1 : pointsInGC.get(count1)) {
-					if (pointsInFC.get(count2).contains(p1))
-						sharedObj++;
+				double sharedObj = 0;
+				for (int n : pointsInGC.get(count1)) {
+					if (pointsInFC.get(count2).contains(n))
+						sharedObj += weightOf(pointWeights, n);
 				}
 				
 				cost[count1][count2] = sharedDims * sharedObj;
@@ -177,7 +188,7 @@ public class CE extends SubspaceMeasureCollection {
 		dmax *= -1;		// Now we get the maximum
 		
 	    if (debug) System.out.println("CE: union = " + union + " / dmax = " + dmax);
-    	double CE = 1 - (double)(union - dmax) / (double)union;
+    	double CE = 1 - (union - dmax) / union;
     	addSubValue("1.0-CE", CE);
 	}
 	
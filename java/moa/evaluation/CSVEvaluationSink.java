@@ -0,0 +1,83 @@
+/**
+ * [CSVEvaluationSink.java] for Subspace MOA
+ *
+ * Evaluation output: Buffered csv file in the format of the former dump file of
+ * EvaluateSubspaceClustering. The buffer is flushed every flushInterval rows, so a
+ * crashed run only loses the last few evaluation points.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.evaluation;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+public class CSVEvaluationSink extends EvaluationSink {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String DELIMITER = ";";
+
+	private String filepath;
+	private int flushInterval;
+	private transient Writer out;
+
+
+	public CSVEvaluationSink(String filepath, int flushInterval) {
+		if (!filepath.endsWith(".csv")) {
+			filepath += ".csv";
+		}
+		this.filepath = filepath;
+		this.flushInterval = flushInterval;
+	}
+
+	public String getFilepath() {
+		return filepath;
+	}
+
+	@Override
+	protected void openImpl(String[] columns) throws IOException {
+		out = new BufferedWriter(new FileWriter(filepath));
+		out.write("Nr" + DELIMITER);
+		out.write("Event" + DELIMITER);
+		for (int i = 0; i < columns.length; i++) {
+			out.write(columns[i] + DELIMITER);
+		}
+		out.write("\n");
+		out.flush();
+	}
+
+	@Override
+	protected void writeRow(long nr, String event, double[] values) throws IOException {
+		out.write(nr + DELIMITER);
+		out.write(event + DELIMITER);
+		for (int i = 0; i < values.length; i++) {
+			out.write(values[i] + DELIMITER);
+		}
+		out.write("\n");
+
+		if (flushInterval > 0 && (nr + 1) % flushInterval == 0) {
+			out.flush();
+		}
+	}
+
+	@Override
+	protected void writeSummary(String label, double[] values) throws IOException {
+		out.write(label + DELIMITER + DELIMITER);
+		for (int i = 0; i < values.length; i++) {
+			out.write(values[i] + DELIMITER);
+		}
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+	}
+}
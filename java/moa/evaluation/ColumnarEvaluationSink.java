@@ -0,0 +1,118 @@
+/**
+ * [ColumnarEvaluationSink.java] for Subspace MOA
+ *
+ * Evaluation output: Compact binary file. Rows are collected into blocks of
+ * blockSize evaluation points, and every block is written column by column.
+ *
+ * Layout (big endian, as written by DataOutputStream):
+ *   int MAGIC, int VERSION, int #columns, UTF column names
+ *   data block:    int #rows (> 0), long first row nr, #rows UTF events,
+ *                  #columns x #rows doubles
+ *   summary block: int -1, UTF label, #columns doubles
+ *   end of file:   int 0
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.evaluation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public class ColumnarEvaluationSink extends EvaluationSink {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int MAGIC = 0x534d4556;		// "SMEV"
+	public static final int VERSION = 1;
+
+	private String filepath;
+	private int blockSize;
+	private transient DataOutputStream out;
+
+	private double[][] block;		// [column][row]
+	private String[] blockEvents;
+	private int blockRows;
+	private long blockFirstNr;
+
+
+	public ColumnarEvaluationSink(String filepath, int blockSize) {
+		this.filepath = filepath;
+		this.blockSize = Math.max(1, blockSize);
+	}
+
+	public String getFilepath() {
+		return filepath;
+	}
+
+	@Override
+	protected void openImpl(String[] columns) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filepath)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(columns.length);
+		for (int i = 0; i < columns.length; i++) {
+			out.writeUTF(columns[i]);
+		}
+		out.flush();
+
+		block = new double[columns.length][blockSize];
+		blockEvents = new String[blockSize];
+		blockRows = 0;
+	}
+
+	@Override
+	protected void writeRow(long nr, String event, double[] values) throws IOException {
+		if (blockRows == 0) {
+			blockFirstNr = nr;
+		}
+		for (int c = 0; c < values.length; c++) {
+			block[c][blockRows] = values[c];
+		}
+		blockEvents[blockRows] = event;
+		blockRows++;
+
+		if (blockRows == blockSize) {
+			flushBlock();
+		}
+	}
+
+	private void flushBlock() throws IOException {
+		if (blockRows == 0) return;
+		out.writeInt(blockRows);
+		out.writeLong(blockFirstNr);
+		for (int r = 0; r < blockRows; r++) {
+			out.writeUTF(blockEvents[r]);
+			blockEvents[r] = null;
+		}
+		for (int c = 0; c < block.length; c++) {
+			for (int r = 0; r < blockRows; r++) {
+				out.writeDouble(block[c][r]);
+			}
+		}
+		out.flush();
+		blockRows = 0;
+	}
+
+	@Override
+	protected void writeSummary(String label, double[] values) throws IOException {
+		flushBlock();
+		out.writeInt(-1);
+		out.writeUTF(label);
+		for (int c = 0; c < values.length; c++) {
+			out.writeDouble(values[c]);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (out != null) {
+			flushBlock();
+			out.writeInt(0);
+			out.close();
+			out = null;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/**
+ * [EvaluationSink.java] for Subspace MOA
+ *
+ * Evaluation output: Base class for destinations that measure values are pushed to
+ * while the stream is evaluated. Values are collected column by column and handed
+ * over to the concrete sink one row (= one evaluation point) at a time, so nothing
+ * has to be kept in memory for the whole run.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.evaluation;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+public abstract class EvaluationSink implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private String[] columns;
+	private double[] row;
+	private boolean rowStarted;
+	private long numRows;
+
+
+	public void open(String[] columns) throws IOException {
+		this.columns = columns;
+		row = new double[columns.length];
+		Arrays.fill(row, Double.NaN);
+		rowStarted = false;
+		numRows = 0;
+		openImpl(columns);
+	}
+
+	/**
+	 * Assigns a column of this sink to every enabled measure of the given collections
+	 * and opens the sink with the corresponding header.
+	 */
+	public void open(SubspaceMeasureCollection[] measures) throws IOException {
+		open(new SubspaceMeasureCollection[][] {measures}, new String[] {""});
+	}
+
+	/**
+	 * Same for several groups of collections (e.g. one per evaluated clusterer),
+	 * written side by side. Column names are prefixed by the name of their group.
+	 */
+	public void open(SubspaceMeasureCollection[][] groups, String[] prefixes) throws IOException {
+		int numColumns = 0;
+		for (SubspaceMeasureCollection[] measures : groups) {
+			for (int i = 0; i < measures.length; i++) {
+				for (int j = 0; j < measures[i].getNumMeasures(); j++) {
+					if (measures[i].isEnabled(j)) numColumns++;
+				}
+			}
+		}
+
+		String[] names = new String[numColumns];
+		int column = 0;
+		for (int g = 0; g < groups.length; g++) {
+			SubspaceMeasureCollection[] measures = groups[g];
+			for (int i = 0; i < measures.length; i++) {
+				int[] columnOf = new int[measures[i].getNumMeasures()];
+				for (int j = 0; j < measures[i].getNumMeasures(); j++) {
+					if (measures[i].isEnabled(j)) {
+						names[column] = prefixes[g] + measures[i].getName(j);
+						columnOf[j] = column++;
+					} else {
+						columnOf[j] = -1;
+					}
+				}
+				measures[i].setSink(this, columnOf);
+			}
+		}
+
+		open(names);
+	}
+
+	public void putValue(int column, double value) {
+		row[column] = value;
+		rowStarted = true;
+	}
+
+	/**
+	 * Finishes the current evaluation point. Does nothing if no value was put since
+	 * the last call.
+	 *
+	 * @param event	Type of the cluster event(s) which happened up to this point or null
+	 */
+	public void endRow(String event) throws IOException {
+		if (!rowStarted) return;
+		writeRow(numRows, event == null ? "" : event, row);
+		numRows++;
+		Arrays.fill(row, Double.NaN);
+		rowStarted = false;
+	}
+
+	/**
+	 * Writes the aggregated statistics of the given collections (e.g. the means)
+	 * and closes the sink.
+	 */
+	public void close(SubspaceMeasureCollection[] measures) throws IOException {
+		close(new SubspaceMeasureCollection[][] {measures});
+	}
+
+	public void close(SubspaceMeasureCollection[][] groups) throws IOException {
+		endRow(null);
+		double[] means = new double[columns.length];
+		int column = 0;
+		for (SubspaceMeasureCollection[] measures : groups) {
+			for (int i = 0; i < measures.length; i++) {
+				for (int j = 0; j < measures[i].getNumMeasures(); j++) {
+					if (measures[i].isEnabled(j)) {
+						means[column++] = measures[i].getMean(j);
+					}
+				}
+				measures[i].setSink(null, null);
+			}
+		}
+		writeSummary("mean", means);
+		close();
+	}
+
+	public long getNumberOfRows() {
+		return numRows;
+	}
+
+	public String[] getColumns() {
+		return columns;
+	}
+
+	protected abstract void openImpl(String[] columns) throws IOException;
+
+	protected abstract void writeRow(long nr, String event, double[] values) throws IOException;
+
+	protected abstract void writeSummary(String label, double[] values) throws IOException;
+
+	public abstract void close() throws IOException;
+}
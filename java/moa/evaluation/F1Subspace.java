@@ -35,8 +35,18 @@ public class F1Subspace extends SubspaceMeasureCollection {
         return defaults;
     }
 
+	@Override
+	public boolean supportsPointWeights() {
+		return true;
+	}
+
 	@Override
 	protected void subEvaluateSubspaceClustering(SubspaceClustering foundClustering, SubspaceClustering gtClustering, List<SubspaceDataPoint> points) throws Exception {
+		subEvaluateSubspaceClustering(foundClustering, gtClustering, points, null);
+	}
+
+	@Override
+	protected void subEvaluateSubspaceClustering(SubspaceClustering foundClustering, SubspaceClustering gtClustering, List<SubspaceDataPoint> points, double[] pointWeights) throws Exception {
 		
 		HashMap<Double, Integer> labelMap = gtClustering.getLabelMap();
 		int numClasses = labelMap.size();
@@ -44,58 +54,62 @@ public class F1Subspace extends SubspaceMeasureCollection {
 			numClasses--; // w/o noise
 		}
 		
-		// Assign points to found clusters
+		// Assign points (by index) to found clusters
 		List<Cluster> foundClusters = foundClustering.getClustering();
-		List<List<SubspaceDataPoint>> pointsInFC = new ArrayList<List<SubspaceDataPoint>>();
+		List<List<Integer>> pointsInFC = new ArrayList<List<Integer>>();
 		
 		for (Cluster fc : foundClusters) {
-    		pointsInFC.add(new ArrayList<SubspaceDataPoint>());
+    		pointsInFC.add(new ArrayList<Integer>());
     	}
 		
 		double inclusionProbabilityThreshold = 0.5;
-    	for (SubspaceDataPoint p : points) {
+    	for (int n = 0; n < points.size(); n++) {
+    		SubspaceDataPoint p = points.get(n);
     		for (int i = 0; i < foundClusters.size(); i++) {
     			Cluster fc = foundClusters.get(i);
     			if (fc.getInclusionProbability(p) >= inclusionProbabilityThreshold) {
-    				pointsInFC.get(i).add(p);
+    				pointsInFC.get(i).add(n);
     			}
     		}
     	}
     	
     	
     	// Count the objects for each label (GROUND TRUTH)
-    	List<List<SubspaceDataPoint>> pointsForLabel = new ArrayList<List<SubspaceDataPoint>>();
+    	List<List<Integer>> pointsForLabel = new ArrayList<List<Integer>>();
+    	double[] weightForLabel = new double[numClasses];
     	
     	for (int m = 0; m < numClasses; m++) {
-    		pointsForLabel.add(new ArrayList<SubspaceDataPoint>());
+    		pointsForLabel.add(new ArrayList<Integer>());
     	}
-    	for (int i = 0; i < points.size(); i++) {
-    		SubspaceDataPoint p = points.get(i);
+    	for (int n = 0; n < points.size(); n++) {
+    		SubspaceDataPoint p = points.get(n);
 			for (double label : p.getClassLabelSet()) {
 				if (label == p.getNoiseLabel())		// Don't count noise
 					continue;
-				else
-					pointsForLabel.get(labelMap.get(label)).add(p);
+				else {
+					pointsForLabel.get(labelMap.get(label)).add(n);
+					weightForLabel[labelMap.get(label)] += weightOf(pointWeights, n);
+				}
 			}
     	}
     	
     			
 		/** Class-clusters mapping **/
-    	List<Set<SubspaceDataPoint>> mappedPointsForLabel = new ArrayList<Set<SubspaceDataPoint>>();
+    	List<Set<Integer>> mappedPointsForLabel = new ArrayList<Set<Integer>>();
     	
     	for (int m = 0; m < numClasses; m++) {
-    		mappedPointsForLabel.add(new HashSet<SubspaceDataPoint>());
+    		mappedPointsForLabel.add(new HashSet<Integer>());
     	}
     	
     	for (int i = 0; i < pointsInFC.size(); i++) {
-    		int[] classDistributionFC = new int[numClasses];
+    		double[] classDistributionFC = new double[numClasses];
     		
-    		for (SubspaceDataPoint p : pointsInFC.get(i)) {
-    			for (double label : p.getClassLabelSet()) {
+    		for (int n : pointsInFC.get(i)) {
+    			for (double label : points.get(n).getClassLabelSet()) {
     				if (label == -1.0)		// Don't count noise
     					continue;
     				else {
-    					classDistributionFC[labelMap.get(label)]++;
+    					classDistributionFC[labelMap.get(label)] += weightOf(pointWeights, n);
     				}
     			}
     		}
@@ -103,7 +117,7 @@ public class F1Subspace extends SubspaceMeasureCollection {
     		double maxCovered = 0.0;
     		int maxCoveredIndex = -1;
     		for (int m = 0; m < numClasses; m++) {
-    			double covered = (double)classDistributionFC[m] / (double)pointsForLabel.get(m).size();
+    			double covered = classDistributionFC[m] / weightForLabel[m];
     			if (covered > maxCovered) {
     				maxCovered = covered;
     				maxCoveredIndex = m;
@@ -124,11 +138,15 @@ public class F1Subspace extends SubspaceMeasureCollection {
 		double m_F1 = 0.0;
 		
 		for (int m = 0; m < numClasses; m++){
-			int intersect = 0;
+			double intersect = 0;
+			double mappedWeight = 0;
 			
-			for (SubspaceDataPoint p : pointsForLabel.get(m)) {
-				if (mappedPointsForLabel.get(m).contains(p))
-					intersect++;
+			for (int n : pointsForLabel.get(m)) {
+				if (mappedPointsForLabel.get(m).contains(n))
+					intersect += weightOf(pointWeights, n);
+			}
+			for (int n : mappedPointsForLabel.get(m)) {
+				mappedWeight += weightOf(pointWeights, n);
 			}
 			
 			m_precision[m] = 0;
@@ -137,9 +155,9 @@ public class F1Subspace extends SubspaceMeasureCollection {
 			if (mappedPointsForLabel.get(m).size() == 0 && pointsForLabel.get(m).size() == 0) {
 				m_F1_values[m] = 0;
 			} else {
-				m_F1_values[m] = 2 * (double)intersect / (mappedPointsForLabel.get(m).size() + pointsForLabel.get(m).size());
-				if (mappedPointsForLabel.get(m).size() != 0) m_precision[m] = (double)intersect / mappedPointsForLabel.get(m).size();
-				if (pointsForLabel.get(m).size() != 0) m_recall[m] = (double)intersect / pointsForLabel.get(m).size();
+				m_F1_values[m] = 2 * intersect / (mappedWeight + weightForLabel[m]);
+				if (mappedPointsForLabel.get(m).size() != 0) m_precision[m] = intersect / mappedWeight;
+				if (pointsForLabel.get(m).size() != 0) m_recall[m] = intersect / weightForLabel[m];
 			}
 
 			m_F1 += m_F1_values[m];
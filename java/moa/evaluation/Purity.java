@@ -34,10 +34,23 @@ public class Purity extends SubspaceMeasureCollection {
         return defaults;
     }
 	
+	@Override
+	public boolean supportsPointWeights() {
+		return true;
+	}
+	
 	@Override
 	protected void subEvaluateSubspaceClustering(SubspaceClustering foundClustering,
 											  SubspaceClustering trueClustering,
 											  List<SubspaceDataPoint> points) throws Exception {
+		subEvaluateSubspaceClustering(foundClustering, trueClustering, points, null);
+	}
+	
+	@Override
+	protected void subEvaluateSubspaceClustering(SubspaceClustering foundClustering,
+											  SubspaceClustering trueClustering,
+											  List<SubspaceDataPoint> points,
+											  double[] pointWeights) throws Exception {
 		HashMap<Double, Integer> labelMap = trueClustering.getLabelMap();
 		int numClasses = labelMap.size();
 		if (trueClustering.hasNoise()) {
@@ -55,7 +68,8 @@ public class Purity extends SubspaceMeasureCollection {
 		int numFound = foundClusters.size();
 		
 		List<List<SubspaceDataPoint>> pointsInFC = new ArrayList<List<SubspaceDataPoint>>();
-		int[][] classDistFC = new int[numFound][numClasses];
+		double[][] classDistFC = new double[numFound][numClasses];
+		double[] weightInFC = new double[numFound];
 		
 		// Initialize
 		for (int i = 0; i < numFound; i++) {
@@ -66,14 +80,17 @@ public class Purity extends SubspaceMeasureCollection {
     	}
 		
 		double inclusionProbabilityThreshold = 0.5;
-    	for (SubspaceDataPoint p : points) {
+    	for (int n = 0; n < points.size(); n++) {
+    		SubspaceDataPoint p = points.get(n);
+    		double w = weightOf(pointWeights, n);
     		double label = p.classValue();
     		if (label != p.getNoiseLabel()) {
 	    		for (int i = 0; i < foundClusters.size(); i++) {
 	    			Cluster fc = foundClusters.get(i);
 	    			if (fc.getInclusionProbability(p) >= inclusionProbabilityThreshold) {
 	    				pointsInFC.get(i).add(p);
-	    				classDistFC[i][labelMap.get(label)]++;
+	    				classDistFC[i][labelMap.get(label)] += w;
+	    				weightInFC[i] += w;
 	    			}
 	    		}
     		}
@@ -94,7 +111,7 @@ public class Purity extends SubspaceMeasureCollection {
 	    			}
 	    		}
 	    		dominatingIndex[i] = dominating;
-	    		purityEachFC[i] = (double) classDistFC[i][dominating] / (double) pointsInFC.get(i).size();
+	    		purityEachFC[i] = classDistFC[i][dominating] / weightInFC[i];
 	    		puritySum += purityEachFC[i];
     		}
     	}
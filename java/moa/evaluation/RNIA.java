@@ -36,16 +36,26 @@ public class RNIA extends SubspaceMeasureCollection {
         return defaults;
     }
 
+	@Override
+	public boolean supportsPointWeights() {
+		return true;
+	}
+
 	@Override
 	protected void subEvaluateSubspaceClustering(SubspaceClustering foundClustering, SubspaceClustering gtClustering, List<SubspaceDataPoint> points) throws Exception {
+		subEvaluateSubspaceClustering(foundClustering, gtClustering, points, null);
+	}
+
+	@Override
+	protected void subEvaluateSubspaceClustering(SubspaceClustering foundClustering, SubspaceClustering gtClustering, List<SubspaceDataPoint> points, double[] pointWeights) throws Exception {
 		List<Cluster> foundClusters = foundClustering.getClustering();
 		List<Cluster> gtClusters = gtClustering.getClustering();
 		
 		double inclusionProbabilityThreshold = 0.5;
 		int numDims = points.get(0).getClassLabels().length;
 				
-		int union = 0;
-		int intersection = 0;
+		double union = 0;
+		double intersection = 0;
 		
 		// Full-space (just in case)
 		boolean[] fullSpace = new boolean[numDims];
@@ -53,7 +63,9 @@ public class RNIA extends SubspaceMeasureCollection {
 			fullSpace[j] = true;
 		}
 
-    	for (SubspaceDataPoint p : points) {
+    	for (int n = 0; n < points.size(); n++) {
+    		SubspaceDataPoint p = points.get(n);
+    		double w = weightOf(pointWeights, n);
     		int[] dimCoveredByFCs = new int[numDims],
       			  dimCoveredByGCs = new int[numDims];
       		
@@ -93,12 +105,12 @@ public class RNIA extends SubspaceMeasureCollection {
     		}
     		
     		for (int j = 0; j < numDims; j++) {
-    			union += Math.max(dimCoveredByFCs[j], dimCoveredByGCs[j]);
-    			intersection += Math.min(dimCoveredByFCs[j], dimCoveredByGCs[j]);
+    			union += w * Math.max(dimCoveredByFCs[j], dimCoveredByGCs[j]);
+    			intersection += w * Math.min(dimCoveredByFCs[j], dimCoveredByGCs[j]);
     		}
     	}
     	
-    	double RNIA = 1 - (double)(union - intersection) / (double)union;
+    	double RNIA = 1 - (union - intersection) / union;
     	if (debug) System.out.println("RNIA: union = " + union + " / intersection = " + intersection);
     	
     	addSubValue("1.0-RNIA", RNIA);
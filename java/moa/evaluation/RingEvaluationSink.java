@@ -0,0 +1,112 @@
+/**
+ * [RingEvaluationSink.java] for Subspace MOA
+ *
+ * Evaluation output: Keeps only the last capacity evaluation points in memory,
+ * e.g. for displaying the recent history of a long-running stream.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.evaluation;
+
+import java.io.IOException;
+
+public class RingEvaluationSink extends EvaluationSink {
+
+	private static final long serialVersionUID = 1L;
+
+	private int capacity;
+
+	private double[][] rows;		// [slot][column]
+	private String[] events;
+	private long[] nrs;
+	private int next;
+	private int size;
+
+	private String summaryLabel;
+	private double[] summary;
+
+
+	public RingEvaluationSink(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("RingEvaluationSink: capacity must be positive");
+		}
+		this.capacity = capacity;
+	}
+
+	@Override
+	protected void openImpl(String[] columns) throws IOException {
+		rows = new double[capacity][columns.length];
+		events = new String[capacity];
+		nrs = new long[capacity];
+		next = 0;
+		size = 0;
+		summaryLabel = null;
+		summary = null;
+	}
+
+	@Override
+	protected synchronized void writeRow(long nr, String event, double[] values) {
+		System.arraycopy(values, 0, rows[next], 0, values.length);
+		events[next] = event;
+		nrs[next] = nr;
+		next = (next + 1) % capacity;
+		if (size < capacity) size++;
+	}
+
+	@Override
+	protected synchronized void writeSummary(String label, double[] values) {
+		summaryLabel = label;
+		summary = values.clone();
+	}
+
+	@Override
+	public void close() {
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Number of evaluation points currently held, at most capacity.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	private int slot(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("RingEvaluationSink: " + i + " not in [0, " + size + ")");
+		}
+		return (next - size + i + capacity) % capacity;
+	}
+
+	/**
+	 * @param i	Index of a held evaluation point, 0 = oldest
+	 */
+	public synchronized double getValue(int i, int column) {
+		return rows[slot(i)][column];
+	}
+
+	public synchronized long getRowNumber(int i) {
+		return nrs[slot(i)];
+	}
+
+	public synchronized String getEvent(int i) {
+		return events[slot(i)];
+	}
+
+	public synchronized double getLastValue(int column) {
+		if (size == 0) return Double.NaN;
+		return rows[slot(size - 1)][column];
+	}
+
+	public synchronized String getSummaryLabel() {
+		return summaryLabel;
+	}
+
+	public synchronized double[] getSummary() {
+		return summary;
+	}
+}
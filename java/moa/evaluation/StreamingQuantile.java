@@ -0,0 +1,134 @@
+/**
+ * [StreamingQuantile.java] for Subspace MOA
+ *
+ * Evaluation helper: constant-memory quantile estimate of a value stream
+ *
+ * Reference: Jain and Chlamtac, "The P^2 Algorithm for Dynamic Calculation of
+ * Quantiles and Histograms Without Storing Observations", CACM, 1985
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.evaluation;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+public class StreamingQuantile implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final double p;
+
+	private final double[] heights = new double[5];		// Marker heights q_i
+	private final int[] positions = new int[5];			// Actual marker positions n_i
+	private final double[] desired = new double[5];		// Desired marker positions n'_i
+	private final double[] increments = new double[5];	// Increments of the desired positions dn'_i
+
+	private int count;
+
+
+	public StreamingQuantile(double p) {
+		if (p <= 0 || p >= 1) {
+			throw new IllegalArgumentException("StreamingQuantile: p must be in (0, 1)");
+		}
+		this.p = p;
+		clear();
+	}
+
+	public void clear() {
+		count = 0;
+		for (int i = 0; i < 5; i++) {
+			positions[i] = i + 1;
+		}
+		desired[0] = 1;
+		desired[1] = 1 + 2 * p;
+		desired[2] = 1 + 4 * p;
+		desired[3] = 3 + 2 * p;
+		desired[4] = 5;
+		increments[0] = 0;
+		increments[1] = p / 2;
+		increments[2] = p;
+		increments[3] = (1 + p) / 2;
+		increments[4] = 1;
+	}
+
+	public void add(double value) {
+		// The first five observations are kept as they are
+		if (count < 5) {
+			heights[count++] = value;
+			if (count == 5) {
+				Arrays.sort(heights);
+			}
+			return;
+		}
+		count++;
+
+		// Find the cell k the new value falls into, adjusting the extremes
+		int k;
+		if (value < heights[0]) {
+			heights[0] = value;
+			k = 0;
+		} else if (value >= heights[4]) {
+			heights[4] = value;
+			k = 3;
+		} else {
+			k = 0;
+			while (value >= heights[k + 1]) {
+				k++;
+			}
+		}
+
+		for (int i = k + 1; i < 5; i++) {
+			positions[i]++;
+		}
+		for (int i = 0; i < 5; i++) {
+			desired[i] += increments[i];
+		}
+
+		// Adjust the heights of the three middle markers if necessary
+		for (int i = 1; i < 4; i++) {
+			double d = desired[i] - positions[i];
+			if ((d >= 1 && positions[i + 1] - positions[i] > 1) || (d <= -1 && positions[i - 1] - positions[i] < -1)) {
+				int sign = d >= 0 ? 1 : -1;
+				double q = parabolic(i, sign);
+				if (heights[i - 1] < q && q < heights[i + 1]) {
+					heights[i] = q;
+				} else {
+					heights[i] = linear(i, sign);
+				}
+				positions[i] += sign;
+			}
+		}
+	}
+
+	private double parabolic(int i, int d) {
+		return heights[i] + (double) d / (positions[i + 1] - positions[i - 1])
+				* ((positions[i] - positions[i - 1] + d) * (heights[i + 1] - heights[i]) / (positions[i + 1] - positions[i])
+				 + (positions[i + 1] - positions[i] - d) * (heights[i] - heights[i - 1]) / (positions[i] - positions[i - 1]));
+	}
+
+	private double linear(int i, int d) {
+		return heights[i] + d * (heights[i + d] - heights[i]) / (positions[i + d] - positions[i]);
+	}
+
+	/**
+	 * Current estimate of the p-quantile. Exact as long as less than six values
+	 * have been seen, NaN if there are none.
+	 */
+	public double getQuantile() {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		if (count <= 5) {
+			double[] sorted = Arrays.copyOf(heights, count);
+			Arrays.sort(sorted);
+			return sorted[(int) Math.min(count - 1, Math.round((count - 1) * p))];
+		}
+		return heights[2];
+	}
+
+	public int getCount() {
+		return count;
+	}
+}
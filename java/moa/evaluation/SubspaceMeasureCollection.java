@@ -23,23 +23,32 @@ public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
 	
 	private String[] names;
     private ArrayList<Double>[] values;
-    private ArrayList<Double>[] sortedValues;
     private ArrayList<String> events;
     
     private double[] minValue;
     private double[] maxValue;
     private double[] sumValues;
+    private double[] lastValue;
+    private int[] numValues;
+    private StreamingQuantile[] lowerQuartile;
+    private StreamingQuantile[] median;
+    private StreamingQuantile[] upperQuartile;
     private boolean[] enabled;
     private int[] corrupted;
     private double time;
     private boolean debug = true;
+    private boolean keepHistory = true;
     private MembershipMatrix mm = null;
 
     private HashMap<String, Integer> map;
 
     private int numMeasures = 0;
     
-    private ArrayList<Double>[] subValues;
+    private double[] subSums;
+    private int[] subCounts;
+
+    private EvaluationSink sink = null;
+    private int[] sinkColumns = null;
 
 
      public SubspaceMeasureCollection() {
@@ -50,11 +59,16 @@ public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
              map.put(names[i],i);
         }
         values = (ArrayList<Double>[]) new ArrayList[numMeasures];
-        subValues = (ArrayList<Double>[]) new ArrayList[numMeasures];
-        sortedValues = (ArrayList<Double>[]) new ArrayList[numMeasures];
         maxValue = new double[numMeasures];
         minValue = new double[numMeasures];
         sumValues = new double[numMeasures];
+        lastValue = new double[numMeasures];
+        numValues = new int[numMeasures];
+        lowerQuartile = new StreamingQuantile[numMeasures];
+        median = new StreamingQuantile[numMeasures];
+        upperQuartile = new StreamingQuantile[numMeasures];
+        subSums = new double[numMeasures];
+        subCounts = new int[numMeasures];
         corrupted = new int[numMeasures];
         enabled = getDefaultEnabled();
         time = 0;
@@ -62,10 +76,12 @@ public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
 
         for (int i = 0; i < numMeasures; i++) {
             values[i] = new ArrayList<Double>();
-            subValues[i] = new ArrayList<Double>();
-            sortedValues[i] = new ArrayList<Double>();
+            lowerQuartile[i] = new StreamingQuantile(0.25);
+            median[i] = new StreamingQuantile(0.5);
+            upperQuartile[i] = new StreamingQuantile(0.75);
             maxValue[i] = Double.MIN_VALUE;
             minValue[i] = Double.MAX_VALUE;
+            lastValue[i] = Double.NaN;
             corrupted[i] = 0;
             sumValues[i] = 0.0;
         }
@@ -85,9 +101,20 @@ public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
         
 	        if (value < minValue[index]) minValue[index] = value;
 	        if (value > maxValue[index]) maxValue[index] = value;
+	        
+	        lowerQuartile[index].add(value);
+	        median[index].add(value);
+	        upperQuartile[index].add(value);
         }
         
-        values[index].add(value);
+        lastValue[index] = value;
+        numValues[index]++;
+        if (keepHistory) {
+        	values[index].add(value);
+        }
+        if (sink != null && sinkColumns[index] >= 0) {
+        	sink.putValue(sinkColumns[index], value);
+        }
     }
 
     protected void addValue(String name, double value){
@@ -100,7 +127,9 @@ public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
     
     protected void addSubValue(String name, double value) {
     	if (map.containsKey(name)) {
-    		subValues[map.get(name)].add(value);
+    		int index = map.get(name);
+    		subSums[index] += value;
+    		subCounts[index]++;
     	} else {
             System.out.println(name + " is not a valid measure key, no value added");
         }
@@ -108,7 +137,8 @@ public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
      
     //add an empty entry e.g. if evaluation crashed internally
     public void addEmptySubValue(int index) {
-        subValues[index].add(Double.NaN);
+        subSums[index] = Double.NaN;
+        subCounts[index]++;
     }
 
     public int getNumMeasures(){
@@ -128,74 +158,49 @@ public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
     }
 
     public double getLastValue(int index){
-         if (values[index].size() < 1) return Double.NaN;
-         double value = values[index].get(values[index].size() - 1);
-         if (Double.isNaN(value))
-        	 return Double.NaN;
-         else
-        	 return value;
+         return lastValue[index];
      }
 
      public double getMean(int index){
-         if (values[index].size() < 1)
+         if (numValues[index] < 1)
              return Double.NaN;
 
-         return sumValues[index] / (values[index].size() - corrupted[index]);
-     }
-
-     private void updateSortedValues(int index){
-         //naive implementation of insertion sort
-         for (int i = sortedValues[index].size(); i < values[index].size(); i++) {
-             double v = values[index].get(i);
-             int insertIndex = 0;
-             while(!sortedValues[index].isEmpty() && insertIndex < sortedValues[index].size() && v > sortedValues[index].get(insertIndex))
-                 insertIndex++;
-             sortedValues[index].add(insertIndex,v);
-         }
-//         for (int i = 0; i < sortedValues[index].size(); i++) {
-//             System.out.print(sortedValues[index].get(i)+" ");
-//         }
-//         System.out.println();
+         return sumValues[index] / (numValues[index] - corrupted[index]);
      }
 
+     /*
+      * Used to drop the sorted copy of the values, which was rebuilt on the next
+      * query. The streaming estimates below have nothing of the kind to drop, so
+      * this doesn't affect them.
+      */
      public void clean(int index){
-         sortedValues[index].clear();
      }
 
+     /*
+      * Median and quartiles are streaming estimates (P^2), exact for up to
+      * five values. Invalid (NaN or negative) values are not taken into account.
+      */
      public double getMedian(int index){
-         updateSortedValues(index);
-         int size = sortedValues[index].size();
-
-         if(size > 0){
-             if(size%2 == 1)
-                 return sortedValues[index].get((int)(size/2));
-             else
-                 return (sortedValues[index].get((size-1)/2)+sortedValues[index].get((size-1)/2+1))/2.0;
-         }
-         return Double.NaN;
+         return median[index].getQuantile();
     }
 
      public double getLowerQuartile(int index){
-         updateSortedValues(index);
-         int size = sortedValues[index].size();
-         if(size > 11){
-             return sortedValues[index].get(Math.round(size*0.25f));
+         if(lowerQuartile[index].getCount() > 11){
+             return lowerQuartile[index].getQuantile();
          }
          return Double.NaN;
      }
 
      public double getUpperQuartile(int index){
-         updateSortedValues(index);
-         int size = sortedValues[index].size();
-         if(size > 11){
-             return sortedValues[index].get(Math.round(size*0.75f-1));
+         if(upperQuartile[index].getCount() > 11){
+             return upperQuartile[index].getQuantile();
          }
          return Double.NaN;
      }
 
 
      public int getNumberOfValues(int index){
-         return values[index].size();
+         return numValues[index];
      }
 
      public double getValue(int index, int i){
@@ -203,10 +208,37 @@ public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
          return values[index].get(i);
      }
 
+     /*
+      * Values are only held in memory if keepHistory is on (default). Otherwise
+      * this returns an empty list and getValue() NaN; attach an EvaluationSink
+      * to get hold of the values.
+      */
      public ArrayList<Double> getAllValues(int index){
          return values[index];
      }
 
+     public void setKeepHistory(boolean keepHistory){
+         this.keepHistory = keepHistory;
+         if (!keepHistory) {
+             for (int i = 0; i < numMeasures; i++) {
+                 values[i] = new ArrayList<Double>();
+             }
+         }
+     }
+
+     public boolean isKeepingHistory(){
+         return keepHistory;
+     }
+
+     /*
+      * Every value added for measure i is pushed to column columns[i] of the sink
+      * (-1 = not pushed). Usually called through EvaluationSink.open().
+      */
+     public void setSink(EvaluationSink sink, int[] columns){
+         this.sink = sink;
+         this.sinkColumns = columns;
+     }
+
      public void setEnabled(int index, boolean value){
          enabled[index] = value;
      }
@@ -215,9 +247,16 @@ public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
          return enabled[index];
      }
 
+     /*
+      * Whether invalid (NaN or negative) values are reported on the console
+      */
+     public void setDebug(boolean debug){
+         this.debug = debug;
+     }
+
      public double getMeanRunningTime(){
-         if(values[0].size()!=0)
-            return (time/10e5/values[0].size());
+         if(numValues[0]!=0)
+            return (time/10e5/numValues[0]);
          else
              return 0;
      }
@@ -232,6 +271,23 @@ public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
 
     protected abstract void subEvaluateSubspaceClustering(SubspaceClustering clustering, SubspaceClustering trueClustering, List<SubspaceDataPoint> points) throws Exception;
 
+    /*
+     * Evaluation on weighted points, e.g. the sample of a WindowSummary: point i
+     * stands for pointWeights[i] points (null = 1 each). Measures which cannot take
+     * the weights into account evaluate the points as they are.
+     */
+    protected void subEvaluateSubspaceClustering(SubspaceClustering clustering, SubspaceClustering trueClustering, List<SubspaceDataPoint> points, double[] pointWeights) throws Exception {
+        subEvaluateSubspaceClustering(clustering, trueClustering, points);
+    }
+
+    public boolean supportsPointWeights() {
+        return false;
+    }
+
+    protected static double weightOf(double[] pointWeights, int i) {
+        return (pointWeights == null) ? 1.0 : pointWeights[i];
+    }
+
      /*
       * Evaluate Clustering
       *
@@ -245,19 +301,21 @@ public abstract class SubspaceMeasureCollection extends AbstractMOAObject{
         duration/=10e5;
         return duration;
     }
+
+    public double subEvaluateClusteringPerformance(SubspaceClustering clustering, SubspaceClustering trueClustering, List<SubspaceDataPoint> points, double[] pointWeights) throws Exception{
+        long start = System.nanoTime();
+        subEvaluateSubspaceClustering(clustering, trueClustering, points, pointWeights);
+        long duration = System.nanoTime()-start;
+        time+=duration;
+        duration/=10e5;
+        return duration;
+    }
      
     public void averageSubEvaluations() {
-    	for (int i = 0; i < subValues.length; i++) {
-    		double sum = 0.0;
-    		for (int j = 0; j < subValues[i].size(); j++) {
-    			sum += subValues[i].get(j);
-    		}
-    		addValue(names[i], sum / subValues[i].size());
-    	}
-    	
-    	subValues = (ArrayList<Double>[]) new ArrayList[numMeasures];
     	for (int i = 0; i < numMeasures; i++) {
-    		subValues[i] = new ArrayList<Double>();
+    		addValue(names[i], subSums[i] / subCounts[i]);
+    		subSums[i] = 0.0;
+    		subCounts[i] = 0;
     	}
     }
 
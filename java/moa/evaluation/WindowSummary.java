@@ -0,0 +1,338 @@
+/**
+ * [WindowSummary.java] for Subspace MOA
+ *
+ * Evaluation helper: Bounded-size summary of the points of the decay horizon,
+ * used instead of the point window for approximate evaluation. It estimates the
+ * measures exact mode computes on the window, where every point counts once.
+ *
+ * For each class (representing label, incl. noise) a CF vector (count, LS, SS)
+ * and a uniform sample of the points of the horizon are maintained online. The
+ * CF vector is kept in a few panes, and a pane is dropped once all its points
+ * have left the horizon; the part of the oldest pane which has already left is
+ * estimated by its share of the pane's time span.
+ *
+ * The sample is a priority sample over the sliding window (Babcock, Datar and
+ * Motwani, "Sampling from a moving window over streaming data", SODA, 2002):
+ * every point gets a uniform random priority, and the sample is made of the
+ * reservoirSize points of the horizon with the highest priorities. A point is
+ * kept as a candidate as long as fewer than reservoirSize newer points have a
+ * higher priority, so the sample can be refilled when points expire. A class with
+ * no more points in the horizon than reservoirSize is sampled completely.
+ *
+ * At an evaluation point, every sampled point stands for count(class) /
+ * size(sample of class) points of the horizon (1 if the class is sampled
+ * completely). Decay only enters through the point weights, as in exact mode.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.evaluation;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import moa.cluster.Cluster;
+import moa.cluster.SubspaceClustering;
+import moa.cluster.SubspaceSphereCluster;
+import moa.gui.subspacevisualization.SubspaceDataPoint;
+
+public class WindowSummary implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int NUM_PANES = 8;		// Per class CF vector
+
+	private int reservoirSize;
+	private int horizon;
+	private int paneLength;
+	private double decayRate;
+	private Random random;
+
+	private HashMap<Double, ClassStatistics> classes = new HashMap<Double, ClassStatistics>();
+
+	// Snapshot of the last evaluation point
+	private List<SubspaceDataPoint> samplePoints = new ArrayList<SubspaceDataPoint>();
+	private double[] sampleWeights = new double[0];
+	private HashMap<Double, Double> sampleClassCounts = new HashMap<Double, Double>();
+
+
+	/**
+	 * @param decayRate	Only used for the weights of the sampled points (as in exact mode)
+	 */
+	public WindowSummary(int reservoirSize, int horizon, double decayRate, long seed) {
+		this.reservoirSize = reservoirSize;
+		this.horizon = horizon;
+		this.paneLength = Math.max(1, (horizon + NUM_PANES - 1) / NUM_PANES);
+		this.decayRate = decayRate;
+		this.random = new Random(seed);
+	}
+
+	public void add(SubspaceDataPoint point, int timestamp) {
+		double label = point.classValue();
+		ClassStatistics stats = classes.get(label);
+		if (stats == null) {
+			stats = new ClassStatistics(point.numAttributes() - 1);
+			classes.put(label, stats);
+		}
+		stats.add(point, timestamp);
+	}
+
+	/**
+	 * Drops everything which has left the horizon and prepares sample, weights and
+	 * ground truth for the given evaluation point.
+	 */
+	public void snapshot(int timestamp) {
+		samplePoints = new ArrayList<SubspaceDataPoint>();
+		sampleClassCounts = new HashMap<Double, Double>();
+		List<Double> weights = new ArrayList<Double>();
+
+		Iterator<Map.Entry<Double, ClassStatistics>> it = classes.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Double, ClassStatistics> entry = it.next();
+			ClassStatistics stats = entry.getValue();
+			stats.expire(timestamp);
+			if (stats.candidates.isEmpty()) {
+				it.remove();
+				continue;
+			}
+			List<Sample> sample = stats.getSample();
+			double count = (sample.size() == stats.candidates.size())
+					? sample.size()										// Complete
+					: Math.max(sample.size(), stats.getCount(timestamp));
+			sampleClassCounts.put(entry.getKey(), count);
+			double pointWeight = count / sample.size();
+			for (Sample s : sample) {
+				s.point.updateWeight(timestamp, decayRate);
+				samplePoints.add(s.point);
+				weights.add(pointWeight);
+			}
+		}
+
+		sampleWeights = new double[weights.size()];
+		for (int i = 0; i < sampleWeights.length; i++) {
+			sampleWeights[i] = weights.get(i);
+		}
+	}
+
+	public List<SubspaceDataPoint> getSamplePoints() {
+		return samplePoints;
+	}
+
+	/**
+	 * Number of horizon points each sampled point stands for.
+	 */
+	public double[] getSampleWeights() {
+		return sampleWeights;
+	}
+
+	/**
+	 * Ground truth of the last snapshot: clusters are formed from the sample, their
+	 * weights are the (estimated) numbers of class points in the horizon. Null if
+	 * the sample is empty.
+	 */
+	public SubspaceClustering getGroundTruth(int timestamp) {
+		if (samplePoints.isEmpty()) return null;
+		SubspaceClustering gt = new SubspaceClustering(samplePoints);
+		for (Cluster c : gt.getClustering()) {
+			Double count = sampleClassCounts.get(c.getGroundTruth());
+			if (count != null && c instanceof SubspaceSphereCluster) {
+				((SubspaceSphereCluster) c).setWeight(count);
+			}
+		}
+		return gt;
+	}
+
+	public int getNumClasses() {
+		return classes.size();
+	}
+
+	/**
+	 * Estimated number of class points in the horizon.
+	 */
+	public double getClassWeight(double label, int timestamp) {
+		ClassStatistics stats = classes.get(label);
+		return stats == null ? 0.0 : stats.getCount(timestamp);
+	}
+
+	/**
+	 * Mean of the class points in the horizon (pane-wise), null if the class is unknown.
+	 */
+	public double[] getClassCenter(double label, int timestamp) {
+		ClassStatistics stats = classes.get(label);
+		return stats == null ? null : stats.getCenter(timestamp);
+	}
+
+	/**
+	 * Per-dimension variance of the class points in the horizon (pane-wise), null
+	 * if the class is unknown.
+	 */
+	public double[] getClassVariance(double label, int timestamp) {
+		ClassStatistics stats = classes.get(label);
+		return stats == null ? null : stats.getVariance(timestamp);
+	}
+
+
+	private class ClassStatistics implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		// Sum of the panes (recomputed when one is dropped)
+		private double count;
+		private double[] LS;
+		private double[] SS;
+		private ArrayDeque<Pane> panes = new ArrayDeque<Pane>();
+		private ArrayDeque<Sample> candidates = new ArrayDeque<Sample>();	// In stream order
+
+		ClassStatistics(int numDims) {
+			LS = new double[numDims];
+			SS = new double[numDims];
+		}
+
+		void add(SubspaceDataPoint point, int timestamp) {
+			dropPanes(timestamp);
+			Pane pane = panes.peekLast();
+			if (pane == null || timestamp >= pane.first + paneLength) {
+				pane = new Pane(LS.length, timestamp);
+				panes.addLast(pane);
+			}
+			pane.last = timestamp;
+			pane.count += 1.0;
+			count += 1.0;
+			for (int j = 0; j < LS.length; j++) {
+				double v = point.value(j);
+				pane.LS[j] += v;
+				pane.SS[j] += v * v;
+				LS[j] += v;
+				SS[j] += v * v;
+			}
+
+			// Candidates with reservoirSize newer points of higher priority can't be sampled any more
+			double priority = random.nextDouble();
+			Iterator<Sample> it = candidates.iterator();
+			while (it.hasNext()) {
+				Sample s = it.next();
+				if (s.priority < priority && ++s.numHigherNewer >= reservoirSize) it.remove();
+			}
+			candidates.addLast(new Sample(point, timestamp, priority));
+		}
+
+		void expire(int timestamp) {
+			while (!candidates.isEmpty() && candidates.peekFirst().timestamp <= timestamp - horizon) {
+				candidates.pollFirst();
+			}
+			dropPanes(timestamp);
+		}
+
+		/*
+		 * The reservoirSize candidates with the highest priorities (all of them if
+		 * there are no more), after expire()
+		 */
+		List<Sample> getSample() {
+			List<Sample> sample = new ArrayList<Sample>(candidates);
+			if (sample.size() > reservoirSize) {
+				Collections.sort(sample);
+				sample = sample.subList(sample.size() - reservoirSize, sample.size());
+			}
+			return sample;
+		}
+
+		private void dropPanes(int timestamp) {
+			if (panes.isEmpty() || panes.peekFirst().last > timestamp - horizon) return;
+			while (!panes.isEmpty() && panes.peekFirst().last <= timestamp - horizon) {
+				panes.pollFirst();
+			}
+			count = 0.0;
+			Arrays.fill(LS, 0.0);
+			Arrays.fill(SS, 0.0);
+			for (Pane pane : panes) {
+				count += pane.count;
+				for (int j = 0; j < LS.length; j++) {
+					LS[j] += pane.LS[j];
+					SS[j] += pane.SS[j];
+				}
+			}
+		}
+
+		/*
+		 * Points in the horizon: all panes, less the share of the oldest pane's
+		 * time span which has already left it
+		 */
+		double getCount(int timestamp) {
+			dropPanes(timestamp);
+			Pane oldest = panes.peekFirst();
+			if (oldest == null) return 0.0;
+			int expired = (timestamp - horizon) - oldest.first + 1;
+			if (expired <= 0) return count;
+			return count - oldest.count * expired / (oldest.last - oldest.first + 1);
+		}
+
+		double[] getCenter(int timestamp) {
+			dropPanes(timestamp);
+			double[] center = new double[LS.length];
+			for (int j = 0; j < LS.length; j++) {
+				center[j] = LS[j] / count;
+			}
+			return center;
+		}
+
+		double[] getVariance(int timestamp) {
+			dropPanes(timestamp);
+			double[] variance = new double[LS.length];
+			for (int j = 0; j < LS.length; j++) {
+				double mean = LS[j] / count;
+				variance[j] = Math.max(0.0, SS[j] / count - mean * mean);
+			}
+			return variance;
+		}
+	}
+
+	/*
+	 * CF vector of the points of one stretch of the stream
+	 */
+	private static class Pane implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final int first;		// Timestamps of the first and the last point
+		int last;
+		double count;
+		final double[] LS;
+		final double[] SS;
+
+		Pane(int numDims, int first) {
+			this.first = first;
+			this.last = first;
+			LS = new double[numDims];
+			SS = new double[numDims];
+		}
+	}
+
+	private static class Sample implements Comparable<Sample>, Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final SubspaceDataPoint point;
+		final int timestamp;
+		final double priority;
+		int numHigherNewer = 0;		// Newer points with a higher priority
+
+		Sample(SubspaceDataPoint point, int timestamp, double priority) {
+			this.point = point;
+			this.timestamp = timestamp;
+			this.priority = priority;
+		}
+
+		@Override
+		public int compareTo(Sample other) {
+			return Double.compare(priority, other.priority);
+		}
+	}
+}
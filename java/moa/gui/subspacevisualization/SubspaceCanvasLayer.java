@@ -0,0 +1,249 @@
+/**
+ * [SubspaceCanvasLayer.java] for Subspace MOA
+ *
+ * A layer of the stream panel (macro, micro or ground truth clustering) which is
+ * rendered into one buffered image instead of holding a component per point or
+ * cluster. The clusters are kept as (unadded) SubspaceClusterPanels for their
+ * geometry; points are drawn in one batch and kept in a grid index, so tooltips
+ * need no component bounds.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.gui.subspacevisualization;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JPanel;
+
+public class SubspaceCanvasLayer extends JPanel {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int CELL_SIZE = 8;		// Pixels per grid cell of the point index
+
+	private SubspaceStreamPanel streamPanel;
+	private BufferedImage image = null;
+	private Color color = Color.BLACK;
+
+	private List<SubspaceClusterPanel> clusters = new ArrayList<SubspaceClusterPanel>();
+	private List<SubspaceDataPoint> points = new ArrayList<SubspaceDataPoint>();
+
+	/* Grid index of the drawn points: points of cell c are cellPoints[cellStart[c]..cellStart[c+1]) */
+	private int gridSize = 0;
+	private int[] cellStart = new int[1];
+	private SubspaceDataPoint[] cellPoints = new SubspaceDataPoint[0];
+
+
+	public SubspaceCanvasLayer(SubspaceStreamPanel streamPanel) {
+		this.streamPanel = streamPanel;
+		setOpaque(false);
+		setLayout(null);
+	}
+
+	/**
+	 * Resizes the layer (square) and renders it again.
+	 */
+	public void setCanvasSize(int size) {
+		setSize(size, size);
+		image = (size > 0) ? new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB) : null;
+		render();
+	}
+
+	public void setClusters(List<SubspaceClusterPanel> clusters, Color color) {
+		this.clusters = clusters;
+		this.points = new ArrayList<SubspaceDataPoint>();
+		this.color = color;
+		render();
+	}
+
+	public void setPoints(List<SubspaceDataPoint> points, Color color) {
+		this.clusters = new ArrayList<SubspaceClusterPanel>();
+		this.points = points;
+		this.color = color;
+		render();
+	}
+
+	public boolean isEmpty() {
+		return clusters.isEmpty() && points.isEmpty();
+	}
+
+	/**
+	 * Draws the contents again (e.g. after the active dimensions changed).
+	 */
+	public void render() {
+		if (image != null) {
+			Graphics2D g = image.createGraphics();
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, image.getWidth(), image.getHeight());
+			g.setComposite(AlphaComposite.SrcOver);
+			drawOnCanvas(g);
+			g.dispose();
+		}
+		buildPointIndex();
+		repaint();
+	}
+
+	/**
+	 * Draws the contents onto the given canvas (e.g. the point canvas of the
+	 * stream panel, which would hide this layer otherwise).
+	 */
+	public void drawOnCanvas(Graphics2D imageGraphics) {
+		imageGraphics.setColor(color);
+
+		int windowSize = Math.min(streamPanel.getWidth(), streamPanel.getHeight());
+		int xDim = streamPanel.getActiveXDim();
+		int yDim = streamPanel.getActiveYDim();
+		int psize = SubspacePointPanel.POINTSIZE;
+		int poffset = psize / 2;
+		for (SubspaceDataPoint p : points) {
+			if (isVisible(p, xDim, yDim)) {
+				imageGraphics.drawOval((int) (p.value(xDim) * windowSize) - poffset,
+									   (int) (p.value(yDim) * windowSize) - poffset, psize, psize);
+			}
+		}
+
+		for (SubspaceClusterPanel cp : clusters) {
+			if (cp.isValidCluster()) {
+				cp.updateLocation();
+				cp.drawOnCanvas(imageGraphics);
+			}
+		}
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		if (image != null) {
+			g.drawImage(image, 0, 0, null);
+		}
+	}
+
+
+	/** Hit-testing **/
+
+	/**
+	 * Drawn point nearest to (x, y) within the point size, or null
+	 */
+	public SubspaceDataPoint getPointAt(int x, int y) {
+		if (gridSize == 0 || x < 0 || y < 0) return null;
+		int windowSize = Math.min(streamPanel.getWidth(), streamPanel.getHeight());
+		int xDim = streamPanel.getActiveXDim();
+		int yDim = streamPanel.getActiveYDim();
+
+		SubspaceDataPoint nearest = null;
+		double minDist = SubspacePointPanel.POINTSIZE * SubspacePointPanel.POINTSIZE;
+		int cx = x / CELL_SIZE;
+		int cy = y / CELL_SIZE;
+		for (int gx = Math.max(0, cx - 1); gx <= Math.min(gridSize - 1, cx + 1); gx++) {
+			for (int gy = Math.max(0, cy - 1); gy <= Math.min(gridSize - 1, cy + 1); gy++) {
+				int cell = gx * gridSize + gy;
+				for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+					SubspaceDataPoint p = cellPoints[i];
+					double dx = p.value(xDim) * windowSize - x;
+					double dy = p.value(yDim) * windowSize - y;
+					double dist = dx * dx + dy * dy;
+					if (dist <= minDist) {
+						minDist = dist;
+						nearest = p;
+					}
+				}
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Cluster whose hull is at (x, y), or null. Clusters are few, so they are
+	 * tested one by one.
+	 */
+	public SubspaceClusterPanel getClusterAt(int x, int y) {
+		for (int i = clusters.size() - 1; i >= 0; i--) {
+			SubspaceClusterPanel cp = clusters.get(i);
+			if (cp.isValidCluster()) {
+				Point location = cp.getLocation();
+				if (cp.contains(x - location.x, y - location.y)) {
+					return cp;
+				}
+			}
+		}
+		return null;
+	}
+
+	public String getSVGString(int width) {
+		StringBuffer out = new StringBuffer();
+		for (SubspaceClusterPanel cp : clusters) {
+			if (cp.isValidCluster()) {
+				out.append(cp.getSVGString(width));
+			}
+		}
+
+		int xDim = streamPanel.getActiveXDim();
+		int yDim = streamPanel.getActiveYDim();
+		String rgb = "rgb(" + color.getRed() + "," + color.getGreen() + "," + color.getBlue() + ")";
+		for (SubspaceDataPoint p : points) {
+			if (isVisible(p, xDim, yDim)) {
+				out.append("<circle cx='" + (int) (p.value(xDim) * width) + "' cy='" + (int) (p.value(yDim) * width)
+						   + "' r='" + (SubspacePointPanel.POINTSIZE / 2) + "' stroke='" + rgb
+						   + "' stroke-width='1' fill-opacity='0'/>\n");
+			}
+		}
+		return out.toString();
+	}
+
+	private void buildPointIndex() {
+		int windowSize = Math.min(streamPanel.getWidth(), streamPanel.getHeight());
+		gridSize = (windowSize > 0 && !points.isEmpty()) ? windowSize / CELL_SIZE + 1 : 0;
+		int numCells = gridSize * gridSize;
+		cellStart = new int[numCells + 1];
+		if (gridSize == 0) {
+			cellPoints = new SubspaceDataPoint[0];
+			return;
+		}
+
+		int xDim = streamPanel.getActiveXDim();
+		int yDim = streamPanel.getActiveYDim();
+		int[] cells = new int[points.size()];
+		int numIndexed = 0;
+		for (int i = 0; i < cells.length; i++) {
+			SubspaceDataPoint p = points.get(i);
+			cells[i] = isVisible(p, xDim, yDim) ? cellOf(p, xDim, yDim, windowSize) : -1;
+			if (cells[i] >= 0) {
+				cellStart[cells[i] + 1]++;
+				numIndexed++;
+			}
+		}
+		for (int c = 0; c < numCells; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+
+		cellPoints = new SubspaceDataPoint[numIndexed];
+		int[] next = new int[numCells];
+		for (int i = 0; i < cells.length; i++) {
+			if (cells[i] >= 0) {
+				cellPoints[cellStart[cells[i]] + next[cells[i]]++] = points.get(i);
+			}
+		}
+	}
+
+	private int cellOf(SubspaceDataPoint p, int xDim, int yDim, int windowSize) {
+		int gx = (int) (p.value(xDim) * windowSize) / CELL_SIZE;
+		int gy = (int) (p.value(yDim) * windowSize) / CELL_SIZE;
+		if (gx < 0 || gy < 0 || gx >= gridSize || gy >= gridSize) return -1;	// Off the canvas
+		return gx * gridSize + gy;
+	}
+
+	/*
+	 * Points are shown if they belong to a subspace containing an active dimension
+	 */
+	private static boolean isVisible(SubspaceDataPoint p, int xDim, int yDim) {
+		boolean[] subspace = p.getSubspace();
+		return subspace[xDim] || subspace[yDim];
+	}
+}
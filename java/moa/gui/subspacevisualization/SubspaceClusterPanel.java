@@ -246,6 +246,12 @@ public class SubspaceClusterPanel extends JPanel {
         	imageGraphics.drawRect(location.x, location.y, isRelevant(x_dim) ? panel_size : fullLength,
         												   isRelevant(y_dim) ? panel_size : fullLength);
         }
+        
+        // Label
+        if (cluster.getId() >= 0) {
+        	int pos = (int) ((float) panel_size / 2.0f);
+        	imageGraphics.drawString("C" + (int)cluster.getId(), location.x + pos, location.y + pos);
+        }
     }
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
@@ -36,6 +36,17 @@ public class SubspaceDataPoint extends DataPoint {
 		this.classLabels = point.getClassLabels();
 	}
 		
+	/**
+	 * Point with its own copy of the values and labels of an instance which is
+	 * reused by its source (see PipelinedStreamReader).
+	 */
+	public static SubspaceDataPoint copyOf(SubspaceInstance instance, Integer timestamp) {
+		SubspaceDataPoint point = new SubspaceDataPoint(instance, timestamp);
+		point.m_AttValues = instance.toDoubleArray();
+		point.classLabels = instance.getClassLabels().clone();
+		return point;
+	}
+		
 	public double[] getClassLabels() {
 		return classLabels;
 	}
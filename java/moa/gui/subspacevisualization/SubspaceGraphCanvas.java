@@ -115,6 +115,7 @@ public class SubspaceGraphCanvas extends JPanel {
             updateXResolution();
             updateYValues();
             updateSize();
+            updateEventLabels();
 
             axesPanel.repaint();
         }
@@ -122,8 +123,7 @@ public class SubspaceGraphCanvas extends JPanel {
         //check for new events
         addEvents();
 
-        //add the latest plot point through repaint
-        //TODO: somehow realize incremental painting? (real heavyweight canvas: update())
+        //the curve panel only appends the new values to its image, unless the scale changed
         curvePanel.repaint();
     }
 
@@ -170,7 +170,10 @@ public class SubspaceGraphCanvas extends JPanel {
         //axesPanel.setPreferredSize(new Dimension(getWidth(), getHeight()));
         curvePanel.setSize(getWidth() - x_offset_left - x_offset_right, getHeight() - y_offset_bottom - y_offset_top);
         eventPanel.setSize(getWidth() - x_offset_left - x_offset_right, y_offset_top);
+    }
 
+    //only needed when the x resolution changed
+    private void updateEventLabels() {
         if (clusterEvents != null) {
             //update Label positions
             for (int i = 0; i < clusterEvents.size(); i++) {
@@ -184,7 +187,7 @@ public class SubspaceGraphCanvas extends JPanel {
 
     //check if there are any new events in the event list and add them to the plot
     private void addEvents() {
-        if (clusterEvents != null && clusterEvents.size() > eventCounter) {
+        while (clusterEvents != null && clusterEvents.size() > eventCounter) {
             ClusterEvent ev = clusterEvents.get(eventCounter);
             eventCounter++;
             JLabel eventMarker = new JLabel(ev.getType().substring(0, 1));
@@ -3,6 +3,11 @@
  * 
  * Evaluation graph class.
  * 
+ * The curves are kept in a backing image. A repaint only appends the values
+ * added since the last one; the image is drawn again from scratch only if the
+ * scale, the size or the measure changed. When zoomed out (several values per
+ * pixel), each pixel column shows the min/max range of its values.
+ * 
  * @author Yunsu Kim
  * 		   based on the implementation of Timm Jansen
  * Data Management and Data Exploration Group, RWTH Aachen University
@@ -10,9 +15,12 @@
 
 package moa.gui.subspacevisualization;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import moa.evaluation.SubspaceMeasureCollection;
 import moa.streams.clustering.ClusterEvent;
@@ -32,6 +40,29 @@ public class SubspaceGraphCurve extends javax.swing.JPanel {
 
     private ArrayList<ClusterEvent> clusterEvents;
     
+    /* Backing image and how much of the curves & events is already on it */
+    private BufferedImage curveImage = null;
+    private volatile boolean fullRedraw = true;
+    private CurveState state0 = new CurveState(Color.red);
+    private CurveState state1 = new CurveState(Color.blue);
+    private int eventsDrawn = 0;
+    
+    private static class CurveState {
+    	final Color color;
+    	int valuesDrawn = 0;
+    	int lastX, lastY;
+    	boolean hasLast = false;
+    	
+    	CurveState(Color color) {
+    		this.color = color;
+    	}
+    	
+    	void reset() {
+    		valuesDrawn = 0;
+    		hasLast = false;
+    	}
+    }
+    
     
     /** Creates new form SubspaceGraphCurve */
     public SubspaceGraphCurve() {
@@ -43,10 +74,12 @@ public class SubspaceGraphCurve extends javax.swing.JPanel {
        this.measure0 = measure0;
        this.measure1 = measure1;
        this.measureSelected = selection;
+       fullRedraw = true;
        repaint();
     }
     
     void setProcessFrequency(int processFrequency) {
+        if (this.processFrequency != processFrequency) fullRedraw = true;
         this.processFrequency = processFrequency;
     }
 
@@ -54,86 +87,122 @@ public class SubspaceGraphCurve extends javax.swing.JPanel {
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
 
-        g.setColor(Color.BLACK);
-
-        if(measure0!=null && measure1!=null){
-                paintFullCurve(g, measure0, measureSelected, Color.red);
-                paintFullCurve(g, measure1, measureSelected, Color.blue);
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) return;
+        if (curveImage == null || curveImage.getWidth() != width || curveImage.getHeight() != height) {
+        	curveImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        	fullRedraw = true;
         }
-        else{
-            if(measure0!=null){
-                paintFullCurve(g, measure0, measureSelected, Color.red);
-            }
+        
+        Graphics2D ig = curveImage.createGraphics();
+        if (fullRedraw) {
+        	ig.setComposite(AlphaComposite.Clear);
+        	ig.fillRect(0, 0, width, height);
+        	ig.setComposite(AlphaComposite.SrcOver);
+        	state0.reset();
+        	state1.reset();
+        	eventsDrawn = 0;
+        	fullRedraw = false;
         }
-        paintEvents(g);
         
+        if (measure0 != null) {
+        	appendCurve(ig, measure0, measureSelected, state0);
+        	if (measure1 != null) {
+        		appendCurve(ig, measure1, measureSelected, state1);
+        	}
+        }
+        appendEvents(ig);
+        ig.dispose();
+        
+        g.drawImage(curveImage, 0, 0, null);
     }
 
 
-    private void paintFullCurve(Graphics g, SubspaceMeasureCollection m, int mSelect, Color color){
-            if (m.getNumberOfValues(mSelect)==0) return;
-
-            boolean corrupted = false;
-            int height = getHeight();
-            int width = getWidth();
-            int n = m.getNumberOfValues(mSelect);
-            if(x_resolution > 1) 
-                n = (int)(n / (int)x_resolution);
-            int[] x = new int[n];
-            int[] y = new int[n];
-
-            for (int i = 0; i < n; i ++) {
-                if(x_resolution > 1){
-                    //we need to compress the values
-                    double sum_y = 0;
-                    int counter = 0;
-                    for (int j = 0; j < x_resolution; j++) {
-                        if((i)*x_resolution+j<m.getNumberOfValues(mSelect)){
-                            sum_y+= m.getValue(mSelect,i);
-                            counter++;
-                        }
-                        sum_y/=counter;
-                    }
-                    x[i] = i;
-                    y[i] = (int)(height-(sum_y/max_value)*height);
-                }
-                else{
-                    //spreading one value
-                    x[i] = (i)*(int)(1/x_resolution)+(int)(1/x_resolution/2);
-                    double value = m.getValue(mSelect,i);
-                    if(Double.isNaN(value)){
-                        corrupted = true;
-                        break;
-                    }
-                    y[i] = (int)(height-(value/max_value)*height);
-                    
-                }
-            }
-            if(!corrupted){
-                g.setColor(color);
-                g.drawPolyline(x, y, n);
-            }
-            
+    /*
+     * Draws the values of m which are not on the image yet
+     */
+    private void appendCurve(Graphics g, SubspaceMeasureCollection m, int mSelect, CurveState state){
+    	int n = m.getNumberOfValues(mSelect);
+    	int height = getHeight();
+    	g.setColor(state.color);
+    	
+    	if (x_resolution > 1) {
+    		// Several values per pixel: min/max of each complete column
+    		int perPixel = (int) x_resolution;
+    		for (int i = state.valuesDrawn; i + perPixel <= n; i += perPixel) {
+    			double min = Double.POSITIVE_INFINITY;
+    			double max = Double.NEGATIVE_INFINITY;
+    			for (int j = i; j < i + perPixel; j++) {
+    				double value = m.getValue(mSelect, j);
+    				if (!Double.isNaN(value)) {
+    					min = Math.min(min, value);
+    					max = Math.max(max, value);
+    				}
+    			}
+    			state.valuesDrawn = i + perPixel;
+    			if (min > max) {			// Only NaN values
+    				state.hasLast = false;
+    				continue;
+    			}
+    			int x = i / perPixel;
+    			int yMin = toY(min, height);
+    			int yMax = toY(max, height);
+    			if (state.hasLast) {
+    				g.drawLine(state.lastX, state.lastY, x, (yMin + yMax) / 2);
+    			}
+    			g.drawLine(x, yMax, x, yMin);
+    			state.lastX = x;
+    			state.lastY = (yMin + yMax) / 2;
+    			state.hasLast = true;
+    		}
+    	} else {
+    		// Spreading one value over several pixels
+    		int step = (int) (1 / x_resolution);
+    		for (int i = state.valuesDrawn; i < n; i++) {
+    			double value = m.getValue(mSelect, i);
+    			state.valuesDrawn = i + 1;
+    			if (Double.isNaN(value)) {
+    				state.hasLast = false;
+    				continue;
+    			}
+    			int x = i * step + step / 2;
+    			int y = toY(value, height);
+    			if (state.hasLast) {
+    				g.drawLine(state.lastX, state.lastY, x, y);
+    			} else {
+    				g.drawLine(x, y, x, y);
+    			}
+    			state.lastX = x;
+    			state.lastY = y;
+    			state.hasLast = true;
+    		}
+    	}
+    }
+    
+    private int toY(double value, int height) {
+    	return (int) (height - (value / max_value) * height);
     }
 
-    private void paintEvents(Graphics g){
-       if(clusterEvents!=null){
+    private void appendEvents(Graphics g){
+       if (clusterEvents != null && processFrequency > 0) {
             g.setColor(Color.DARK_GRAY);
-            for (int i = 0; i < clusterEvents.size(); i++) {
-                int x = (int)(clusterEvents.get(i).getTimestamp()/processFrequency/x_resolution);
-
+            for (; eventsDrawn < clusterEvents.size(); eventsDrawn++) {
+                int x = (int)(clusterEvents.get(eventsDrawn).getTimestamp()/processFrequency/x_resolution);
                 g.drawLine(x, 0, x, getHeight());
             }
         }
     }
 
     public void setYMinMaxValues(double min, double max){
+        if (min != min_value || max != max_value) fullRedraw = true;
         min_value = min;
         max_value = max;
     }
 
     void setClusterEventsList(ArrayList<ClusterEvent> clusterEvents) {
         this.clusterEvents = clusterEvents;
+        fullRedraw = true;
     }
 
     @Override
@@ -142,6 +211,7 @@ public class SubspaceGraphCurve extends javax.swing.JPanel {
     }
 
     void setXResolution(double x_resolution) {
+        if (x_resolution != this.x_resolution) fullRedraw = true;
         this.x_resolution = x_resolution;
     }
     
@@ -23,6 +23,8 @@ import java.util.LinkedList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.swing.SwingUtilities;
+
 import moa.cluster.Cluster;
 import moa.cluster.Clustering;
 import moa.cluster.SubspaceClustering;
@@ -61,6 +63,12 @@ public class SubspaceRunVisualizer implements Runnable, ActionListener, ClusterE
      *  the GUI becomes very slow with small values 
      * */
     private int m_redrawInterval = 100;
+    
+    /** frames per second handed to the event dispatch thread at most; the processing loop never waits for it */
+    private static final int FRAME_RATE = 25;
+    
+    /** new points drawn per frame at most (more are dropped at high speed) */
+    private static final int MAX_POINTS_PER_FRAME = 2000;
 
     
     /* flags to control the run behavior */
@@ -142,6 +150,64 @@ public class SubspaceRunVisualizer implements Runnable, ActionListener, ClusterE
     /* reference to the log panel */
     private final TextViewerPanel m_logPanel;
     
+    /* frames published by the processing loop and drawn on the event dispatch thread;
+       a frame replaced before it was drawn is dropped (but not its measure values) */
+    private final Object m_frameLock = new Object();
+    private Frame m_nextFrame = null;		// Guarded by m_frameLock
+    private final Runnable m_renderTask = new Runnable() {
+    	public void run() {
+    		renderFrame();
+    	}
+    };
+    private long m_lastFrameTime;
+    private ArrayList<SubspaceDataPoint> m_newPoints1 = new ArrayList<SubspaceDataPoint>();
+    private ArrayList<SubspaceDataPoint> m_newPoints2 = new ArrayList<SubspaceDataPoint>();
+    private int m_evaluationCount = 0;		// Sub-evaluations so far
+    private ArrayList<double[]> m_measureRows1 = new ArrayList<double[]>();	// Measure values since the last frame
+    private ArrayList<double[]> m_measureRows2 = new ArrayList<double[]>();
+    private ArrayList<SubspaceDataPoint> m_window1, m_window2;		// Points of the last evaluation
+    private SubspaceClustering m_macroSnapshot1, m_macroSnapshot2;
+    
+    /* state of the event dispatch thread: the eval panel and the graph read copies of the
+       measure collections, which only get the values the frames carry */
+    private SubspaceMeasureCollection[] m_shownMeasures1 = null;
+    private SubspaceMeasureCollection[] m_shownMeasures2 = null;
+    private int m_renderedTimestamp = 0;
+    private int m_renderedEvaluation = 0;
+    private int m_pendingDecay = 0;			// Instances since the point canvas was last decayed
+    
+    /**
+     * Immutable state of the run to be drawn: points since the last frame, the
+     * results of the last evaluation and the measure values of the evaluations
+     * since the last drawn frame.
+     */
+    private static class Frame {
+    	final int timestamp;
+    	final ArrayList<SubspaceDataPoint> newPoints1, newPoints2;
+    	final int evaluation;
+    	final ArrayList<double[]> measureRows1, measureRows2;
+    	final SubspaceClustering gtClustering1, macroResult1, gtClustering2, macroResult2;
+    	final ArrayList<SubspaceDataPoint> window1, window2;
+    	
+    	Frame(int timestamp, ArrayList<SubspaceDataPoint> newPoints1, ArrayList<SubspaceDataPoint> newPoints2,
+    		  int evaluation, ArrayList<double[]> measureRows1, ArrayList<double[]> measureRows2,
+    		  SubspaceClustering gtClustering1, SubspaceClustering macroResult1, ArrayList<SubspaceDataPoint> window1,
+    		  SubspaceClustering gtClustering2, SubspaceClustering macroResult2, ArrayList<SubspaceDataPoint> window2) {
+    		this.timestamp = timestamp;
+    		this.newPoints1 = newPoints1;
+    		this.newPoints2 = newPoints2;
+    		this.evaluation = evaluation;
+    		this.measureRows1 = measureRows1;
+    		this.measureRows2 = measureRows2;
+    		this.gtClustering1 = gtClustering1;
+    		this.macroResult1 = macroResult1;
+    		this.window1 = window1;
+    		this.gtClustering2 = gtClustering2;
+    		this.macroResult2 = macroResult2;
+    		this.window2 = window2;
+    	}
+    }
+    
     public SubspaceRunVisualizer(SubspaceClusteringVisualTab subspaceVisualPanel, SubspaceClusteringSetupTab subspaceClusteringSetupTab) {
         m_visualPanel = subspaceVisualPanel;
         m_streampanel1 = subspaceVisualPanel.getLeftStreamPanel();
@@ -217,8 +283,10 @@ public class SubspaceRunVisualizer implements Runnable, ActionListener, ClusterE
         int dims = m_stream.numAttsOption.getValue();
         subspaceVisualPanel.setDimensionComboBoxes(dims);
 
-        m_evalPanel.setMeasures(m_measures1, m_measures2, this);
-        m_graphCanvas.setGraph(m_measures1[0], m_measures2[0], 0, evaluationFrequency);
+        m_shownMeasures1 = emptyCopiesOf(m_measures1);
+        m_shownMeasures2 = emptyCopiesOf(m_measures2);
+        m_evalPanel.setMeasures(m_shownMeasures1, m_shownMeasures2, this);
+        m_graphCanvas.setGraph(m_shownMeasures1[0], m_shownMeasures2[0], 0, evaluationFrequency);
     }
 
 
@@ -299,6 +367,7 @@ public class SubspaceRunVisualizer implements Runnable, ActionListener, ClusterE
         LinkedList<SubspaceDataPoint> pointBuffer2 = new LinkedList<SubspaceDataPoint>();
         ArrayList<SubspaceDataPoint> pointarray1 = null;
         ArrayList<SubspaceDataPoint> pointarray2 = null;
+        m_lastFrameTime = System.nanoTime();
 
         while (work || processCounter != 0) {
             if (m_stream.hasMoreInstances()) {
@@ -338,14 +407,10 @@ public class SubspaceRunVisualizer implements Runnable, ActionListener, ClusterE
                 }
                 
                 
-                // Draw the points
+                // Points for the next frame
                 if (m_visualPanel.isEnabledDrawPoints()) {
-                	if (m_settingChecked1) m_streampanel1.drawPoint(point1, m_stream0_decay_rate, m_stream0_decay_threshold);
-                	if (m_settingChecked2) m_streampanel2.drawPoint(point2, m_stream0_decay_rate, m_stream0_decay_threshold);
-                    if (processCounter % m_redrawInterval == 0) {
-                    	if (m_settingChecked1) m_streampanel1.applyDrawDecay(m_stream0_decayHorizon / (float)(m_redrawInterval));
-                    	if (m_settingChecked2) m_streampanel2.applyDrawDecay(m_stream0_decayHorizon / (float)(m_redrawInterval));
-                    }
+                	if (m_settingChecked1 && m_newPoints1.size() < MAX_POINTS_PER_FRAME) m_newPoints1.add(point1);
+                	if (m_settingChecked2 && m_newPoints2.size() < MAX_POINTS_PER_FRAME) m_newPoints2.add(point2);
                 }
 
                                 
@@ -422,7 +487,12 @@ public class SubspaceRunVisualizer implements Runnable, ActionListener, ClusterE
                         printMeans();
                     }
                 }
+                
+                if ((timestamp & 15) == 0 && System.nanoTime() - m_lastFrameTime >= 1000000000L / FRAME_RATE) {
+                	publishFrame();
+                }
             } else {
+            	publishFrame();
             	m_visualPanel.stopVisualizer();
             	printMeans();
             	
@@ -447,8 +517,15 @@ public class SubspaceRunVisualizer implements Runnable, ActionListener, ClusterE
         
         // "Pause"
         if (!stop) {
-        	if (m_settingChecked1) m_streampanel1.drawPointPanels(pointarray1, m_stream0_decay_rate, m_stream0_decay_threshold);
-        	if (m_settingChecked2) m_streampanel2.drawPointPanels(pointarray2, m_stream0_decay_rate, m_stream0_decay_threshold);
+        	publishFrame();		// Last state, drawn before the point panels
+        	final ArrayList<SubspaceDataPoint> lastPoints1 = pointarray1;
+        	final ArrayList<SubspaceDataPoint> lastPoints2 = pointarray2;
+        	SwingUtilities.invokeLater(new Runnable() {
+        		public void run() {
+        			if (m_settingChecked1) m_streampanel1.drawPointPanels(lastPoints1, m_stream0_decay_rate, m_stream0_decay_threshold);
+        			if (m_settingChecked2) m_streampanel2.drawPointPanels(lastPoints2, m_stream0_decay_rate, m_stream0_decay_threshold);
+        		}
+        	});
             work_pause();
         }
     }
@@ -516,8 +593,12 @@ public class SubspaceRunVisualizer implements Runnable, ActionListener, ClusterE
         
         if (debug) System.out.println("Evaluation done.");
         
-        // Draw the clusterings
-        drawClusterings(points1, points2);
+        // Clusterings are drawn with the next frame
+        m_window1 = points1;
+        m_window2 = points2;
+        m_macroSnapshot1 = copyOf(macroResult1);
+        m_macroSnapshot2 = copyOf(macroResult2);
+        m_evaluationCount++;
     }
 
     private void evaluateSubspaceClusterings(SubspaceClustering foundClustering0, SubspaceClustering trueClustering0, ArrayList<SubspaceDataPoint> points0,
@@ -577,6 +658,7 @@ public class SubspaceRunVisualizer implements Runnable, ActionListener, ClusterE
                     if (i < m_measures1.length - 1) sb.append("\t");
     	        }
     	        sb.append("\t");
+    	        m_measureRows1.add(lastValuesOf(m_measures1));
         	}
             
         	if (m_settingChecked2) {
@@ -595,30 +677,164 @@ public class SubspaceRunVisualizer implements Runnable, ActionListener, ClusterE
                     
                     if (i < m_measures2.length - 1) sb.append("\t");
     	        }
+    	        m_measureRows2.add(lastValuesOf(m_measures2));
         	}
         	
             m_logPanel.addText(sb.toString());
+    	}
+    }
 
-            m_evalPanel.update();
-            m_graphCanvas.updateCanvas();
+    
+    /** Rendering **/
+    
+    /*
+     * Hands the current state over to the event dispatch thread. A frame it hasn't
+     * drawn yet is replaced; its measure values are taken over by the new one.
+     */
+    private void publishFrame() {
+    	Frame frame = new Frame(timestamp, m_newPoints1, m_newPoints2, m_evaluationCount,
+    							m_measureRows1, m_measureRows2,
+    							gtSubspaceClustering1, m_macroSnapshot1, m_window1,
+    							gtSubspaceClustering2, m_macroSnapshot2, m_window2);
+    	m_newPoints1 = new ArrayList<SubspaceDataPoint>();
+    	m_newPoints2 = new ArrayList<SubspaceDataPoint>();
+    	m_measureRows1 = new ArrayList<double[]>();
+    	m_measureRows2 = new ArrayList<double[]>();
+    	m_lastFrameTime = System.nanoTime();
+    	
+    	boolean scheduled;
+    	synchronized (m_frameLock) {
+    		Frame dropped = m_nextFrame;
+    		if (dropped != null) {
+    			frame.measureRows1.addAll(0, dropped.measureRows1);
+    			frame.measureRows2.addAll(0, dropped.measureRows2);
+    		}
+    		scheduled = (dropped != null);
+    		m_nextFrame = frame;
+    	}
+    	if (!scheduled) {
+    		SwingUtilities.invokeLater(m_renderTask);
+    	}
+    }
+    
+    /*
+     * Last value of every measure (enabled or not), in collection order
+     */
+    private static double[] lastValuesOf(SubspaceMeasureCollection[] measures) {
+    	int numValues = 0;
+    	for (SubspaceMeasureCollection m : measures) {
+    		numValues += m.getNumMeasures();
+    	}
+    	double[] values = new double[numValues];
+    	int k = 0;
+    	for (SubspaceMeasureCollection m : measures) {
+    		for (int j = 0; j < m.getNumMeasures(); j++) {
+    			values[k++] = m.getLastValue(j);
+    		}
+    	}
+    	return values;
+    }
+    
+    /*
+     * Empty collections of the same measures, with the same ones enabled
+     */
+    private static SubspaceMeasureCollection[] emptyCopiesOf(SubspaceMeasureCollection[] measures) {
+    	SubspaceMeasureCollection[] copies = new SubspaceMeasureCollection[measures.length];
+    	for (int i = 0; i < measures.length; i++) {
+    		try {
+    			copies[i] = measures[i].getClass().newInstance();
+    		} catch (Exception e) {
+    			throw new RuntimeException("Couldn't create an instance of " + measures[i].getClass().getName(), e);
+    		}
+    		copies[i].setDebug(false);		// The values were reported when they were added to the original
+    		for (int j = 0; j < measures[i].getNumMeasures(); j++) {
+    			copies[i].setEnabled(j, measures[i].isEnabled(j));
+    		}
+    	}
+    	return copies;
+    }
+    
+    private static void addValues(SubspaceMeasureCollection[] measures, ArrayList<double[]> rows) {
+    	for (double[] values : rows) {
+    		int k = 0;
+    		for (SubspaceMeasureCollection m : measures) {
+    			for (int j = 0; j < m.getNumMeasures(); j++) {
+    				m.addValue(j, values[k++]);
+    			}
+    		}
+    	}
+    }
+    
+    /*
+     * Copy of the cluster list, which some clusterers keep changing
+     */
+    private static SubspaceClustering copyOf(SubspaceClustering clustering) {
+    	if (clustering == null) return null;
+    	SubspaceClustering copy = new SubspaceClustering();
+    	for (int i = 0; i < clustering.size(); i++) {
+    		copy.add(clustering.get(i));
+    	}
+    	return copy;
+    }
+    
+    /*
+     * Draws the latest published frame, if there is a new one (on the event
+     * dispatch thread)
+     */
+    private void renderFrame() {
+    	Frame frame;
+    	synchronized (m_frameLock) {
+    		frame = m_nextFrame;
+    		m_nextFrame = null;
+    	}
+    	if (frame == null) return;
+    	
+    	// New points, and decay of the older ones every m_redrawInterval instances
+    	if (m_visualPanel.isEnabledDrawPoints()) {
+    		for (SubspaceDataPoint p : frame.newPoints1) {
+    			m_streampanel1.drawPoint(p, m_stream0_decay_rate, m_stream0_decay_threshold);
+    		}
+    		for (SubspaceDataPoint p : frame.newPoints2) {
+    			m_streampanel2.drawPoint(p, m_stream0_decay_rate, m_stream0_decay_threshold);
+    		}
+    		m_pendingDecay += frame.timestamp - m_renderedTimestamp;
+    		if (m_pendingDecay >= m_redrawInterval) {
+    			if (m_settingChecked1) m_streampanel1.applyDrawDecay(m_stream0_decayHorizon / (float) m_pendingDecay);
+    			if (m_settingChecked2) m_streampanel2.applyDrawDecay(m_stream0_decayHorizon / (float) m_pendingDecay);
+    			m_pendingDecay = 0;
+    		}
+    	}
+    	m_renderedTimestamp = frame.timestamp;
+    	
+    	// Clusterings of the last evaluation (earlier ones are skipped)
+    	if (frame.evaluation != m_renderedEvaluation) {
+    		drawClusterings(frame);
+    		m_renderedEvaluation = frame.evaluation;
+    	}
+    	
+    	if (!frame.measureRows1.isEmpty() || !frame.measureRows2.isEmpty()) {
+    		addValues(m_shownMeasures1, frame.measureRows1);
+    		addValues(m_shownMeasures2, frame.measureRows2);
+    		m_evalPanel.update();
+    		m_graphCanvas.updateCanvas();
     	}
     }
 
-    public void drawClusterings(ArrayList<SubspaceDataPoint> points1, ArrayList<SubspaceDataPoint> points2) {
+    private void drawClusterings(Frame frame) {
     	if (m_settingChecked1) {
-	    	if (gtSubspaceClustering1 != null && gtSubspaceClustering1.size() > 0)
-	            m_streampanel1.drawGTClustering(gtSubspaceClustering1, new Color(34, 139, 34));
-	    	if (macroResult1 != null && macroResult1.size() > 0)
-	        	m_streampanel1.drawMacroClustering(macroResult1, points1, Color.RED);
+	    	if (frame.gtClustering1 != null && frame.gtClustering1.size() > 0)
+	            m_streampanel1.drawGTClustering(frame.gtClustering1, new Color(34, 139, 34));
+	    	if (frame.macroResult1 != null && frame.macroResult1.size() > 0)
+	        	m_streampanel1.drawMacroClustering(frame.macroResult1, frame.window1, Color.RED);
 	        /*if (microResult0!= null && microResult0.size() > 0)
 	            m_streampanel0.drawMicroClustering(microResult1, Color.GREEN);*/
     	}
 
     	if (m_settingChecked2) {
-	        if (gtSubspaceClustering2 != null && gtSubspaceClustering2.size() > 0)
-	            m_streampanel2.drawGTClustering(gtSubspaceClustering2, new Color(34, 139, 34));
-	        if (macroResult2 != null && macroResult2.size() > 0)
-	            m_streampanel2.drawMacroClustering(macroResult2, points2, Color.BLUE);
+	        if (frame.gtClustering2 != null && frame.gtClustering2.size() > 0)
+	            m_streampanel2.drawGTClustering(frame.gtClustering2, new Color(34, 139, 34));
+	        if (frame.macroResult2 != null && frame.macroResult2.size() > 0)
+	            m_streampanel2.drawMacroClustering(frame.macroResult2, frame.window2, Color.BLUE);
 	        /*if (microResult1!= null && microResult1.size() > 0)
 	            m_streampanel1.drawMicroClustering(microResult2, Color.GREEN);*/
     	}
@@ -686,7 +902,7 @@ public class SubspaceRunVisualizer implements Runnable, ActionListener, ClusterE
             }
             if(found) break;
         }
-        m_graphCanvas.setGraph(m_measures1[m_select], m_measures2[m_select],m_select_offset,subEvaluationFrequency);
+        m_graphCanvas.setGraph(m_shownMeasures1[m_select], m_shownMeasures2[m_select],m_select_offset,subEvaluationFrequency);
     }
 
     public void setPointLayerVisibility(boolean selected) {
@@ -730,8 +946,8 @@ public class SubspaceRunVisualizer implements Runnable, ActionListener, ClusterE
                  
             //raw data
             SubspaceMeasureCollection measurecol[][] = new SubspaceMeasureCollection[2][];
-            measurecol[0] = m_measures1;
-            measurecol[1] = m_measures2;
+            measurecol[0] = m_shownMeasures1;
+            measurecol[1] = m_shownMeasures2;
             int numValues = 0;
             //header
             out.write("Nr"+del);
@@ -19,6 +19,7 @@ import java.awt.Point;
 import java.awt.RenderingHints;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
+import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 import java.awt.image.RescaleOp;
 import java.io.BufferedWriter;
@@ -34,12 +35,11 @@ import java.util.logging.Logger;
 import javax.imageio.ImageIO;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.ToolTipManager;
 
 import moa.cluster.Cluster;
 import moa.cluster.Clustering;
 import moa.cluster.SubspaceClustering;
-import moa.cluster.SubspaceSphereCluster;
-import moa.gui.visualization.ClusterPanel;
 import moa.gui.visualization.PointPanel;
 
 public class SubspaceStreamPanel extends JPanel implements ComponentListener {
@@ -58,9 +58,9 @@ public class SubspaceStreamPanel extends JPanel implements ComponentListener {
 
     /* Each layer contains only the corresponding visualization */
     private JPanel layerPoints;
-    private JPanel layerMicro;
-    private JPanel layerMacro;
-    private JPanel layerGroundTruth;
+    private SubspaceCanvasLayer layerMicro;
+    private SubspaceCanvasLayer layerMacro;
+    private SubspaceCanvasLayer layerGroundTruth;
 
     // Buffered image stuffs
     private BufferedImage pointCanvas;
@@ -96,9 +96,9 @@ public class SubspaceStreamPanel extends JPanel implements ComponentListener {
         layerPoints.setOpaque(true);
         layerPoints.setBackground(Color.white);
         
-        layerMicro = getNewLayer();
-        layerMacro = getNewLayer();
-        layerGroundTruth = getNewLayer();
+        layerMicro = new SubspaceCanvasLayer(this);
+        layerMacro = new SubspaceCanvasLayer(this);
+        layerGroundTruth = new SubspaceCanvasLayer(this);
 
         add(layerMacro);
         add(layerMicro);
@@ -109,7 +109,7 @@ public class SubspaceStreamPanel extends JPanel implements ComponentListener {
         add(layerPointCanvas);
         
         addComponentListener(this);
-        
+        ToolTipManager.sharedInstance().registerComponent(this);	// Tooltips of the canvas layers
     }
 
 
@@ -126,53 +126,42 @@ public class SubspaceStreamPanel extends JPanel implements ComponentListener {
     }
     
     public void drawMacroClustering(SubspaceClustering clustering, ArrayList<SubspaceDataPoint> points, Color color) {
-    	layerMacro.removeAll();
     	
+    	// Points included in any found cluster (drawn once, however many clusters include them)
     	List<Cluster> foundClusters = clustering.getClustering();
     	double inclusionProbabilityThreshold = 0.5;
+    	ArrayList<SubspaceDataPoint> included = new ArrayList<SubspaceDataPoint>();
     	for (SubspaceDataPoint p : points) {
     		for (int i = 0; i < foundClusters.size(); i++) {
-    			Cluster fc = foundClusters.get(i);
-    			if (fc.getInclusionProbability(p) >= inclusionProbabilityThreshold) {
-    				if (p.getSubspace()[getActiveXDim()] == true || p.getSubspace()[getActiveYDim()] == true) {
-    					SubspacePointPanel pointPanel = new SubspacePointPanel(p, this, color);
-    			    	layerMacro.add(pointPanel);
-    			        pointPanel.updateLocation();
-    				}
+    			if (foundClusters.get(i).getInclusionProbability(p) >= inclusionProbabilityThreshold) {
+    				included.add(p);
+    				break;
     			}
     		}
     	}
+    	layerMacro.setPoints(included, color);
 
         if (layerMacro.isVisible() && pointsVisible) {	// Points & Macro together
             Graphics2D imageGraphics = (Graphics2D) pointCanvas.createGraphics();
-            imageGraphics.setColor(color);
-            drawClusteringsOnCanvas(layerMacro, imageGraphics);
+            layerMacro.drawOnCanvas(imageGraphics);
+            imageGraphics.dispose();
             layerPointCanvas.repaint();
         }
-
-        layerMacro.repaint();
     }
     
     public void drawGTClustering(SubspaceClustering clustering, Color color) {
-    	layerGroundTruth.removeAll();
-        
+    	List<SubspaceClusterPanel> clusterPanels = new ArrayList<SubspaceClusterPanel>();
         for (int c = 0; c < clustering.size(); c++) {
-            Cluster cluster = clustering.get(c);
-
-            SubspaceClusterPanel clusterpanel = new SubspaceClusterPanel(cluster, color, this);
-            
-            layerGroundTruth.add(clusterpanel);
-            clusterpanel.updateLocation();
+            clusterPanels.add(new SubspaceClusterPanel(clustering.get(c), color, this));
         }
+        layerGroundTruth.setClusters(clusterPanels, color);
 
         if (layerGroundTruth.isVisible() && pointsVisible) {	// Points & GT together
             Graphics2D imageGraphics = (Graphics2D) pointCanvas.createGraphics();
-            imageGraphics.setColor(color);
-            drawClusteringsOnCanvas(layerGroundTruth, imageGraphics);
+            layerGroundTruth.drawOnCanvas(imageGraphics);
+            imageGraphics.dispose();
             layerPointCanvas.repaint();
         }
-
-        layerGroundTruth.repaint();
     }
 
     public void setMicroLayerVisibility(boolean visibility) {
@@ -268,27 +257,6 @@ public class SubspaceStreamPanel extends JPanel implements ComponentListener {
     }
 
 
-    /**
-     * Draw clusterings in 'layer' onto canvas of 'imageGraphics'.
-     * When points & clustering should be on screen at the same time, pointCanvas will hide clustering layer.
-     * To solve this, use this method to draw the clusterings onto the pointCanvas again.
-     * 
-     * @param layer
-     * @param imageGraphics
-     */
-    private void drawClusteringsOnCanvas(JPanel layer, Graphics2D imageGraphics) {
-        for (Component comp : layer.getComponents()) {
-            if (comp instanceof SubspaceClusterPanel) {
-                SubspaceClusterPanel cp = (SubspaceClusterPanel) comp;
-                cp.drawOnCanvas(imageGraphics);
-            } else if (comp instanceof SubspacePointPanel) {
-            	SubspacePointPanel pp = (SubspacePointPanel) comp;
-            	pp.drawOnCanvas(imageGraphics);
-            }
-        }
-    }
-
-
     public void applyDrawDecay(float factor) {
         RescaleOp brightenOp = new RescaleOp(1f, 150f/factor, null);
         pointCanvas = brightenOp.filter(pointCanvas, null);
@@ -297,31 +265,61 @@ public class SubspaceStreamPanel extends JPanel implements ComponentListener {
         layerPointCanvas.repaint();
     }
 
-    private void drawClustering(JPanel layer, Clustering clustering, Color color) {
-        layer.removeAll();
-
+    private void drawClustering(SubspaceCanvasLayer layer, Clustering clustering, Color color) {
+    	List<SubspaceClusterPanel> clusterPanels = new ArrayList<SubspaceClusterPanel>();
         for (int c = 0; c < clustering.size(); c++) {
-            SubspaceSphereCluster cluster = (SubspaceSphereCluster) clustering.get(c);
-
-            SubspaceClusterPanel clusterpanel = new SubspaceClusterPanel(cluster, color, this);
-            
-            layer.add(clusterpanel);
-            clusterpanel.updateLocation();
+            clusterPanels.add(new SubspaceClusterPanel(clustering.get(c), color, this));
         }
+        layer.setClusters(clusterPanels, color);
 
         if (layer.isVisible() && pointsVisible) {
             Graphics2D imageGraphics = (Graphics2D) pointCanvas.createGraphics();
-            imageGraphics.setColor(color);
-            drawClusteringsOnCanvas(layer, imageGraphics);
+            layer.drawOnCanvas(imageGraphics);
+            imageGraphics.dispose();
             layerPointCanvas.repaint();
         }
-
-        layer.repaint();
+    }
+    
+    /**
+     * Tooltip of the point or cluster under the mouse, searched in the visible canvas layers
+     */
+    @Override
+    public String getToolTipText(MouseEvent event) {
+    	int x = event.getX();
+    	int y = event.getY();
+    	if (layerMacro.isVisible()) {
+    		SubspaceDataPoint p = layerMacro.getPointAt(x, y);
+    		if (p != null) return p.getInfo(getActiveXDim(), getActiveYDim());
+    	}
+    	SubspaceClusterPanel cp = getClusterPanelAt(x, y);
+    	if (cp != null) {
+    		cp.updateTooltip();
+    		return cp.getToolTipText();
+    	}
+    	return null;
+    }
+    
+    private SubspaceClusterPanel getClusterPanelAt(int x, int y) {
+    	SubspaceClusterPanel cp = null;
+    	if (layerMicro.isVisible()) {
+    		cp = layerMicro.getClusterAt(x, y);
+    	}
+    	if (cp == null && layerGroundTruth.isVisible()) {
+    		cp = layerGroundTruth.getClusterAt(x, y);
+    	}
+    	return cp;
+    }
+    
+    private void renderLayers() {
+    	if (layerMacro == null) return;		// Not constructed yet
+    	layerMacro.render();
+    	layerMicro.render();
+    	layerGroundTruth.render();
     }
     
 
     public void screenshot(String filename, boolean svg, boolean png){
-    	if(layerPoints.getComponentCount()==0 && layerMacro.getComponentCount()==0 && layerMicro.getComponentCount()==0)
+    	if(layerPoints.getComponentCount()==0 && layerMacro.isEmpty() && layerMicro.isEmpty())
     		return;
     	
         BufferedImage image = new BufferedImage(getWidth(),getHeight(),BufferedImage.TYPE_INT_RGB);
@@ -345,24 +343,15 @@ public class SubspaceStreamPanel extends JPanel implements ComponentListener {
                 out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\""+width+"\" height=\""+width+"\">\n");
 
                 if(layerMicro.isVisible()){
-                    for(Component comp :layerMicro.getComponents()){
-                        if(comp instanceof ClusterPanel)
-                            out.write(((ClusterPanel)comp).getSVGString(width));
-                    }
+                    out.write(layerMicro.getSVGString(width));
                 }
 
                 if(layerMacro.isVisible()){
-                    for(Component comp :layerMacro.getComponents()){
-                        if(comp instanceof ClusterPanel)
-                            out.write(((ClusterPanel)comp).getSVGString(width));
-                    }
+                    out.write(layerMacro.getSVGString(width));
                 }
 
                 if(layerGroundTruth.isVisible()){
-                    for(Component comp :layerGroundTruth.getComponents()){
-                        if(comp instanceof ClusterPanel)
-                            out.write(((ClusterPanel)comp).getSVGString(width));
-                    }
+                    out.write(layerGroundTruth.getSVGString(width));
                 }
 
                 if(layerPoints.isVisible()){
@@ -416,6 +405,7 @@ public class SubspaceStreamPanel extends JPanel implements ComponentListener {
 
     public void setActiveXDim(int activeXDim) {
         this.activeXDim = activeXDim;
+        renderLayers();
     }
 
     public int getActiveYDim() {
@@ -424,6 +414,7 @@ public class SubspaceStreamPanel extends JPanel implements ComponentListener {
 
     public void setActiveYDim(int activeYDim) {
         this.activeYDim = activeYDim;
+        renderLayers();
     }
 
     /** This method is called from within the constructor to
@@ -455,6 +446,11 @@ public class SubspaceStreamPanel extends JPanel implements ComponentListener {
     }// </editor-fold>//GEN-END:initComponents
 
     private void formMouseClicked(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_formMouseClicked
+        SubspaceClusterPanel clicked = getClusterPanelAt(evt.getX(), evt.getY());
+        if(clicked!=null){
+            setHighlightedClusterPanel(clicked);
+            return;
+        }
         if(highlighted_cluster!=null){
             highlighted_cluster.highlight(false);
             highlighted_cluster=null;
@@ -477,9 +473,9 @@ public class SubspaceStreamPanel extends JPanel implements ComponentListener {
         //System.out.println(e.getComponent().getClass().getName() + " --- Resized ");
 
         int size = Math.min(getWidth(), getHeight());
-        layerMicro.setSize(new Dimension(size, size));
-        layerMacro.setSize(new Dimension(size, size));
-        layerGroundTruth.setSize(new Dimension(size, size));
+        layerMicro.setCanvasSize(size);
+        layerMacro.setCanvasSize(size);
+        layerGroundTruth.setCanvasSize(size);
         layerPoints.setSize(new Dimension(size, size));
 
         pointCanvas = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
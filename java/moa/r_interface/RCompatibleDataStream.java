@@ -10,13 +10,32 @@ public class RCompatibleDataStream {
         this.stream = stream;
     }
     public double[][] getPoints(int n) {
-        int numberDims = this.stream.numAttsOption.getValue();
-        double[][] res = new double[n][numberDims];
-        for(int i = 0; i < n; i++) {
-            res[i] = this.stream.nextInstance().toDoubleArray();
+        int width = this.stream.numAttsOption.getValue() + 1;    // Incl. class column
+        double[] values = new double[n * width];
+        int filled = this.stream.fill(values, null, n, false);
+        double[][] res = new double[filled][width];
+        for(int i = 0; i < filled; i++) {
+            System.arraycopy(values, i * width, res[i], 0, width);
         }
         return res;
     }
+    /**
+     * Same points as getPoints(n) in one column-major array (class column last),
+     * which R can turn into a matrix without copying row by row.
+     */
+    public double[] getPointsColumnMajor(int n) {
+        int width = this.stream.numAttsOption.getValue() + 1;
+        double[] values = new double[n * width];
+        int filled = this.stream.fill(values, null, n, true);
+        if (filled < n) {    // End of stream: drop the unused rows of every column
+            double[] res = new double[filled * width];
+            for(int j = 0; j < width; j++) {
+                System.arraycopy(values, j * n, res, j * filled, filled);
+            }
+            return res;
+        }
+        return values;
+    }
     public int getNumAtts() {
         return this.stream.numAttsOption.getValue();
     }
@@ -0,0 +1,80 @@
+/**
+ * [AliasTable.java] for Subspace MOA
+ *
+ * Draws indices according to fixed weights in constant time (Vose's alias
+ * method). Building the table is linear in the number of weights, so it should
+ * be rebuilt only when the weights change. Indices with weight 0 are never drawn.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.streams.clustering;
+
+import java.io.Serializable;
+import java.util.Random;
+
+class AliasTable implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private int[] index = new int[0];		// Candidates (positive weights only)
+	private int[] alias = new int[0];
+	private double[] probability = new double[0];
+	private int size = 0;
+
+
+	/**
+	 * @param weights	Non-negative weights of the indices 0..numWeights-1
+	 */
+	void build(double[] weights, int numWeights) {
+		if (index.length < numWeights) {
+			index = new int[numWeights];
+			alias = new int[numWeights];
+			probability = new double[numWeights];
+		}
+
+		double sum = 0.0;
+		size = 0;
+		for (int i = 0; i < numWeights; i++) {
+			if (weights[i] > 0) {
+				index[size++] = i;
+				sum += weights[i];
+			}
+		}
+
+		// Scaled probabilities; small ones are stacked from the front, large ones from the back
+		int[] stack = new int[size];
+		int numSmall = 0;
+		int large = size;
+		for (int k = 0; k < size; k++) {
+			probability[k] = weights[index[k]] * size / sum;
+			if (probability[k] < 1.0) stack[numSmall++] = k;
+			else stack[--large] = k;
+		}
+
+		while (numSmall > 0 && large < size) {
+			int s = stack[--numSmall];
+			int l = stack[large];
+			alias[s] = l;
+			probability[l] -= 1.0 - probability[s];
+			if (probability[l] < 1.0) {
+				large++;
+				stack[numSmall++] = l;
+			}
+		}
+		// Left over due to rounding
+		while (numSmall > 0) probability[stack[--numSmall]] = 1.0;
+		while (large < size) probability[stack[large++]] = 1.0;
+	}
+
+	/**
+	 * @return an index drawn according to the weights, -1 if all weights are 0
+	 */
+	int sample(Random random) {
+		if (size == 0) return -1;
+		double u = random.nextDouble() * size;
+		int k = (int) u;
+		if (k == size) k--;
+		return (u - k < probability[k]) ? index[k] : index[alias[k]];
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ * [AttributeRangeFile.java] for Subspace MOA
+ *
+ * Sidecar statistics file holding the min/max of every numerical attribute of a
+ * data file, so that streams can be normalized without reading the data twice.
+ * Plain text, one attribute per line: name, min and max separated by tabs.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.streams.clustering;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+
+public class AttributeRangeFile {
+
+	public static void write(File file, String[] names, double[] min, double[] max) throws IOException {
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		try {
+			for (int j = 0; j < names.length; j++) {
+				out.write(names[j] + "\t" + min[j] + "\t" + max[j]);
+				out.newLine();
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return {min, max} per attribute name
+	 */
+	public static HashMap<String, double[]> read(File file) throws IOException {
+		HashMap<String, double[]> ranges = new HashMap<String, double[]>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.trim().length() == 0) continue;
+				int second = line.lastIndexOf('\t');
+				int first = line.lastIndexOf('\t', second - 1);
+				if (first < 0) {
+					throw new IOException(file + ": invalid line " + line);
+				}
+				double min = Double.parseDouble(line.substring(first + 1, second));
+				double max = Double.parseDouble(line.substring(second + 1));
+				ranges.put(line.substring(0, first), new double[] {min, max});
+			}
+		} finally {
+			in.close();
+		}
+		return ranges;
+	}
+}
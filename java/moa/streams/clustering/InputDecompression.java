@@ -0,0 +1,60 @@
+/**
+ * [InputDecompression.java] for Subspace MOA
+ *
+ * Opens data files transparently: gzip and zstd compressed input is recognized by
+ * its magic bytes and decompressed on the fly, everything else is passed through.
+ * Gzip is handled by the JDK; zstd needs zstd-jni (com.github.luben.zstd) on the
+ * classpath, which is looked up at runtime.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.streams.clustering;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.zip.GZIPInputStream;
+
+public class InputDecompression {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final String ZSTD_INPUT_STREAM = "com.github.luben.zstd.ZstdInputStream";
+
+	/**
+	 * @param in	Raw (possibly compressed) input
+	 * @return decompressed, buffered input
+	 */
+	public static InputStream wrap(InputStream in) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+		buffered.mark(4);
+		int[] magic = new int[4];
+		for (int i = 0; i < magic.length; i++) {
+			magic[i] = buffered.read();
+		}
+		buffered.reset();
+
+		if (magic[0] == 0x1f && magic[1] == 0x8b) {
+			return new BufferedInputStream(new GZIPInputStream(buffered, BUFFER_SIZE), BUFFER_SIZE);
+		}
+		if (magic[0] == 0x28 && magic[1] == 0xb5 && magic[2] == 0x2f && magic[3] == 0xfd) {
+			return new BufferedInputStream(openZstd(buffered), BUFFER_SIZE);
+		}
+		return buffered;
+	}
+
+	private static InputStream openZstd(InputStream in) throws IOException {
+		try {
+			Class<?> zstd = Class.forName(ZSTD_INPUT_STREAM);
+			return (InputStream) zstd.getConstructor(InputStream.class).newInstance(in);
+		} catch (ClassNotFoundException e) {
+			throw new IOException("zstd compressed input needs " + ZSTD_INPUT_STREAM
+					+ " (zstd-jni) on the classpath", e);
+		} catch (InvocationTargetException e) {
+			throw new IOException("Couldn't open zstd compressed input", e.getCause());
+		} catch (Exception e) {
+			throw new IOException("Couldn't open zstd compressed input", e);
+		}
+	}
+}
@@ -122,9 +122,21 @@ public class RandomRBFSubspaceGeneratorEvents extends SubspaceClusteringStream {
     /* Variables: Instances */
     protected Random instanceRandom;
     private int numGeneratedInstances;
-    private AutoExpandVector<Double>[] inClusterRangeSize;
-    private AutoExpandVector<Double>[] inClusterRangeCoord;
+    private double[][] inClusterRangeSize;
+    private double[][] inClusterRangeCoord;
     private double inClusterRangeSizeSum;
+    private double[] fillRowValues = new double[0];		// Reused by fill()
+    private double[] fillRowLabels = new double[0];
+    
+    /* Variables: Lookup structures, rebuilt lazily after kernel changes */
+    private AliasTable kernelChoice = new AliasTable();
+    private double[] kernelWeights = new double[0];
+    private boolean kernelWeightsChanged = true;
+    private double[][] dimIntervalLeft;		// Per dimension: kernels relevant there, in kernel order
+    private double[][] dimIntervalRight;
+    private double[][] dimIntervalLabel;
+    private int[] dimNumIntervals;
+    private boolean kernelBoundariesChanged = true;
     
     /* Variables: Cluster moves */
     private int kernelMovePointFrequency = 10;		// Step size
@@ -180,6 +192,7 @@ public class RandomRBFSubspaceGeneratorEvents extends SubspaceClusteringStream {
         
         numActiveKernels = 0;
         kernels = new AutoExpandVector<GeneratorSubspaceCluster>();
+        kernelWeightsChanged = kernelBoundariesChanged = true;
         initKernels();
         if (debug) System.out.println("----- RandomRBFSubspaceGeneratorEvents.restart() /////");
 	}
@@ -228,60 +241,102 @@ public class RandomRBFSubspaceGeneratorEvents extends SubspaceClusteringStream {
 	
 	@Override
     public SubspaceInstance nextInstance() {
+        int numAtts = numAttsOption.getValue();
+        double[] values = new double[numAtts + 1];		// +1 for class label
+        double[] classLabels = new double[numAtts];
+        int clusterChoice = generateInstance(values, 0, classLabels, 0);
+
+        // Construct an "Instance"
+        SubspaceInstance inst = new SubspaceInstance(1.0, values, classLabels);
+        inst.setDataset(getHeader());
+        if (clusterChoice != -1)
+        	kernels.get(clusterChoice).addInstance(inst);	// TODO: Add to one or more kernels
+        
+//        System.out.println(numGeneratedInstances+": Overlap is"+updateOverlaps());
+        
+        return inst;
+    }
+    
+    /**
+     * Generates the points right into the buffers (row by row), or through one
+     * reused row (column by column). No instances are created, so the kernels
+     * don't get to keep these points (they are not used anywhere else).
+     */
+    @Override
+    public int fill(double[] values, double[] labels, int n, boolean columnMajor) {
+    	int numAtts = numAttsOption.getValue();
+    	if (fillRowValues.length < numAtts + 1) {
+    		fillRowValues = new double[numAtts + 1];
+    		fillRowLabels = new double[numAtts];
+    	}
+    	
+    	for (int i = 0; i < n; i++) {
+    		if (!columnMajor) {
+    			if (labels != null) {
+    				generateInstance(values, i * (numAtts + 1), labels, i * numAtts);
+    			} else {
+    				generateInstance(values, i * (numAtts + 1), fillRowLabels, 0);
+    			}
+    			continue;
+    		}
+    		generateInstance(fillRowValues, 0, fillRowLabels, 0);
+    		for (int j = 0; j <= numAtts; j++) {
+    			values[j * n + i] = fillRowValues[j];
+    		}
+    		if (labels != null) {
+    			for (int j = 0; j < numAtts; j++) {
+    				labels[j * n + i] = fillRowLabels[j];
+    			}
+    		}
+    	}
+    	return n;
+    }
+    
+    /**
+     * Generates the next point into the given arrays (nothing is allocated).
+     * 
+     * @param values - attribute values followed by the generator label (numAtts + 1 from valuesOffset on)
+     * @param valuesOffset - index of the first attribute value in values
+     * @param classLabels - class label for each attribute (numAtts from labelsOffset on)
+     * @param labelsOffset - index of the first class label in classLabels
+     * @return index of the generating kernel, -1 for a noise point
+     */
+    protected int generateInstance(double[] values, int valuesOffset, double[] classLabels, int labelsOffset) {
     	numGeneratedInstances++;	// Timeline is extended
         eventScheduler();			// Event processing
 
-        // Initializations
-        double[] values = null;
-        double[] classLabels = null;
+        int numAtts = numAttsOption.getValue();
         int clusterChoice = -1;
-        double chosenLabel = -1;
         
         // Fill in the attribute values / class labels
         if (instanceRandom.nextDouble() > noiseLevelOption.getValue()) {	// From generator cluster
 			clusterChoice = chooseWeightedElement();	// TODO: From one or more kernels
             SubspaceSphereCluster generator = kernels.get(clusterChoice).generator;
-            values = generator.sample(instanceRandom).toDoubleArray();
-            boolean[] curSubspace = generator.getSubspace();
-		            
-            chosenLabel = generator.getId();
-        	classLabels = new double[numAttsOption.getValue()];
-        	for (int j = 0; j < classLabels.length; j++) {
-            	if (curSubspace[j]) {
-            		classLabels[j] = chosenLabel;
+            generator.sample(instanceRandom, values, valuesOffset);
+            double chosenLabel = generator.getId();
+            values[valuesOffset + numAtts] = chosenLabel;
+		    
+            updateDimIntervals();
+        	for (int j = 0; j < numAtts; j++) {
+            	if (generator.isRelevant(j)) {
+            		classLabels[labelsOffset + j] = chosenLabel;
             	} else {
-            		classLabels[j] = noiseId;	// Noise label by default
-            		for (int i = 0; i < kernels.size(); i++) {
-            			SubspaceSphereCluster otherGenerator = kernels.get(i).generator;
-            			if (otherGenerator.boundaryCheck(values[j], j)) {
-            				classLabels[j] = otherGenerator.getId();	// If it's in another cluster, label of that cluster
-            				break;
-	            		}
-            		}
+            		classLabels[labelsOffset + j] = getIntervalLabel(values[valuesOffset + j], j);	// If it's in another cluster, label of that cluster
             	}
             }            
         } else {	// Pure noise
-            values = getNoisePoint();
-            classLabels = new double[numAttsOption.getValue()];
-            for (int j = 0; j < classLabels.length; j++) {
-            	classLabels[j] = noiseId;
+            getNoisePoint(values, valuesOffset);
+            for (int j = 0; j < numAtts; j++) {
+            	classLabels[labelsOffset + j] = noiseId;
             }
         }
 
         // Abnormal value detection
-        if (Double.isNaN(values[0])) {
+        if (Double.isNaN(values[valuesOffset])) {
             System.out.println("Instance corrupted: " + numGeneratedInstances);
         }
         
-        // Construct an "Instance"
-        SubspaceInstance inst = new SubspaceInstance(1.0, values, classLabels);
-        inst.setDataset(getHeader());
-        if (clusterChoice != -1)
-        	kernels.get(clusterChoice).addInstance(inst);	// TODO: Add to one or more kernels
-        
-//        System.out.println(numGeneratedInstances+": Overlap is"+updateOverlaps());
-        
-        return inst;
+        return clusterChoice;
     }
     
     /**
@@ -290,52 +345,101 @@ public class RandomRBFSubspaceGeneratorEvents extends SubspaceClusteringStream {
      * @return kernel index
      */
     private int chooseWeightedElement() {
-        double r = instanceRandom.nextDouble();
-
-        // Determine index of chosen element
-        int i = 0;
-        while (r > 0.0) {
-            r -= kernels.get(i).generator.getWeight();
-            i++;
-        }
-        i--;	// Overcounted once
-        //System.out.println(i);
-        return i;
+    	if (kernelWeightsChanged) {
+    		if (kernelWeights.length < kernels.size()) {
+    			kernelWeights = new double[kernels.size()];
+    		}
+    		for (int i = 0; i < kernels.size(); i++) {
+    			kernelWeights[i] = kernels.get(i).generator.getWeight();
+    		}
+    		kernelChoice.build(kernelWeights, kernels.size());
+    		kernelWeightsChanged = false;
+    	}
+        return kernelChoice.sample(instanceRandom);
+    }
+    
+    /**
+     * Label of the first kernel relevant in the given dimension whose range
+     * contains the value, noise label if there is none.
+     */
+    private double getIntervalLabel(double value, int dim) {
+    	double[] left = dimIntervalLeft[dim];
+    	double[] right = dimIntervalRight[dim];
+    	for (int k = 0; k < dimNumIntervals[dim]; k++) {
+    		if (value > left[k] && value < right[k]) {
+    			return dimIntervalLabel[dim][k];
+    		}
+    	}
+    	return noiseId;		// Noise label by default
+    }
+    
+    /**
+     * Collect the ranges of the relevant kernels per dimension (in kernel order),
+     * if the kernels have changed since.
+     */
+    private void updateDimIntervals() {
+    	if (!kernelBoundariesChanged) return;
+    	
+    	int numAtts = numAttsOption.getValue();
+    	int numKernels = kernels.size();
+    	if (dimNumIntervals == null || dimNumIntervals.length != numAtts
+    			|| dimIntervalLeft[0].length < numKernels) {
+    		int capacity = Math.max(numKernels, 2 * numClusterOption.getValue());
+    		dimIntervalLeft = new double[numAtts][capacity];
+    		dimIntervalRight = new double[numAtts][capacity];
+    		dimIntervalLabel = new double[numAtts][capacity];
+    		dimNumIntervals = new int[numAtts];
+    	}
+    	
+    	for (int j = 0; j < numAtts; j++) {
+    		dimNumIntervals[j] = 0;
+    	}
+    	for (int i = 0; i < numKernels; i++) {
+    		SubspaceSphereCluster kernel = kernels.get(i).generator;
+    		for (int j = 0; j < numAtts; j++) {
+    			if (kernel.isRelevant(j)) {
+    				int k = dimNumIntervals[j]++;
+    				dimIntervalLeft[j][k] = kernel.getLeftBoundary(j);
+    				dimIntervalRight[j][k] = kernel.getRightBoundary(j);
+    				dimIntervalLabel[j][k] = kernel.getId();
+    			}
+    		}
+    	}
+    	kernelBoundariesChanged = false;
     }
     
     /**
      * Randomly generate a noise point.
      * 
-     * @return noise point
+     * @param sample - destination of the noise point and its label (numAtts + 1 from offset on)
+     * @param offset - index of the first attribute value in sample
      */
-    private double[] getNoisePoint() {
-        double [] sample = new double [numAttsOption.getValue() + 1];	// +1 for class label
-        
+    private void getNoisePoint(double[] sample, int offset) {
         if (noiseInClusterOption.isSet()) {
            	// Generate a random point
             for (int j = 0; j < numAttsOption.getValue(); j++) {
-                sample[j] = instanceRandom.nextDouble();
+                sample[offset + j] = instanceRandom.nextDouble();
             }
         } else {
         	for (int j = 0; j < numAttsOption.getValue(); j++) {
-        		sample[j] = instanceRandom.nextDouble() * (1 - inClusterRangeSizeSum);
+        		double value = instanceRandom.nextDouble() * (1 - inClusterRangeSizeSum);
         		
         		double blockSum = 0.0;		// Shifting amount
-        		for (int k = 0; k < inClusterRangeCoord[j].size(); k++) {
-        			double coord = inClusterRangeCoord[j].get(k);
-        			if (coord < sample[j])
-        				blockSum += inClusterRangeSize[j].get(k);
-        			else if (coord == sample[j])	// Should not be on the boundary coord. Adjust a little bit.
-        				sample[j] -= Double.MIN_VALUE;
+        		double[] rangeCoord = inClusterRangeCoord[j];
+        		double[] rangeSize = inClusterRangeSize[j];
+        		for (int k = 0; k < rangeCoord.length; k++) {
+        			double coord = rangeCoord[k];
+        			if (coord < value)
+        				blockSum += rangeSize[k];
+        			else if (coord == value)	// Should not be on the boundary coord. Adjust a little bit.
+        				value -= Double.MIN_VALUE;
         		}
-        		sample[j] += blockSum;
+        		sample[offset + j] = value + blockSum;
         	}
         }
         
         // Noise label
-        sample[numAttsOption.getValue()] = numClusterOption.getValue();
-        
-        return sample;
+        sample[offset + numAttsOption.getValue()] = numClusterOption.getValue();
     }
     
 
@@ -357,6 +461,7 @@ public class RandomRBFSubspaceGeneratorEvents extends SubspaceClusteringStream {
             for (int i = 0; i < kernels.size(); i++) {
                 kernels.get(i).move();
             }
+            kernelBoundariesChanged = true;
             updateNoiseInterval();
         }
 
@@ -646,8 +751,8 @@ public class RandomRBFSubspaceGeneratorEvents extends SubspaceClusteringStream {
         
         // InCluster-range setting
         int numDims = numAttsOption.getValue();
-        inClusterRangeCoord = (AutoExpandVector<Double>[]) new AutoExpandVector[numDims];
-        inClusterRangeSize = (AutoExpandVector<Double>[]) new AutoExpandVector[numDims];
+        inClusterRangeCoord = new double[numDims][];
+        inClusterRangeSize = new double[numDims][];
         updateNoiseInterval();
         
         // Noise ID = the last index
@@ -761,15 +866,17 @@ public class RandomRBFSubspaceGeneratorEvents extends SubspaceClusteringStream {
 	    	Collections.sort(inClusterRangeBoundary, new BoundaryComparator());
 	    	
 	    	// Calculate range sizes/coords
-	    	inClusterRangeSize[j] = new AutoExpandVector<Double>();
-	    	inClusterRangeCoord[j] = new AutoExpandVector<Double>();
+	    	inClusterRangeSize[j] = new double[inClusterRangeBoundary.size()];
+	    	inClusterRangeCoord[j] = new double[inClusterRangeBoundary.size()];
         	
 	    	double rangeSizeSum = 0.0;
+	    	int k = 0;
         	for (Boundary b : inClusterRangeBoundary) {
         		double rangeSize = b.r - b.l;
-        		inClusterRangeSize[j].add(rangeSize);
-        		inClusterRangeCoord[j].add(b.l - rangeSizeSum);
+        		inClusterRangeSize[j][k] = rangeSize;
+        		inClusterRangeCoord[j][k] = b.l - rangeSizeSum;
         		rangeSizeSum += rangeSize;
+        		k++;
         	}
         	
         	inClusterRangeSizeSum = rangeSizeSum;
@@ -918,6 +1025,7 @@ public class RandomRBFSubspaceGeneratorEvents extends SubspaceClusteringStream {
         	// Remove this cluster
         	if (killTimer == 0) {
                 kernels.remove(this);
+                kernelWeightsChanged = kernelBoundariesChanged = true;
             } else if (killTimer > 0) {
                 killTimer--;	// Getting old
             }
@@ -1177,6 +1285,7 @@ public class RandomRBFSubspaceGeneratorEvents extends SubspaceClusteringStream {
 	 * 
 	 */
     private void normalizeWeights() {
+    	kernelWeightsChanged = kernelBoundariesChanged = true;
         double sumWeights = 0.0;
         for (int i = 0; i < kernels.size(); i++) {
             sumWeights += kernels.get(i).generator.getWeight();
@@ -10,6 +10,7 @@
 package moa.streams.clustering;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -17,15 +18,21 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import moa.core.InputStreamProgressMonitor;
+import moa.core.InstancesHeader;
 import moa.core.ObjectRepository;
 import moa.core.SubspaceInstance;
 import moa.options.FileOption;
 import moa.options.FlagOption;
 import moa.options.IntOption;
 import moa.options.ListOption;
+import moa.options.MultiChoiceOption;
 import moa.options.Option;
 import moa.tasks.TaskMonitor;
 import weka.core.Instance;
@@ -42,7 +49,7 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
     /* Options */
     
 	public FileOption arffFileOption = new FileOption("arffFile", 'f',
-			"ARFF file to load.", defaultfile, "arff", false);
+			"ARFF file to load (may be gzip or zstd compressed).", defaultfile, "arff", false);
 
 	public IntOption classIndexOption = new IntOption(
 			"classIndex",
@@ -53,7 +60,27 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
     public FlagOption normalizeOption = 
     		new FlagOption("normalize", 'n', 
     				"Numerical data will be normalized to 0-1 " +
-    				"for the visualization to work. The complete arff file needs to be read upfront.");
+    				"for the visualization to work. See normalizationMode for where min/max come from.");
+
+    public MultiChoiceOption normalizationModeOption = new MultiChoiceOption("normalizationMode", 'N',
+    		"Where the min/max values for normalization come from.",
+    		new String[] {"PrePass", "RangeFile", "Adaptive"},
+    		new String[] {"The complete arff file is read upfront (written to rangeFile if given)",
+    					  "Read from rangeFile, no pre-pass",
+    					  "Taken from the first warmUpSize instances and widened as new values come"}, 0);
+
+    public FileOption rangeFileOption = new FileOption("rangeFile", 'R',
+    		"Sidecar file with the min/max of every attribute (see AttributeRangeFile).",
+    		"", "range", false);
+
+    public IntOption warmUpSizeOption = new IntOption("warmUpSize", 'w',
+    		"Adaptive normalization: instances buffered before the first one is emitted.",
+    		1000, 1, Integer.MAX_VALUE);
+
+    public IntOption readAheadOption = new IntOption("readAhead", 'q',
+    		"Instances decompressed and parsed ahead by a separate reader thread " +
+    		"(0 = read in the calling thread).",
+    		0, 0, Integer.MAX_VALUE);
 
     public ListOption removeAttributesOption = new ListOption("removeAttributes", 'r',
             "Attributes to remove. Enter comma seperated list, " +
@@ -75,13 +102,21 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 	
 	/* Preprocessing */
 	private Integer[] removeAttributes = null;				// Filtering: duplicates, invalid attributes
+	private int[] keptAttributes = null;					// Raw attribute index by filtered attribute
 	private Instances filteredDataset = null;				// After filtering
-	private ArrayList<Double[]> valuesMinMaxDiff = null;	// For normalization
+	private double[] normMin = null;						// For normalization (per filtered attribute)
+	private double[] normMax = null;
+	private LinkedList<double[]> warmUpBuffer = null;		// Adaptive normalization
 	
-	/* Instances */
+	/* Reader thread */
+	private static final Object END_OF_FILE = new Object();
+	private transient Thread readerThread = null;
+	private transient BlockingQueue<Object> readQueue = null;	// Rows, END_OF_FILE or a RuntimeException
+
+	/* Instances, read as rows: the values of the filtered attributes, then the instance weight */
 	protected Instances instances;
 	protected boolean hitEndOfFile;
-	protected Instance lastInstanceRead;
+	protected double[] lastRowRead;
 	protected int numInstancesRead;
 
 	
@@ -112,17 +147,42 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 	 */
 	@Override
 	public SubspaceInstance nextInstance() {
-		Instance instance = this.lastInstanceRead;
+		double[] row = this.lastRowRead;
 		this.hitEndOfFile = !readNextInstanceFromFile();
 		
 		/* Make the instance subspace-labeled */
-		if (instance != null) {
-			return toSubspaceInstance(instance);
+		if (row != null) {
+			return toSubspaceInstance(row);
 		} else {
 			return null;
 		}
 	}
 
+	/**
+	 * Copies the values straight from the parsed rows, the subspace labels are
+	 * the class value (as in toSubspaceInstance).
+	 */
+	@Override
+	public int fill(double[] values, double[] labels, int n, boolean columnMajor) {
+		int numAtts = numAttsOption.getValue();
+		int classIndex = filteredDataset.classIndex();
+		int i;
+		for (i = 0; i < n && hasMoreInstances(); i++) {
+			double[] row = this.lastRowRead;
+			this.hitEndOfFile = !readNextInstanceFromFile();
+			for (int j = 0; j <= numAtts; j++) {
+				values[index(i, j, n, numAtts + 1, columnMajor)] = row[j];
+			}
+			if (labels != null) {
+				double classValue = row[classIndex];
+				for (int j = 0; j < numAtts; j++) {
+					labels[index(i, j, n, numAtts, columnMajor)] = classValue;
+				}
+			}
+		}
+		return i;
+	}
+
 	public boolean isRestartable() {
 		return true;
 	}
@@ -133,14 +193,15 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 	 */
 	public void restart() {
 		try {
+			stopReaderThread();
 			if (fileReader != null) {	// If there was a file already open, close it.
 				fileReader.close();
 			}
 			
-			// File variables
+			// File variables (the progress is measured on the compressed bytes)
 			InputStream fileStream = new FileInputStream(arffFileOption.getFile());
 			fileProgressMonitor = new InputStreamProgressMonitor(fileStream);
-			fileReader = new BufferedReader(new InputStreamReader(fileProgressMonitor));
+			fileReader = new BufferedReader(new InputStreamReader(InputDecompression.wrap(fileProgressMonitor)));
 			
 			// Extracting instances from the file
 			instances = new Instances(fileReader, 1);
@@ -174,14 +235,21 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 				}
 			}
 			
-			// Normalize if needed
-			if (normalizeOption.isSet()) {
+			// Normalize if needed: min/max of the whole file upfront
+			ArrayList<Double[]> valuesMinMaxDiff = null;
+			if (normalizeOption.isSet() && normalizationModeOption.getChosenIndex() == 0) {
 				valuesMinMaxDiff = readMinMaxDiffValues(attributesToBeRemoved);
 			}
 			
 			// Attributes to be removed (in an array, sequentially accessible)
 			removeAttributes = attributesToBeRemoved.toArray(new Integer[0]);
 			Arrays.sort(removeAttributes);
+			keptAttributes = new int[instances.numAttributes() - removeAttributes.length];
+			for (int i = 0, k = 0; i < instances.numAttributes(); i++) {
+				if (!attributesToBeRemoved.contains(i)) {
+					keptAttributes[k++] = i;
+				}
+			}
 			
 			// New number of attributes (class attribute included)
 			numAttsOption = new IntOption("numAtts", 'a',"", instances.numAttributes() - removeAttributes.length - 1);	// Without class label
@@ -198,10 +266,23 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 			for (int i = removeAttributes.length - 1; i >= 0 ; i--) {
 				filteredDataset.deleteAttributeAt(removeAttributes[i]);
 			}
+			streamHeader = new InstancesHeader(filteredDataset);
+
+			// Decompress and parse on a separate thread from here on
+			if (readAheadOption.getValue() > 0) {
+				startReaderThread(readAheadOption.getValue());
+			}
+
+			// Initialize: normalization
+			normMin = normMax = null;
+			warmUpBuffer = null;
+			if (normalizeOption.isSet()) {
+				initNormalization(valuesMinMaxDiff);
+			}
 
 			// Initialize: instance-reading variables
 			this.numInstancesRead = 0;
-			this.lastInstanceRead = null;
+			this.lastRowRead = null;
 			this.hitEndOfFile = !readNextInstanceFromFile();
 			
 		} catch (IOException ioe) {
@@ -210,35 +291,117 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 	}
 
 	protected boolean readNextInstanceFromFile() {
+		double[] row = (warmUpBuffer != null && !warmUpBuffer.isEmpty()) ?
+				warmUpBuffer.removeFirst() : nextFilteredRow();
+
+		if (row == null) {
+			return false;
+		}
+
+		// Normalize if needed
+		if (normMin != null) {
+			if (warmUpBuffer != null) {
+				updateRanges(row);
+			}
+			int classIndex = filteredDataset.classIndex();
+			for (int i = 0; i < normMin.length; i++) {
+				double diff = normMax[i] - normMin[i];
+				if (diff > 0 &&								// Constant or unknown attributes stay as they are
+					i != classIndex) {						// Class label is not subject to be normalized
+					row[i] = (row[i] - normMin[i]) / diff;
+				}
+			}
+		}
+
+		// Set next instance
+		this.lastRowRead = row;
+		this.numInstancesRead++;
+		return true;
+	}
+
+	/*
+	 * Next filtered row, from the reader thread if there is one
+	 */
+	private double[] nextFilteredRow() {
+		if (readQueue == null) {
+			return readFilteredRow();
+		}
+		Object next;
+		try {
+			next = readQueue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("ArffFileStream interrupted while waiting for the reader thread.", e);
+		}
+		if (next == END_OF_FILE) {
+			stopReaderThread();
+			return null;
+		}
+		if (next instanceof RuntimeException) {
+			stopReaderThread();
+			throw (RuntimeException) next;
+		}
+		return (double[]) next;
+	}
+
+	private void startReaderThread(int capacity) {
+		final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(capacity);
+		readQueue = queue;
+		readerThread = new Thread("SubspaceARFFStream reader") {
+			@Override
+			public void run() {
+				try {
+					double[] row;
+					do {
+						row = readFilteredRow();
+						queue.put(row != null ? row : END_OF_FILE);
+					} while (row != null);
+				} catch (InterruptedException e) {
+					// Stopped by restart()
+				} catch (RuntimeException e) {
+					try {
+						queue.put(e);
+					} catch (InterruptedException ie) {
+						// Stopped by restart()
+					}
+				}
+			}
+		};
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+
+	private void stopReaderThread() {
+		if (readerThread != null) {
+			readerThread.interrupt();
+			try {
+				readerThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			readerThread = null;
+		}
+		readQueue = null;
+	}
+
+	/**
+	 * Reads the next instance from the file and keeps the values of the filtered
+	 * attributes.
+	 * 
+	 * @return the row (filtered values, then the weight) or null at the end of the file
+	 */
+	protected double[] readFilteredRow() {
 		try {			
 			if (this.instances.readInstance(this.fileReader)) {
 				Instance rawInstance = this.instances.instance(0);
 				
-				// Remove dataset from instance so we can delete attributes
-				rawInstance.setDataset(null);
-				for (int i = removeAttributes.length - 1; i >= 0 ; i--) {
-					rawInstance.deleteAttributeAt(removeAttributes[i]);	
-				}
-				rawInstance.setDataset(filteredDataset);
-
-				// Normalize if needed
-				if (normalizeOption.isSet() && valuesMinMaxDiff != null) {
-					for (int i = 0; i < rawInstance.numAttributes() ; i++) {
-						if (valuesMinMaxDiff.get(i)[2] != 1 &&		// Already normalized
-							valuesMinMaxDiff.get(i)[2] != 0 &&		// Max. value is 0 (unable to be normalized)
-							i != rawInstance.classIndex()) {		// Class label is not subject to be normalized
-							double v = rawInstance.value(i);
-							v = (v - valuesMinMaxDiff.get(i)[0]) / valuesMinMaxDiff.get(i)[2];
-							rawInstance.setValue(i, v);
-						}
-					}
+				double[] row = new double[keptAttributes.length + 1];
+				for (int i = 0; i < keptAttributes.length; i++) {
+					row[i] = rawInstance.value(keptAttributes[i]);
 				}
-				
-				// Set next instance
-				this.lastInstanceRead = rawInstance;
+				row[keptAttributes.length] = rawInstance.weight();
 				this.instances.delete();	// Keep instances clean
-				this.numInstancesRead++;
-				return true;
+				return row;
 			}
 			
 			// End of file
@@ -247,13 +410,91 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 				this.fileReader = null;
 			}
 			
-			return false;
+			return null;
 			
 		} catch (IOException ioe) {
 			throw new RuntimeException(
 					"ArffFileStream failed to read instance from stream.", ioe);
 		}
 	}
+
+	/*
+	 * Min/max per filtered attribute, depending on the normalization mode
+	 */
+	private void initNormalization(ArrayList<Double[]> valuesMinMaxDiff) throws IOException {
+		int numAttributes = filteredDataset.numAttributes();
+		normMin = new double[numAttributes];
+		normMax = new double[numAttributes];
+		Arrays.fill(normMin, Double.POSITIVE_INFINITY);
+		Arrays.fill(normMax, Double.NEGATIVE_INFINITY);
+
+		switch (normalizationModeOption.getChosenIndex()) {
+		case 0:		// Pre-pass
+			for (int i = 0; i < numAttributes; i++) {
+				normMin[i] = valuesMinMaxDiff.get(i)[0];
+				normMax[i] = valuesMinMaxDiff.get(i)[1];
+			}
+			if (rangeFileOption.getFile() != null) {
+				writeRangeFile(rangeFileOption.getFile());
+			}
+			break;
+
+		case 1:		// Sidecar file
+			if (rangeFileOption.getFile() == null) {
+				throw new IOException("No rangeFile given for normalization");
+			}
+			HashMap<String, double[]> ranges = AttributeRangeFile.read(rangeFileOption.getFile());
+			for (int i = 0; i < numAttributes; i++) {
+				double[] range = ranges.get(filteredDataset.attribute(i).name());
+				if (range != null) {
+					normMin[i] = range[0];
+					normMax[i] = range[1];
+				} else if (i != filteredDataset.classIndex()) {
+					System.out.println("No range for attribute " + filteredDataset.attribute(i).name()
+							+ " in " + rangeFileOption.getFile() + ", it will not be normalized.");
+				}
+			}
+			break;
+
+		case 2:		// Adaptive: initial ranges from the warm-up buffer
+			warmUpBuffer = new LinkedList<double[]>();
+			double[] row;
+			while (warmUpBuffer.size() < warmUpSizeOption.getValue()
+					&& (row = nextFilteredRow()) != null) {
+				updateRanges(row);
+				warmUpBuffer.add(row);
+			}
+			break;
+		}
+	}
+
+	private void updateRanges(double[] row) {
+		for (int i = 0; i < normMin.length; i++) {
+			double v = row[i];
+			if (v < normMin[i]) normMin[i] = v;
+			if (v > normMax[i]) normMax[i] = v;
+		}
+	}
+
+	private void writeRangeFile(File file) throws IOException {
+		ArrayList<String> names = new ArrayList<String>();
+		ArrayList<Double> min = new ArrayList<Double>();
+		ArrayList<Double> max = new ArrayList<Double>();
+		for (int i = 0; i < filteredDataset.numAttributes(); i++) {
+			if (i != filteredDataset.classIndex()) {
+				names.add(filteredDataset.attribute(i).name());
+				min.add(normMin[i]);
+				max.add(normMax[i]);
+			}
+		}
+		double[] minArray = new double[names.size()];
+		double[] maxArray = new double[names.size()];
+		for (int j = 0; j < minArray.length; j++) {
+			minArray[j] = min.get(j);
+			maxArray[j] = max.get(j);
+		}
+		AttributeRangeFile.write(file, names.toArray(new String[0]), minArray, maxArray);
+	}
 	
 	/**
 	 * @param ignoredAttributes Attributes that will be ignored
@@ -268,7 +509,7 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 		try {
 			InputStream fileStream = new FileInputStream(arffFileOption.getFile());
 			InputStreamProgressMonitor fileProgressMonitor = new InputStreamProgressMonitor(fileStream);
-			Reader fileReader = new BufferedReader(new InputStreamReader(fileProgressMonitor));
+			Reader fileReader = new BufferedReader(new InputStreamReader(InputDecompression.wrap(fileProgressMonitor)));
 			Instances instances = new Instances(fileReader, 1);
 
 			valuesMinMaxDiff = new ArrayList<Double[]>();
@@ -326,7 +567,7 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 	@Override
 	public String getPurposeString() {
 		return "Emit a data stream from a given file: \n" +
-			   "*.arff: WEKA full-space data file\n" +
+			   "*.arff: WEKA full-space data file (also gzip or zstd compressed)\n" +
 			   "HINT: Visualization only works correctly with numerical 0-1 normalized attributes!";
 	}
 	
@@ -334,16 +575,17 @@ public class SubspaceARFFStream extends SubspaceClusteringStream {
 	
 	/** Additional **/
 	
-	protected SubspaceInstance toSubspaceInstance(Instance instance) {
-		SubspaceInstance subspaceInstance = new SubspaceInstance(instance);
+	protected SubspaceInstance toSubspaceInstance(double[] row) {
+		int numAttributes = row.length - 1;
+		SubspaceInstance subspaceInstance = new SubspaceInstance(row[numAttributes], Arrays.copyOf(row, numAttributes));
 		
-		double classValue = instance.classValue();		
-		double[] classLabels = new double[instance.numAttributes() - 1];	// w/o class index
+		double classValue = row[filteredDataset.classIndex()];
+		double[] classLabels = new double[numAttributes - 1];	// w/o class index
 		for (int j = 0; j < classLabels.length; j++) {
 			classLabels[j] = classValue;
 		}
 		subspaceInstance.setClassLabels(classLabels);
-		subspaceInstance.setDataset(instance.dataset());
+		subspaceInstance.setDataset(filteredDataset);
 		
 		return subspaceInstance;
 	}
@@ -0,0 +1,347 @@
+/**
+ * [SubspaceBinaryFile.java] for Subspace MOA
+ *
+ * Read access to a binary subspace stream file (as written by
+ * SubspaceBinaryFileWriter). The data part is memory-mapped in chunks of whole
+ * blocks, so files beyond 2 GB can be read and rows are decoded straight from the
+ * mapped pages without any parsing. Since all blocks but the last have the same
+ * size, the offset of every row follows from its number, which allows random
+ * access. Files opened via open() are shared, so any number of readers (e.g.
+ * parallel runs on the same recording) use the same mapped pages.
+ *
+ * Layout (big endian):
+ *   header: int MAGIC, int VERSION, int data offset, int #attributes,
+ *           long #instances, int rows per block, UTF relation name,
+ *           #attributes UTF attribute names, UTF class attribute name,
+ *           int #class values (-1 = numeric class), UTF class values,
+ *           #attributes doubles min, #attributes doubles max,
+ *           zero padding up to the data offset (multiple of 8)
+ *   data:   blocks of (rows per block) rows, the last block may be shorter.
+ *           Every block is stored column by column: #attributes value columns,
+ *           the class column and #attributes subspace label columns (all doubles).
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.streams.clustering;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import moa.core.InstancesHeader;
+import weka.core.Attribute;
+import weka.core.Instances;
+
+public class SubspaceBinaryFile {
+
+	public static final int MAGIC = 0x534d5342;		// "SMSB"
+	public static final int VERSION = 1;
+
+	static final int NUM_INSTANCES_POSITION = 16;		// Patched by the writer at the end
+	static final long MAX_CHUNK_SIZE = 1L << 30;
+
+	// Files opened via open(), released once no reader refers to them any more
+	// (their entries are removed via the queue on the next open())
+	private static final HashMap<String, OpenFileReference> openFiles =
+			new HashMap<String, OpenFileReference>();
+	private static final ReferenceQueue<SubspaceBinaryFile> releasedFiles =
+			new ReferenceQueue<SubspaceBinaryFile>();
+
+	private static class OpenFileReference extends WeakReference<SubspaceBinaryFile> {
+		final String key;
+
+		OpenFileReference(String key, SubspaceBinaryFile file) {
+			super(file, releasedFiles);
+			this.key = key;
+		}
+	}
+
+	private File file;
+	private int dataOffset;
+	private int numAtts;
+	private long numInstances;
+	private int rowsPerBlock;
+	private String relationName;
+	private String[] attributeNames;
+	private String className;
+	private String[] classValues;		// null for a numeric class
+	private double[] min;
+	private double[] max;
+
+	// Memory mapping
+	private long blockSize;				// Bytes of a full block
+	private long numBlocks;
+	private int blocksPerChunk;
+	private AtomicReferenceArray<MappedByteBuffer> chunks;
+	private long fileLength;
+	private long lastModified;
+
+
+	/**
+	 * Opens the given file, or returns the already opened instance if the file is
+	 * still in use and has not been modified since.
+	 */
+	public static SubspaceBinaryFile open(File file) throws IOException {
+		String key = file.getCanonicalPath();
+		synchronized (openFiles) {
+			removeReleasedFiles();
+			OpenFileReference ref = openFiles.get(key);
+			SubspaceBinaryFile opened = (ref != null) ? ref.get() : null;
+			if (opened == null || opened.fileLength != file.length()
+					|| opened.lastModified != file.lastModified()) {
+				opened = new SubspaceBinaryFile(file);
+				openFiles.put(key, new OpenFileReference(key, opened));
+			}
+			return opened;
+		}
+	}
+
+	/*
+	 * Drops the entries of collected files (unless the key was reopened since).
+	 * Callers hold the lock on openFiles.
+	 */
+	private static void removeReleasedFiles() {
+		Reference<? extends SubspaceBinaryFile> released;
+		while ((released = releasedFiles.poll()) != null) {
+			String key = ((OpenFileReference) released).key;
+			if (openFiles.get(key) == released) {
+				openFiles.remove(key);
+			}
+		}
+	}
+
+	public SubspaceBinaryFile(File file) throws IOException {
+		this.file = file;
+		fileLength = file.length();
+		lastModified = file.lastModified();
+		readHeader();
+
+		blockSize = (long) rowsPerBlock * getColumnsPerRow() * 8;
+		if (blockSize > MAX_CHUNK_SIZE) {
+			throw new IOException(file + ": blocks of " + blockSize + " bytes cannot be mapped");
+		}
+		long expectedLength = dataOffset + numInstances * getColumnsPerRow() * 8;
+		if (fileLength < expectedLength) {
+			throw new IOException(file + " is truncated (" + fileLength + " of " + expectedLength + " bytes)");
+		}
+		numBlocks = (numInstances + rowsPerBlock - 1) / rowsPerBlock;
+		blocksPerChunk = (int) (MAX_CHUNK_SIZE / blockSize);
+		chunks = new AtomicReferenceArray<MappedByteBuffer>((int) ((numBlocks + blocksPerChunk - 1) / blocksPerChunk));
+	}
+
+	private void readHeader() throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(file + " is not a binary subspace stream file");
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException(file + ": unsupported version " + version);
+			}
+			dataOffset = in.readInt();
+			numAtts = in.readInt();
+			numInstances = in.readLong();
+			rowsPerBlock = in.readInt();
+			relationName = in.readUTF();
+			attributeNames = new String[numAtts];
+			for (int j = 0; j < numAtts; j++) {
+				attributeNames[j] = in.readUTF();
+			}
+			className = in.readUTF();
+			int numClassValues = in.readInt();
+			if (numClassValues >= 0) {
+				classValues = new String[numClassValues];
+				for (int i = 0; i < numClassValues; i++) {
+					classValues[i] = in.readUTF();
+				}
+			}
+			min = new double[numAtts];
+			max = new double[numAtts];
+			for (int j = 0; j < numAtts; j++) {
+				min[j] = in.readDouble();
+			}
+			for (int j = 0; j < numAtts; j++) {
+				max[j] = in.readDouble();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/*
+	 * Chunk holding the given block, mapped on first access. The mapping stays valid
+	 * after the channel is closed.
+	 */
+	private MappedByteBuffer getChunk(int chunk) throws IOException {
+		MappedByteBuffer mapped = chunks.get(chunk);
+		if (mapped != null) return mapped;
+
+		synchronized (this) {
+			mapped = chunks.get(chunk);
+			if (mapped == null) {
+				long firstBlock = (long) chunk * blocksPerChunk;
+				long firstRow = firstBlock * rowsPerBlock;
+				long lastRow = Math.min(numInstances, firstRow + (long) blocksPerChunk * rowsPerBlock);
+				long size = (lastRow - firstRow) * getColumnsPerRow() * 8;
+				RandomAccessFile raf = new RandomAccessFile(file, "r");
+				try {
+					mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+							dataOffset + firstBlock * blockSize, size);
+				} finally {
+					raf.close();
+				}
+				chunks.set(chunk, mapped);
+			}
+			return mapped;
+		}
+	}
+
+	/**
+	 * Copies one row into the given arrays. Reading is thread-safe.
+	 *
+	 * @param row		Row number (0 = first instance)
+	 * @param values	Attribute values (length >= #attributes), or null
+	 * @param labels	Subspace labels (length >= #attributes), or null
+	 * @return the class value of the row
+	 */
+	public double readRow(long row, double[] values, double[] labels) throws IOException {
+		if (row < 0 || row >= numInstances) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + numInstances);
+		}
+		long block = row / rowsPerBlock;
+		int rowInBlock = (int) (row - block * rowsPerBlock);
+		int rowsInBlock = (int) Math.min(rowsPerBlock, numInstances - block * rowsPerBlock);
+
+		MappedByteBuffer chunk = getChunk((int) (block / blocksPerChunk));
+		int base = (int) ((block % blocksPerChunk) * blockSize) + rowInBlock * 8;
+		int columnStride = rowsInBlock * 8;
+
+		if (values != null) {
+			for (int j = 0; j < numAtts; j++) {
+				values[j] = chunk.getDouble(base + j * columnStride);
+			}
+		}
+		if (labels != null) {
+			int labelBase = base + (numAtts + 1) * columnStride;
+			for (int j = 0; j < numAtts; j++) {
+				labels[j] = chunk.getDouble(labelBase + j * columnStride);
+			}
+		}
+		return chunk.getDouble(base + numAtts * columnStride);
+	}
+
+	/**
+	 * Copies consecutive rows (row-major) into the given arrays. The rows are read
+	 * block by block and column by column, i.e. in file order.
+	 *
+	 * @param firstRow	First row number
+	 * @param numRows	Number of rows (firstRow + numRows <= #instances)
+	 * @param values	numRows x #attributes values, or null
+	 * @param classes	numRows class values, or null
+	 * @param labels	numRows x #attributes subspace labels, or null
+	 */
+	public void readRows(long firstRow, int numRows, double[] values, double[] classes, double[] labels)
+			throws IOException {
+		if (firstRow < 0 || numRows < 0 || firstRow + numRows > numInstances) {
+			throw new IndexOutOfBoundsException("Rows " + firstRow + "+" + numRows + " of " + numInstances);
+		}
+		int done = 0;
+		while (done < numRows) {
+			long row = firstRow + done;
+			long block = row / rowsPerBlock;
+			int rowInBlock = (int) (row - block * rowsPerBlock);
+			int rowsInBlock = (int) Math.min(rowsPerBlock, numInstances - block * rowsPerBlock);
+			int n = Math.min(numRows - done, rowsInBlock - rowInBlock);
+
+			MappedByteBuffer chunk = getChunk((int) (block / blocksPerChunk));
+			int base = (int) ((block % blocksPerChunk) * blockSize) + rowInBlock * 8;
+			int columnStride = rowsInBlock * 8;
+
+			for (int j = 0; j < numAtts; j++) {
+				int pos = base + j * columnStride;
+				int labelPos = base + (numAtts + 1 + j) * columnStride;
+				for (int r = 0; r < n; r++) {
+					int dest = (done + r) * numAtts + j;
+					if (values != null) values[dest] = chunk.getDouble(pos + r * 8);
+					if (labels != null) labels[dest] = chunk.getDouble(labelPos + r * 8);
+				}
+			}
+			if (classes != null) {
+				int pos = base + numAtts * columnStride;
+				for (int r = 0; r < n; r++) {
+					classes[done + r] = chunk.getDouble(pos + r * 8);
+				}
+			}
+			done += n;
+		}
+	}
+
+	/**
+	 * Header with the attributes followed by the class attribute.
+	 */
+	public InstancesHeader createHeader() {
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		for (int j = 0; j < numAtts; j++) {
+			attributes.add(new Attribute(attributeNames[j]));
+		}
+		if (classValues != null) {
+			ArrayList<String> values = new ArrayList<String>();
+			for (String v : classValues) {
+				values.add(v);
+			}
+			attributes.add(new Attribute(className, values));
+		} else {
+			attributes.add(new Attribute(className));
+		}
+		InstancesHeader header = new InstancesHeader(new Instances(relationName, attributes, 0));
+		header.setClassIndex(header.numAttributes() - 1);
+		return header;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int getNumAttributes() {
+		return numAtts;
+	}
+
+	public long getNumInstances() {
+		return numInstances;
+	}
+
+	public int getRowsPerBlock() {
+		return rowsPerBlock;
+	}
+
+	/**
+	 * Minimum of every attribute over the whole file
+	 */
+	public double[] getMin() {
+		return min;
+	}
+
+	/**
+	 * Maximum of every attribute over the whole file
+	 */
+	public double[] getMax() {
+		return max;
+	}
+
+	int getColumnsPerRow() {
+		return 2 * numAtts + 1;
+	}
+}
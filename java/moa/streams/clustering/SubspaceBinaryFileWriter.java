@@ -0,0 +1,209 @@
+/**
+ * [SubspaceBinaryFileWriter.java] for Subspace MOA
+ *
+ * Writes instances into a binary subspace stream file (see SubspaceBinaryFile for
+ * the layout). One block of rows is buffered and written column by column; the
+ * number of instances and the per-attribute min/max are filled into the header
+ * when the writer is closed.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.streams.clustering;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import moa.core.SubspaceInstance;
+import weka.core.Attribute;
+import weka.core.Instances;
+
+public class SubspaceBinaryFileWriter {
+
+	private RandomAccessFile raf;
+	private FileChannel channel;
+	private int numAtts;
+	private int classIndex;
+	private int rowsPerBlock;
+	private int minMaxPosition;
+
+	private String[] attributeNames;
+	private long numInstances = 0;
+	private double[] min;
+	private double[] max;
+
+	private double[][] block;		// [column][row]
+	private int blockRows = 0;
+	private ByteBuffer blockBuffer;
+	private double[] values;
+
+
+	/**
+	 * @param file			Output file (overwritten)
+	 * @param dataset		Dataset of the instances to come. All attributes except the
+	 * 						class are written as numerical values.
+	 * @param rowsPerBlock	Rows written together column by column
+	 */
+	public SubspaceBinaryFileWriter(File file, Instances dataset, int rowsPerBlock) throws IOException {
+		this.classIndex = dataset.classIndex();
+		this.numAtts = dataset.numAttributes() - (classIndex >= 0 ? 1 : 0);
+		this.rowsPerBlock = Math.max(1, rowsPerBlock);
+
+		min = new double[numAtts];
+		max = new double[numAtts];
+		Arrays.fill(min, Double.POSITIVE_INFINITY);
+		Arrays.fill(max, Double.NEGATIVE_INFINITY);
+		block = new double[2 * numAtts + 1][this.rowsPerBlock];
+		blockBuffer = ByteBuffer.allocate(this.rowsPerBlock * (2 * numAtts + 1) * 8);
+		values = new double[numAtts];
+
+		raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		channel = raf.getChannel();
+		writeHeader(dataset);
+	}
+
+	private void writeHeader(Instances dataset) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(SubspaceBinaryFile.MAGIC);
+		out.writeInt(SubspaceBinaryFile.VERSION);
+		out.writeInt(0);				// Data offset, set below
+		out.writeInt(numAtts);
+		out.writeLong(0);				// #instances, set on close
+		out.writeInt(rowsPerBlock);
+		out.writeUTF(dataset.relationName());
+		attributeNames = new String[numAtts];
+		int a = 0;
+		for (int i = 0; i < dataset.numAttributes(); i++) {
+			if (i != classIndex) {
+				attributeNames[a] = dataset.attribute(i).name();
+				out.writeUTF(attributeNames[a++]);
+			}
+		}
+		Attribute classAttribute = (classIndex >= 0) ? dataset.attribute(classIndex) : null;
+		if (classAttribute != null && classAttribute.isNominal()) {
+			out.writeUTF(classAttribute.name());
+			out.writeInt(classAttribute.numValues());
+			for (int i = 0; i < classAttribute.numValues(); i++) {
+				out.writeUTF(classAttribute.value(i));
+			}
+		} else {
+			out.writeUTF(classAttribute != null ? classAttribute.name() : "class");
+			out.writeInt(-1);
+		}
+		minMaxPosition = out.size();
+		for (int j = 0; j < 2 * numAtts; j++) {
+			out.writeDouble(0);			// Min/max, set on close
+		}
+		while (out.size() % 8 != 0) {
+			out.writeByte(0);
+		}
+		out.close();
+
+		ByteBuffer header = ByteBuffer.wrap(bytes.toByteArray());
+		header.putInt(8, header.capacity());
+		writeFully(header, 0);
+	}
+
+	/**
+	 * Appends an instance. The class value is taken from the class attribute of the
+	 * dataset (NaN if there is none), the subspace labels from the instance (the class
+	 * value for every attribute if the instance has no labels).
+	 */
+	public void add(SubspaceInstance inst) throws IOException {
+		int a = 0;
+		for (int i = 0; i < inst.numAttributes(); i++) {
+			if (i != classIndex) values[a++] = inst.value(i);
+		}
+		double classValue = (classIndex >= 0) ? inst.value(classIndex) : Double.NaN;
+		add(values, classValue, inst.getClassLabels());
+	}
+
+	/**
+	 * @param values		#attributes values
+	 * @param classValue	Class value (index for a nominal class)
+	 * @param labels		#attributes subspace labels or null (class value everywhere)
+	 */
+	public void add(double[] values, double classValue, double[] labels) throws IOException {
+		for (int j = 0; j < numAtts; j++) {
+			double v = values[j];
+			block[j][blockRows] = v;
+			if (v < min[j]) min[j] = v;
+			if (v > max[j]) max[j] = v;
+			block[numAtts + 1 + j][blockRows] = (labels != null) ? labels[j] : classValue;
+		}
+		block[numAtts][blockRows] = classValue;
+		blockRows++;
+		numInstances++;
+
+		if (blockRows == rowsPerBlock) {
+			flushBlock();
+		}
+	}
+
+	private void flushBlock() throws IOException {
+		if (blockRows == 0) return;
+		blockBuffer.clear();
+		for (int c = 0; c < block.length; c++) {
+			for (int r = 0; r < blockRows; r++) {
+				blockBuffer.putDouble(block[c][r]);
+			}
+		}
+		blockBuffer.flip();
+		writeFully(blockBuffer, channel.size());
+		blockRows = 0;
+	}
+
+	public long getNumInstances() {
+		return numInstances;
+	}
+
+	/**
+	 * Writes the min/max of the instances added so far into a sidecar file (see
+	 * AttributeRangeFile), e.g. for normalizing the original file in one pass.
+	 */
+	public void writeAttributeRanges(File file) throws IOException {
+		AttributeRangeFile.write(file, attributeNames, min, max);
+	}
+
+	/**
+	 * Writes the last block and completes the header.
+	 */
+	public void close() throws IOException {
+		if (raf == null) return;
+		try {
+			flushBlock();
+
+			ByteBuffer count = ByteBuffer.allocate(8);
+			count.putLong(0, numInstances);
+			writeFully(count, SubspaceBinaryFile.NUM_INSTANCES_POSITION);
+
+			ByteBuffer minMax = ByteBuffer.allocate(2 * numAtts * 8);
+			for (int j = 0; j < numAtts; j++) {
+				minMax.putDouble(numInstances > 0 ? min[j] : 0.0);
+			}
+			for (int j = 0; j < numAtts; j++) {
+				minMax.putDouble(numInstances > 0 ? max[j] : 0.0);
+			}
+			minMax.flip();
+			writeFully(minMax, minMaxPosition);
+		} finally {
+			raf.close();
+			raf = null;
+			channel = null;
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+}
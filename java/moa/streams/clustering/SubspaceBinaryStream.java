@@ -0,0 +1,276 @@
+/**
+ * [SubspaceBinaryStream.java] for Subspace MOA
+ *
+ * Emits the instances of a binary subspace stream file (see SubspaceBinaryFile),
+ * e.g. an ARFF file converted once by WriteSubspaceStreamToBinaryFile. Values and
+ * subspace labels are read from the memory-mapped file, and normalization uses the
+ * min/max stored in the header, so no pre-pass over the data is needed.
+ *
+ * Rows are addressed by number, so the stream can replay a window of the file,
+ * seek to any instance and restart without reopening anything. All streams on the
+ * same file (e.g. copies used by parallel runs, see createCursor()) share one
+ * mapping and move independently.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.streams.clustering;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import moa.core.ObjectRepository;
+import moa.core.SubspaceInstance;
+import moa.options.FileOption;
+import moa.options.FlagOption;
+import moa.options.IntOption;
+import moa.tasks.TaskMonitor;
+
+public class SubspaceBinaryStream extends SubspaceClusteringStream {
+
+	private static final long serialVersionUID = 1L;
+
+
+	/* Options */
+
+	public FileOption binaryFileOption = new FileOption("binaryFile", 'f',
+			"Binary subspace stream file to load.", "", "smsb", false);
+
+    public FlagOption normalizeOption =
+    		new FlagOption("normalize", 'n',
+    				"Numerical data will be normalized to 0-1 " +
+    				"(using the min/max values stored in the file).");
+
+	public IntOption firstInstanceOption = new IntOption("firstInstance", 'o',
+			"Number of the first instance to emit (0 = beginning of the file).",
+			0, 0, Integer.MAX_VALUE);
+
+	public IntOption maxInstancesOption = new IntOption("maxInstances", 'm',
+			"Number of instances to emit from the first one on (-1 = up to the end of the file).",
+			-1, -1, Integer.MAX_VALUE);
+
+
+	/* File variables */
+	protected transient SubspaceBinaryFile file;
+	protected long position;			// Next instance to emit
+	protected long endInstance;			// Exclusive
+
+	private double[] offset;		// For normalization
+	private double[] scale;
+
+	/* Row buffers of fill(), grown as needed */
+	private transient double[] fillValues;
+	private transient double[] fillClasses;
+	private transient double[] fillLabels;
+
+
+	public SubspaceBinaryStream() {
+		numAttsOption = null;
+	}
+
+	@Override
+	public void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
+		restart();
+	}
+
+	public long estimatedRemainingInstances() {
+		return endInstance - position;
+	}
+
+	public boolean hasMoreInstances() {
+		return position < endInstance;
+	}
+
+	@Override
+	public SubspaceInstance nextInstance() {
+		if (!hasMoreInstances()) return null;
+		SubspaceInstance inst = readInstance(position);
+		position++;
+		return inst;
+	}
+
+	/**
+	 * Reads the rows block-wise from the mapped file, without creating instances.
+	 */
+	@Override
+	public int fill(double[] values, double[] labels, int n, boolean columnMajor) {
+		int numAtts = file.getNumAttributes();
+		int count = (int) Math.min(n, endInstance - position);
+		if (count <= 0) return 0;
+
+		if (fillValues == null || fillValues.length < count * numAtts) {
+			fillValues = new double[count * numAtts];
+			fillClasses = new double[count];
+		}
+		double[] rowValues = fillValues;
+		double[] classes = fillClasses;
+		double[] rowLabels = null;
+		if (labels != null && !columnMajor) {
+			rowLabels = labels;			// Row by row: read in place
+		} else if (labels != null) {
+			if (fillLabels == null || fillLabels.length < count * numAtts) {
+				fillLabels = new double[count * numAtts];
+			}
+			rowLabels = fillLabels;
+		}
+		try {
+			file.readRows(position, count, rowValues, classes, rowLabels);
+		} catch (IOException ioe) {
+			throw new RuntimeException("SubspaceBinaryStream failed to read instances "
+					+ position + "+" + count, ioe);
+		}
+		position += count;
+
+		boolean normalize = normalizeOption.isSet();
+		for (int i = 0; i < count; i++) {
+			for (int j = 0; j < numAtts; j++) {
+				double v = rowValues[i * numAtts + j];
+				if (normalize) v = (v - offset[j]) * scale[j];
+				values[index(i, j, n, numAtts + 1, columnMajor)] = v;
+			}
+			values[index(i, numAtts, n, numAtts + 1, columnMajor)] = classes[i];
+			if (columnMajor && labels != null) {
+				for (int j = 0; j < numAtts; j++) {
+					labels[index(i, j, n, numAtts, true)] = rowLabels[i * numAtts + j];
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Continues with the given instance of the file (the window set by the options
+	 * only limits the end).
+	 */
+	public void seek(long instanceNumber) {
+		if (instanceNumber < 0 || instanceNumber > file.getNumInstances()) {
+			throw new IndexOutOfBoundsException("Instance " + instanceNumber + " of " + file.getNumInstances());
+		}
+		position = instanceNumber;
+	}
+
+	/**
+	 * Number of the instance nextInstance() returns next.
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Reads the given instances of the file without moving the stream.
+	 */
+	public List<SubspaceInstance> readWindow(long firstInstance, int numInstances) {
+		int numAtts = file.getNumAttributes();
+		double[] values = new double[numInstances * numAtts];
+		double[] classes = new double[numInstances];
+		double[] labels = new double[numInstances * numAtts];
+		try {
+			file.readRows(firstInstance, numInstances, values, classes, labels);
+		} catch (IOException ioe) {
+			throw new RuntimeException("SubspaceBinaryStream failed to read instances "
+					+ firstInstance + "+" + numInstances, ioe);
+		}
+
+		List<SubspaceInstance> window = new ArrayList<SubspaceInstance>(numInstances);
+		for (int i = 0; i < numInstances; i++) {
+			double[] instValues = new double[numAtts + 1];
+			double[] instLabels = new double[numAtts];
+			System.arraycopy(values, i * numAtts, instValues, 0, numAtts);
+			System.arraycopy(labels, i * numAtts, instLabels, 0, numAtts);
+			instValues[numAtts] = classes[i];
+			window.add(toSubspaceInstance(instValues, instLabels));
+		}
+		return window;
+	}
+
+	/**
+	 * Reads the given instance of the file without moving the stream.
+	 */
+	public SubspaceInstance readInstance(long instanceNumber) {
+		int numAtts = file.getNumAttributes();
+		double[] values = new double[numAtts + 1];		// + class value
+		double[] labels = new double[numAtts];
+		try {
+			values[numAtts] = file.readRow(instanceNumber, values, labels);
+		} catch (IOException ioe) {
+			throw new RuntimeException("SubspaceBinaryStream failed to read instance " + instanceNumber, ioe);
+		}
+		return toSubspaceInstance(values, labels);
+	}
+
+	private SubspaceInstance toSubspaceInstance(double[] values, double[] labels) {
+		if (normalizeOption.isSet()) {
+			for (int j = 0; j < labels.length; j++) {
+				values[j] = (values[j] - offset[j]) * scale[j];
+			}
+		}
+		SubspaceInstance inst = new SubspaceInstance(1.0, values, labels);
+		inst.setDataset(getHeader());
+		return inst;
+	}
+
+	/**
+	 * Another prepared stream with the same options on the same file. It shares the
+	 * mapped file with this one but has its own position.
+	 */
+	public SubspaceBinaryStream createCursor() {
+		SubspaceBinaryStream cursor = (SubspaceBinaryStream) copy();
+		cursor.prepareForUse();
+		return cursor;
+	}
+
+	/**
+	 * Opened file, shared by all streams on it
+	 */
+	public SubspaceBinaryFile getFile() {
+		return file;
+	}
+
+	public boolean isRestartable() {
+		return true;
+	}
+
+	public void restart() {
+		try {
+			SubspaceBinaryFile opened = SubspaceBinaryFile.open(binaryFileOption.getFile());
+			if (opened != file) {
+				file = opened;
+				streamHeader = file.createHeader();
+				numAttsOption = new IntOption("numAtts", 'a', "", file.getNumAttributes());
+				initNormalization();
+			}
+			long numInstances = file.getNumInstances();
+			position = Math.min(firstInstanceOption.getValue(), numInstances);
+			endInstance = (maxInstancesOption.getValue() < 0) ? numInstances
+					: Math.min(numInstances, position + maxInstancesOption.getValue());
+		} catch (IOException ioe) {
+			throw new RuntimeException("SubspaceBinaryStream restart failed.", ioe);
+		}
+	}
+
+	private void initNormalization() {
+		int numAtts = file.getNumAttributes();
+		offset = new double[numAtts];
+		scale = new double[numAtts];
+		for (int j = 0; j < numAtts; j++) {
+			double diff = file.getMax()[j] - file.getMin()[j];
+			if (diff != 0) {		// Constant attributes are left as they are
+				offset[j] = file.getMin()[j];
+				scale[j] = 1.0 / diff;
+			} else {
+				scale[j] = 1.0;
+			}
+		}
+	}
+
+
+	public void getDescription(StringBuilder sb, int indent) {
+
+	}
+
+	@Override
+	public String getPurposeString() {
+		return "Emit a data stream from a binary subspace stream file (*.smsb).";
+	}
+}
@@ -71,4 +71,49 @@ public abstract class SubspaceClusteringStream extends AbstractOptionHandler imp
 	
 	@Override
 	public abstract SubspaceInstance nextInstance();
+	
+	
+	/**
+	 * Writes the next instances straight into the given buffers. Every row holds the
+	 * attribute values in header order (i.e. including the class value), so its width
+	 * is numAtts + 1. Streams override this to skip creating instances.
+	 * 
+	 * @param values		n x (numAtts + 1) values
+	 * @param labels		n x numAtts subspace labels, or null
+	 * @param n				Number of instances
+	 * @param columnMajor	Layout of both buffers: column by column (e.g. for R matrices)
+	 * 						instead of row by row
+	 * @return the number of instances written, less than n if the stream ended
+	 */
+	public int fill(double[] values, double[] labels, int n, boolean columnMajor) {
+		int numAtts = numAttsOption.getValue();
+		int i;
+		for (i = 0; i < n && hasMoreInstances(); i++) {
+			SubspaceInstance inst = nextInstance();
+			if (inst == null) break;
+			for (int j = 0; j <= numAtts; j++) {
+				values[index(i, j, n, numAtts + 1, columnMajor)] = inst.value(j);
+			}
+			if (labels != null) {
+				for (int j = 0; j < numAtts; j++) {
+					labels[index(i, j, n, numAtts, columnMajor)] = inst.getClassLabel(j);
+				}
+			}
+		}
+		return i;
+	}
+	
+	/**
+	 * Same as fill(values, labels, n, false), row by row.
+	 */
+	public int fill(double[] values, double[] labels, int n) {
+		return fill(values, labels, n, false);
+	}
+	
+	/**
+	 * Position of (row, column) in a buffer of numRows x numColumns
+	 */
+	protected static int index(int row, int column, int numRows, int numColumns, boolean columnMajor) {
+		return columnMajor ? column * numRows + row : row * numColumns + column;
+	}
 }
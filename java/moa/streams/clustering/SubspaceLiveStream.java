@@ -0,0 +1,544 @@
+/**
+ * [SubspaceLiveStream.java] for Subspace MOA
+ *
+ * Emits instances sent by another local process, read from stdin or from a TCP
+ * socket (connecting to the producer or accepting one producer connection). The
+ * stream ends when the producer closes the connection, so a clusterer can run as
+ * a long-lived service on it.
+ *
+ * Records are either length-prefixed binary or text lines. Each record holds
+ * numAtts values, the class value and optionally numAtts subspace labels (the
+ * class value is used for every attribute if there are none):
+ *   binary: int byte length, followed by the values as doubles (big-endian)
+ *   text:   numbers separated by commas, tabs or spaces; empty lines and lines
+ *           starting with '%' or '#' are skipped
+ *
+ * An I/O thread reads the channel (non-blocking for sockets) and decodes whole
+ * batches of records into a bounded buffer of primitive rows. While the buffer is
+ * full nothing is read, so the producer is held back by the pipe or the socket.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.streams.clustering;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+
+import moa.core.InstancesHeader;
+import moa.core.ObjectRepository;
+import moa.core.SubspaceInstance;
+import moa.options.IntOption;
+import moa.options.MultiChoiceOption;
+import moa.options.StringOption;
+import moa.streams.InstanceStream;
+import moa.tasks.TaskMonitor;
+import weka.core.Attribute;
+import weka.core.Instances;
+
+public class SubspaceLiveStream extends SubspaceClusteringStream {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int READ_BUFFER_SIZE = 1 << 16;
+	private static final long SELECT_TIMEOUT = 100;		// ms, how often the I/O thread checks for stop()
+
+
+	/* Options */
+
+	public MultiChoiceOption sourceOption = new MultiChoiceOption("source", 'c',
+			"Where the records come from.",
+			new String[] {"stdin", "connect", "listen"},
+			new String[] {"Standard input",
+						  "Connect to the producer at host:port",
+						  "Wait for one producer to connect to port"},
+			0);
+
+	public StringOption hostOption = new StringOption("host", 'H',
+			"Host of the producer (source = connect).", "localhost");
+
+	public IntOption portOption = new IntOption("port", 'p',
+			"Port of the producer (connect) or to listen on (listen).",
+			7070, 1, 65535);
+
+	public MultiChoiceOption recordFormatOption = new MultiChoiceOption("recordFormat", 'r',
+			"Format of the records.",
+			new String[] {"binary", "text"},
+			new String[] {"Length-prefixed records of doubles",
+						  "One record per line"},
+			0);
+
+	public IntOption bufferSizeOption = new IntOption("bufferSize", 'q',
+			"Instances buffered before reading is paused.",
+			4096, 1, Integer.MAX_VALUE);
+
+
+	/* Buffered rows (ring), guarded by lock */
+	private transient Object lock;
+	private transient double[] bufferValues;		// capacity x (numAtts + 1)
+	private transient double[] bufferLabels;		// capacity x numAtts
+	private transient int capacity;
+	private transient int head;				// First buffered row
+	private transient int count;				// Buffered rows
+	private transient boolean closed;			// No more rows will come
+	private transient RuntimeException failure;
+
+	/* I/O thread */
+	private transient volatile Thread ioThread;
+	private transient volatile boolean stopped;
+	private transient Selector selector;			// Sockets only
+
+	private transient long numReceived;
+
+
+	@Override
+	public void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
+		restart();
+	}
+
+	public long estimatedRemainingInstances() {
+		return -1;
+	}
+
+	/**
+	 * Waits until an instance has arrived or the producer has closed the connection.
+	 */
+	public boolean hasMoreInstances() {
+		synchronized (lock) {
+			while (count == 0 && !closed) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			if (count == 0 && failure != null) {
+				throw failure;
+			}
+			return count > 0;
+		}
+	}
+
+	@Override
+	public SubspaceInstance nextInstance() {
+		int numAtts = numAttsOption.getValue();
+		double[] values = new double[numAtts + 1];
+		double[] labels = new double[numAtts];
+		if (fill(values, labels, 1, false) == 0) return null;
+
+		SubspaceInstance inst = new SubspaceInstance(1.0, values, labels);
+		inst.setDataset(getHeader());
+		return inst;
+	}
+
+	/**
+	 * Copies the buffered rows without creating instances. Waits only for the first
+	 * row, then returns what has arrived so far.
+	 */
+	@Override
+	public int fill(double[] values, double[] labels, int n, boolean columnMajor) {
+		if (n <= 0 || !hasMoreInstances()) return 0;
+
+		int first, available;
+		synchronized (lock) {
+			first = head;
+			available = Math.min(n, count);
+		}
+
+		// The I/O thread doesn't touch buffered rows, so they are copied without the lock
+		int numAtts = numAttsOption.getValue();
+		for (int i = 0; i < available; i++) {
+			int row = (first + i) % capacity;
+			for (int j = 0; j <= numAtts; j++) {
+				values[index(i, j, n, numAtts + 1, columnMajor)] = bufferValues[row * (numAtts + 1) + j];
+			}
+			if (labels != null) {
+				for (int j = 0; j < numAtts; j++) {
+					labels[index(i, j, n, numAtts, columnMajor)] = bufferLabels[row * numAtts + j];
+				}
+			}
+		}
+
+		synchronized (lock) {
+			head = (head + available) % capacity;
+			count -= available;
+			lock.notifyAll();		// Space for the I/O thread
+		}
+		return available;
+	}
+
+	/**
+	 * Number of records received so far
+	 */
+	public long getNumReceived() {
+		synchronized (lock) {
+			return numReceived;
+		}
+	}
+
+	public boolean isRestartable() {
+		return false;
+	}
+
+	/**
+	 * Drops the buffered instances and reads from a new connection.
+	 */
+	public void restart() {
+		stop();
+
+		int numAtts = numAttsOption.getValue();
+		generateHeader();
+		lock = new Object();
+		capacity = bufferSizeOption.getValue();
+		bufferValues = new double[capacity * (numAtts + 1)];
+		bufferLabels = new double[capacity * numAtts];
+		head = 0;
+		count = 0;
+		closed = false;
+		failure = null;
+		numReceived = 0;
+		stopped = false;
+
+		ioThread = new Thread("SubspaceLiveStream") {
+			@Override
+			public void run() {
+				readChannel();
+			}
+		};
+		ioThread.setDaemon(true);
+		ioThread.start();
+	}
+
+	/**
+	 * Closes the connection and ends the stream.
+	 */
+	public void stop() {
+		stopped = true;
+		if (lock != null) {
+			synchronized (lock) {
+				closed = true;
+				lock.notifyAll();
+			}
+		}
+		if (selector != null) {
+			selector.wakeup();
+		}
+		if (ioThread != null) {
+			if (ioThread != Thread.currentThread()) {
+				// Blocking stdin reads don't return on interrupt, so they aren't waited for
+				if (sourceOption.getChosenIndex() != 0) {
+					try {
+						ioThread.join();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+			ioThread = null;
+		}
+	}
+
+	protected void generateHeader() {
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		for (int i = 0; i < numAttsOption.getValue(); i++) {
+			attributes.add(new Attribute("att" + (i + 1)));
+		}
+		attributes.add(new Attribute("class"));
+		streamHeader = new InstancesHeader(new Instances(getCLICreationString(InstanceStream.class), attributes, 0));
+		streamHeader.setClassIndex(streamHeader.numAttributes() - 1);
+	}
+
+
+	/*
+	 * I/O thread: opens the channel, then reads and decodes until the producer closes it
+	 */
+	private void readChannel() {
+		ReadableByteChannel channel = null;
+		try {
+			try {
+				channel = openChannel();
+				ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+				boolean endOfInput = false;
+				while (!isStopped()) {
+					if (!waitForSpace()) break;
+					if (!endOfInput) {
+						int read = read(channel, buffer);
+						if (read < 0) endOfInput = true;
+					}
+					buffer.flip();
+					boolean decoded = decode(buffer, endOfInput);
+					buffer.compact();
+					if (endOfInput && !decoded) {
+						if (buffer.position() > 0) {
+							throw new IOException("SubspaceLiveStream: incomplete record at the end of the input");
+						}
+						break;
+					}
+					if (!buffer.hasRemaining()) {
+						buffer = grow(buffer);		// Record longer than the buffer
+					}
+				}
+			} finally {
+				closeChannel(channel);
+			}
+		} catch (IOException ioe) {
+			close(new RuntimeException("SubspaceLiveStream: reading failed", ioe));
+			return;
+		} catch (RuntimeException e) {
+			close(e);
+			return;
+		}
+		close(null);
+	}
+
+	/*
+	 * Stopped, or replaced by the thread of a restart (a stdin read may return late)
+	 */
+	private boolean isStopped() {
+		return stopped || ioThread != Thread.currentThread();
+	}
+
+	/*
+	 * @return the channel to read, null if the stream was stopped while waiting for a producer
+	 */
+	private ReadableByteChannel openChannel() throws IOException {
+		switch (sourceOption.getChosenIndex()) {
+		case 0:
+			return Channels.newChannel(System.in);
+		case 1:
+			SocketChannel socket = SocketChannel.open(
+					new InetSocketAddress(hostOption.getValue(), portOption.getValue()));
+			socket.configureBlocking(false);
+			selector = Selector.open();
+			socket.register(selector, SelectionKey.OP_READ);
+			return socket;
+		default:
+			ServerSocketChannel server = ServerSocketChannel.open();
+			SocketChannel accepted = null;
+			try {
+				server.socket().setReuseAddress(true);
+				server.socket().bind(new InetSocketAddress(portOption.getValue()));
+				server.configureBlocking(false);
+				selector = Selector.open();
+				server.register(selector, SelectionKey.OP_ACCEPT);
+				while (accepted == null) {
+					if (isStopped()) return null;
+					selector.select(SELECT_TIMEOUT);
+					selector.selectedKeys().clear();
+					accepted = server.accept();
+				}
+			} finally {
+				server.close();		// One producer only
+				if (selector != null) selector.close();
+				selector = null;
+			}
+			accepted.configureBlocking(false);
+			selector = Selector.open();
+			accepted.register(selector, SelectionKey.OP_READ);
+			return accepted;
+		}
+	}
+
+	/*
+	 * Reads as much as is available, waiting on the selector for sockets
+	 * @return the number of bytes read, -1 at the end of the input
+	 */
+	private int read(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+		if (channel == null) return -1;
+		if (selector == null) {
+			return channel.read(buffer);		// stdin blocks
+		}
+		while (!isStopped()) {
+			int read = channel.read(buffer);
+			if (read != 0) return read;
+			selector.select(SELECT_TIMEOUT);
+			selector.selectedKeys().clear();
+		}
+		return 0;
+	}
+
+	/*
+	 * Back-pressure: waits while the buffer is full
+	 * @return false if the stream was stopped
+	 */
+	private boolean waitForSpace() {
+		synchronized (lock) {
+			while (count == capacity && !isStopped()) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		return !isStopped();
+	}
+
+	/*
+	 * Decodes the complete records of the buffer into free rows and publishes them
+	 * @return whether anything was decoded
+	 */
+	private boolean decode(ByteBuffer buffer, boolean endOfInput) throws IOException {
+		int free, tail;
+		double[] values, labels;		// Those of this thread's run, even if restarted meanwhile
+		synchronized (lock) {
+			if (isStopped()) return false;
+			free = capacity - count;
+			tail = (head + count) % capacity;
+			values = bufferValues;
+			labels = bufferLabels;
+		}
+
+		int decoded = 0;
+		boolean binary = (recordFormatOption.getChosenIndex() == 0);
+		while (decoded < free) {
+			int row = (tail + decoded) % capacity;
+			int result = binary ? decodeBinary(buffer, values, labels, row)
+					: decodeLine(buffer, values, labels, row, endOfInput);
+			if (result < 0) break;			// Incomplete record
+			if (result > 0) decoded++;		// (0 = skipped line)
+		}
+
+		if (decoded > 0) {
+			synchronized (lock) {
+				if (isStopped()) return false;
+				count += decoded;
+				numReceived += decoded;
+				lock.notifyAll();
+			}
+		}
+		return decoded > 0 || buffer.position() > 0;
+	}
+
+	/*
+	 * @return 1 if a record was decoded into the row, -1 if it isn't complete yet
+	 */
+	private int decodeBinary(ByteBuffer buffer, double[] values, double[] labels, int row) throws IOException {
+		int numAtts = numAttsOption.getValue();
+		if (buffer.remaining() < 4) return -1;
+		int length = buffer.getInt(buffer.position());
+		if (length != (numAtts + 1) * 8 && length != (2 * numAtts + 1) * 8) {
+			throw new IOException("SubspaceLiveStream: invalid record length " + length
+					+ " for " + numAtts + " attributes");
+		}
+		if (buffer.remaining() < 4 + length) return -1;
+		buffer.getInt();
+
+		int v = row * (numAtts + 1);
+		for (int j = 0; j <= numAtts; j++) {
+			values[v + j] = buffer.getDouble();
+		}
+		boolean hasLabels = (length > (numAtts + 1) * 8);
+		int l = row * numAtts;
+		for (int j = 0; j < numAtts; j++) {
+			labels[l + j] = hasLabels ? buffer.getDouble() : values[v + numAtts];
+		}
+		return 1;
+	}
+
+	/*
+	 * @return 1 if a line was decoded into the row, 0 if it was skipped, -1 if it
+	 * isn't complete yet
+	 */
+	private int decodeLine(ByteBuffer buffer, double[] values, double[] labels, int row, boolean endOfInput) throws IOException {
+		int start = buffer.position();
+		int end = start;
+		while (end < buffer.limit() && buffer.get(end) != '\n') end++;
+		if (end == buffer.limit()) {
+			if (!endOfInput || end == start) return -1;		// The last line may lack a newline
+			buffer.position(end);
+		} else {
+			buffer.position(end + 1);
+		}
+
+		byte[] bytes = new byte[end - start];
+		for (int k = 0; k < bytes.length; k++) {
+			bytes[k] = buffer.get(start + k);
+		}
+		String line = new String(bytes, "US-ASCII").trim();
+		if (line.length() == 0 || line.charAt(0) == '%' || line.charAt(0) == '#') return 0;
+
+		int numAtts = numAttsOption.getValue();
+		int v = row * (numAtts + 1);
+		int l = row * numAtts;
+		int field = 0;
+		int pos = 0;
+		while (pos < line.length()) {
+			int next = pos;
+			while (next < line.length() && !isSeparator(line.charAt(next))) next++;
+			if (next > pos) {
+				if (field > 2 * numAtts) {
+					throw new IOException("SubspaceLiveStream: too many fields in line " + line);
+				}
+				double d;
+				try {
+					d = Double.parseDouble(line.substring(pos, next));
+				} catch (NumberFormatException e) {
+					throw new IOException("SubspaceLiveStream: invalid number in line " + line);
+				}
+				if (field <= numAtts) values[v + field] = d;
+				else labels[l + field - numAtts - 1] = d;
+				field++;
+			}
+			pos = next + 1;
+		}
+		if (field == numAtts + 1) {
+			for (int j = 0; j < numAtts; j++) {
+				labels[l + j] = values[v + numAtts];
+			}
+		} else if (field != 2 * numAtts + 1) {
+			throw new IOException("SubspaceLiveStream: " + field + " fields in line " + line
+					+ " (expected " + (numAtts + 1) + " or " + (2 * numAtts + 1) + ")");
+		}
+		return 1;
+	}
+
+	private static boolean isSeparator(char c) {
+		return c == ',' || c == ' ' || c == '\t' || c == '\r';
+	}
+
+	private static ByteBuffer grow(ByteBuffer buffer) {
+		ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+		buffer.flip();
+		larger.put(buffer);
+		return larger;
+	}
+
+	private void close(RuntimeException e) {
+		synchronized (lock) {
+			if (isStopped()) return;		// stop() has ended the stream
+			failure = e;
+			closed = true;
+			lock.notifyAll();
+		}
+	}
+
+	private void closeChannel(ReadableByteChannel channel) {
+		try {
+			if (selector != null) selector.close();
+			if (channel != null && sourceOption.getChosenIndex() != 0) channel.close();	// stdin stays open
+		} catch (IOException ignored) {
+		}
+		selector = null;
+	}
+
+
+	public void getDescription(StringBuilder sb, int indent) {
+
+	}
+
+	@Override
+	public String getPurposeString() {
+		return "Emit a data stream from records sent over stdin or a local socket.";
+	}
+}
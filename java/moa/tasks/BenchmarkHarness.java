@@ -0,0 +1,193 @@
+/**
+ * [BenchmarkHarness.java] for Subspace MOA
+ *
+ * Small harness for the benchmarks of BenchmarkSubspaceClustering. An operation
+ * is run in warmup iterations first (results dropped, lets the JIT compile the
+ * hot paths), then in measurement iterations of fixed duration. Every single
+ * call is timed, which gives the latency quantiles next to the throughput.
+ * Allocation is taken from the per-thread allocation counter of the JVM (if it
+ * has one), GC count and time from the collector MXBeans.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.tasks;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import moa.evaluation.StreamingQuantile;
+
+public class BenchmarkHarness {
+
+	/**
+	 * One benchmarked operation. State is built in setup(), outside of the
+	 * measurement; run() is the timed call.
+	 */
+	public static abstract class Operation {
+
+		public void setup() throws Exception {
+		}
+
+		public abstract void run() throws Exception;
+	}
+
+	/**
+	 * Measurement of one operation with one parameter setting
+	 */
+	public static class Result {
+
+		public String name;
+		public String params;
+		public long ops;
+		public double opsPerSecond;
+		public double opsPerSecondError;	// Standard deviation over the iterations
+		public double meanMicros;
+		public double p50Micros;
+		public double p99Micros;
+		public double maxMicros;
+		public double bytesPerOp = Double.NaN;	// NaN if the JVM doesn't count allocations
+		public double allocMBPerSecond = Double.NaN;
+		public long gcCount;
+		public long gcMillis;
+
+		public static String getCSVHeader() {
+			return "benchmark,params,ops,ops/s,ops/s error,mean (us),p50 (us),p99 (us),max (us),"
+					+ "alloc (bytes/op),alloc (MB/s),gc count,gc time (ms)";
+		}
+
+		public String toCSVString() {
+			return name + "," + params + "," + ops + "," + opsPerSecond + "," + opsPerSecondError + ","
+					+ meanMicros + "," + p50Micros + "," + p99Micros + "," + maxMicros + ","
+					+ bytesPerOp + "," + allocMBPerSecond + "," + gcCount + "," + gcMillis;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-40s %-24s %12.1f ops/s (+-%.1f)  p50 %10.2f us  p99 %10.2f us  %12.1f B/op",
+					name, params, opsPerSecond, opsPerSecondError, p50Micros, p99Micros, bytesPerOp);
+		}
+	}
+
+
+	private final int warmupIterations;
+	private final int measurementIterations;
+	private final long iterationNanos;
+
+	private final com.sun.management.ThreadMXBean allocationBean;
+
+
+	/**
+	 * @param iterationTime	Milliseconds per iteration. An iteration runs at least one operation.
+	 */
+	public BenchmarkHarness(int warmupIterations, int measurementIterations, long iterationTime) {
+		this.warmupIterations = warmupIterations;
+		this.measurementIterations = measurementIterations;
+		this.iterationNanos = iterationTime * 1000000L;
+
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		com.sun.management.ThreadMXBean bean = null;
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			bean = (com.sun.management.ThreadMXBean) threadBean;
+			if (bean.isThreadAllocatedMemorySupported()) {
+				bean.setThreadAllocatedMemoryEnabled(true);
+			} else {
+				bean = null;
+			}
+		}
+		this.allocationBean = bean;
+	}
+
+	public Result measure(String name, String params, Operation operation) throws Exception {
+		operation.setup();
+
+		for (int i = 0; i < warmupIterations; i++) {
+			runIteration(operation, null, null);
+		}
+
+		StreamingQuantile p50 = new StreamingQuantile(0.5);
+		StreamingQuantile p99 = new StreamingQuantile(0.99);
+		long[] totals = new long[2];		// ops, max latency
+		double[] iterationThroughputs = new double[measurementIterations];
+		long totalNanos = 0;
+
+		long threadId = Thread.currentThread().getId();
+		long allocStart = (allocationBean != null) ? allocationBean.getThreadAllocatedBytes(threadId) : 0L;
+		long[] gcStart = getGCCountAndTime();
+		for (int i = 0; i < measurementIterations; i++) {
+			long opsBefore = totals[0];
+			long nanos = runIteration(operation, new StreamingQuantile[] {p50, p99}, totals);
+			totalNanos += nanos;
+			iterationThroughputs[i] = (totals[0] - opsBefore) * 1e9 / nanos;
+		}
+		long allocEnd = (allocationBean != null) ? allocationBean.getThreadAllocatedBytes(threadId) : 0L;
+		long[] gcEnd = getGCCountAndTime();
+
+		Result result = new Result();
+		result.name = name;
+		result.params = params;
+		result.ops = totals[0];
+		result.opsPerSecond = (totalNanos > 0) ? totals[0] * 1e9 / totalNanos : 0.0;
+		result.opsPerSecondError = standardDeviation(iterationThroughputs);
+		result.meanMicros = (totals[0] > 0) ? totalNanos / 1e3 / totals[0] : 0.0;
+		result.p50Micros = p50.getQuantile() / 1e3;
+		result.p99Micros = p99.getQuantile() / 1e3;
+		result.maxMicros = totals[1] / 1e3;
+		if (allocationBean != null && totals[0] > 0) {
+			result.bytesPerOp = (double) (allocEnd - allocStart) / totals[0];
+			result.allocMBPerSecond = (allocEnd - allocStart) / 1048576.0 / (totalNanos / 1e9);
+		}
+		result.gcCount = gcEnd[0] - gcStart[0];
+		result.gcMillis = gcEnd[1] - gcStart[1];
+		return result;
+	}
+
+	/*
+	 * Runs the operation until the iteration time is over. The latencies go into the
+	 * given quantiles, the number of operations and the maximum latency into totals.
+	 *
+	 * @return the time spent in the operation (ns)
+	 */
+	private long runIteration(Operation operation, StreamingQuantile[] quantiles, long[] totals) throws Exception {
+		long spent = 0;
+		long iterationStart = System.nanoTime();
+		do {
+			long start = System.nanoTime();
+			operation.run();
+			long latency = System.nanoTime() - start;
+			spent += latency;
+			if (quantiles != null) {
+				for (StreamingQuantile q : quantiles) {
+					q.add(latency);
+				}
+				totals[0]++;
+				if (latency > totals[1]) totals[1] = latency;
+			}
+		} while (System.nanoTime() - iterationStart < iterationNanos);
+		return spent;
+	}
+
+	private static long[] getGCCountAndTime() {
+		long[] countAndTime = new long[2];
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			countAndTime[0] += Math.max(0, gc.getCollectionCount());
+			countAndTime[1] += Math.max(0, gc.getCollectionTime());
+		}
+		return countAndTime;
+	}
+
+	private static double standardDeviation(double[] values) {
+		if (values.length < 2) return 0.0;
+		double mean = 0.0;
+		for (double v : values) mean += v;
+		mean /= values.length;
+		double sum = 0.0;
+		for (double v : values) sum += (v - mean) * (v - mean);
+		return Math.sqrt(sum / (values.length - 1));
+	}
+
+	public boolean countsAllocations() {
+		return allocationBean != null;
+	}
+}
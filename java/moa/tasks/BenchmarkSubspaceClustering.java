@@ -0,0 +1,404 @@
+/**
+ * [BenchmarkSubspaceClustering.java] for Subspace MOA
+ *
+ * Task for benchmarking the hot paths of subspace clustering, so that changes in
+ * performance become measurable: per-point training of the online clusterers,
+ * PreDeCon offline clustering, the macro clusterers (with the conversion of the
+ * microclusters), the evaluation measures and the stream generator. All
+ * benchmarks are swept over the dimensionality and (where it can be set) the
+ * number of microclusters, and use fixed seeds. The results (throughput,
+ * latency quantiles, allocation, GC) are printed and written as csv.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.tasks;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import moa.cluster.Clustering;
+import moa.cluster.SubspaceClustering;
+import moa.clusterers.AbstractClusterer;
+import moa.clusterers.AbstractSubspaceClusterer;
+import moa.clusterers.clustream.Clustream;
+import moa.clusterers.clustream.WithKmeans;
+import moa.clusterers.denstream.DenStream;
+import moa.clusterers.denstream.WithDBSCAN_Subspace;
+import moa.clusterers.hddstream.HDDStream;
+import moa.clusterers.hddstream.PreDeCon;
+import moa.clusterers.macrosubspace.CLIQUE;
+import moa.clusterers.macrosubspace.MacroSubspaceClusterer;
+import moa.clusterers.macrosubspace.P3C;
+import moa.clusterers.macrosubspace.PROCLUS;
+import moa.clusterers.macrosubspace.SUBCLU;
+import moa.clusterers.predeconstream.PreDeConStream;
+import moa.core.ObjectRepository;
+import moa.core.SubspaceInstance;
+import moa.evaluation.SubspaceMeasureCollection;
+import moa.gui.subspacevisualization.SubspaceDataPoint;
+import moa.options.FileOption;
+import moa.options.IntOption;
+import moa.options.StringOption;
+import moa.streams.clustering.RandomRBFSubspaceGeneratorEvents;
+import moa.tasks.BenchmarkHarness.Operation;
+import moa.tasks.BenchmarkHarness.Result;
+import weka.core.Instance;
+
+public class BenchmarkSubspaceClustering extends MainTask {
+
+    @Override
+    public String getPurposeString() {
+        return "Measures throughput, latency and allocation of the subspace clustering hot paths.";
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String[] GROUPS = {"train", "offline", "macro", "measures", "generator"};
+
+    public StringOption benchmarksOption = new StringOption("benchmarks", 'b',
+    		"Benchmark groups to run, separated by ',' (train, offline, macro, measures, generator).",
+    		"train,offline,macro,measures,generator");
+
+    public StringOption dimensionsOption = new StringOption("dimensions", 'd',
+    		"Dimensionalities of the stream to run every benchmark with, separated by ','.", "5,10,20");
+
+    public StringOption microClustersOption = new StringOption("microClusters", 'm',
+    		"Numbers of microclusters, separated by ','. Used by the CluStream training and as the " +
+    		"input size of the offline and macro clusterings; the density based clusterers find theirs.",
+    		"50,200");
+
+    public IntOption numPointsOption = new IntOption("numPoints", 'p',
+    		"Points the microclusters of the offline and macro benchmarks summarize, " +
+    		"and window size of the measure benchmarks.", 1000, 1, Integer.MAX_VALUE);
+
+    public IntOption numInstancesOption = new IntOption("numInstances", 'n',
+    		"Pregenerated instances the training benchmarks cycle through.", 20000, 1, Integer.MAX_VALUE);
+
+    public IntOption warmupIterationsOption = new IntOption("warmupIterations", 'w',
+    		"Iterations before measuring (not counted).", 3, 0, Integer.MAX_VALUE);
+
+    public IntOption iterationsOption = new IntOption("iterations", 'i',
+    		"Measured iterations.", 5, 1, Integer.MAX_VALUE);
+
+    public IntOption iterationTimeOption = new IntOption("iterationTime", 't',
+    		"Milliseconds per iteration (at least one operation is run).", 1000, 1, Integer.MAX_VALUE);
+
+    public IntOption randomSeedOption = new IntOption("randomSeed", 'r',
+    		"Seed of the stream and of all randomized clusterers.", 1);
+
+    public FileOption dumpFileOption = new FileOption("dumpFile", 'o',
+            "File to write the csv results to.", "benchmarkSubspaceClustering.csv", "csv", true);
+
+
+    /* Local settings */
+    private BenchmarkHarness harness;
+    private List<Result> results;
+    private int seed;
+
+
+    @Override
+    public Class<?> getTaskResultType() {
+        return String.class;
+    }
+
+    @Override
+    protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+    	List<String> groups = Arrays.asList(benchmarksOption.getValue().split("\\s*,\\s*"));
+    	for (String group : groups) {
+    		if (!Arrays.asList(GROUPS).contains(group)) {
+    			throw new RuntimeException("BenchmarkSubspaceClustering: unknown benchmark group " + group);
+    		}
+    	}
+    	int[] dimensions = parseInts(dimensionsOption.getValue());
+    	int[] microClusters = parseInts(microClustersOption.getValue());
+
+    	harness = new BenchmarkHarness(warmupIterationsOption.getValue(), iterationsOption.getValue(),
+    			iterationTimeOption.getValue());
+    	if (!harness.countsAllocations()) {
+    		System.out.println("BenchmarkSubspaceClustering: this JVM doesn't count allocated bytes per thread");
+    	}
+    	results = new ArrayList<Result>();
+    	seed = randomSeedOption.getValue();
+
+    	try {
+    		for (int d : dimensions) {
+    			if (monitor.taskShouldAbort()) {
+    				return null;
+    			}
+    			monitor.setCurrentActivityDescription("Benchmarking " + d + " dimensions");
+    			SubspaceInstance[] pool = generateInstances(d, numInstancesOption.getValue());
+
+    			if (groups.contains("train")) {
+    				benchmarkTraining(pool, d, microClusters);
+    			}
+    			if (groups.contains("offline") || groups.contains("macro")) {
+    				for (int m : microClusters) {
+    					Clustering microClustering = createMicroClustering(pool, m);
+    					String params = "d=" + d + ";mc=" + m;
+    					if (groups.contains("offline")) {
+    						benchmarkPreDeCon(microClustering, params);
+    					}
+    					if (groups.contains("macro")) {
+    						benchmarkMacroClusterers(microClustering, params);
+    					}
+    				}
+    			}
+    			if (groups.contains("measures")) {
+    				benchmarkMeasures(pool, d);
+    			}
+    			if (groups.contains("generator")) {
+    				benchmarkGenerator(d);
+    			}
+    		}
+    	} catch (Exception e) {
+    		throw new RuntimeException("BenchmarkSubspaceClustering: benchmark failed", e);
+    	}
+
+    	try {
+    		writeResults();
+    	} catch (IOException ioe) {
+    		throw new RuntimeException("BenchmarkSubspaceClustering: couldn't write the dump file", ioe);
+    	}
+
+    	StringBuilder text = new StringBuilder();
+    	for (Result r : results) {
+    		text.append(r).append('\n');
+    	}
+    	return text.toString();
+    }
+
+
+    /** Benchmarks **/
+
+    private void benchmarkTraining(SubspaceInstance[] pool, int d, int[] microClusters) throws Exception {
+    	String params = "d=" + d;
+    	measureTraining("train.HDDStream", params, new HDDStream(), pool);
+    	measureTraining("train.PreDeConStream", params, new PreDeConStream(), pool);
+    	measureTraining("train.WithDBSCAN_Subspace", params, new WithDBSCAN_Subspace(), pool);
+    	measureTraining("train.DenStream", params, new DenStream(), pool);
+    	for (int m : microClusters) {
+    		Clustream clustream = new Clustream();
+    		clustream.maxNumKernelsOption.setValue(m);
+    		measureTraining("train.Clustream", params + ";mc=" + m, clustream, pool);
+    		WithKmeans withKmeans = new WithKmeans();
+    		withKmeans.maxNumKernelsOption.setValue(m);
+    		measureTraining("train.WithKmeans", params + ";mc=" + m, withKmeans, pool);
+    	}
+    }
+
+    private void measureTraining(String name, String params, final AbstractSubspaceClusterer clusterer,
+    		SubspaceInstance[] pool) throws Exception {
+    	if (clusterer.isRandomizable()) {
+    		clusterer.setRandomSeed(seed);
+    	}
+    	clusterer.prepareForUse();
+    	final Instance[] instances = toTrainingInstances(pool, clusterer.keepClassLabel());
+    	Result result = harness.measure(name, params, new Operation() {
+    		int next = 0;
+
+    		@Override
+    		public void run() {
+    			clusterer.trainOnInstanceImpl(instances[next]);
+    			next = (next + 1) % instances.length;
+    		}
+    	});
+    	addResult(result, clusterer.getMicroClusteringResult());
+    }
+
+    private void measureTraining(String name, String params, final AbstractClusterer clusterer,
+    		SubspaceInstance[] pool) throws Exception {
+    	clusterer.prepareForUse();		// CluStream and DenStream are deterministic
+    	final Instance[] instances = toTrainingInstances(pool, clusterer.keepClassLabel());
+    	Result result = harness.measure(name, params, new Operation() {
+    		int next = 0;
+
+    		@Override
+    		public void run() {
+    			clusterer.trainOnInstanceImpl(instances[next]);
+    			next = (next + 1) % instances.length;
+    		}
+    	});
+    	addResult(result, clusterer.getMicroClusteringResult());
+    }
+
+    /*
+     * PreDeCon as run by HDDStream.getClusteringResult(), with the default options of HDDStream
+     */
+    private void benchmarkPreDeCon(final Clustering microClustering, String params) throws Exception {
+    	HDDStream defaults = new HDDStream();
+    	final double epsilon = defaults.offlineOption.getValue() * defaults.epsilonNOption.getValue();
+    	final int mu = defaults.muOption.getValue();
+    	final int pi = defaults.piOption.getValue();
+    	final double delta = defaults.deltaOption.getValue();
+    	final int kappa = defaults.kappaOption.getValue();
+    	addResult(harness.measure("offline.PreDeCon", params, new Operation() {
+    		@Override
+    		public void run() {
+    			new PreDeCon(microClustering, epsilon, mu, pi, delta, kappa).getClustering(false);
+    		}
+    	}), null);
+    }
+
+    private void benchmarkMacroClusterers(final Clustering microClustering, String params) throws Exception {
+    	// Only the regeneration of points from the microclusters
+    	final MacroSubspaceClusterer conversion = new MacroSubspaceClusterer() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public SubspaceClustering getClusteringResult(Clustering microClustering) {
+				moaClusteringToWEKAInstances(microClustering);
+				return null;
+			}
+    	};
+    	MacroSubspaceClusterer[] macroClusterers = {conversion, new CLIQUE(), new SUBCLU(), new PROCLUS(), new P3C()};
+    	for (final MacroSubspaceClusterer macro : macroClusterers) {
+    		macro.randomSeedOption.setValue(seed);
+    		macro.prepareForUse();
+    		String name = (macro == conversion) ? "macro.conversion" : "macro." + macro.getClass().getSimpleName();
+    		addResult(harness.measure(name, params, new Operation() {
+    			@Override
+    			public void run() {
+    				macro.getClusteringResult(microClustering);
+    			}
+    		}), null);
+    	}
+    }
+
+    /*
+     * Every measure collection on a window of the stream, against the result of
+     * HDDStream on that window (or the ground truth itself if HDDStream finds nothing).
+     * Each operation is a sub-evaluation followed by the averaging, as in
+     * EvaluateSubspaceClustering with one sub-evaluation per evaluation.
+     */
+    private void benchmarkMeasures(SubspaceInstance[] pool, int d) throws Exception {
+    	int numPoints = Math.min(numPointsOption.getValue(), pool.length);
+    	final List<SubspaceDataPoint> points = new ArrayList<SubspaceDataPoint>(numPoints);
+    	for (int i = 0; i < numPoints; i++) {
+    		points.add(new SubspaceDataPoint(pool[i], i + 1));
+    	}
+    	final SubspaceClustering gtClustering = new SubspaceClustering(points);
+
+    	HDDStream hddstream = new HDDStream();
+    	hddstream.prepareForUse();
+    	for (Instance inst : toTrainingInstances(Arrays.copyOf(pool, numPoints), hddstream.keepClassLabel())) {
+    		hddstream.trainOnInstanceImpl(inst);
+    	}
+    	SubspaceClustering found = hddstream.getClusteringResult();
+    	final SubspaceClustering foundClustering = (found != null && found.size() > 0) ? found : gtClustering;
+
+    	List<Class> measureClasses = EvaluateSubspaceClustering.getDefaultMeasureClasses();
+    	SubspaceMeasureCollection[] measures = EvaluateSubspaceClustering.createMeasureInstances(measureClasses);
+    	for (final SubspaceMeasureCollection measure : measures) {
+    		if (measure == null) continue;
+    		measure.setKeepHistory(false);
+    		measure.setDebug(false);
+    		addResult(harness.measure("measures." + measure.getClass().getSimpleName(), "d=" + d + ";points=" + numPoints,
+    				new Operation() {
+    			@Override
+    			public void run() throws Exception {
+    				measure.subEvaluateClusteringPerformance(foundClustering, gtClustering, points);
+    				measure.averageSubEvaluations();
+    			}
+    		}), null);
+    	}
+    }
+
+    private void benchmarkGenerator(int d) throws Exception {
+    	final RandomRBFSubspaceGeneratorEvents stream = createStream(d);
+    	addResult(harness.measure("generator.RandomRBFSubspaceGeneratorEvents", "d=" + d, new Operation() {
+    		@Override
+    		public void run() {
+    			stream.nextInstance();
+    		}
+    	}), null);
+    }
+
+
+    /** Fixtures **/
+
+    private RandomRBFSubspaceGeneratorEvents createStream(int d) {
+    	RandomRBFSubspaceGeneratorEvents stream = new RandomRBFSubspaceGeneratorEvents();
+    	stream.numAttsOption.setValue(d);
+    	stream.modelRandomSeedOption.setValue(seed);
+    	stream.instanceRandomSeedOption.setValue(seed);
+    	stream.prepareForUse();
+    	return stream;
+    }
+
+    private SubspaceInstance[] generateInstances(int d, int n) {
+    	RandomRBFSubspaceGeneratorEvents stream = createStream(d);
+    	SubspaceInstance[] instances = new SubspaceInstance[n];
+    	for (int i = 0; i < n; i++) {
+    		instances[i] = stream.nextInstance();
+    	}
+    	return instances;
+    }
+
+    /*
+     * Copies of the instances as the evaluation task passes them to a clusterer
+     */
+    private static Instance[] toTrainingInstances(SubspaceInstance[] pool, boolean keepClassLabel) {
+    	Instance[] instances = new Instance[pool.length];
+    	for (int i = 0; i < pool.length; i++) {
+    		SubspaceInstance inst = new SubspaceInstance(pool[i]);
+    		if (keepClassLabel) {
+    			inst.setDataset(pool[i].dataset());
+    		} else {
+    			inst.deleteAttributeAt(pool[i].classIndex());
+    		}
+    		instances[i] = inst;
+    	}
+    	return instances;
+    }
+
+    /*
+     * Exactly m CluStream kernels summarizing numPoints instances (at least 2m)
+     */
+    private Clustering createMicroClustering(SubspaceInstance[] pool, int m) {
+    	Clustream clustream = new Clustream();
+    	clustream.maxNumKernelsOption.setValue(m);
+    	clustream.prepareForUse();
+    	int numPoints = Math.min(Math.max(numPointsOption.getValue(), 2 * m), pool.length);
+    	for (Instance inst : toTrainingInstances(Arrays.copyOf(pool, numPoints), clustream.keepClassLabel())) {
+    		clustream.trainOnInstanceImpl(inst);
+    	}
+    	return clustream.getMicroClusteringResult();
+    }
+
+
+    /** Results **/
+
+    private void addResult(Result result, Clustering microClustering) {
+    	if (microClustering != null) {
+    		result.params += ";found mc=" + microClustering.size();
+    	}
+    	results.add(result);
+    	System.out.println(result);
+    }
+
+    private void writeResults() throws IOException {
+    	PrintWriter out = new PrintWriter(new FileWriter(dumpFileOption.getFile()));
+    	try {
+    		out.println(Result.getCSVHeader());
+    		for (Result r : results) {
+    			out.println(r.toCSVString());
+    		}
+    	} finally {
+    		out.close();
+    	}
+    }
+
+    private static int[] parseInts(String list) {
+    	String[] parts = list.trim().split("\\s*,\\s*");
+    	int[] values = new int[parts.length];
+    	for (int i = 0; i < parts.length; i++) {
+    		values[i] = Integer.parseInt(parts[i]);
+    	}
+    	return values;
+    }
+}
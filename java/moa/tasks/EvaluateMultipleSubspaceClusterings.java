@@ -0,0 +1,137 @@
+/**
+ * [EvaluateMultipleSubspaceClusterings.java] for Subspace MOA
+ *
+ * Task for evaluating several subspace clusterers (e.g. parameter settings of one
+ * algorithm) on the same stream at once. The stream and the ground truth are only
+ * generated once; the clusterers run in parallel.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.tasks;
+
+import java.io.IOException;
+
+import moa.clusterers.AbstractSubspaceClusterer;
+import moa.clusterers.SubspaceClusterer;
+import moa.core.ObjectRepository;
+import moa.evaluation.CSVEvaluationSink;
+import moa.evaluation.LearningCurve;
+import moa.evaluation.SubspaceMeasureCollection;
+import moa.options.ClassOption;
+import moa.options.FileOption;
+import moa.options.IntOption;
+import moa.options.ListOption;
+import moa.options.Option;
+import moa.options.RequiredOptionNotSpecifiedException;
+import moa.streams.clustering.SubspaceClusteringStream;
+
+public class EvaluateMultipleSubspaceClusterings extends MainTask {
+
+    @Override
+    public String getPurposeString() {
+        return "Evaluates several subspace clusterers on one stream in parallel.";
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    /* Clusterers */
+    public ListOption algorithmsOption = new ListOption("algorithms", 'o',
+    		"One-stop subspace clustering algorithms (with their options) to compare, separated by ';'.",
+    		new ClassOption("algorithm", ' ', "One-stop subspace clustering algorithm.",
+    				SubspaceClusterer.class, "hddstream.HDDStream"),
+    		new Option[0], ';');
+
+    /* Stream */
+    public ClassOption streamOption = new ClassOption("stream", 's',
+            "Stream to learn from.", SubspaceClusteringStream.class,
+            "RandomRBFSubspaceGeneratorEvents", "");
+
+    /* Misc */
+    public IntOption instanceLimitOption = new IntOption("instanceLimit", 'i',
+            "Maximum number of instances to test/train on  (-1 = no limit).",
+            100000, -1, Integer.MAX_VALUE);
+
+    public IntOption numThreadsOption = new IntOption("numThreads", 't',
+    		"Number of worker threads (0 = one per algorithm).",
+    		0, 0, Integer.MAX_VALUE);
+
+    public FileOption dumpFileOption = new FileOption("dumpFile", 'd',
+            "File to write the combined csv results to.", "dumpMultipleSubspaceClusterings.csv", "csv", true);
+
+    public IntOption sinkBufferSizeOption = new IntOption("sinkBufferSize", 'b',
+    		"Evaluation points buffered before the dump file is flushed.",
+    		100, 1, Integer.MAX_VALUE);
+
+
+    @Override
+    public Class<?> getTaskResultType() {
+        return LearningCurve.class;
+    }
+
+    @Override
+    protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+
+    	/* Initial settings */
+    	if (streamOption.getValueAsCLIString() == "") {
+    		throw new RuntimeException("EvaluateMultipleSubspaceClusterings: stream is not specified",
+    									new RequiredOptionNotSpecifiedException());
+    	}
+    	SubspaceClusteringStream stream = (SubspaceClusteringStream) getPreparedClassOption(streamOption);
+
+    	Option[] algorithmOptions = algorithmsOption.getList();
+    	if (algorithmOptions.length == 0) {
+    		throw new RuntimeException("EvaluateMultipleSubspaceClusterings: no clusterer is specified",
+    									new RequiredOptionNotSpecifiedException());
+    	}
+
+    	int numClusterers = algorithmOptions.length;
+    	AbstractSubspaceClusterer[] clusterers = new AbstractSubspaceClusterer[numClusterers];
+    	SubspaceMeasureCollection[][] measures = new SubspaceMeasureCollection[numClusterers][];
+    	String[] names = new String[numClusterers];
+    	for (int c = 0; c < numClusterers; c++) {
+    		ClassOption option = (ClassOption) algorithmOptions[c];
+    		clusterers[c] = (AbstractSubspaceClusterer) getPreparedClassOption(option);
+    		measures[c] = EvaluateSubspaceClustering.createMeasureInstances(
+    						EvaluateSubspaceClustering.getDefaultMeasureClasses());
+    		names[c] = c + " " + option.getValueAsCLIString();
+    	}
+
+    	int totalInstances = instanceLimitOption.getValue();
+        if (totalInstances == -1) {
+        	System.out.println("EvaluateMultipleSubspaceClusterings: (WARNING) stream limit is not specified");
+        }
+
+        /* Prepare for use */
+		stream.prepareForUse();
+		for (int c = 0; c < numClusterers; c++) {
+			clusterers[c].prepareForUse();
+		}
+
+
+		/** Simulate & Evaluate **/
+		SharedStreamEvaluator evaluator = new SharedStreamEvaluator(stream, clusterers, measures,
+				numThreadsOption.getValue(), totalInstances);
+		try {
+			try {
+				evaluator.openSink(new CSVEvaluationSink(dumpFileOption.getValue(), sinkBufferSizeOption.getValue()), names);
+				while (evaluator.runToNextEvaluation()) {
+					if (monitor.taskShouldAbort()) {
+						break;
+					}
+					monitor.setCurrentActivityDescription("Evaluated up to instance " + evaluator.getTimestamp());
+				}
+			} finally {
+				evaluator.close();
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException("EvaluateMultipleSubspaceClusterings: couldn't write the dump file", ex);
+		}
+
+        /* Result */
+        LearningCurve learningCurve = new LearningCurve("EvaluateMultipleSubspaceClusterings does not support custom output file (> [filename]).\n" +
+				"Check out the dump file to see the results (if you haven't specified, dumpMultipleSubspaceClusterings.csv by default).");
+
+        return learningCurve;
+    }
+}
@@ -9,14 +9,15 @@
 
 package moa.tasks;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,6 +25,9 @@ import moa.cluster.Clustering;
 import moa.cluster.SubspaceClustering;
 import moa.clusterers.AbstractClusterer;
 import moa.clusterers.AbstractSubspaceClusterer;
+import moa.clusterers.CheckpointWriter;
+import moa.clusterers.ClustererCheckpoint;
+import moa.clusterers.ClustererMetrics;
 import moa.clusterers.Clusterer;
 import moa.clusterers.SubspaceClusterer;
 import moa.clusterers.macrosubspace.MacroSubspaceClusterer;
@@ -31,20 +35,26 @@ import moa.core.ObjectRepository;
 import moa.core.SubspaceInstance;
 import moa.evaluation.CE;
 import moa.evaluation.CMM_S;
+import moa.evaluation.CSVEvaluationSink;
+import moa.evaluation.ColumnarEvaluationSink;
 import moa.evaluation.EntropySubspace;
+import moa.evaluation.EvaluationSink;
 import moa.evaluation.F1Subspace;
 import moa.evaluation.LearningCurve;
 import moa.evaluation.Purity;
 import moa.evaluation.RNIA;
 import moa.evaluation.RandStatistic;
+import moa.evaluation.RingEvaluationSink;
 import moa.evaluation.SubCMM;
 import moa.evaluation.SubspaceMeasureCollection;
+import moa.evaluation.WindowSummary;
 import moa.gui.subspacevisualization.SubspaceDataPoint;
-import moa.gui.subspacevisualization.SubspaceRunVisualizer;
 import moa.options.ClassOption;
 import moa.options.ClassOptionWithNames;
 import moa.options.FileOption;
+import moa.options.FlagOption;
 import moa.options.IntOption;
+import moa.options.MultiChoiceOption;
 import moa.options.RequiredOptionNotSpecifiedException;
 import moa.streams.clustering.ClusterEvent;
 import moa.streams.clustering.ClusterEventListener;
@@ -85,6 +95,45 @@ public class EvaluateSubspaceClustering extends MainTask implements ClusterEvent
     public FileOption dumpFileOption = new FileOption("dumpFile", 'd',
             "File to append intermediate csv reslts to.", "dumpSubspaceClustering.csv", "csv", true);
     
+    public MultiChoiceOption evaluationSinkOption = new MultiChoiceOption("evaluationSink", 'k',
+    		"Where the measure values are written to while the stream is evaluated.",
+    		new String[] {"CSV", "Columnar", "Ring"},
+    		new String[] {"Buffered csv dump file",
+    					  "Binary columnar dump file",
+    					  "In-memory ring of the last sinkBufferSize evaluation points (no dump file)"}, 0);
+    
+    public IntOption sinkBufferSizeOption = new IntOption("sinkBufferSize", 'b',
+    		"Evaluation points buffered by the sink (csv: flush interval, columnar: block size, ring: capacity).",
+    		100, 1, Integer.MAX_VALUE);
+    
+    public IntOption summaryReservoirSizeOption = new IntOption("summaryReservoirSize", 'r',
+    		"Approximate evaluation: sample size kept per class instead of the whole decay horizon " +
+    		"(0 = evaluate on all points of the horizon). Only CE, RNIA, F1 and Purity are evaluated then.",
+    		0, 0, Integer.MAX_VALUE);
+    
+    public IntOption pipelineBufferSizeOption = new IntOption("pipelineBufferSize", 'q',
+    		"Pipelined run: instances read ahead by a separate stream thread, while another thread " +
+    		"evaluates (0 = stream, training and evaluation on one thread).",
+    		0, 0, Integer.MAX_VALUE);
+    
+    public IntOption pendingEvaluationsOption = new IntOption("pendingEvaluations", 'p',
+    		"Pipelined run: evaluation points waiting for the evaluation thread before training pauses.",
+    		2, 1, Integer.MAX_VALUE);
+    
+    public FileOption checkpointFileOption = new FileOption("checkpointFile", 'c',
+    		"File the state of the one-stop clusterer is checkpointed to (empty = no checkpoints).",
+    		null, "ckpt", true);
+    
+    public IntOption checkpointIntervalOption = new IntOption("checkpointInterval", 'C',
+    		"Seconds between two checkpoints (0 = only at the end of the run).",
+    		300, 0, Integer.MAX_VALUE);
+    
+    public FlagOption resumeFromCheckpointOption = new FlagOption("resumeFromCheckpoint", 'R',
+    		"Restore the clusterer from the checkpoint file (if it exists) before training.");
+    
+    public FlagOption metricsMBeanOption = new FlagOption("metricsMBean", 'j',
+    		"Register the metrics of the one-stop clusterer (if it records any) as a JMX MBean during the run.");
+    
     // TODO: Measure option
     
     
@@ -99,8 +148,29 @@ public class EvaluateSubspaceClustering extends MainTask implements ClusterEvent
 	
 	private int totalInstances;
 	private String dumpFilename;
+	private EvaluationSink sink;
     
 	private ArrayList<ClusterEvent> clusterEvents;
+	private int nextEventIndex;
+	
+	/* Run state */
+	private int subEvaluationFrequency;
+	private int evaluationFrequency;
+	private int decayHorizon;
+	private double decayRate;
+	private LinkedList<SubspaceDataPoint> pointBuffer;
+	private WindowSummary summary;
+	private CheckpointWriter checkpointer;
+	private long resumePosition;		// Instances trained on before the restored checkpoint
+	
+	/* Time spent per stage (ns), see getStageTimes(). The evaluation time is only
+	 * written by the thread evaluating (read after the run). */
+	public static final String[] STAGE_NAMES = {"generation", "training", "macro clustering", "evaluation"};
+	private long generationTime;
+	private long trainingTime;
+	private long macroClusteringTime;
+	private long evaluationTime;
+	private int numProcessedInstances;
 	
 
     @Override
@@ -142,6 +212,7 @@ public class EvaluateSubspaceClustering extends MainTask implements ClusterEvent
     			}
     		}
     	}
+    	checkCheckpointSupport();
     	
         totalInstances = instanceLimitOption.getValue();
         if (totalInstances == -1) {
@@ -150,6 +221,10 @@ public class EvaluateSubspaceClustering extends MainTask implements ClusterEvent
         
         dumpFilename = dumpFileOption.getValue();
         measures = getMeasureInstances();
+        if (summaryReservoirSizeOption.getValue() > 0) {
+        	measures = getWeightedMeasures(measures);
+        }
+        sink = createEvaluationSink();
         
         if (stream instanceof RandomRBFSubspaceGeneratorEvents){
 			((RandomRBFSubspaceGeneratorEvents) stream).addClusterChangeListener(this);
@@ -170,10 +245,18 @@ public class EvaluateSubspaceClustering extends MainTask implements ClusterEvent
 		if (oneStopClusterer != null) {
 			oneStopClusterer.prepareForUse();
 		}
+		checkpointer = createCheckpointWriter();
+		ClustererMetrics metrics = registerMetrics();
 		
 		
 		/** Simulate & Evaluate **/
-		run();
+		try {
+			run();
+		} finally {
+			if (metrics != null) {
+				metrics.unregisterMBean();
+			}
+		}
 		
         /* Result */
         LearningCurve learningCurve = new LearningCurve("EvaluateSubspaceClustering does not support custom output file (> [filename]).\n" +
@@ -184,12 +267,122 @@ public class EvaluateSubspaceClustering extends MainTask implements ClusterEvent
     
     
 
+	/*
+	 * Checkpoints need a one-stop clusterer supporting them; checked before the
+	 * run starts instead of failing at the first checkpoint
+	 */
+	private void checkCheckpointSupport() {
+		if (checkpointFileOption.getFile() == null) return;
+		if (combinationSet || !oneStopClusterer.supportsCheckpoints()) {
+			throw new RuntimeException("EvaluateSubspaceClustering: checkpoints are only supported for "
+					+ "one-stop clusterers with supportsCheckpoints()");
+		}
+	}
+
+	/*
+	 * Checkpoint writer for the one-stop clusterer (restored first if resuming),
+	 * or null if no checkpoint file is given
+	 */
+	private CheckpointWriter createCheckpointWriter() {
+		resumePosition = 0;
+		File file = checkpointFileOption.getFile();
+		if (file == null) return null;
+		if (resumeFromCheckpointOption.isSet() && file.exists()) {
+			try {
+				ClustererCheckpoint checkpoint = ClustererCheckpoint.read(file);
+				oneStopClusterer.restoreCheckpoint(checkpoint);
+				if (checkpoint.contains(CheckpointWriter.STREAM_POSITION)) {
+					resumePosition = checkpoint.getLong(CheckpointWriter.STREAM_POSITION);
+				}
+			} catch (IOException ex) {
+				throw new RuntimeException("EvaluateSubspaceClustering: couldn't restore the checkpoint", ex);
+			}
+		}
+		return new CheckpointWriter(oneStopClusterer, file, checkpointIntervalOption.getValue() * 1000L);
+	}
+	
+	/*
+	 * Metrics of the one-stop clusterer, registered with the platform MBean server
+	 * if asked for (null otherwise)
+	 */
+	private ClustererMetrics registerMetrics() {
+		if (!metricsMBeanOption.isSet()) return null;
+		ClustererMetrics metrics = combinationSet ? null : oneStopClusterer.getMetrics();
+		if (metrics == null) {
+			System.out.println("EvaluateSubspaceClustering: (WARNING) clusterer records no metrics, no MBean registered");
+			return null;
+		}
+		metrics.registerMBean(oneStopClusterer.getClass(), oneStopAlgorithmOption.getValueAsCLIString());
+		return metrics;
+	}
+	
 	@Override
 	public void changeCluster(ClusterEvent e) {
-		if (clusterEvents != null) clusterEvents.add(e);
+		if (clusterEvents != null) {
+			synchronized (clusterEvents) {		// Fired by the stream thread in pipelined runs
+				clusterEvents.add(e);
+			}
+		}
 	}
     
+    protected EvaluationSink createEvaluationSink() {
+    	int bufferSize = sinkBufferSizeOption.getValue();
+    	switch (evaluationSinkOption.getChosenIndex()) {
+    		case 1:
+    			String filepath = dumpFilename.endsWith(".csv") ? 
+    					dumpFilename.substring(0, dumpFilename.length() - 4) + ".bin" : dumpFilename;
+    			return new ColumnarEvaluationSink(filepath, bufferSize);
+    		case 2:
+    			return new RingEvaluationSink(bufferSize);
+    		default:
+    			return new CSVEvaluationSink(dumpFilename, bufferSize);
+    	}
+    }
+    
+    public EvaluationSink getEvaluationSink() {
+    	return sink;
+    }
+    
+    public SubspaceMeasureCollection[] getMeasures() {
+    	return measures;
+    }
+    
+    /**
+     * Time (ns) spent in each stage of the last run, in the order of STAGE_NAMES.
+     * Generation includes creating the data points; in pipelined runs it is the
+     * time training waited for the stream. Evaluation includes keeping the window.
+     */
+    public long[] getStageTimes() {
+    	return new long[] {generationTime, trainingTime, macroClusteringTime, evaluationTime};
+    }
+    
+    public int getNumProcessedInstances() {
+    	return numProcessedInstances;
+    }
+    
+    /*
+     * Types of all cluster events up to the given timestamp which have not been
+     * reported yet, or null if there are none
+     */
+    private String pollEvents(int timestamp) {
+    	if (clusterEvents == null) return null;
+    	String types = null;
+    	synchronized (clusterEvents) {
+	    	while (nextEventIndex < clusterEvents.size()
+	    			&& clusterEvents.get(nextEventIndex).getTimestamp() <= timestamp) {
+	    		String type = clusterEvents.get(nextEventIndex).getType();
+	    		types = (types == null) ? type : types + "," + type;
+	    		nextEventIndex++;
+	    	}
+    	}
+    	return types;
+    }
+    
     protected List<Class> getMeasureClasses() {
+    	return getDefaultMeasureClasses();
+    }
+    
+    public static List<Class> getDefaultMeasureClasses() {
     	List<Class> classes = new ArrayList<Class>();
     	classes.add(Purity.class);
         classes.add(EntropySubspace.class);
@@ -203,7 +396,10 @@ public class EvaluateSubspaceClustering extends MainTask implements ClusterEvent
     }
     
     protected SubspaceMeasureCollection[] getMeasureInstances() {
-    	List<Class> measureClasses = getMeasureClasses();
+    	return createMeasureInstances(getMeasureClasses());
+    }
+    
+    public static SubspaceMeasureCollection[] createMeasureInstances(List<Class> measureClasses) {
         int numMeasureClasses = measureClasses.size();
         SubspaceMeasureCollection[] instances = new SubspaceMeasureCollection[numMeasureClasses];
         for (int i=0; i < numMeasureClasses; i++) {
@@ -218,11 +414,24 @@ public class EvaluateSubspaceClustering extends MainTask implements ClusterEvent
         return instances;
     }
 
+    /*
+     * Measures which can evaluate on the weighted sample of a WindowSummary
+     */
+    protected SubspaceMeasureCollection[] getWeightedMeasures(SubspaceMeasureCollection[] measures) {
+    	List<SubspaceMeasureCollection> weighted = new ArrayList<SubspaceMeasureCollection>();
+    	for (int i = 0; i < measures.length; i++) {
+    		if (measures[i] != null && measures[i].supportsPointWeights()) {
+    			weighted.add(measures[i]);
+    		}
+    	}
+    	return weighted.toArray(new SubspaceMeasureCollection[weighted.size()]);
+    }
+
 	protected void run() {
 		
 		// Basic stream settings
-		int subEvaluationFrequency = stream.getSubEvaluationFrequency();
-		int evaluationFrequency = stream.getEvaluationFrequency();
+		subEvaluationFrequency = stream.getSubEvaluationFrequency();
+		evaluationFrequency = stream.getEvaluationFrequency();
         if (subEvaluationFrequency > evaluationFrequency) {
         	throw new RuntimeException("EvaluateSubspaceClustering: subEvaluationFrequency cannot exceed evaluationFrequency");
         }
@@ -230,188 +439,330 @@ public class EvaluateSubspaceClustering extends MainTask implements ClusterEvent
         	subEvaluationFrequency = evaluationFrequency;
         }
 		
-		int decayHorizon = stream.getDecayHorizon();
+		decayHorizon = stream.getDecayHorizon();
 		double decayThreshold = stream.getDecayThreshold();
-		double decayRate = (-1 * Math.log(decayThreshold) / decayHorizon);
+		decayRate = (-1 * Math.log(decayThreshold) / decayHorizon);
 
-		// Progress monitors
-		int timestamp = 0;
-		int evaluationPointCounter = 0;
-		LinkedList<SubspaceDataPoint> pointBuffer = new LinkedList<SubspaceDataPoint>();
+		// Window of the decay horizon
+		pointBuffer = new LinkedList<SubspaceDataPoint>();
 		
-		// Intermediate results
-		Clustering microResult;
-		SubspaceClustering macroResult;
+		// Approximate mode: bounded per-class summary instead of the point window
+		int reservoirSize = summaryReservoirSizeOption.getValue();
+		summary = null;
+		if (reservoirSize > 0) {
+			summary = new WindowSummary(reservoirSize, decayHorizon, decayRate, 1);
+		}
+		
+		// Values go to the sink only, nothing is kept for the whole run
+		nextEventIndex = 0;
+		generationTime = trainingTime = macroClusteringTime = evaluationTime = 0;
+		numProcessedInstances = 0;
+		for (int i = 0; i < measures.length; i++) {
+			measures[i].setKeepHistory(false);
+		}
+		try {
+			sink.open(measures);
+		} catch (IOException ex) {
+			if (checkpointer != null) {
+				checkpointer.close();
+			}
+			throw new RuntimeException("EvaluateSubspaceClustering: couldn't open the evaluation sink", ex);
+		}
 
+		try {
+			int startTimestamp = skipToResumePosition();
+			if (pipelineBufferSizeOption.getValue() > 0) {
+				runPipelined(startTimestamp);
+			} else {
+				runSerial(startTimestamp);
+			}
+			
+			/** Last checkpoint **/
+			if (checkpointer != null) {
+				checkpointer.checkpoint(numProcessedInstances);
+			}
+		} finally {
+			// Also when a clusterer or measure failed: the rows so far are kept
+			try {
+				if (checkpointer != null) {
+					checkpointer.close();
+				}
+			} finally {
+				/** Close the sink **/
+				try {
+					sink.close(measures);
+				} catch (IOException ex) {
+					Logger.getLogger(EvaluateSubspaceClustering.class.getName()).log(Level.SEVERE, null, ex);
+				}
+			}
+		}
+	}
+	
+	/*
+	 * When resuming from a checkpoint, reads past the instances the restored
+	 * clusterer was trained on. The last ones (up to the decay horizon) go into the
+	 * window again, and their cluster events are not reported a second time.
+	 * 
+	 * @return timestamp of the last instance skipped
+	 */
+	private int skipToResumePosition() {
+		int timestamp = 0;
+		while (timestamp < resumePosition && stream.hasMoreInstances()) {
+			timestamp++;
+			SubspaceInstance next = stream.nextInstance();
+			if (resumePosition - timestamp < decayHorizon) {
+				addToWindow(new SubspaceDataPoint(next, timestamp));
+			}
+		}
+		pollEvents(timestamp);
+		numProcessedInstances = timestamp;
+		return timestamp;
+	}
+	
+	/*
+	 * Stream, training and evaluation one after another on the calling thread
+	 */
+	private void runSerial(int startTimestamp) {
+		int timestamp = startTimestamp;
+		int evaluationPointCounter = startTimestamp % subEvaluationFrequency;
+		
 		while (timestamp < totalInstances && stream.hasMoreInstances()) {
 			timestamp++;
 			evaluationPointCounter++;
 			
 			// New instance coming
+			long start = System.nanoTime();
 			SubspaceInstance next = stream.nextInstance();
 			SubspaceDataPoint point = new SubspaceDataPoint(next, timestamp);
-			pointBuffer.add(point);
-            while (pointBuffer.size() > decayHorizon) {
-                pointBuffer.removeFirst();
-            }
+			long generated = System.nanoTime();
+			addToWindow(point);
 			
 			// Train clusterers
-            SubspaceInstance trainInst = new SubspaceInstance(point);
-			if (combinationSet) {
-				if (microClusterer.keepClassLabel()) {
-            		trainInst.setDataset(point.dataset());
-            	} else {
-            		trainInst.deleteAttributeAt(point.classIndex());
-            	}
-				microClusterer.trainOnInstanceImpl(trainInst);
-			} else {
-				if (oneStopClusterer.keepClassLabel()) {
-            		trainInst.setDataset(point.dataset());
-            	} else {
-            		trainInst.deleteAttributeAt(point.classIndex());
-            	}
-				oneStopClusterer.trainOnInstanceImpl(trainInst);
-			}
-
+			long added = System.nanoTime();
+			train(point);
+			long trained = System.nanoTime();
+			generationTime += generated - start;
+			evaluationTime += added - generated;
+			trainingTime += trained - added;
+			numProcessedInstances = timestamp;
 			
 			// Evaluation point!
 			if (evaluationPointCounter >= subEvaluationFrequency) {
-				
-				// Update weights
-				for (SubspaceDataPoint p : pointBuffer) {
-					p.updateWeight(timestamp, decayRate);
-				}
-				
-				// Prepare an array of points
-				List<SubspaceDataPoint> pointArray = new ArrayList<SubspaceDataPoint>(pointBuffer);
-				
-				// Get clustering results
-				if (combinationSet) {
-					if (microClusterer.implementsMicroClusterer()) {
-		        		microResult = microClusterer.getMicroClusteringResult();
-		            } else {
-		            	throw new RuntimeException("EvaluateSubspaceClustering: given microClusterer does not provide microclustering");
-		            }
-		        	macroResult = macroClusterer.getClusteringResult(microResult);
-		        	
-		        } else {
-		        	microResult = oneStopClusterer.getMicroClusteringResult();
-		        	macroResult = oneStopClusterer.getClusteringResult();
-				}
-				
-				SubspaceClustering gtClustering = new SubspaceClustering(pointBuffer);
-				
-				
-				// (Sub)Evaluation
-				for (int i = 0; i < measures.length; i++) {
-					if (macroResult != null) {
-		        		try {
-		                    double msec = measures[i].subEvaluateClusteringPerformance(macroResult, gtClustering, pointArray);
-		                } catch (Exception ex) { ex.printStackTrace(); }
-		            } else {
-		                for (int j = 0; j < measures[i].getNumMeasures(); j++) {
-		                    measures[i].addEmptySubValue(j);
-		                }
-		            }
-				}
-				
-				// Averaging subevaluations
-				if (timestamp % evaluationFrequency == 0) {
-					for (int i = 0; i < measures.length; i++) {
-	    	        	measures[i].averageSubEvaluations();
-	    	        }
-				}
+				SubspaceClustering macroResult = getMacroResult();
+				long clustered = System.nanoTime();
+				evaluate(macroResult, timestamp);
+				macroClusteringTime += clustered - trained;
+				evaluationTime += System.nanoTime() - clustered;
 				
 				// Prepare for the next evaluation point
 				evaluationPointCounter = 0;
 			}
 		}
-		
-		/** Write a dump file **/
-		exportCSV(dumpFilename, clusterEvents, measures, evaluationFrequency);
 	}
 	
-	protected void exportCSV(String filepath, ArrayList<ClusterEvent> clusterEvents, SubspaceMeasureCollection[] measures, int horizon) {
-		PrintWriter out = null;
+	/*
+	 * Three stages: the stream is read ahead on a producer thread, the clusterer is
+	 * trained on the calling thread, and the window is kept and evaluated on an
+	 * evaluation thread. Each evaluation gets a snapshot of the clustering result and
+	 * the points which came in since the last one.
+	 */
+	private void runPipelined(int startTimestamp) {
+		PipelinedStreamReader reader = new PipelinedStreamReader(stream, pipelineBufferSizeOption.getValue(),
+				(totalInstances < 0) ? totalInstances : Math.max(0, totalInstances - startTimestamp));
+		ExecutorService evaluator = Executors.newSingleThreadExecutor();
+		LinkedList<Future<?>> pendingEvaluations = new LinkedList<Future<?>>();
+		int maxPendingEvaluations = pendingEvaluationsOption.getValue();
+		
+		reader.start();
 		try {
-			// Prepare an output file			
-			if (!filepath.endsWith(".csv")) {
-				filepath += ".csv";
-			}
-			out = new PrintWriter(new BufferedWriter(new FileWriter(filepath)));
-			
+			int timestamp = startTimestamp;
+			int evaluationPointCounter = startTimestamp % subEvaluationFrequency;
+			List<SubspaceDataPoint> newPoints = new ArrayList<SubspaceDataPoint>();
 			
-			String delimiter = ";";
-
-			// Header
-			int numValues = 0;
-			out.write("Nr" + delimiter);
-			out.write("Event" + delimiter);
-			for (int i = 0; i < measures.length; i++) {
-				for (int j = 0; j < measures[i].getNumMeasures(); j++) {
-					if (measures[i].isEnabled(j)) {
-						out.write(measures[i].getName(j) + delimiter);
-						numValues = measures[i].getNumberOfValues(j);
+			while (timestamp < totalInstances) {
+				long start = System.nanoTime();
+				SubspaceInstance next = reader.nextInstance();
+				if (next == null) break;
+				timestamp++;
+				evaluationPointCounter++;
+				
+				SubspaceDataPoint point = SubspaceDataPoint.copyOf(next, timestamp);	// next is reused by the reader
+				newPoints.add(point);
+				long generated = System.nanoTime();
+				train(point);
+				long trained = System.nanoTime();
+				generationTime += generated - start;
+				trainingTime += trained - generated;
+				numProcessedInstances = timestamp;
+				
+				if (evaluationPointCounter >= subEvaluationFrequency) {
+					SubspaceClustering macroResult = getMacroResult();
+					macroClusteringTime += System.nanoTime() - trained;
+					SubspaceClustering resultCopy = null;
+					try {
+						resultCopy = (macroResult != null) ? macroResult.snapshot() : null;
+					} catch (RuntimeException ex) {
+						// Result can't be copied: evaluate it here before training goes on
+						waitForAll(pendingEvaluations);
+						new EvaluationTask(newPoints, macroResult, timestamp).run();
+						newPoints = new ArrayList<SubspaceDataPoint>();
+						evaluationPointCounter = 0;
+						continue;
+					}
+					
+					// Back-pressure: wait for the oldest evaluation when too many are pending
+					while (pendingEvaluations.size() >= maxPendingEvaluations) {
+						waitFor(pendingEvaluations.removeFirst());
 					}
+					pendingEvaluations.add(evaluator.submit(new EvaluationTask(newPoints, resultCopy, timestamp)));
+					newPoints = new ArrayList<SubspaceDataPoint>();
+					evaluationPointCounter = 0;
 				}
 			}
 			
-			out.write("\n");
-
-			// Rows
-			Iterator<ClusterEvent> eventIt = null;
-			ClusterEvent event = null;
-			if (clusterEvents != null) {
-				if (clusterEvents.size() > 0) {
-					eventIt = clusterEvents.iterator();
-					event = eventIt.next();
-				}
+			waitForAll(pendingEvaluations);
+		} finally {
+			reader.stop();
+			evaluator.shutdown();
+		}
+	}
+	
+	private void waitForAll(LinkedList<Future<?>> futures) {
+		while (!futures.isEmpty()) {
+			waitFor(futures.removeFirst());
+		}
+	}
+	
+	private void waitFor(Future<?> future) {
+		try {
+			future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("EvaluateSubspaceClustering: interrupted", ex);
+		} catch (ExecutionException ex) {
+			throw new RuntimeException("EvaluateSubspaceClustering: evaluation failed", ex.getCause());
+		}
+	}
+	
+	/*
+	 * Adds the points to the window and evaluates the result (on the evaluation
+	 * thread, which owns the window and the measures)
+	 */
+	private class EvaluationTask implements Runnable {
+		private final List<SubspaceDataPoint> newPoints;
+		private final SubspaceClustering macroResult;
+		private final int timestamp;
+		
+		EvaluationTask(List<SubspaceDataPoint> newPoints, SubspaceClustering macroResult, int timestamp) {
+			this.newPoints = newPoints;
+			this.macroResult = macroResult;
+			this.timestamp = timestamp;
+		}
+		
+		@Override
+		public void run() {
+			long start = System.nanoTime();
+			for (SubspaceDataPoint point : newPoints) {
+				addToWindow(point);
 			}
-			
-			for (int v = 0; v < numValues; v++) {
-				// Nr
-				out.write(v + delimiter);
-
-				// Events
-				if (event != null && event.getTimestamp() <= horizon) {
-					out.write(event.getType() + delimiter);
-					if (eventIt != null && eventIt.hasNext()) {
-						event = eventIt.next();
-					} else {
-						event = null;
-					}
-				} else {
-					out.write(delimiter);
-				}
-
-				// Values
-				for (int i = 0; i < measures.length; i++) {
-					for (int j = 0; j < measures[i].getNumMeasures(); j++) {
-						if (measures[i].isEnabled(j)) {
-							out.write(measures[i].getValue(j, v) + delimiter);
-						}
-					}
-				}
-				
-				out.write("\n");
+			evaluate(macroResult, timestamp);
+			evaluationTime += System.nanoTime() - start;
+		}
+	}
+	
+	private void addToWindow(SubspaceDataPoint point) {
+		if (summary != null) {
+			summary.add(point, point.getTimestamp());
+		} else {
+			pointBuffer.add(point);
+            while (pointBuffer.size() > decayHorizon) {
+                pointBuffer.removeFirst();
+            }
+		}
+	}
+	
+	private void train(SubspaceDataPoint point) {
+        SubspaceInstance trainInst = new SubspaceInstance(point);
+		if (combinationSet) {
+			if (microClusterer.keepClassLabel()) {
+        		trainInst.setDataset(point.dataset());
+        	} else {
+        		trainInst.deleteAttributeAt(point.classIndex());
+        	}
+			microClusterer.trainOnInstanceImpl(trainInst);
+		} else {
+			if (oneStopClusterer.keepClassLabel()) {
+        		trainInst.setDataset(point.dataset());
+        	} else {
+        		trainInst.deleteAttributeAt(point.classIndex());
+        	}
+			oneStopClusterer.trainOnInstanceImpl(trainInst);
+			if (checkpointer != null) {
+				checkpointer.checkpointIfDue(point.getTimestamp());
 			}
-			
-			// Mean values
-			out.write("mean;;");
+		}
+	}
+	
+	private SubspaceClustering getMacroResult() {
+		if (combinationSet) {
+			if (microClusterer.implementsMicroClusterer()) {
+				Clustering microResult = microClusterer.getMicroClusteringResult();
+				return macroClusterer.getClusteringResult(microResult);
+            } else {
+            	throw new RuntimeException("EvaluateSubspaceClustering: given microClusterer does not provide microclustering");
+            }
+        } else {
+        	return oneStopClusterer.getClusteringResult();
+		}
+	}
+	
+	/*
+	 * (Sub)evaluation of the given result on the current window
+	 */
+	private void evaluate(SubspaceClustering macroResult, int timestamp) {
+		
+		// Prepare an array of points (and their weights in approximate mode)
+		List<SubspaceDataPoint> pointArray;
+		double[] pointWeights;
+		SubspaceClustering gtClustering;
+		if (summary != null) {
+			summary.snapshot(timestamp);
+			pointArray = summary.getSamplePoints();
+			pointWeights = summary.getSampleWeights();
+			gtClustering = summary.getGroundTruth(timestamp);
+		} else {
+			// Update weights
+			for (SubspaceDataPoint p : pointBuffer) {
+				p.updateWeight(timestamp, decayRate);
+			}
+			pointArray = new ArrayList<SubspaceDataPoint>(pointBuffer);
+			pointWeights = null;
+			gtClustering = new SubspaceClustering(pointBuffer);
+		}
+		
+		// (Sub)Evaluation
+		for (int i = 0; i < measures.length; i++) {
+			if (macroResult != null && gtClustering != null) {
+        		try {
+                    double msec = measures[i].subEvaluateClusteringPerformance(macroResult, gtClustering, pointArray, pointWeights);
+                } catch (Exception ex) { ex.printStackTrace(); }
+            } else {
+                for (int j = 0; j < measures[i].getNumMeasures(); j++) {
+                    measures[i].addEmptySubValue(j);
+                }
+            }
+		}
+		
+		// Averaging subevaluations
+		if (timestamp % evaluationFrequency == 0) {
 			for (int i = 0; i < measures.length; i++) {
-				for (int j = 0; j < measures[i].getNumMeasures(); j++) {
-					if (measures[i].isEnabled(j)) {
-						out.write(measures[i].getMean(j) + delimiter);
-					}
-				}
+	        	measures[i].averageSubEvaluations();
+	        }
+			try {
+				sink.endRow(pollEvents(timestamp));
+			} catch (IOException ex) {
+				Logger.getLogger(EvaluateSubspaceClustering.class.getName()).log(Level.SEVERE, null, ex);
 			}
-			
-			out.close();
-			
-		} catch (IOException ex) {
-			Logger.getLogger(SubspaceRunVisualizer.class.getName()).log(Level.SEVERE, null, ex);
-		} finally {
-			out.close();
 		}
 	}
-}
\ No newline at end of file
+}
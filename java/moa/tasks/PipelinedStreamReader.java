@@ -0,0 +1,160 @@
+/**
+ * [PipelinedStreamReader.java] for Subspace MOA
+ *
+ * Reads a subspace stream on a producer thread into a bounded ring of
+ * preallocated slots (blocks of primitive rows, written via
+ * SubspaceClusteringStream.fill()). One consumer takes the instances in stream
+ * order. The ring is single-producer/single-consumer and needs no locks; a full
+ * ring makes the producer wait (back-pressure), an empty one the consumer.
+ * The consumer gets the rows through one reused instance.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.tasks;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import moa.core.InstancesHeader;
+import moa.core.SubspaceInstance;
+import moa.streams.clustering.SubspaceClusteringStream;
+
+public class PipelinedStreamReader {
+
+	public static final int ROWS_PER_SLOT = 64;
+	private static final long WAIT_NANOS = 50000;
+	private static final long STOP_WAIT_MILLIS = 1000;
+
+	private final SubspaceClusteringStream stream;
+	private final InstancesHeader header;
+	private final int numAtts;
+	private final long instanceLimit;
+
+	// Ring: slot i % numSlots is written by the producer while i < consumer + numSlots
+	private final int numSlots;
+	private final double[][] slotValues;
+	private final double[][] slotLabels;
+	private final int[] slotRows;
+	private final AtomicLong produced = new AtomicLong(0);		// Slots published
+	private final AtomicLong consumed = new AtomicLong(0);		// Slots released
+	private volatile boolean finished = false;
+	private volatile Throwable failure = null;
+	private volatile boolean stopped = false;
+	private Thread producer;
+
+	// Consumer position within the current slot, and the instance it reads into
+	private int currentRow = 0;
+	private final double[] currentValues;
+	private final double[] currentLabels;
+	private final SubspaceInstance current;
+
+
+	/**
+	 * @param stream		Prepared stream, only read by the producer thread from now on
+	 * @param capacity		Maximum number of instances read ahead
+	 * @param instanceLimit	Maximum number of instances to read (-1 = no limit)
+	 */
+	public PipelinedStreamReader(SubspaceClusteringStream stream, int capacity, long instanceLimit) {
+		this.stream = stream;
+		this.header = stream.getHeader();
+		this.numAtts = stream.numAttsOption.getValue();
+		this.instanceLimit = (instanceLimit < 0) ? Long.MAX_VALUE : instanceLimit;
+
+		numSlots = Math.max(2, (capacity + ROWS_PER_SLOT - 1) / ROWS_PER_SLOT);
+		slotValues = new double[numSlots][ROWS_PER_SLOT * (numAtts + 1)];
+		slotLabels = new double[numSlots][ROWS_PER_SLOT * numAtts];
+		slotRows = new int[numSlots];
+
+		currentValues = new double[numAtts + 1];
+		currentLabels = new double[numAtts];
+		current = new SubspaceInstance(1.0, currentValues, currentLabels);
+		current.setDataset(header);
+	}
+
+	public void start() {
+		producer = new Thread("PipelinedStreamReader") {
+			@Override
+			public void run() {
+				produce();
+			}
+		};
+		producer.setDaemon(true);
+		producer.start();
+	}
+
+	private void produce() {
+		try {
+			long numRead = 0;
+			while (!stopped && numRead < instanceLimit && stream.hasMoreInstances()) {
+				long slot = produced.get();
+				while (slot - consumed.get() >= numSlots) {		// Ring full
+					if (stopped) return;
+					LockSupport.parkNanos(WAIT_NANOS);
+				}
+				int s = (int) (slot % numSlots);
+				int rows = (int) Math.min(ROWS_PER_SLOT, instanceLimit - numRead);
+				slotRows[s] = stream.fill(slotValues[s], slotLabels[s], rows, false);
+				numRead += slotRows[s];
+				if (slotRows[s] == 0) break;
+				produced.lazySet(slot + 1);
+			}
+		} catch (Throwable t) {
+			failure = t;
+		} finally {
+			finished = true;
+		}
+	}
+
+	/**
+	 * Next instance of the stream, null at the end (or if the reader was stopped).
+	 * Waits for the producer if nothing has been read ahead. The same instance is
+	 * returned every time, overwritten by the next call; copy what you keep (e.g.
+	 * with SubspaceDataPoint.copyOf()).
+	 */
+	public SubspaceInstance nextInstance() {
+		long slot = consumed.get();
+		while (produced.get() <= slot) {		// Ring empty
+			if (finished && produced.get() <= slot) {
+				if (failure != null) {
+					throw new RuntimeException("PipelinedStreamReader: reading the stream failed", failure);
+				}
+				return null;
+			}
+			if (stopped) return null;
+			LockSupport.parkNanos(WAIT_NANOS);
+		}
+
+		int s = (int) (slot % numSlots);
+		System.arraycopy(slotValues[s], currentRow * (numAtts + 1), currentValues, 0, numAtts + 1);
+		System.arraycopy(slotLabels[s], currentRow * numAtts, currentLabels, 0, numAtts);
+		currentRow++;
+		if (currentRow == slotRows[s]) {
+			currentRow = 0;
+			consumed.lazySet(slot + 1);		// Slot can be refilled
+		}
+
+		return current;
+	}
+
+	/**
+	 * Stops the producer thread (the stream is left where it was). A producer which
+	 * doesn't return within STOP_WAIT_MILLIS, e.g. because a live stream waits for
+	 * input, is interrupted; one which ignores that is left behind (it is a daemon).
+	 */
+	public void stop() {
+		stopped = true;
+		if (producer != null) {
+			try {
+				producer.join(STOP_WAIT_MILLIS);
+				if (producer.isAlive()) {
+					producer.interrupt();
+					producer.join(STOP_WAIT_MILLIS);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			producer = null;
+		}
+	}
+}
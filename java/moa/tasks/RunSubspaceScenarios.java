@@ -0,0 +1,383 @@
+/**
+ * [RunSubspaceScenarios.java] for Subspace MOA
+ *
+ * Task for measuring how a subspace clustering setting scales. Predefined
+ * scenarios (sweeps of the dimensionality, the number of clusters and the noise
+ * level, and streams full of cluster and subspace events) are each run with
+ * EvaluateSubspaceClustering on a seeded RandomRBFSubspaceGeneratorEvents for a
+ * fixed number of instances. Per scenario, the throughput, the time per stage,
+ * the peak heap and the mean quality measures are written as one csv row, in a
+ * fixed order, so reports of two versions can be diffed or compared (see
+ * baselineReport).
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.tasks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import moa.clusterers.Clusterer;
+import moa.clusterers.SubspaceClusterer;
+import moa.clusterers.macrosubspace.MacroSubspaceClusterer;
+import moa.core.ObjectRepository;
+import moa.evaluation.SubspaceMeasureCollection;
+import moa.options.ClassOption;
+import moa.options.FileOption;
+import moa.options.IntOption;
+import moa.options.StringOption;
+import moa.streams.clustering.RandomRBFSubspaceGeneratorEvents;
+import moa.streams.clustering.SubspaceClusteringStream;
+
+public class RunSubspaceScenarios extends MainTask {
+
+    @Override
+    public String getPurposeString() {
+        return "Runs predefined stream scenarios and reports throughput, stage times, heap and quality.";
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    /* Scenario groups: name, then the values swept */
+    public static final String[][] SCENARIOS = {
+    	{"dimensions", "5", "10", "20", "50", "100", "200", "500"},
+    	{"clusters", "2", "5", "10", "20", "50"},
+    	{"noise", "0.0", "0.1", "0.2", "0.3", "0.5"},
+    	{"events", "mergeSplit", "deleteCreate", "subspace", "all"}};
+
+    private static final int FIXED_COLUMNS = 11;		// Columns before the measures
+
+    /* Clusterer (as in EvaluateSubspaceClustering) */
+    public ClassOption microAlgorithmOption = new ClassOption("microAlgorithm", 'a',
+    		"Micro clusterer (with macroAlgorithm, instead of oneStopAlgorithm).", Clusterer.class, "");
+
+    public ClassOption macroAlgorithmOption = new ClassOption("macroAlgorithm", 'A',
+    		"Macro clusterer.", MacroSubspaceClusterer.class, "");
+
+    public ClassOption oneStopAlgorithmOption = new ClassOption("oneStopAlgorithm", 'o',
+    		"One-stop subspace clusterer.", SubspaceClusterer.class, "hddstream.HDDStream");
+
+    /* Scenarios */
+    public StringOption scenariosOption = new StringOption("scenarios", 's',
+    		"Scenario groups to run, separated by ',' (dimensions, clusters, noise, events).",
+    		"dimensions,clusters,noise,events");
+
+    public IntOption instanceLimitOption = new IntOption("instanceLimit", 'i',
+    		"Instances per scenario.", 20000, 1, Integer.MAX_VALUE);
+
+    public IntOption randomSeedOption = new IntOption("randomSeed", 'r',
+    		"Model and instance seed of the generated streams.", 1);
+
+    public IntOption pipelineBufferSizeOption = new IntOption("pipelineBufferSize", 'q',
+            "Instances read ahead by a separate stream thread (0 = serial run).", 0, 0, Integer.MAX_VALUE);
+
+    /* Reports */
+    public FileOption reportFileOption = new FileOption("reportFile", 'f',
+    		"File to write the csv report to.", "scenarioReport.csv", "csv", true);
+
+    public FileOption baselineReportOption = new FileOption("baselineReport", 'B',
+    		"Optional report of an earlier version to compare the results with.", null, "csv", false);
+
+
+    @Override
+    public Class<?> getTaskResultType() {
+        return String.class;
+    }
+
+    @Override
+    protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+    	List<String> groups = Arrays.asList(scenariosOption.getValue().split("\\s*,\\s*"));
+    	List<String[]> scenarios = new ArrayList<String[]>();
+    	for (String group : groups) {
+    		String[] values = getScenarioValues(group);
+    		if (values == null) {
+    			throw new RuntimeException("RunSubspaceScenarios: unknown scenario group " + group);
+    		}
+    		for (String value : values) {
+    			scenarios.add(new String[] {group, value});
+    		}
+    	}
+
+    	List<String> header = null;
+    	List<String[]> rows = new ArrayList<String[]>();
+    	for (int s = 0; s < scenarios.size(); s++) {
+    		if (monitor.taskShouldAbort()) {
+    			return null;
+    		}
+    		String group = scenarios.get(s)[0];
+    		String value = scenarios.get(s)[1];
+    		monitor.setCurrentActivityDescription("Scenario " + (s + 1) + " of " + scenarios.size()
+    				+ ": " + group + " = " + value);
+
+    		EvaluateSubspaceClustering evaluation = createEvaluation(group, value);
+    		long start = System.nanoTime();
+    		long peakHeap = runMeasuringHeap(evaluation, monitor, repository);
+    		long wallTime = System.nanoTime() - start;
+
+    		if (header == null) {
+    			header = getHeader(evaluation.getMeasures());
+    		}
+    		String[] row = getRow(group, value, evaluation, wallTime, peakHeap);
+    		rows.add(row);
+    		System.out.println(join(row));
+    	}
+
+    	File reportFile = reportFileOption.getFile();
+    	try {
+    		PrintWriter out = new PrintWriter(new FileWriter(reportFile));
+    		try {
+    			out.println(join(header.toArray(new String[header.size()])));
+    			for (String[] row : rows) {
+    				out.println(join(row));
+    			}
+    		} finally {
+    			out.close();
+    		}
+    	} catch (IOException ioe) {
+    		throw new RuntimeException("RunSubspaceScenarios: couldn't write the report " + reportFile, ioe);
+    	}
+
+    	String result = "Report of " + rows.size() + " scenarios written to " + reportFile;
+    	File baseline = baselineReportOption.getFile();
+    	if (baseline != null) {
+    		try {
+    			result += "\n" + compare(readReport(baseline), header, rows);
+    		} catch (IOException ioe) {
+    			throw new RuntimeException("RunSubspaceScenarios: couldn't read the baseline " + baseline, ioe);
+    		}
+    	}
+    	return result;
+    }
+
+
+    /** Scenarios **/
+
+    private static String[] getScenarioValues(String group) {
+    	for (String[] scenario : SCENARIOS) {
+    		if (scenario[0].equals(group)) {
+    			return Arrays.copyOfRange(scenario, 1, scenario.length);
+    		}
+    	}
+    	return null;
+    }
+
+    /*
+     * Default stream with the seeds and the one setting of the scenario
+     */
+    private RandomRBFSubspaceGeneratorEvents createStream(String group, String value) {
+    	RandomRBFSubspaceGeneratorEvents stream = new RandomRBFSubspaceGeneratorEvents();
+    	stream.modelRandomSeedOption.setValue(randomSeedOption.getValue());
+    	stream.instanceRandomSeedOption.setValue(randomSeedOption.getValue());
+
+    	if (group.equals("dimensions")) {
+    		stream.numAttsOption.setValue(Integer.parseInt(value));
+    	} else if (group.equals("clusters")) {
+    		stream.numClusterOption.setValue(Integer.parseInt(value));
+    	} else if (group.equals("noise")) {
+    		stream.noiseLevelOption.setValue(Double.parseDouble(value));
+    	} else if (group.equals("events")) {
+    		// Ten events per scenario, the number of clusters may vary by 3
+    		stream.eventFrequencyOption.setValue(Math.max(1, instanceLimitOption.getValue() / 10));
+    		stream.numClusterRangeOption.setValue(3);
+    		boolean all = value.equals("all");
+    		if (all || value.equals("mergeSplit")) {
+    			stream.eventMergeSplitOption.setValue(true);
+    		}
+    		if (all || value.equals("deleteCreate")) {
+    			stream.eventDeleteCreateOption.setValue(true);
+    		}
+    		if (all || value.equals("subspace")) {
+    			stream.subspaceEventFrequencyOption.setValue(1);	// At every movement destination
+    		}
+    	}
+    	return stream;
+    }
+
+    private EvaluateSubspaceClustering createEvaluation(String group, String value) {
+    	EvaluateSubspaceClustering evaluation = new EvaluateSubspaceClustering();
+    	evaluation.streamOption.setValueViaCLIString(ClassOption.objectToCLIString(
+    			createStream(group, value), SubspaceClusteringStream.class));
+    	if (microAlgorithmOption.getValueAsCLIString().length() > 0) {
+    		evaluation.microAlgorithmOption.setValueViaCLIString(microAlgorithmOption.getValueAsCLIString());
+    		evaluation.macroAlgorithmOption.setValueViaCLIString(macroAlgorithmOption.getValueAsCLIString());
+    	} else {
+    		evaluation.oneStopAlgorithmOption.setValueViaCLIString(oneStopAlgorithmOption.getValueAsCLIString());
+    	}
+    	evaluation.instanceLimitOption.setValue(instanceLimitOption.getValue());
+    	evaluation.pipelineBufferSizeOption.setValue(pipelineBufferSizeOption.getValue());
+    	evaluation.evaluationSinkOption.setChosenIndex(2);		// Ring buffer, no dump file
+    	return evaluation;
+    }
+
+    /*
+     * Runs the evaluation and returns the peak heap use during the run. The peaks of
+     * the heap pools are added up, so this is an upper bound.
+     */
+    private static long runMeasuringHeap(EvaluateSubspaceClustering evaluation, TaskMonitor monitor,
+    		ObjectRepository repository) {
+    	System.gc();
+    	List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+    	for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+    		if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+    			pool.resetPeakUsage();
+    			heapPools.add(pool);
+    		}
+    	}
+
+    	evaluation.doTask(monitor, repository);
+
+    	long peak = 0;
+    	for (MemoryPoolMXBean pool : heapPools) {
+    		peak += pool.getPeakUsage().getUsed();
+    	}
+    	return peak;
+    }
+
+
+    /** Report **/
+
+    private static List<String> getHeader(SubspaceMeasureCollection[] measures) {
+    	List<String> header = new ArrayList<String>();
+    	header.add("scenario");
+    	header.add("value");
+    	header.add("stream");
+    	header.add("instances");
+    	header.add("seconds");
+    	header.add("points/s");
+    	for (String stage : EvaluateSubspaceClustering.STAGE_NAMES) {
+    		header.add(stage + " (s)");
+    	}
+    	header.add("peak heap (MB)");
+    	for (SubspaceMeasureCollection m : measures) {
+    		for (int j = 0; j < m.getNumMeasures(); j++) {
+    			if (m.isEnabled(j)) {
+    				header.add(m.getName(j));
+    			}
+    		}
+    	}
+    	return header;
+    }
+
+    /*
+     * The stage times overlap in pipelined runs, so the throughput is taken from the
+     * wall time (including the setup of stream and clusterer)
+     */
+    private static String[] getRow(String group, String value, EvaluateSubspaceClustering evaluation,
+    		long wallTime, long peakHeap) {
+    	List<String> row = new ArrayList<String>();
+    	row.add(group);
+    	row.add(value);
+    	row.add(evaluation.streamOption.getValueAsCLIString().replace(',', ';'));
+    	int instances = evaluation.getNumProcessedInstances();
+    	row.add(String.valueOf(instances));
+
+    	row.add(format(wallTime / 1e9));
+    	row.add(format((wallTime > 0) ? instances / (wallTime / 1e9) : 0.0));
+    	for (long t : evaluation.getStageTimes()) {
+    		row.add(format(t / 1e9));
+    	}
+    	row.add(format(peakHeap / 1048576.0));
+
+    	for (SubspaceMeasureCollection m : evaluation.getMeasures()) {
+    		for (int j = 0; j < m.getNumMeasures(); j++) {
+    			if (m.isEnabled(j)) {
+    				row.add(format(m.getMean(j)));
+    			}
+    		}
+    	}
+    	return row.toArray(new String[row.size()]);
+    }
+
+    /*
+     * Ratio of the throughput and differences of the measures to the baseline, per
+     * scenario both reports have
+     */
+    private static String compare(List<String[]> baseline, List<String> header, List<String[]> rows) {
+    	Map<String, String[]> baselineRows = new HashMap<String, String[]>();
+    	String[] baselineHeader = baseline.get(0);
+    	for (int r = 1; r < baseline.size(); r++) {
+    		baselineRows.put(baseline.get(r)[0] + "=" + baseline.get(r)[1], baseline.get(r));
+    	}
+
+    	StringBuilder text = new StringBuilder("Compared to the baseline:\n");
+    	for (String[] row : rows) {
+    		String key = row[0] + "=" + row[1];
+    		String[] old = baselineRows.get(key);
+    		if (old == null) {
+    			text.append(key).append(": not in the baseline\n");
+    			continue;
+    		}
+    		text.append(key).append(": points/s x")
+    			.append(format(parse(row[5]) / parse(old[5])))
+    			.append(", peak heap x").append(format(parse(row[10]) / parse(old[10])));
+    		for (int c = FIXED_COLUMNS; c < row.length; c++) {
+    			int oldColumn = Arrays.asList(baselineHeader).indexOf(header.get(c));
+    			if (oldColumn >= 0 && oldColumn < old.length) {
+    				double diff = parse(row[c]) - parse(old[oldColumn]);
+    				if (diff != 0.0) {
+    					text.append(", ").append(header.get(c)).append(diff > 0 ? " +" : " ").append(format(diff));
+    				}
+    			}
+    		}
+    		text.append('\n');
+    	}
+    	return text.toString();
+    }
+
+    private static List<String[]> readReport(File file) throws IOException {
+    	List<String[]> lines = new ArrayList<String[]>();
+    	BufferedReader in = new BufferedReader(new FileReader(file));
+    	try {
+    		String line;
+    		while ((line = in.readLine()) != null) {
+    			if (line.length() > 0) {
+    				lines.add(line.split(",", -1));
+    			}
+    		}
+    	} finally {
+    		in.close();
+    	}
+    	if (lines.isEmpty()) {
+    		throw new IOException("empty report");
+    	}
+    	return lines;
+    }
+
+    /*
+     * Fixed format, independent of the locale, so reports can be diffed
+     */
+    private static String format(double value) {
+    	return String.format(Locale.US, "%.4f", value);
+    }
+
+    private static double parse(String value) {
+    	try {
+    		return Double.parseDouble(value);
+    	} catch (NumberFormatException e) {
+    		return Double.NaN;
+    	}
+    }
+
+    private static String join(String[] values) {
+    	StringBuilder line = new StringBuilder();
+    	for (int i = 0; i < values.length; i++) {
+    		if (i > 0) line.append(',');
+    		line.append(values[i]);
+    	}
+    	return line.toString();
+    }
+}
@@ -0,0 +1,330 @@
+/**
+ * [SharedStreamEvaluator.java] for Subspace MOA
+ *
+ * Evaluates several subspace clusterers on one stream. The stream is generated
+ * once, and the ground truth is built once per evaluation point and shared by all
+ * clusterers. Each clusterer trains and evaluates on its own worker thread, while
+ * the calling thread already generates the next block of instances.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.tasks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import moa.cluster.SubspaceClustering;
+import moa.clusterers.AbstractSubspaceClusterer;
+import moa.core.SubspaceInstance;
+import moa.evaluation.EvaluationSink;
+import moa.evaluation.SubspaceMeasureCollection;
+import moa.gui.subspacevisualization.SubspaceDataPoint;
+import moa.streams.clustering.ClusterEvent;
+import moa.streams.clustering.ClusterEventListener;
+import moa.streams.clustering.RandomRBFSubspaceGeneratorEvents;
+import moa.streams.clustering.SubspaceClusteringStream;
+
+public class SharedStreamEvaluator implements ClusterEventListener {
+
+	private SubspaceClusteringStream stream;
+	private AbstractSubspaceClusterer[] clusterers;
+	private SubspaceMeasureCollection[][] measures;
+	private boolean[] active;
+	private ExecutorService executor;
+	private EvaluationSink sink;
+
+	// Stream settings
+	private int instanceLimit;
+	private int subEvaluationFrequency;
+	private int evaluationFrequency;
+	private int decayHorizon;
+	private double decayRate;
+
+	// Progress
+	private int timestamp = 0;
+	private int numRows = 0;
+	private LinkedList<SubspaceDataPoint> pointBuffer = new LinkedList<SubspaceDataPoint>();
+	private Block nextBlock = null;
+
+	private ArrayList<ClusterEvent> clusterEvents;
+	private int nextEventIndex = 0;
+
+
+	/**
+	 * @param stream		Prepared stream
+	 * @param clusterers	Prepared clusterers
+	 * @param measures		One set of measure collections per clusterer
+	 * @param numThreads	Number of worker threads (<= 0: one per clusterer)
+	 * @param instanceLimit	Maximum number of instances (-1 = no limit)
+	 */
+	public SharedStreamEvaluator(SubspaceClusteringStream stream, AbstractSubspaceClusterer[] clusterers,
+			SubspaceMeasureCollection[][] measures, int numThreads, int instanceLimit) {
+		this.stream = stream;
+		this.clusterers = clusterers;
+		this.measures = measures;
+		this.active = new boolean[clusterers.length];
+		for (int c = 0; c < clusterers.length; c++) {
+			active[c] = true;
+		}
+		this.instanceLimit = (instanceLimit < 0) ? Integer.MAX_VALUE : instanceLimit;
+		if (numThreads <= 0) {
+			numThreads = clusterers.length;
+		}
+		this.executor = Executors.newFixedThreadPool(Math.max(1, numThreads));
+
+		subEvaluationFrequency = stream.getSubEvaluationFrequency();
+		evaluationFrequency = stream.getEvaluationFrequency();
+        if (subEvaluationFrequency > evaluationFrequency) {
+        	throw new RuntimeException("SharedStreamEvaluator: subEvaluationFrequency cannot exceed evaluationFrequency");
+        }
+        if (subEvaluationFrequency <= 0) {
+        	subEvaluationFrequency = evaluationFrequency;
+        }
+        decayHorizon = stream.getDecayHorizon();
+		decayRate = (-1 * Math.log(stream.getDecayThreshold()) / decayHorizon);
+
+		if (stream instanceof RandomRBFSubspaceGeneratorEvents) {
+			((RandomRBFSubspaceGeneratorEvents) stream).addClusterChangeListener(this);
+			clusterEvents = new ArrayList<ClusterEvent>();
+		} else {
+			clusterEvents = null;
+		}
+	}
+
+	/**
+	 * Writes the measure values of all clusterers side by side into the given sink,
+	 * one row per evaluation point.
+	 */
+	public void openSink(EvaluationSink sink, String[] names) throws IOException {
+		for (int c = 0; c < measures.length; c++) {
+			for (int i = 0; i < measures[c].length; i++) {
+				measures[c][i].setKeepHistory(false);
+			}
+		}
+		String[] prefixes = new String[names.length];
+		for (int c = 0; c < names.length; c++) {
+			prefixes[c] = names[c] + ":";
+		}
+		sink.open(measures, prefixes);
+		this.sink = sink;
+	}
+
+	@Override
+	public void changeCluster(ClusterEvent e) {
+		if (clusterEvents != null) clusterEvents.add(e);
+	}
+
+
+	/**
+	 * Processes the stream up to the next averaged evaluation point.
+	 *
+	 * @return false if the stream (or the instance limit) ended before
+	 */
+	public boolean runToNextEvaluation() {
+		if (nextBlock == null) {
+			nextBlock = generateBlock();
+		}
+
+		while (nextBlock.points.size() > 0) {
+			Block current = nextBlock;
+
+			// Weights may only change while no worker is running
+			if (current.evaluate) {
+				for (SubspaceDataPoint p : current.window) {
+					p.updateWeight(current.timestamp, decayRate);
+				}
+			}
+
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int c = 0; c < clusterers.length; c++) {
+				if (active[c]) {
+					futures.add(executor.submit(new Worker(c, current)));
+				}
+			}
+
+			// Generate the next block while the workers are busy
+			nextBlock = generateBlock();
+
+			for (Future<?> f : futures) {
+				try {
+					f.get();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("SharedStreamEvaluator: interrupted", ex);
+				} catch (ExecutionException ex) {
+					throw new RuntimeException("SharedStreamEvaluator: worker failed", ex.getCause());
+				}
+			}
+
+			if (current.average) {
+				numRows++;
+				if (sink != null) {
+					try {
+						sink.endRow(pollEvents(current.timestamp));
+					} catch (IOException ex) {
+						throw new RuntimeException("SharedStreamEvaluator: couldn't write to the sink", ex);
+					}
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Processes the whole stream.
+	 */
+	public void run() {
+		while (runToNextEvaluation());
+	}
+
+	/**
+	 * Stops training and evaluating the given clusterer. Its values are NaN from
+	 * the next evaluation point on.
+	 */
+	public void deactivate(int c) {
+		active[c] = false;
+	}
+
+	public boolean isActive(int c) {
+		return active[c];
+	}
+
+	public int getNumClusterers() {
+		return clusterers.length;
+	}
+
+	public SubspaceMeasureCollection[] getMeasures(int c) {
+		return measures[c];
+	}
+
+	public int getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Number of averaged evaluation points so far
+	 */
+	public int getNumberOfEvaluations() {
+		return numRows;
+	}
+
+	/**
+	 * Stops the workers and closes the sink (if any).
+	 */
+	public void close() throws IOException {
+		executor.shutdown();
+		if (sink != null) {
+			sink.close(measures);
+			sink = null;
+		}
+	}
+
+
+	/*
+	 * Next instances up to the next (sub)evaluation point, together with the point
+	 * window and the ground truth there
+	 */
+	private Block generateBlock() {
+		Block block = new Block();
+		while (block.points.size() < subEvaluationFrequency
+				&& timestamp < instanceLimit && stream.hasMoreInstances()) {
+			timestamp++;
+			SubspaceInstance next = stream.nextInstance();
+			SubspaceDataPoint point = new SubspaceDataPoint(next, timestamp);
+			block.points.add(point);
+			pointBuffer.add(point);
+            while (pointBuffer.size() > decayHorizon) {
+                pointBuffer.removeFirst();
+            }
+		}
+		block.timestamp = timestamp;
+
+		if (block.points.size() == subEvaluationFrequency) {
+			block.evaluate = true;
+			block.average = (timestamp % evaluationFrequency == 0);
+			block.window = new ArrayList<SubspaceDataPoint>(pointBuffer);
+			block.groundTruth = new SubspaceClustering(pointBuffer);
+		}
+		return block;
+	}
+
+    private String pollEvents(int timestamp) {
+    	if (clusterEvents == null) return null;
+    	String types = null;
+    	while (nextEventIndex < clusterEvents.size()
+    			&& clusterEvents.get(nextEventIndex).getTimestamp() <= timestamp) {
+    		String type = clusterEvents.get(nextEventIndex).getType();
+    		types = (types == null) ? type : types + "," + type;
+    		nextEventIndex++;
+    	}
+    	return types;
+    }
+
+
+	private static class Block {
+		List<SubspaceDataPoint> points = new ArrayList<SubspaceDataPoint>();
+		int timestamp;
+		boolean evaluate = false;
+		boolean average = false;
+		List<SubspaceDataPoint> window;
+		SubspaceClustering groundTruth;
+	}
+
+	/*
+	 * Trains one clusterer on a block and evaluates it (points and ground truth are
+	 * only read)
+	 */
+	private class Worker implements Callable<Object> {
+		private final int c;
+		private final Block block;
+
+		Worker(int c, Block block) {
+			this.c = c;
+			this.block = block;
+		}
+
+		@Override
+		public Object call() {
+			AbstractSubspaceClusterer clusterer = clusterers[c];
+			for (SubspaceDataPoint point : block.points) {
+				SubspaceInstance trainInst = new SubspaceInstance(point);
+				if (clusterer.keepClassLabel()) {
+            		trainInst.setDataset(point.dataset());
+            	} else {
+            		trainInst.deleteAttributeAt(point.classIndex());
+            	}
+				clusterer.trainOnInstanceImpl(trainInst);
+			}
+
+			if (block.evaluate) {
+				SubspaceClustering macroResult = clusterer.getClusteringResult();
+				for (SubspaceMeasureCollection measure : measures[c]) {
+					if (macroResult != null) {
+		        		try {
+		                    measure.subEvaluateClusteringPerformance(macroResult, block.groundTruth, block.window);
+		                } catch (Exception ex) { ex.printStackTrace(); }
+		            } else {
+		                for (int j = 0; j < measure.getNumMeasures(); j++) {
+		                	measure.addEmptySubValue(j);
+		                }
+		            }
+				}
+				if (block.average) {
+					for (SubspaceMeasureCollection measure : measures[c]) {
+						measure.averageSubEvaluations();
+					}
+				}
+			}
+			return null;
+		}
+	}
+}
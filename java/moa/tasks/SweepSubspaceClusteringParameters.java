@@ -0,0 +1,329 @@
+/**
+ * [SweepSubspaceClusteringParameters.java] for Subspace MOA
+ *
+ * Task for tuning the options of a subspace clusterer. All combinations of the
+ * given option values are evaluated in parallel on one stream. Every few
+ * evaluation rounds (a rung), only the better part of the remaining combinations
+ * (according to the mean of one measure over that rung) is kept running
+ * (successive halving).
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.tasks;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import moa.clusterers.AbstractSubspaceClusterer;
+import moa.clusterers.SubspaceClusterer;
+import moa.core.ObjectRepository;
+import moa.evaluation.CSVEvaluationSink;
+import moa.evaluation.LearningCurve;
+import moa.evaluation.SubspaceMeasureCollection;
+import moa.options.ClassOption;
+import moa.options.FileOption;
+import moa.options.FlagOption;
+import moa.options.FloatOption;
+import moa.options.IntOption;
+import moa.options.ListOption;
+import moa.options.Option;
+import moa.options.RequiredOptionNotSpecifiedException;
+import moa.options.StringOption;
+import moa.streams.clustering.SubspaceClusteringStream;
+
+public class SweepSubspaceClusteringParameters extends MainTask {
+
+    @Override
+    public String getPurposeString() {
+        return "Evaluates combinations of clusterer options in parallel and cancels the weak ones early.";
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    /* Clusterer */
+    public ClassOption algorithmOption = new ClassOption("algorithm", 'a',
+    		"One-stop subspace clustering algorithm to tune. Options not swept keep the values given here.",
+    		SubspaceClusterer.class, "hddstream.HDDStream");
+
+    public ListOption parameterGridOption = new ListOption("parameterGrid", 'g',
+    		"Values per option, separated by ';'. Either a list (epsilonN=0.1,0.2,0.3) " +
+    		"or a range start:end:step (beta=0.1:0.5:0.1).",
+    		new StringOption("parameter", ' ', "Option name and values.", ""),
+    		new Option[0], ';');
+
+    /* Stream */
+    public ClassOption streamOption = new ClassOption("stream", 's',
+            "Stream to learn from.", SubspaceClusteringStream.class,
+            "RandomRBFSubspaceGeneratorEvents", "");
+
+    /* Early stopping */
+    public StringOption measureOption = new StringOption("measure", 'm',
+    		"Measure the combinations are ranked by (e.g. SubCMM, 1.0-CE, F1).", "SubCMM");
+
+    public FlagOption minimizeOption = new FlagOption("minimize", 'n',
+    		"Lower values of the measure are better (e.g. Entropy).");
+
+    public IntOption roundsPerRungOption = new IntOption("roundsPerRung", 'r',
+    		"Evaluation rounds between two cancellation steps.", 5, 1, Integer.MAX_VALUE);
+
+    public FloatOption keepRatioOption = new FloatOption("keepRatio", 'k',
+    		"Share of the running combinations kept at every cancellation step.", 0.5, 0.0, 1.0);
+
+    /* Misc */
+    public IntOption instanceLimitOption = new IntOption("instanceLimit", 'i',
+            "Maximum number of instances to test/train on  (-1 = no limit).",
+            100000, -1, Integer.MAX_VALUE);
+
+    public IntOption numThreadsOption = new IntOption("numThreads", 't',
+    		"Number of worker threads (0 = number of available processors).",
+    		0, 0, Integer.MAX_VALUE);
+
+    public FileOption dumpFileOption = new FileOption("dumpFile", 'd',
+            "File to write the csv results of all combinations to.", "dumpParameterSweep.csv", "csv", true);
+
+
+    /* Local settings */
+    private String[] parameterNames;
+    private String[][] parameterValues;
+
+
+    @Override
+    public Class<?> getTaskResultType() {
+        return LearningCurve.class;
+    }
+
+    @Override
+    protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+
+    	/* Initial settings */
+    	if (streamOption.getValueAsCLIString() == "") {
+    		throw new RuntimeException("SweepSubspaceClusteringParameters: stream is not specified",
+    									new RequiredOptionNotSpecifiedException());
+    	}
+    	SubspaceClusteringStream stream = (SubspaceClusteringStream) getPreparedClassOption(streamOption);
+    	AbstractSubspaceClusterer baseClusterer = (AbstractSubspaceClusterer) getPreparedClassOption(algorithmOption);
+
+    	parseGrid();
+    	List<int[]> combinations = getCombinations();
+    	int numConfigs = combinations.size();
+    	System.out.println("SweepSubspaceClusteringParameters: " + numConfigs + " combinations");
+
+    	// Only the collection containing the ranking measure is evaluated
+    	String measureName = measureOption.getValue();
+    	Class measureClass = null;
+    	int measureIndex = -1;
+    	for (Class c : EvaluateSubspaceClustering.getDefaultMeasureClasses()) {
+    		SubspaceMeasureCollection m = EvaluateSubspaceClustering.createMeasureInstances(Arrays.asList(c))[0];
+    		for (int j = 0; m != null && j < m.getNumMeasures(); j++) {
+    			if (m.getName(j).equals(measureName)) {
+    				measureClass = c;
+    				measureIndex = j;
+    			}
+    		}
+    	}
+    	if (measureClass == null) {
+    		throw new RuntimeException("SweepSubspaceClusteringParameters: unknown measure " + measureName);
+    	}
+
+    	AbstractSubspaceClusterer[] clusterers = new AbstractSubspaceClusterer[numConfigs];
+    	SubspaceMeasureCollection[][] measures = new SubspaceMeasureCollection[numConfigs][];
+    	String[] names = new String[numConfigs];
+    	for (int c = 0; c < numConfigs; c++) {
+    		clusterers[c] = createClusterer(baseClusterer, combinations.get(c));
+    		measures[c] = EvaluateSubspaceClustering.createMeasureInstances(Arrays.asList(measureClass));
+    		names[c] = getCombinationName(c, combinations.get(c));
+    	}
+
+    	int numThreads = numThreadsOption.getValue();
+    	if (numThreads == 0) {
+    		numThreads = Runtime.getRuntime().availableProcessors();
+    	}
+
+		stream.prepareForUse();
+
+
+		/** Simulate, evaluate & cancel **/
+		final double[] scores = new double[numConfigs];
+		final boolean minimize = minimizeOption.isSet();
+		double[] rungMeans = new double[numConfigs];		// Of the last complete rung
+		double[] rungSums = new double[numConfigs];			// Of the current rung
+		int[] rungCounts = new int[numConfigs];
+		Arrays.fill(rungMeans, Double.NaN);
+		SharedStreamEvaluator evaluator = new SharedStreamEvaluator(stream, clusterers, measures,
+				numThreads, instanceLimitOption.getValue());
+		try {
+			try {
+				evaluator.openSink(new CSVEvaluationSink(dumpFileOption.getValue(), 1), names);
+				int roundsPerRung = roundsPerRungOption.getValue();
+				while (evaluator.runToNextEvaluation()) {
+					if (monitor.taskShouldAbort()) {
+						break;
+					}
+
+					for (int c = 0; c < numConfigs; c++) {
+						if (evaluator.isActive(c)) {
+							double value = measures[c][0].getLastValue(measureIndex);
+							if (!Double.isNaN(value) && value >= 0) {		// As counted by getMean()
+								rungSums[c] += value;
+								rungCounts[c]++;
+							}
+						}
+					}
+
+					int round = evaluator.getNumberOfEvaluations();
+					if (round % roundsPerRung == 0) {
+						List<Integer> running = new ArrayList<Integer>();
+						for (int c = 0; c < numConfigs; c++) {
+							if (evaluator.isActive(c)) {
+								rungMeans[c] = (rungCounts[c] > 0) ? rungSums[c] / rungCounts[c] : Double.NaN;
+								scores[c] = getScore(rungMeans[c], minimize);
+								rungSums[c] = 0.0;
+								rungCounts[c] = 0;
+								running.add(c);
+							}
+						}
+						int keep = Math.max(1, (int) Math.ceil(running.size() * keepRatioOption.getValue()));
+						Integer[] ranked = running.toArray(new Integer[running.size()]);
+						Arrays.sort(ranked, new Comparator<Integer>() {
+							@Override
+							public int compare(Integer a, Integer b) {
+								return Double.compare(scores[b], scores[a]);
+							}
+						});
+						for (int r = keep; r < ranked.length; r++) {
+							evaluator.deactivate(ranked[r]);
+						}
+						monitor.setCurrentActivityDescription("Round " + round + ": " + keep + " of "
+								+ numConfigs + " combinations left");
+					}
+				}
+			} finally {
+				evaluator.close();
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException("SweepSubspaceClusteringParameters: couldn't write the dump file", ex);
+		}
+
+		// Best remaining combination, by the rounds since the last rung (if any)
+		int best = -1;
+		for (int c = 0; c < numConfigs; c++) {
+			if (evaluator.isActive(c)) {
+				if (rungCounts[c] > 0) {
+					rungMeans[c] = rungSums[c] / rungCounts[c];
+				}
+				scores[c] = getScore(rungMeans[c], minimize);
+				if (best == -1 || scores[c] > scores[best]) best = c;
+			}
+		}
+		String result = "Best combination: " + names[best] + " (mean " + measureName
+				+ " over the last rounds = " + rungMeans[best] + ")";
+		System.out.println("SweepSubspaceClusteringParameters: " + result);
+
+        /* Result */
+        LearningCurve learningCurve = new LearningCurve(result + "\n" +
+				"Check out the dump file to see the results of all combinations " +
+				"(if you haven't specified, dumpParameterSweep.csv by default).");
+
+        return learningCurve;
+    }
+
+    private static double getScore(double mean, boolean minimize) {
+    	if (Double.isNaN(mean)) return Double.NEGATIVE_INFINITY;
+    	return minimize ? -mean : mean;
+    }
+
+
+    /*
+     * Reads "name=v1,v2,..." or "name=start:end:step" for every grid entry.
+     */
+    private void parseGrid() {
+    	Option[] entries = parameterGridOption.getList();
+    	if (entries.length == 0) {
+    		throw new RuntimeException("SweepSubspaceClusteringParameters: parameter grid is empty",
+    									new RequiredOptionNotSpecifiedException());
+    	}
+    	parameterNames = new String[entries.length];
+    	parameterValues = new String[entries.length][];
+    	for (int p = 0; p < entries.length; p++) {
+    		String entry = ((StringOption) entries[p]).getValue().trim();
+    		int eq = entry.indexOf('=');
+    		if (eq <= 0) {
+    			throw new IllegalArgumentException("SweepSubspaceClusteringParameters: invalid grid entry " + entry);
+    		}
+    		parameterNames[p] = entry.substring(0, eq).trim();
+    		String values = entry.substring(eq + 1).trim();
+
+    		String[] range = values.split(":");
+    		if (range.length == 3) {
+    			// Decimal arithmetic, so the values are written as given (0.3, not 0.30000000000000004)
+    			BigDecimal start = new BigDecimal(range[0].trim());
+    			BigDecimal end = new BigDecimal(range[1].trim());
+    			BigDecimal step = new BigDecimal(range[2].trim());
+    			if (step.signum() <= 0) {
+    				throw new IllegalArgumentException("SweepSubspaceClusteringParameters: step must be positive in " + entry);
+    			}
+    			if (end.compareTo(start) < 0) {
+    				throw new IllegalArgumentException("SweepSubspaceClusteringParameters: end must not be less than start in " + entry);
+    			}
+    			List<String> list = new ArrayList<String>();
+    			int numSteps = end.subtract(start).divide(step, 0, RoundingMode.FLOOR).intValue();
+    			for (int i = 0; i <= numSteps; i++) {
+    				list.add(start.add(step.multiply(BigDecimal.valueOf(i))).toPlainString());
+    			}
+    			parameterValues[p] = list.toArray(new String[list.size()]);
+    		} else {
+    			parameterValues[p] = values.split(",");
+    			for (int i = 0; i < parameterValues[p].length; i++) {
+    				parameterValues[p][i] = parameterValues[p][i].trim();
+    			}
+    		}
+    	}
+    }
+
+    /*
+     * All combinations as indices into parameterValues
+     */
+    private List<int[]> getCombinations() {
+    	List<int[]> combinations = new ArrayList<int[]>();
+    	int[] current = new int[parameterNames.length];
+    	while (true) {
+    		combinations.add(current.clone());
+    		int p = parameterNames.length - 1;
+    		while (p >= 0 && ++current[p] == parameterValues[p].length) {
+    			current[p] = 0;
+    			p--;
+    		}
+    		if (p < 0) break;
+    	}
+    	return combinations;
+    }
+
+    private AbstractSubspaceClusterer createClusterer(AbstractSubspaceClusterer base, int[] combination) {
+    	AbstractSubspaceClusterer clusterer = (AbstractSubspaceClusterer) base.copy();
+    	for (int p = 0; p < parameterNames.length; p++) {
+    		Option option = clusterer.getOptions().getOption(parameterNames[p]);
+    		if (option == null) {
+    			throw new IllegalArgumentException("SweepSubspaceClusteringParameters: "
+    					+ base.getClass().getSimpleName() + " has no option " + parameterNames[p]);
+    		}
+    		option.setValueViaCLIString(parameterValues[p][combination[p]]);
+    	}
+    	clusterer.prepareForUse();
+    	return clusterer;
+    }
+
+    private String getCombinationName(int c, int[] combination) {
+    	StringBuilder sb = new StringBuilder();
+    	sb.append(c);
+    	for (int p = 0; p < parameterNames.length; p++) {
+    		sb.append(" " + parameterNames[p] + "=" + parameterValues[p][combination[p]]);
+    	}
+    	return sb.toString();
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * [WriteSubspaceStreamToBinaryFile.java] for Subspace MOA
+ *
+ * Task for converting a subspace stream (e.g. SubspaceARFFStream) into a binary
+ * subspace stream file, which SubspaceBinaryStream can replay without parsing.
+ * The attribute ranges can be written to a sidecar file on the way.
+ *
+ * Data Management and Data Exploration Group, RWTH Aachen University
+ */
+
+package moa.tasks;
+
+import java.io.IOException;
+
+import moa.core.ObjectRepository;
+import moa.core.SubspaceInstance;
+import moa.options.ClassOption;
+import moa.options.FileOption;
+import moa.options.IntOption;
+import moa.streams.clustering.SubspaceBinaryFileWriter;
+import moa.streams.clustering.SubspaceClusteringStream;
+
+public class WriteSubspaceStreamToBinaryFile extends MainTask {
+
+    @Override
+    public String getPurposeString() {
+        return "Writes a subspace stream to a binary subspace stream file.";
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    public ClassOption streamOption = new ClassOption("stream", 's',
+            "Stream to write.", SubspaceClusteringStream.class,
+            "SubspaceARFFStream");
+
+    public FileOption binaryFileOption = new FileOption("binaryFile", 'f',
+            "Destination binary file.", null, "smsb", true);
+
+    public IntOption maxInstancesOption = new IntOption("maxInstances", 'm',
+            "Maximum number of instances to write to file (-1 = whole stream).",
+            -1, -1, Integer.MAX_VALUE);
+
+    public IntOption rowsPerBlockOption = new IntOption("rowsPerBlock", 'b',
+            "Rows stored together column by column.",
+            1024, 1, Integer.MAX_VALUE);
+
+    public FileOption rangeFileOption = new FileOption("rangeFile", 'R',
+            "Optional sidecar file to write the min/max of every attribute to " +
+            "(for single-pass normalization of the original stream).", "", "range", true);
+
+
+    @Override
+    public Class<?> getTaskResultType() {
+        return String.class;
+    }
+
+    @Override
+    protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+    	SubspaceClusteringStream stream = (SubspaceClusteringStream) getPreparedClassOption(streamOption);
+    	long maxInstances = maxInstancesOption.getValue();
+    	if (maxInstances < 0) {
+    		maxInstances = Long.MAX_VALUE;
+    	}
+
+    	SubspaceBinaryFileWriter writer = null;
+    	long numWritten = 0;
+    	try {
+    		try {
+    			monitor.setCurrentActivityDescription("Writing stream to binary file");
+    			// From the header up front, so an empty stream gives a file with 0 rows
+    			if (stream.getHeader() != null) {
+    				writer = new SubspaceBinaryFileWriter(binaryFileOption.getFile(),
+    						stream.getHeader(), rowsPerBlockOption.getValue());
+    			}
+    			while (numWritten < maxInstances && stream.hasMoreInstances()) {
+    				SubspaceInstance inst = stream.nextInstance();
+    				if (inst == null) break;
+    				if (writer == null) {
+    					// Streams without a header: the dataset of the first instance
+    					if (inst.dataset() == null) {
+    						throw new RuntimeException("WriteSubspaceStreamToBinaryFile: stream has no header");
+    					}
+    					writer = new SubspaceBinaryFileWriter(binaryFileOption.getFile(),
+    							inst.dataset(), rowsPerBlockOption.getValue());
+    				}
+    				writer.add(inst);
+    				numWritten++;
+
+    				if (numWritten % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
+    					if (monitor.taskShouldAbort()) {
+    						return null;
+    					}
+    					monitor.setCurrentActivityDescription("Written " + numWritten + " instances");
+    				}
+    			}
+    			if (writer == null) {
+    				throw new RuntimeException("WriteSubspaceStreamToBinaryFile: stream has no header "
+    						+ "and no instances, nothing written to " + binaryFileOption.getFile());
+    			}
+    			if (numWritten > 0 && rangeFileOption.getFile() != null) {
+    				writer.writeAttributeRanges(rangeFileOption.getFile());
+    			}
+    		} finally {
+    			if (writer != null) writer.close();
+    		}
+    	} catch (IOException ioe) {
+    		throw new RuntimeException("WriteSubspaceStreamToBinaryFile: couldn't write "
+    				+ binaryFileOption.getFile(), ioe);
+    	}
+
+    	return "Stream written to binary file " + binaryFileOption.getFile()
+    			+ " (" + numWritten + " instances)";
+    }
+}